@@ -122,6 +122,15 @@ public class AdminCliOptionsParser extends CliOptionsParser {
                 + "requires more memory and is less efficient.", required = false, arity = 0)
         public boolean flexibleGTFParsing = false;
 
+        @Parameter(names = {"--chunk-ids"}, description = "Add the private _chunkIds field to the JSON files of the data "
+                + "queried by region, e.g. gene or genome_sequence, so that they are not computed when the data is loaded",
+                required = false, arity = 0)
+        public boolean chunkIds = false;
+
+        @Parameter(names = {"--num-threads"}, description = "Number of threads used to build data, clinical_variants "
+                + "sources are indexed in parallel when it is greater than 1", arity = 1)
+        public int numThreads = 1;
+
     }
 
     @Parameters(commandNames = {"data-release"}, commandDescription = "Manage data releases in order to support multiple versions of data")
@@ -182,6 +191,14 @@ public class AdminCliOptionsParser extends CliOptionsParser {
         @Parameter(names = {"--num-threads"}, description = "Number of threads used for loading data into the database", arity = 1)
         public int numThreads = 2;
 
+        @Parameter(names = {"--max-in-flight-writes"}, description = "Maximum number of document batches being written concurrently into"
+                + " the database, by default the number of threads", arity = 1)
+        public int maxInFlightWrites;
+
+        @Parameter(names = {"--resume"}, description = "Resume a failed load, the records of each file already written in the data"
+                + " release are skipped and completely loaded files are not loaded again", arity = 0)
+        public boolean resume;
+
         @Parameter(names = {"--skip-index"}, description = "After loading, add index to the database", arity = 0)
         public boolean skipIndex;
 
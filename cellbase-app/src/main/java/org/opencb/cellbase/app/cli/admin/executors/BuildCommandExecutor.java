@@ -30,6 +30,7 @@ import org.opencb.cellbase.lib.EtlCommons;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.cellbase.lib.builders.*;
 import org.opencb.cellbase.lib.builders.clinical.variant.ClinicalVariantBuilder;
+import org.opencb.cellbase.lib.loader.ChunkIds;
 
 import java.io.File;
 import java.io.IOException;
@@ -52,6 +53,7 @@ public class BuildCommandExecutor extends CommandExecutor {
     private File ensemblScriptsFolder;
 
     private boolean flexibleGTFParsing;
+    private boolean chunkIds;
     private SpeciesConfiguration speciesConfiguration;
 
     public BuildCommandExecutor(AdminCliOptionsParser.BuildCommandOptions buildCommandOptions) {
@@ -63,6 +65,7 @@ public class BuildCommandExecutor extends CommandExecutor {
 
         this.ensemblScriptsFolder = new File(System.getProperty("basedir") + "/bin/ensembl-scripts/");
         this.flexibleGTFParsing = buildCommandOptions.flexibleGTFParsing;
+        this.chunkIds = buildCommandOptions.chunkIds;
     }
 
 
@@ -191,7 +194,7 @@ public class BuildCommandExecutor extends CommandExecutor {
         copyVersionFiles(Arrays.asList(repeatsFilesDir.resolve(EtlCommons.GSD_VERSION_FILE)));
         copyVersionFiles(Arrays.asList(repeatsFilesDir.resolve(EtlCommons.WM_VERSION_FILE)));
         // TODO: chunk size is not really used in ConvervedRegionParser, remove?
-        CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, EtlCommons.REPEATS_JSON);
+        CellBaseFileSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(buildFolder, EtlCommons.REPEATS_JSON), "repeats");
         return new RepeatsBuilder(repeatsFilesDir, serializer);
     }
 
@@ -201,6 +204,14 @@ public class BuildCommandExecutor extends CommandExecutor {
         return new OntologyBuilder(oboDir, serializer);
     }
 
+    private CellBaseJsonFileSerializer addChunkIds(CellBaseJsonFileSerializer serializer, String data) {
+        if (chunkIds) {
+            // Same _chunkIds computed by the loader, written into the JSON files so that loading skips them
+            serializer.setPrivateFields(ChunkIds.jsonPrivateFields(data));
+        }
+        return serializer;
+    }
+
     private void copyVersionFiles(List<Path> pathList) {
         for (Path path : pathList) {
             try {
@@ -247,8 +258,8 @@ public class BuildCommandExecutor extends CommandExecutor {
     private CellBaseBuilder buildGenomeSequence() {
         copyVersionFiles(Collections.singletonList(downloadFolder.resolve("genome/genomeVersion.json")));
         Path fastaFile = getFastaReferenceGenome();
-        CellBaseSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "genome_sequence");
-        return new GenomeSequenceFastaBuilder(fastaFile, serializer);
+        CellBaseSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(buildFolder, "genome_sequence"), "genome_sequence");
+        return new GenomeSequenceFastaBuilder(fastaFile, serializer, buildFolder.resolve("genome_sequence.2bit"));
     }
 
     private CellBaseBuilder buildGene() throws CellBaseException {
@@ -259,14 +270,14 @@ public class BuildCommandExecutor extends CommandExecutor {
                 geneFolderPath.resolve("hpoVersion.json"), geneFolderPath.resolve("disgenetVersion.json"),
                 geneFolderPath.resolve("gnomadVersion.json")));
         Path genomeFastaFilePath = getFastaReferenceGenome();
-        CellBaseSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "gene");
+        CellBaseSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(buildFolder, "gene"), "gene");
         return new GeneBuilder(geneFolderPath, genomeFastaFilePath, speciesConfiguration, flexibleGTFParsing, serializer);
     }
 
     private CellBaseBuilder buildRefSeq() {
         Path refseqFolderPath = downloadFolder.resolve("refseq");
         copyVersionFiles(Arrays.asList(refseqFolderPath.resolve("refSeqVersion.json")));
-        CellBaseSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "refseq");
+        CellBaseSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(buildFolder, "refseq"), "refseq");
         return new RefSeqGeneBuilder(refseqFolderPath, speciesConfiguration, serializer);
     }
 
@@ -274,21 +285,22 @@ public class BuildCommandExecutor extends CommandExecutor {
         Path variationFunctionalScorePath = downloadFolder.resolve("variation_functional_score");
         copyVersionFiles(Arrays.asList(variationFunctionalScorePath.resolve("caddVersion.json")));
         Path caddFilePath = variationFunctionalScorePath.resolve("whole_genome_SNVs.tsv.gz");
-        CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "cadd");
-        return new CaddScoreBuilder(caddFilePath, serializer);
+        CellBaseFileSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(buildFolder, "cadd"),
+                "variation_functional_score");
+        return new CaddScoreBuilder(caddFilePath, serializer, buildFolder.resolve("cadd_scores.bin"));
     }
 
     private CellBaseBuilder buildRevel() {
         Path missensePredictionScorePath = downloadFolder.resolve(EtlCommons.MISSENSE_VARIATION_SCORE_DATA);
         copyVersionFiles(Arrays.asList(missensePredictionScorePath.resolve("revelVersion.json")));
         CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, EtlCommons.MISSENSE_VARIATION_SCORE_DATA);
-        return new RevelScoreBuilder(missensePredictionScorePath, serializer);
+        return new RevelScoreBuilder(missensePredictionScorePath, serializer, buildFolder.resolve("revel_scores.bin"));
     }
 
     private CellBaseBuilder buildRegulation() {
         Path regulatoryRegionFilesDir = downloadFolder.resolve("regulation");
         copyVersionFiles(Collections.singletonList(regulatoryRegionFilesDir.resolve("ensemblRegulationVersion.json")));
-        CellBaseSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "regulatory_region");
+        CellBaseSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(buildFolder, "regulatory_region"), "regulatory_region");
         return new RegulatoryFeatureBuilder(regulatoryRegionFilesDir, serializer);
     }
 
@@ -351,7 +363,7 @@ public class BuildCommandExecutor extends CommandExecutor {
                 EtlCommons.CLINICAL_VARIANTS_JSON_FILE.replace(".json.gz", ""), true);
         return new ClinicalVariantBuilder(clinicalVariantFolder, normalize, getFastaReferenceGenome(),
                 buildCommandOptions.assembly == null ? getDefaultHumanAssembly() : buildCommandOptions.assembly,
-                serializer);
+                serializer).setNumThreads(buildCommandOptions.numThreads);
     }
 
     private String getDefaultHumanAssembly() {
@@ -393,7 +405,7 @@ public class BuildCommandExecutor extends CommandExecutor {
                     StandardCopyOption.REPLACE_EXISTING);
         }
 
-        CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(spliceOutputFolder);
+        CellBaseFileSerializer serializer = addChunkIds(new CellBaseJsonFileSerializer(spliceOutputFolder), "splice_score");
         return new SpliceBuilder(spliceInputFolder, serializer);
     }
 
@@ -113,7 +113,9 @@ public class LoadCommandExecutor extends CommandExecutor {
                 configuration.getDatabases().getMongodb().getOptions().put("authenticationDatabase",
                         loadCommandOptions.loaderParams.get("authenticationDatabase"));
             }
-            loadRunner = new LoadRunner(loader, database, numThreads, configuration);
+            int maxInFlightWrites = loadCommandOptions.maxInFlightWrites > 0 ? loadCommandOptions.maxInFlightWrites : numThreads;
+            loadRunner = new LoadRunner(loader, database, numThreads, maxInFlightWrites, configuration)
+                    .setResume(loadCommandOptions.resume);
             if (createIndexes) {
                 Path indexFile = Paths.get(this.appHome).resolve("conf").resolve("mongodb-indexes.json");
                 indexManager = new IndexManager(database, indexFile, configuration);
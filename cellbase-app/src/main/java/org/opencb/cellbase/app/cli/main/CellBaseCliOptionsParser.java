@@ -97,6 +97,12 @@ public class CellBaseCliOptionsParser extends CliOptionsParser {
         @Parameter(names = {"--resume"}, description = "Whether we resume annotation or overwrite the annotation in the output file", required = false, arity = 0)
         public boolean resume;
 
+        @Parameter(names = {"--sorted-input"}, description = "Input variants are sorted by chromosome and position, e.g. a"
+                + " sorted VCF file. Genes and regulatory features are then kept in one sliding window shared by all the annotation"
+                + " threads and only the newly entered genomic span is fetched for each batch. Only used with --local.",
+                required = false, arity = 0)
+        public boolean sortedInput;
+
         @Parameter(names = {"--custom-file"}, description = "String with a comma separated list (no spaces in between) of files with custom annotation to be included during the annotation process. File format must be VCF. For example: file1.vcf,file2.vcf", required = false)
         public String customFiles;
 
@@ -28,8 +28,8 @@ import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 /**
  * Created by fjlopez on 02/03/15.
@@ -61,9 +61,10 @@ public class CellBaseWSVariantAnnotator implements VariantAnnotator {
             logger.debug("Annotator sends {} new variants for annotation. Waiting for the result", variantList.size());
             CellBaseDataResponse<VariantAnnotation> response;
             try {
-                response = variantClient.getAnnotation(variantList, queryOptions, true);
-            } catch (IOException e) {
-                e.printStackTrace();
+                // Batches are sized and paginated by the client asynchronous pipeline
+                response = variantClient.getAnnotationAsync(variantList, queryOptions, true).join();
+            } catch (CompletionException e) {
+                logger.error("Error annotating {} variants", variantList.size(), e.getCause());
                 return;
             }
 
@@ -16,19 +16,18 @@
 
 package org.opencb.cellbase.app.cli.main.annotation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.core.variant.PopulationFrequencyPhasedQueryManager;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -49,16 +48,9 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
     private final QueryOptions queryOptions;
 
 
-    private static ObjectMapper mapper = new ObjectMapper();
-    private static ObjectWriter jsonObjectWriter;
     private static PopulationFrequencyPhasedQueryManager phasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
 
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = mapper.writer();
-    }
-
     public PopulationFrequenciesAnnotator(String fileName, RocksDB dbIndex, QueryOptions queryOptions) {
         this.fileName = fileName;
         this.dbIndex = dbIndex;
@@ -82,10 +74,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantCellBaseDataResult.add(getPopulationFrequencies(variant));
-        }
+        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = getPopulationFrequencies(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantCellBaseDataResult = phasedQueryManager.run(variantList, variantCellBaseDataResult);
@@ -93,7 +82,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
 
         for (int i = 0; i < variantList.size(); i++) {
             if (variantCellBaseDataResult != null && variantCellBaseDataResult.get(i).getResults() != null
-                    && variantCellBaseDataResult.get(i).getResults().isEmpty()) {
+                    && !variantCellBaseDataResult.get(i).getResults().isEmpty()) {
                 // Assuming if it gets to this point the variant has VariantAnnotation
                 // Only one variant  can be returned per query to RocksDB
                 List<PopulationFrequency> populationFrequencies
@@ -115,42 +104,57 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
         }
     }
 
-    private CellBaseDataResult<Variant> getPopulationFrequencies(Variant variant) {
-        CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = new CellBaseDataResult<>();
-        populationFrequencyCellBaseDataResult.setId(variant.toString());
+    private List<CellBaseDataResult<Variant>> getPopulationFrequencies(List<Variant> variantList) {
         long start = System.currentTimeMillis();
+        List<CellBaseDataResult<Variant>> populationFrequencyCellBaseDataResults = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = new CellBaseDataResult<>();
+            populationFrequencyCellBaseDataResult.setId(variant.toString());
+            populationFrequencyCellBaseDataResults.add(populationFrequencyCellBaseDataResult);
+        }
+
         try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-                flagVisitedVariant(variantKey, variant1);
-
-                populationFrequencyCellBaseDataResult.setResults(Collections.singletonList(variant1));
-                populationFrequencyCellBaseDataResult.setNumResults(1);
-                populationFrequencyCellBaseDataResult.setNumMatches(1);
+            List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+            for (Variant variant : variantList) {
+                variantKeys.add(variant.toString().getBytes());
+            }
+            // The whole batch is fetched with one single RocksDB multiGet
+            List<Variant> indexedVariants = VariantIndexCodec.multiGet(dbIndex, variantKeys);
+            WriteBatch writeBatch = new WriteBatch();
+            WriteOptions writeOptions = new WriteOptions();
+            try {
+                for (int i = 0; i < variantList.size(); i++) {
+                    Variant variant1 = indexedVariants.get(i);
+                    if (variant1 != null) {
+                        flagVisitedVariant(writeBatch, variantKeys.get(i), variant1);
+
+                        CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = populationFrequencyCellBaseDataResults.get(i);
+                        populationFrequencyCellBaseDataResult.setResults(Collections.singletonList(variant1));
+                        populationFrequencyCellBaseDataResult.setNumResults(1);
+                        populationFrequencyCellBaseDataResult.setNumMatches(1);
+                    }
+                }
+                dbIndex.write(writeOptions, writeBatch);
+            } finally {
+                writeBatch.dispose();
+                writeOptions.dispose();
             }
         } catch (RocksDBException | IOException e) {
             e.printStackTrace();
         }
 
-        long end = System.currentTimeMillis();
-        populationFrequencyCellBaseDataResult.setTime((int) (end - start));
-
-        return populationFrequencyCellBaseDataResult;
+        int time = (int) (System.currentTimeMillis() - start);
+        for (CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult : populationFrequencyCellBaseDataResults) {
+            populationFrequencyCellBaseDataResult.setTime(time);
+        }
+        return populationFrequencyCellBaseDataResults;
     }
 
-    private void flagVisitedVariant(byte[] key, Variant variant) {
+    private void flagVisitedVariant(WriteBatch writeBatch, byte[] key, Variant variant) throws RocksDBException, IOException {
         // The annotation.additionalAttributes field is initialized with an empty map to flag this variant as
         // already visited
         variant.getAnnotation().setAdditionalAttributes(Collections.emptyMap());
-        try {
-            dbIndex.put(key, jsonObjectWriter.writeValueAsBytes(variant));
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-        }
+        writeBatch.put(key, VariantIndexCodec.encode(variant));
     }
 
     public boolean close() {
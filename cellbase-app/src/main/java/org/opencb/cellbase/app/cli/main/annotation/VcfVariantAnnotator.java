@@ -16,12 +16,11 @@
 
 package org.opencb.cellbase.app.cli.main.annotation;
 
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.AdditionalAttribute;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.core.variant.CustomAnnotationPhasedQueryManager;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -39,12 +38,6 @@ import java.util.*;
  */
 public class VcfVariantAnnotator implements VariantAnnotator {
 
-    private static ObjectMapper mapper = new ObjectMapper();
-
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-    }
-
     private final QueryOptions queryOptions;
     private String fileName;
     private RocksDB dbIndex;
@@ -77,10 +70,7 @@ public class VcfVariantAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantCellBaseDataResult.add(getCustomAnnotation(variant));
-        }
+        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = getCustomAnnotation(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantCellBaseDataResult = phasedQueryManager.run(variantList, variantCellBaseDataResult);
@@ -134,28 +124,37 @@ public class VcfVariantAnnotator implements VariantAnnotator {
         return null;
     }
 
-    private CellBaseDataResult<Variant> getCustomAnnotation(Variant variant) {
-        CellBaseDataResult<Variant> customAnnotationCellBaseDataResult = new CellBaseDataResult<>();
-        customAnnotationCellBaseDataResult.setId(variant.toString());
+    private List<CellBaseDataResult<Variant>> getCustomAnnotation(List<Variant> variantList) {
         long start = System.currentTimeMillis();
+        List<CellBaseDataResult<Variant>> customAnnotationCellBaseDataResults = new ArrayList<>(variantList.size());
+        List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            CellBaseDataResult<Variant> customAnnotationCellBaseDataResult = new CellBaseDataResult<>();
+            customAnnotationCellBaseDataResult.setId(variant.toString());
+            customAnnotationCellBaseDataResults.add(customAnnotationCellBaseDataResult);
+            variantKeys.add(variant.toString().getBytes());
+        }
+
         try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-
-                customAnnotationCellBaseDataResult.setResults(Collections.singletonList(variant1));
-                customAnnotationCellBaseDataResult.setNumResults(1);
-                customAnnotationCellBaseDataResult.setNumMatches(1);
+            // The whole batch is fetched with one single RocksDB multiGet
+            List<Variant> indexedVariants = VariantIndexCodec.multiGet(dbIndex, variantKeys);
+            for (int i = 0; i < variantList.size(); i++) {
+                if (indexedVariants.get(i) != null) {
+                    CellBaseDataResult<Variant> customAnnotationCellBaseDataResult = customAnnotationCellBaseDataResults.get(i);
+                    customAnnotationCellBaseDataResult.setResults(Collections.singletonList(indexedVariants.get(i)));
+                    customAnnotationCellBaseDataResult.setNumResults(1);
+                    customAnnotationCellBaseDataResult.setNumMatches(1);
+                }
             }
         } catch (RocksDBException | IOException e) {
             e.printStackTrace();
         }
 
-        long end = System.currentTimeMillis();
-        customAnnotationCellBaseDataResult.setTime((int) (end - start));
-
-        return customAnnotationCellBaseDataResult;
+        int time = (int) (System.currentTimeMillis() - start);
+        for (CellBaseDataResult<Variant> customAnnotationCellBaseDataResult : customAnnotationCellBaseDataResults) {
+            customAnnotationCellBaseDataResult.setTime(time);
+        }
+        return customAnnotationCellBaseDataResults;
     }
 
     public boolean close() {
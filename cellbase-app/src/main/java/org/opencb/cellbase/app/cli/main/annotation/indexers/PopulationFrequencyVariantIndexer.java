@@ -24,9 +24,14 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
 import org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PopulationFrequencyVariantIndexer extends VariantIndexer {
     private static final String EMPTY_ALLELE_STRING = "";
@@ -39,6 +44,7 @@ public class PopulationFrequencyVariantIndexer extends VariantIndexer {
 
     @Override
     protected void updateIndex(List<Variant> variantList) throws IOException, RocksDBException {
+        List<byte[]> keys = new ArrayList<>(variantList.size());
         for (Variant variant : variantList) {
             // If MNV then edit alternate allele to include a string tha represents all variants forming the MNV
             String haplotypeString = AnnotationBasedPhasedQueryManager.getSampleAttribute(variant,
@@ -50,22 +56,41 @@ public class PopulationFrequencyVariantIndexer extends VariantIndexer {
                     populationFrequency.setAltAllele(alleleAlignment.getRight());
                 }
             }
+            keys.add(variant.toString().getBytes());
+        }
 
-            byte[] dbContent = dbIndex.get(variant.toString().getBytes());
-            Variant variantToIndex;
+        // Variants already indexed are fetched at once, variants repeated within the batch are merged in memory
+        List<Variant> indexedVariants = VariantIndexCodec.multiGet(dbIndex, keys);
+        Map<String, Variant> variantsToIndex = new LinkedHashMap<>();
+        for (int i = 0; i < variantList.size(); i++) {
+            Variant variant = variantList.get(i);
+            String key = variant.toString();
+            Variant variantToIndex = variantsToIndex.get(key);
+            if (variantToIndex == null) {
+                variantToIndex = indexedVariants.get(i);
+            }
 
-            if (dbContent == null) {
+            if (variantToIndex == null) {
                 variantToIndex = variant;
             } else {
-                variantToIndex = jsonObjectMapper.readValue(dbContent, Variant.class);
-
                 // Add all pop frequencies from current variant
                 variantToIndex
                         .getAnnotation()
                         .getPopulationFrequencies().addAll(variant.getAnnotation().getPopulationFrequencies());
             }
+            variantsToIndex.put(key, variantToIndex);
+        }
 
-            dbIndex.put(variantToIndex.toString().getBytes(), jsonObjectWriter.writeValueAsBytes(variantToIndex));
+        WriteBatch writeBatch = new WriteBatch();
+        WriteOptions writeOptions = new WriteOptions();
+        try {
+            for (Variant variantToIndex : variantsToIndex.values()) {
+                writeBatch.put(variantToIndex.toString().getBytes(), VariantIndexCodec.encode(variantToIndex));
+            }
+            dbIndex.write(writeOptions, writeBatch);
+        } finally {
+            writeBatch.dispose();
+            writeOptions.dispose();
         }
     }
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli.main.annotation.indexers;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the variants stored as values of the RocksDB annotation indexes. Values are Avro binary prefixed with a
+ * two bytes marker: 0 and the codec version. JSON values, as written by previous versions, always start with '{',
+ * so indexes created before are still readable.
+ */
+public final class VariantIndexCodec {
+
+    static final byte BINARY_MARKER = 0;
+    static final byte VERSION = 1;
+
+    private static final SpecificDatumWriter<VariantAvro> DATUM_WRITER = new SpecificDatumWriter<>(VariantAvro.class);
+    private static final SpecificDatumReader<VariantAvro> DATUM_READER = new SpecificDatumReader<>(VariantAvro.class);
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectWriter JSON_WRITER;
+
+    static {
+        JSON_MAPPER.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        JSON_WRITER = JSON_MAPPER.writer();
+    }
+
+    private VariantIndexCodec() {
+    }
+
+    /**
+     * Serializes a variant as Avro binary.
+     * @param variant variant to be stored
+     * @return encoded value, JSON if the variant is not valid against the Avro schema, e.g. a required field is null
+     * @throws IOException if the variant can not be serialized
+     */
+    public static byte[] encode(Variant variant) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(512);
+        outputStream.write(BINARY_MARKER);
+        outputStream.write(VERSION);
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        try {
+            DATUM_WRITER.write(variant.getImpl(), encoder);
+            encoder.flush();
+        } catch (NullPointerException | ClassCastException | AvroRuntimeException e) {
+            return JSON_WRITER.writeValueAsBytes(variant);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Deserializes a value written by {@link #encode(Variant)} or a JSON value from an index created by a previous
+     * version.
+     * @param value stored value
+     * @return the variant
+     * @throws IOException if the value can not be parsed or was written by a newer, unknown, codec version
+     */
+    public static Variant decode(byte[] value) throws IOException {
+        if (value.length > 1 && value[0] == BINARY_MARKER) {
+            if (value[1] != VERSION) {
+                throw new IOException("Unsupported variant index value version " + value[1] + ", the index was created by a "
+                        + "newer version. Please, re-create the index.");
+            }
+            BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(value, 2, value.length - 2, null);
+            return new Variant(DATUM_READER.read(null, decoder));
+        }
+        return JSON_MAPPER.readValue(value, Variant.class);
+    }
+
+    /**
+     * Fetches and decodes a batch of variants with one single RocksDB multiGet.
+     * @param dbIndex RocksDB index
+     * @param keys keys to look up
+     * @return decoded variants in the same order as the keys, null for the keys not found
+     * @throws RocksDBException if the index can not be read
+     * @throws IOException if a value can not be decoded
+     */
+    public static List<Variant> multiGet(RocksDB dbIndex, List<byte[]> keys) throws RocksDBException, IOException {
+        // Found values are mapped to the same key instances, byte arrays are compared by reference
+        Map<byte[], byte[]> values = dbIndex.multiGet(keys);
+        List<Variant> variants = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            byte[] value = values.get(key);
+            variants.add(value != null ? decode(value) : null);
+        }
+        return variants;
+    }
+}
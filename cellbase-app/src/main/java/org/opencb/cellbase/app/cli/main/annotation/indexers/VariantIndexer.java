@@ -16,9 +16,6 @@
 
 package org.opencb.cellbase.app.cli.main.annotation.indexers;
 
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.rocksdb.Options;
@@ -35,9 +32,6 @@ import java.util.stream.Collectors;
 
 public abstract class VariantIndexer {
 
-    protected ObjectMapper jsonObjectMapper;
-    protected ObjectWriter jsonObjectWriter;
-
     private final Logger logger = LoggerFactory.getLogger(VariantIndexer.class);
 
     private final VariantReader variantReader;
@@ -53,11 +47,6 @@ public abstract class VariantIndexer {
         this.variantReader = variantReader;
         this.forceCreate = forceCreate;
         this.maxOpenFiles = maxOpenFiles;
-
-        jsonObjectMapper = new ObjectMapper();
-        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = jsonObjectMapper.writer();
-
     }
 
     public RocksDB getDbIndex() {
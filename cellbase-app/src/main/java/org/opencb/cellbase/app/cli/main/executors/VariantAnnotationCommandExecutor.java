@@ -40,6 +40,7 @@ import org.opencb.cellbase.app.cli.main.CellBaseCliOptionsParser;
 import org.opencb.cellbase.app.cli.main.annotation.*;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.CustomAnnotationVariantIndexer;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.PopulationFrequencyVariantIndexer;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexer;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 import org.opencb.cellbase.client.rest.CellBaseClient;
@@ -50,7 +51,9 @@ import org.opencb.cellbase.lib.impl.core.VariantMongoDBAdaptor;
 import org.opencb.cellbase.lib.managers.CellBaseManagerFactory;
 import org.opencb.cellbase.lib.managers.GenomeManager;
 import org.opencb.cellbase.lib.managers.VariantManager;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationScheduler;
 import org.opencb.cellbase.lib.variant.annotation.CellBaseNormalizerSequenceAdaptor;
+import org.opencb.cellbase.lib.variant.annotation.SortedAnnotationWindow;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotator;
 import org.opencb.commons.ProgressLogger;
@@ -117,6 +120,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     private QueryOptions serverQueryOptions;
 
     private MongoDBAdaptorFactory dbAdaptorFactory = null;
+    // One single factory shared by all the annotation threads, created on first use
+    private CellBaseManagerFactory cellBaseManagerFactory = null;
 //    private ReleaseManager releaseManager = null;
 
     private final int QUEUE_CAPACITY = 10;
@@ -186,9 +191,10 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     getBenchmarkTaskList(FastaIndex fastaIndex) throws IOException, CellBaseException {
         List<ParallelTaskRunner.TaskWithException<VariantAnnotation, Pair<VariantAnnotationDiff, VariantAnnotationDiff>, Exception>>
                 benchmarkTaskList = new ArrayList<>(numThreads);
+        SortedAnnotationWindow sortedAnnotationWindow = createSortedAnnotationWindow();
         for (int i = 0; i < numThreads; i++) {
             // Benchmark variants are read from a VEP file, must not normalize
-            benchmarkTaskList.add(new BenchmarkTask(createCellBaseAnnotator(), fastaIndex));
+            benchmarkTaskList.add(new BenchmarkTask(createCellBaseAnnotator(sortedAnnotationWindow), fastaIndex));
         }
         return benchmarkTaskList;
     }
@@ -201,7 +207,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             if (variantAnnotationCommandOptions.variant != null && !variantAnnotationCommandOptions.variant.isEmpty()) {
                 List<Variant> variants = Variant.parseVariants(variantAnnotationCommandOptions.variant);
                 if (local) {
-                    CellBaseManagerFactory cellBaseManagerFactory = new CellBaseManagerFactory(configuration);
+                    CellBaseManagerFactory cellBaseManagerFactory = getCellBaseManagerFactory();
                     VariantAnnotationCalculator variantAnnotationCalculator =
                             new VariantAnnotationCalculator(this.species, this.assembly, variantAnnotationCommandOptions.dataRelease,
                                     cellBaseManagerFactory);
@@ -269,6 +275,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
                 }
             }
         } finally {
+            // Annotator threads are done, tasks can no longer be submitted to the annotation scheduler
+            AnnotationScheduler.closeAll();
             if (customFiles != null || populationFrequenciesFile != null) {
                 closeIndexes();
             }
@@ -281,6 +289,13 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         return false;
     }
 
+    private synchronized CellBaseManagerFactory getCellBaseManagerFactory() {
+        if (cellBaseManagerFactory == null) {
+            cellBaseManagerFactory = new CellBaseManagerFactory(configuration);
+        }
+        return cellBaseManagerFactory;
+    }
+
     private VariantReader getVariantReader(Path input) throws IOException, CellBaseException {
         return getVariantReader(input, serverQueryOptions.getBoolean("ignorePhase"));
     }
@@ -320,12 +335,11 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
                         .getDbIndex()
                         .newIterator();
 
-                ObjectMapper mapper = new ObjectMapper();
                 logger.info("Writing variants with frequencies that were not found within the input file {} to {}",
                         populationFrequenciesFile.toString(), output.toString());
                 int counter = 0;
                 for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
-                    Variant variant = mapper.readValue(rocksIterator.value(), Variant.class);
+                    Variant variant = VariantIndexCodec.decode(rocksIterator.value());
                     // The additional attributes field initialized with an empty map is used as the flag to indicate that
                     // this variant was not visited during the annotation process
                     if (variant.getAnnotation().getAdditionalAttributes() == null) {
@@ -392,8 +406,10 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             throws IOException, CellBaseException {
         List<ParallelTaskRunner.TaskWithException<Variant, Variant, Exception>> variantAnnotatorTaskList = new ArrayList<>(numThreads);
 
+        // One single window shared by all the annotation threads
+        SortedAnnotationWindow sortedAnnotationWindow = createSortedAnnotationWindow();
         for (int i = 0; i < numThreads; i++) {
-            List<VariantAnnotator> variantAnnotatorList = createAnnotators();
+            List<VariantAnnotator> variantAnnotatorList = createAnnotators(sortedAnnotationWindow);
             variantAnnotatorTaskList.add(new VariantAnnotatorTask(variantAnnotatorList));
         }
         return variantAnnotatorTaskList;
@@ -416,7 +432,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
 //                if (dbAdaptorFactory == null) {
 //                    dbAdaptorFactory = new MongoDBAdaptorFactory(configuration);
 //                }
-                CellBaseManagerFactory cellBaseManagerFactory = new CellBaseManagerFactory(configuration);
+                CellBaseManagerFactory cellBaseManagerFactory = getCellBaseManagerFactory();
                 return variantNormalizerConfig
                         .enableLeftAlign(new CellBaseNormalizerSequenceAdaptor(cellBaseManagerFactory.getGenomeManager(species, assembly),
                                 variantAnnotationCommandOptions.dataRelease));
@@ -437,12 +453,12 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         }
     }
 
-    private List<VariantAnnotator> createAnnotators() throws CellBaseException {
+    private List<VariantAnnotator> createAnnotators(SortedAnnotationWindow sortedAnnotationWindow) throws CellBaseException {
         List<VariantAnnotator> variantAnnotatorList;
         variantAnnotatorList = new ArrayList<>();
 
         // CellBase annotator is always called
-        variantAnnotatorList.add(createCellBaseAnnotator());
+        variantAnnotatorList.add(createCellBaseAnnotator(sortedAnnotationWindow));
 
         // Include custom annotators if required
         if (customFiles != null) {
@@ -468,7 +484,21 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         return variantAnnotatorList;
     }
 
-    private VariantAnnotator createCellBaseAnnotator() throws CellBaseException {
+    /**
+     * Window of genes and regulatory regions for sorted input, created once and shared by all the annotation threads.
+     * @return the window, null if the input is not sorted or the annotation is not local
+     * @throws CellBaseException if the species or assembly are not valid
+     */
+    private SortedAnnotationWindow createSortedAnnotationWindow() throws CellBaseException {
+        if (!variantAnnotationCommandOptions.sortedInput || !(local || cellBaseAnnotation)) {
+            return null;
+        }
+        CellBaseManagerFactory cellBaseManagerFactory = getCellBaseManagerFactory();
+        return new SortedAnnotationWindow(cellBaseManagerFactory.getGeneManager(species, assembly),
+                cellBaseManagerFactory.getRegulatoryManager(species, assembly), variantAnnotationCommandOptions.dataRelease);
+    }
+
+    private VariantAnnotator createCellBaseAnnotator(SortedAnnotationWindow sortedAnnotationWindow) throws CellBaseException {
         // Assume annotation of CellBase variation collection will always be carried out from a local installation
         if (local || cellBaseAnnotation) {
             // dbAdaptorFactory may have been already initialized at execute if annotating CellBase variation collection
@@ -478,8 +508,13 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // Normalization should just be performed in one place: before calling the annotation calculator - within the
             // corresponding *AnnotatorTask since the AnnotatorTasks need that the number of sent variants coincides
             // equals the number of returned annotations
-            return new CellBaseLocalVariantAnnotator(new VariantAnnotationCalculator(species, assembly,
-                    variantAnnotationCommandOptions.dataRelease, new CellBaseManagerFactory(configuration)), serverQueryOptions);
+            CellBaseManagerFactory cellBaseManagerFactory = getCellBaseManagerFactory();
+            VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
+                    variantAnnotationCommandOptions.dataRelease, cellBaseManagerFactory);
+            if (sortedAnnotationWindow != null) {
+                variantAnnotationCalculator.setSortedAnnotationWindow(sortedAnnotationWindow);
+            }
+            return new CellBaseLocalVariantAnnotator(variantAnnotationCalculator, serverQueryOptions);
         } else {
             try {
                 ClientConfiguration clientConfiguration = ClientConfiguration.load(getClass()
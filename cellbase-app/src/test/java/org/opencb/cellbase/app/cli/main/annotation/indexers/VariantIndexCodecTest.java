@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli.main.annotation.indexers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.Variant;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VariantIndexCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Variant variant = new Variant("1:1000:A:T");
+        Variant decoded = VariantIndexCodec.decode(VariantIndexCodec.encode(variant));
+
+        assertEquals(variant.toString(), decoded.toString());
+        assertEquals(variant.getType(), decoded.getType());
+    }
+
+    @Test
+    public void testDecodeJson() throws Exception {
+        // Indexes created by previous versions store the variants as JSON
+        Variant variant = new Variant("2:2000:-:GT");
+        byte[] json = new ObjectMapper().writeValueAsBytes(variant);
+
+        assertEquals(variant.toString(), VariantIndexCodec.decode(json).toString());
+    }
+
+    @Test
+    public void testDecodeUnknownVersion() {
+        byte[] value = {VariantIndexCodec.BINARY_MARKER, VariantIndexCodec.VERSION + 1, 0};
+        assertThrows(IOException.class, () -> VariantIndexCodec.decode(value));
+    }
+}
@@ -25,6 +25,14 @@ public class RestConfig {
 
     private List<String> hosts;
     private int timeout = 60000;
+    /**
+     * Request Avro binary responses for results that are Avro records, e.g. variant annotations, JSON is used otherwise.
+     */
+    private boolean binary;
+    /**
+     * Number of concurrent calls of the asynchronous client methods, threads are kept for the client lifetime.
+     */
+    private int numThreads = 4;
 
     public RestConfig() {
     }
@@ -39,6 +47,8 @@ public class RestConfig {
         final StringBuilder sb = new StringBuilder("RestConfig{");
         sb.append("hosts=").append(hosts);
         sb.append(", timeout=").append(timeout);
+        sb.append(", binary=").append(binary);
+        sb.append(", numThreads=").append(numThreads);
         sb.append('}');
         return sb.toString();
     }
@@ -60,4 +70,22 @@ public class RestConfig {
         this.timeout = timeout;
         return this;
     }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public RestConfig setBinary(boolean binary) {
+        this.binary = binary;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public RestConfig setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+/**
+ * Number of ids sent per REST call, adapted to the observed response times so that every call takes about the target
+ * time. Slow resources, e.g. variant annotation, get smaller batches that keep all threads busy, and fast resources
+ * larger batches that save round trips. Sizes are smoothed with an exponential moving average. Thread-safe.
+ */
+class AdaptiveBatchSize {
+
+    // Weight of the last observed call in the moving average
+    private static final double ALPHA = 0.3;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetTime;
+    private double size;
+
+    AdaptiveBatchSize(int initialSize, int minSize, int maxSize, long targetTime) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetTime = targetTime;
+        this.size = clamp(initialSize);
+    }
+
+    synchronized int get() {
+        return (int) Math.round(size);
+    }
+
+    /**
+     * Adds the response time of one call.
+     * @param batchSize number of ids sent in the call
+     * @param time response time in milliseconds
+     */
+    synchronized void update(int batchSize, long time) {
+        if (batchSize <= 0) {
+            return;
+        }
+        // Calls faster than 1 ms do not say much about the cost per id
+        double timePerId = Math.max(time, 1) / (double) batchSize;
+        size = clamp((1 - ALPHA) * size + ALPHA * (targetTime / timePerId));
+    }
+
+    private double clamp(double value) {
+        return Math.max(minSize, Math.min(maxSize, value));
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("AdaptiveBatchSize{");
+        sb.append("size=").append(get());
+        sb.append(", minSize=").append(minSize);
+        sb.append(", maxSize=").append(maxSize);
+        sb.append(", targetTime=").append(targetTime);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -19,6 +19,7 @@ package org.opencb.cellbase.client.rest;
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 
+import java.io.Closeable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
@@ -26,7 +27,7 @@ import java.util.function.Supplier;
 /**
  * Created by imedina on 12/05/16.
  */
-public class CellBaseClient {
+public class CellBaseClient implements Closeable {
 
     private String species;
     private String assembly;
@@ -106,6 +107,17 @@ public class CellBaseClient {
     }
 
 
+    /**
+     * Closes all the clients created by this CellBaseClient, see {@link ParentRestClient#close()}.
+     */
+    @Override
+    public void close() {
+        for (ParentRestClient client : clients.values()) {
+            client.close();
+        }
+        clients.clear();
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("CellBaseClient{");
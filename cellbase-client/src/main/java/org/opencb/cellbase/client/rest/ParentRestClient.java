@@ -26,6 +26,8 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.util.StdConverter;
 import org.apache.commons.lang3.StringUtils;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.opencb.biodata.models.variant.avro.ConsequenceType;
 import org.opencb.biodata.models.variant.avro.DrugResponseClassification;
 import org.opencb.biodata.models.variant.avro.GeneCancerAssociation;
@@ -33,6 +35,7 @@ import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 import org.opencb.cellbase.client.rest.models.mixin.DrugResponseClassificationMixIn;
 import org.opencb.cellbase.core.result.CellBaseDataResponse;
+import org.opencb.cellbase.core.result.CellBaseDataResponseAvroCodec;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.commons.datastore.core.*;
 import org.slf4j.Logger;
@@ -42,20 +45,23 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by imedina on 12/05/16.
  */
-public class ParentRestClient<T> {
+public class ParentRestClient<T> implements Closeable {
 
     protected final String species;
     protected final String assembly;
@@ -66,6 +72,11 @@ public class ParentRestClient<T> {
     protected String subcategory;
 
     protected Class<T> clazz;
+    // Disabled if the Avro binary responses of the server can not be read, e.g. it uses a different data model version
+    private volatile boolean binary;
+    // Created on the first asynchronous call and kept until the client is closed
+    private ExecutorService asyncExecutor;
+    private final Map<String, AdaptiveBatchSize> batchSizes = new ConcurrentHashMap<>();
 
     protected final ClientConfiguration configuration;
 
@@ -75,6 +86,10 @@ public class ParentRestClient<T> {
     public static final int LIMIT = 10;
     public static final int REST_CALL_BATCH_SIZE = 200;
     public static final int DEFAULT_NUM_THREADS = 4;
+    public static final int MIN_REST_CALL_BATCH_SIZE = 20;
+    public static final int MAX_REST_CALL_BATCH_SIZE = 1000;
+    // Batch sizes of asynchronous calls are adapted to take about this time, in milliseconds
+    private static final long TARGET_REST_CALL_TIME = 2000;
 
     protected static final String EMPTY_STRING = "";
     protected static final String META = "meta";
@@ -93,9 +108,14 @@ public class ParentRestClient<T> {
         this.configuration = configuration;
         logger = LoggerFactory.getLogger(this.getClass().toString());
 
+        this.binary = configuration.getRest().isBinary();
+
         this.client = ClientBuilder.newClient();
         client.property(ClientProperties.CONNECT_TIMEOUT, 1000);
         client.property(ClientProperties.READ_TIMEOUT, configuration.getRest().getTimeout());
+        // Accept gzip compressed responses
+        client.register(EncodingFilter.class);
+        client.register(GZipEncoder.class);
 
         logger.debug("Configure read timeout : " + configuration.getRest().getTimeout() + "ms");
     }
@@ -248,6 +268,141 @@ public class ParentRestClient<T> {
         return finalResponse;
     }
 
+    /**
+     * Asynchronous version of {@link #execute(List, String, QueryOptions, Class, boolean)}. Calls run on a thread pool kept for
+     * the client lifetime, with as many concurrent calls as the configured number of threads. Batches are cut as the
+     * previous ones complete, with a size adapted to the response times of the resource, and the follow-up calls of
+     * paginated results are sent as soon as each page is received.
+     * @param idList ids
+     * @param resource REST resource, e.g. annotation
+     * @param options query options
+     * @param clazz result class
+     * @param post use POST instead of GET calls
+     * @param <U> result type
+     * @return future of the response, with one result per id in the same order
+     */
+    protected <U> CompletableFuture<CellBaseDataResponse<U>> executeAsync(List<String> idList, String resource, QueryOptions options,
+                                                                         Class<U> clazz, boolean post) {
+        if (idList == null || idList.isEmpty()) {
+            return CompletableFuture.completedFuture(new CellBaseDataResponse<>());
+        }
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = getAsyncExecutor();
+        AdaptiveBatchSize batchSize = batchSizes.computeIfAbsent(resource, key -> new AdaptiveBatchSize(REST_CALL_BATCH_SIZE,
+                MIN_REST_CALL_BATCH_SIZE, MAX_REST_CALL_BATCH_SIZE, TARGET_REST_CALL_TIME));
+        AtomicInteger nextId = new AtomicInteger();
+        // Batch results sorted by the position of their first id
+        Map<Integer, List<CellBaseDataResult<U>>> batchResults = new ConcurrentSkipListMap<>();
+
+        CompletableFuture<?>[] workers = new CompletableFuture[Math.max(1, configuration.getRest().getNumThreads())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = fetchNextBatch(idList, nextId, batchSize, batchResults, resource, options, clazz, post, executor);
+        }
+        return CompletableFuture.allOf(workers).thenApply(v -> {
+            List<CellBaseDataResult<U>> cellBaseDataResults = new ArrayList<>(idList.size());
+            batchResults.values().forEach(cellBaseDataResults::addAll);
+            CellBaseDataResponse<U> finalResponse = new CellBaseDataResponse<>();
+            finalResponse.setTime((int) (System.currentTimeMillis() - startTime));
+            finalResponse.setResponses(cellBaseDataResults);
+            return finalResponse;
+        });
+    }
+
+    private <U> CompletableFuture<Void> fetchNextBatch(List<String> idList, AtomicInteger nextId, AdaptiveBatchSize batchSize,
+                                                       Map<Integer, List<CellBaseDataResult<U>>> batchResults, String resource,
+                                                       QueryOptions options, Class<U> clazz, boolean post, Executor executor) {
+        int size = batchSize.get();
+        int from = nextId.getAndAdd(size);
+        if (from >= idList.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> batch = idList.subList(from, Math.min(from + size, idList.size()));
+
+        long startTime = System.currentTimeMillis();
+        QueryOptions pageOptions = options != null ? new QueryOptions(options) : new QueryOptions();
+        int limit = pageOptions.getInt(QueryOptions.LIMIT, LIMIT);
+        pageOptions.put(QueryOptions.LIMIT, limit);
+        return fetchPageAsync(batch, resource, pageOptions, clazz, post, limit, 0, executor)
+                .thenCompose(queryResponse -> {
+                    batchSize.update(batch.size(), System.currentTimeMillis() - startTime);
+                    batchResults.put(from, queryResponse.getResponses() != null
+                            ? queryResponse.getResponses()
+                            : Collections.emptyList());
+                    return fetchNextBatch(idList, nextId, batchSize, batchResults, resource, options, clazz, post, executor);
+                });
+    }
+
+    private <U> CompletableFuture<CellBaseDataResponse<U>> fetchPageAsync(List<String> idList, String resource, QueryOptions options,
+                                                                         Class<U> clazz, boolean post, int limit, int skip,
+                                                                         Executor executor) {
+        QueryOptions pageOptions = new QueryOptions(options);
+        if (skip > 0) {
+            pageOptions.put("skip", skip);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return robustRestCall(idList, resource, pageOptions, clazz, post);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor).thenCompose(queryResponse -> {
+            // Ids with a full page of results may have more, their next page is requested straight away
+            List<Integer> nextPagePositions = new ArrayList<>();
+            List<String> nextPageIds = new ArrayList<>();
+            if (queryResponse.getResponses() != null) {
+                for (int i = 0; i < queryResponse.getResponses().size() && i < idList.size(); i++) {
+                    if (queryResponse.getResponses().get(i).getNumResults() == limit) {
+                        nextPagePositions.add(i);
+                        nextPageIds.add(idList.get(i));
+                    }
+                }
+            }
+            if (nextPageIds.isEmpty()) {
+                return CompletableFuture.completedFuture(queryResponse);
+            }
+            return fetchPageAsync(nextPageIds, resource, options, clazz, post, limit, skip + limit, executor)
+                    .thenApply(nextPageResponse -> {
+                        List<CellBaseDataResult<U>> nextPageResults = nextPageResponse.getResponses();
+                        for (int i = 0; nextPageResults != null && i < nextPageResults.size() && i < nextPagePositions.size(); i++) {
+                            if (nextPageResults.get(i).getResults() != null) {
+                                queryResponse.getResponses().get(nextPagePositions.get(i)).getResults()
+                                        .addAll(nextPageResults.get(i).getResults());
+                            }
+                        }
+                        return queryResponse;
+                    });
+        });
+    }
+
+    /**
+     * Releases the thread pool of the asynchronous calls and the HTTP client, the client can not be used afterwards.
+     * Asynchronous calls still running may fail, their futures must be completed before closing the client.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+                asyncExecutor = null;
+            }
+        }
+        client.close();
+    }
+
+    private synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            // Daemon threads, a client that is not closed must not keep the JVM alive
+            asyncExecutor = Executors.newFixedThreadPool(Math.max(1, configuration.getRest().getNumThreads()), runnable -> {
+                Thread thread = new Thread(runnable, "cellbase-client-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return asyncExecutor;
+    }
+
     private <U> CellBaseDataResponse<U> fetchData(List<String> idList, String resource, QueryOptions options, Class<U> clazz,
                                            boolean post) throws IOException {
 
@@ -427,6 +582,10 @@ public class ParentRestClient<T> {
             }
         }
 
+        if (binary && CellBaseDataResponseAvroCodec.isEncodable(clazz)) {
+            return binaryRestCall(callUrl, ids, clazz, post);
+        }
+
         String jsonString;
         if (post) {
             logger.debug("Making POST call to REST URL: {}", callUrl.getUri().toURL());
@@ -439,6 +598,47 @@ public class ParentRestClient<T> {
         return parseResult(jsonString, clazz);
     }
 
+    /**
+     * Requests an Avro binary response, the server still returns JSON if it does not support Avro responses for the
+     * resource. If the Avro response can not be read the call is repeated with JSON and Avro responses are not requested
+     * again.
+     */
+    private <U> CellBaseDataResponse<U> binaryRestCall(WebTarget callUrl, String ids, Class<U> clazz, boolean post)
+            throws IOException {
+        Invocation.Builder request = callUrl.request()
+                .accept(CellBaseDataResponseAvroCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON + ";q=0.5");
+        Response response;
+        if (post) {
+            logger.debug("Making POST call to REST URL: {}", callUrl.getUri().toURL());
+            response = request.post(Entity.text(ids));
+        } else {
+            logger.debug("Making GET call to REST URL: {}", callUrl.getUri().toURL());
+            response = request.get();
+        }
+
+        try {
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new WebApplicationException(response);
+            }
+            MediaType mediaType = response.getMediaType();
+            if (mediaType == null || !CellBaseDataResponseAvroCodec.MEDIA_TYPE.equals(mediaType.getType() + "/" + mediaType.getSubtype())) {
+                return parseResult(response.readEntity(String.class), clazz);
+            }
+            try (InputStream inputStream = response.readEntity(InputStream.class)) {
+                return CellBaseDataResponseAvroCodec.decode(inputStream, clazz);
+            } catch (IOException e) {
+                logger.warn("Avro binary response can not be read, JSON responses will be requested. {}", e.getMessage());
+                binary = false;
+            }
+        } finally {
+            response.close();
+        }
+        String jsonString = post
+                ? callUrl.request().post(Entity.text(ids), String.class)
+                : callUrl.request().get(String.class);
+        return parseResult(jsonString, clazz);
+    }
+
     protected WebTarget getBaseUrl(List<String> hosts, String version) {
         return client
                     .target(URI.create(hosts.get(0)))
@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager.GENOTYPE_TAG;
 import static org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager.PHASE_SET_TAG;
@@ -108,6 +109,24 @@ public final class VariantClient extends FeatureClient<Variant> {
         return initRequiredAnnotation(result);
     }
 
+    /**
+     * Annotates variants without blocking the caller, see {@link #executeAsync(List, String, QueryOptions, Class, boolean)}.
+     * @param variants variants to annotate
+     * @param options query options
+     * @param post use POST instead of GET calls
+     * @return future of the response, with one result per variant in the same order
+     */
+    public CompletableFuture<CellBaseDataResponse<VariantAnnotation>> getAnnotationAsync(List<Variant> variants, QueryOptions options,
+                                                                                        boolean post) {
+        return getAnnotationByVariantIdsAsync(getVariantAnnotationIds(variants, options.getBoolean(IGNORE_PHASE)), options, post);
+    }
+
+    public CompletableFuture<CellBaseDataResponse<VariantAnnotation>> getAnnotationByVariantIdsAsync(List<String> ids,
+                                                                                                    QueryOptions options,
+                                                                                                    boolean post) {
+        return executeAsync(ids, "annotation", options, VariantAnnotation.class, post).thenApply(this::initRequiredAnnotation);
+    }
+
 
     // FIXME Next two methods should be moved near the Variant Annotation tool
     public String getVariantAnnotationId(Variant variant, Boolean ignorePhase) {
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void testUpdate() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(200, 20, 1000, 2000);
+        assertEquals(200, batchSize.get());
+
+        // 20 ms per id, batches converge to 100 ids
+        for (int i = 0; i < 50; i++) {
+            batchSize.update(batchSize.get(), batchSize.get() * 20L);
+        }
+        assertEquals(100, batchSize.get(), 2);
+
+        // Fast calls grow the batches up to the maximum size
+        for (int i = 0; i < 50; i++) {
+            batchSize.update(batchSize.get(), 1);
+        }
+        assertEquals(1000, batchSize.get());
+
+        // Very slow calls shrink them down to the minimum size
+        for (int i = 0; i < 50; i++) {
+            batchSize.update(batchSize.get(), 60000);
+        }
+        assertEquals(20, batchSize.get());
+
+        batchSize.update(0, 100);
+        assertEquals(20, batchSize.get());
+    }
+}
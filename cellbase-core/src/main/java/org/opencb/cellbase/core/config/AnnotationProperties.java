@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Settings for the variant annotation engine.
+ */
+public class AnnotationProperties {
+
+    /**
+     * Number of threads shared by the asynchronous annotators, i.e. variation, conservation, functional scores, ...
+     * Values lower than 1 fall back to the default, twice the number of available processors.
+     */
+    private int numThreads;
+    /**
+     * Maximum number of annotator tasks waiting for a thread. When full, the annotation thread submitting the task runs it.
+     */
+    private int queueSize;
+    /**
+     * Keeps all the genes and transcripts of each data release in memory, overlapping genes are then fetched from an
+     * in-process interval tree instead of the database. Takes a few GB of heap for human.
+     */
+    private boolean geneIndex;
+    /**
+     * Maximum number of CADD chunks cached by each variant adaptor when CADD scores are read from the database. Each
+     * chunk keeps the raw and scaled values of 1,000 positions, about 16 KB, i.e. about 64 MB with the default of 4000.
+     * Values lower than 1 fall back to the default.
+     */
+    private int caddChunkCacheSize;
+    /**
+     * Memoizes finished annotations of short variants by variant, data release and annotation options, so that recurrent
+     * variants are not annotated again: "lru" keeps them on heap, "rocksdb" on disk. Empty or "none" to disable it.
+     */
+    private String memoCache;
+    /**
+     * Maximum number of annotations kept by the "lru" memo cache.
+     */
+    private int memoCacheSize;
+    /**
+     * Directory of the "rocksdb" memo cache, reused across restarts.
+     */
+    private String memoCacheDirectory;
+    /**
+     * Maximum disk size in MB of the "rocksdb" memo cache, the oldest annotations are dropped first.
+     */
+    private int memoCacheMaxDiskSize;
+
+    public AnnotationProperties() {
+    }
+
+    public AnnotationProperties(int numThreads, int queueSize, boolean geneIndex) {
+        this.numThreads = numThreads;
+        this.queueSize = queueSize;
+        this.geneIndex = geneIndex;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AnnotationProperties{");
+        sb.append("numThreads=").append(numThreads);
+        sb.append(", queueSize=").append(queueSize);
+        sb.append(", geneIndex=").append(geneIndex);
+        sb.append(", caddChunkCacheSize=").append(caddChunkCacheSize);
+        sb.append(", memoCache='").append(memoCache).append('\'');
+        sb.append(", memoCacheSize=").append(memoCacheSize);
+        sb.append(", memoCacheDirectory='").append(memoCacheDirectory).append('\'');
+        sb.append(", memoCacheMaxDiskSize=").append(memoCacheMaxDiskSize);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public AnnotationProperties setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public AnnotationProperties setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public boolean isGeneIndex() {
+        return geneIndex;
+    }
+
+    public AnnotationProperties setGeneIndex(boolean geneIndex) {
+        this.geneIndex = geneIndex;
+        return this;
+    }
+
+    public int getCaddChunkCacheSize() {
+        return caddChunkCacheSize;
+    }
+
+    public AnnotationProperties setCaddChunkCacheSize(int caddChunkCacheSize) {
+        this.caddChunkCacheSize = caddChunkCacheSize;
+        return this;
+    }
+
+    public String getMemoCache() {
+        return memoCache;
+    }
+
+    public AnnotationProperties setMemoCache(String memoCache) {
+        this.memoCache = memoCache;
+        return this;
+    }
+
+    public int getMemoCacheSize() {
+        return memoCacheSize;
+    }
+
+    public AnnotationProperties setMemoCacheSize(int memoCacheSize) {
+        this.memoCacheSize = memoCacheSize;
+        return this;
+    }
+
+    public String getMemoCacheDirectory() {
+        return memoCacheDirectory;
+    }
+
+    public AnnotationProperties setMemoCacheDirectory(String memoCacheDirectory) {
+        this.memoCacheDirectory = memoCacheDirectory;
+        return this;
+    }
+
+    public int getMemoCacheMaxDiskSize() {
+        return memoCacheMaxDiskSize;
+    }
+
+    public AnnotationProperties setMemoCacheMaxDiskSize(int memoCacheMaxDiskSize) {
+        this.memoCacheMaxDiskSize = memoCacheMaxDiskSize;
+        return this;
+    }
+}
@@ -44,6 +44,7 @@ public class CellBaseConfiguration {
     private DownloadProperties download;
     private SpeciesProperties species;
     private ServerProperties server;
+    private AnnotationProperties annotation;
 
     public static final String CELLBASE_PREFIX = "CELLBASE_";
     public static final String CELLBASE_DATABASES_MONGODB_HOST = "CELLBASE_DATABASES_MONGODB_HOST";
@@ -271,6 +272,15 @@ public class CellBaseConfiguration {
         this.server = server;
     }
 
+    public AnnotationProperties getAnnotation() {
+        return annotation;
+    }
+
+    public CellBaseConfiguration setAnnotation(AnnotationProperties annotation) {
+        this.annotation = annotation;
+        return this;
+    }
+
     public String getLogLevel() {
         return logLevel;
     }
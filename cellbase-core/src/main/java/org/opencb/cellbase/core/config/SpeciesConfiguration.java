@@ -102,6 +102,13 @@ public class SpeciesConfiguration {
         private String name;
         private String ensemblVersion;
         private String ensemblCollection;  // Only for bacteria
+        // Optional 2-bit genome sequence file, when set genome sequences are read from it instead of the database.
+        // "{dataRelease}" in the path is replaced by the data release number, e.g. to keep one file per release
+        private String genomeSequenceFile;
+        // Optional CADD and REVEL position score files, when set scores are read from them instead of the database.
+        // "{dataRelease}" in the path is replaced by the data release number as well
+        private String caddScoreFile;
+        private String revelScoreFile;
 
         public String getName() {
             return name;
@@ -126,6 +133,30 @@ public class SpeciesConfiguration {
         public void setEnsemblCollection(String ensemblCollection) {
             this.ensemblCollection = ensemblCollection;
         }
+
+        public String getGenomeSequenceFile() {
+            return genomeSequenceFile;
+        }
+
+        public void setGenomeSequenceFile(String genomeSequenceFile) {
+            this.genomeSequenceFile = genomeSequenceFile;
+        }
+
+        public String getCaddScoreFile() {
+            return caddScoreFile;
+        }
+
+        public void setCaddScoreFile(String caddScoreFile) {
+            this.caddScoreFile = caddScoreFile;
+        }
+
+        public String getRevelScoreFile() {
+            return revelScoreFile;
+        }
+
+        public void setRevelScoreFile(String revelScoreFile) {
+            this.revelScoreFile = revelScoreFile;
+        }
     }
 
     public List<ShardConfig> getShards() {
@@ -26,10 +26,12 @@ public class DataRelease {
     private boolean active;
     private Map<String, String> collections;
     private List<DataReleaseSource> sources;
+    private List<DataReleaseCheckpoint> checkpoints;
 
     public DataRelease() {
         this.collections = Collections.emptyMap();
         this.sources = Collections.emptyList();
+        this.checkpoints = Collections.emptyList();
     }
 
     public DataRelease(int release, String date, boolean active, Map<String, String> collections, List<DataReleaseSource> sources) {
@@ -38,6 +40,7 @@ public class DataRelease {
         this.active = active;
         this.collections = collections;
         this.sources = sources;
+        this.checkpoints = Collections.emptyList();
     }
 
     @Override
@@ -48,6 +51,7 @@ public class DataRelease {
         sb.append(", active=").append(active);
         sb.append(", collections=").append(collections);
         sb.append(", sources=").append(sources);
+        sb.append(", checkpoints=").append(checkpoints);
         sb.append('}');
         return sb.toString();
     }
@@ -96,4 +100,13 @@ public class DataRelease {
         this.sources = sources;
         return this;
     }
+
+    public List<DataReleaseCheckpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    public DataRelease setCheckpoints(List<DataReleaseCheckpoint> checkpoints) {
+        this.checkpoints = checkpoints;
+        return this;
+    }
 }
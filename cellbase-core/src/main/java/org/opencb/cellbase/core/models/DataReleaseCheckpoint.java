@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.models;
+
+/**
+ * Progress of the load of one input file into a data release collection. The offset is the number of input records,
+ * i.e. JSON lines, from the beginning of the file that have been written into the database. For block-gzipped files the
+ * virtual offset, i.e. the compressed offset of the BGZF block shifted 16 bits left plus the offset within the uncompressed
+ * block, points to the record following the offset, 0 if unknown.
+ */
+public class DataReleaseCheckpoint {
+    private String data;
+    private String file;
+    private long offset;
+    private long virtualOffset;
+    private boolean complete;
+    private String date;
+
+    public DataReleaseCheckpoint() {
+    }
+
+    public DataReleaseCheckpoint(String data, String file, long offset, boolean complete, String date) {
+        this.data = data;
+        this.file = file;
+        this.offset = offset;
+        this.complete = complete;
+        this.date = date;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DataReleaseCheckpoint{");
+        sb.append("data='").append(data).append('\'');
+        sb.append(", file='").append(file).append('\'');
+        sb.append(", offset=").append(offset);
+        sb.append(", virtualOffset=").append(virtualOffset);
+        sb.append(", complete=").append(complete);
+        sb.append(", date='").append(date).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public DataReleaseCheckpoint setData(String data) {
+        this.data = data;
+        return this;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public DataReleaseCheckpoint setFile(String file) {
+        this.file = file;
+        return this;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public DataReleaseCheckpoint setOffset(long offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    public long getVirtualOffset() {
+        return virtualOffset;
+    }
+
+    public DataReleaseCheckpoint setVirtualOffset(long virtualOffset) {
+        this.virtualOffset = virtualOffset;
+        return this;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public DataReleaseCheckpoint setComplete(boolean complete) {
+        this.complete = complete;
+        return this;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public DataReleaseCheckpoint setDate(String date) {
+        this.date = date;
+        return this;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.models;
+
+import java.util.Arrays;
+
+/**
+ * Per-position float scores of a genomic region, e.g. conservation scores, backed by a primitive array. Positions with
+ * no score are NaN.
+ */
+public class GenomicFloatScoreRegion {
+
+    private final String chromosome;
+    private final int start;
+    private final int end;
+    private final String source;
+    private final float[] values;
+
+    public GenomicFloatScoreRegion(String chromosome, int start, int end, String source) {
+        this(chromosome, start, end, source, new float[Math.max(end - start + 1, 0)]);
+        Arrays.fill(values, Float.NaN);
+    }
+
+    public GenomicFloatScoreRegion(String chromosome, int start, int end, String source, float[] values) {
+        this.chromosome = chromosome;
+        this.start = start;
+        this.end = end;
+        this.source = source;
+        this.values = values;
+    }
+
+    /**
+     * Score at a given position.
+     * @param position 1-based genomic position
+     * @return the score, NaN if the position is out of the region or has no score
+     */
+    public float getValue(int position) {
+        int index = position - start;
+        return index >= 0 && index < values.length ? values[index] : Float.NaN;
+    }
+
+    /**
+     * Copies the scores of the positions shared with another region of the same chromosome.
+     * @param other region to copy the scores from
+     */
+    public void copyFrom(GenomicFloatScoreRegion other) {
+        int from = Math.max(start, other.start);
+        int to = Math.min(start + values.length, other.start + other.values.length);
+        if (from < to) {
+            System.arraycopy(other.values, from - other.start, values, from - start, to - from);
+        }
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("GenomicFloatScoreRegion{");
+        sb.append("chromosome='").append(chromosome).append('\'');
+        sb.append(", start=").append(start);
+        sb.append(", end=").append(end);
+        sb.append(", source='").append(source).append('\'');
+        sb.append(", size=").append(values.length);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public String getChromosome() {
+        return chromosome;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.result;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.opencb.commons.datastore.core.Event;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Avro binary encoding of REST responses, an alternative to JSON for results that are Avro records, e.g.
+ * VariantAnnotation, or Variant through its Avro implementation. The response envelope is written with Avro primitives
+ * and every result with the Avro schema of its class, whose fingerprint is written first so that the client can detect
+ * a different model version and fall back to JSON. Response params are not encoded.
+ */
+public final class CellBaseDataResponseAvroCodec {
+
+    /**
+     * Content type of Avro binary responses.
+     */
+    public static final String MEDIA_TYPE = "avro/binary";
+
+    static final int VERSION = 1;
+
+    private static final Map<Class<?>, SpecificDatumWriter<SpecificRecord>> WRITERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, SpecificDatumReader<SpecificRecord>> READERS = new ConcurrentHashMap<>();
+
+    private CellBaseDataResponseAvroCodec() {
+    }
+
+    /**
+     * Checks whether results of a class can be Avro encoded.
+     * @param clazz result class
+     * @return true if the class is an Avro record or a Variant
+     */
+    public static boolean isEncodable(Class<?> clazz) {
+        return SpecificRecord.class.isAssignableFrom(clazz) || Variant.class.equals(clazz);
+    }
+
+    /**
+     * Checks whether a response can be Avro encoded, i.e. all the results are of the same encodable class.
+     * @param response response to be encoded
+     * @return true if the response can be encoded
+     */
+    public static boolean isEncodable(CellBaseDataResponse<?> response) {
+        return response.getResponses() != null && getResultClass(response) != null;
+    }
+
+    private static Class<?> getResultClass(CellBaseDataResponse<?> response) {
+        Class<?> resultClass = Void.class;
+        for (CellBaseDataResult<?> result : response.getResponses()) {
+            if (result == null || result.getResults() == null) {
+                continue;
+            }
+            for (Object object : result.getResults()) {
+                if (object == null || !isEncodable(object.getClass())
+                        || (resultClass != Void.class && !resultClass.equals(object.getClass()))) {
+                    return null;
+                }
+                resultClass = object.getClass();
+            }
+        }
+        return resultClass;
+    }
+
+    /**
+     * Writes a response, see {@link #isEncodable(CellBaseDataResponse)}.
+     * @param response response to be encoded
+     * @param outputStream output stream, it is not closed
+     * @throws IOException if the response can not be written or has results that can not be encoded
+     */
+    public static void encode(CellBaseDataResponse<?> response, OutputStream outputStream) throws IOException {
+        Class<?> resultClass = getResultClass(response);
+        if (resultClass == null) {
+            throw new IOException("Response results are not Avro records of one single class");
+        }
+        BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(outputStream, null);
+        encoder.writeInt(VERSION);
+        encoder.writeLong(resultClass == Void.class ? 0 : getFingerprint(getAvroClass(resultClass)));
+        encoder.writeString(nonNull(response.getApiVersion()));
+        encoder.writeInt(response.getDataRelease());
+        encoder.writeInt(response.getTime());
+        writeEvents(response.getEvents(), encoder);
+
+        SpecificDatumWriter<SpecificRecord> writer = resultClass == Void.class ? null : getWriter(getAvroClass(resultClass));
+        encoder.writeLong(response.getResponses().size());
+        for (CellBaseDataResult<?> result : response.getResponses()) {
+            encoder.writeString(nonNull(result.getId()));
+            encoder.writeInt(result.getTime());
+            encoder.writeInt(result.getNumResults());
+            encoder.writeLong(result.getNumMatches());
+            writeEvents(result.getEvents(), encoder);
+            // -1 keeps null result lists apart from empty ones
+            encoder.writeLong(result.getResults() == null ? -1 : result.getResults().size());
+            if (result.getResults() != null) {
+                for (Object object : result.getResults()) {
+                    writer.write(object instanceof Variant ? ((Variant) object).getImpl() : (SpecificRecord) object, encoder);
+                }
+            }
+        }
+        encoder.flush();
+    }
+
+    /**
+     * Reads a response written by {@link #encode(CellBaseDataResponse, OutputStream)}.
+     * @param inputStream input stream
+     * @param clazz result class, an Avro record or Variant
+     * @param <T> result type
+     * @return the response, with empty params
+     * @throws IOException if the response can not be read or was encoded with a different version of the result model
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CellBaseDataResponse<T> decode(InputStream inputStream, Class<T> clazz) throws IOException {
+        if (!isEncodable(clazz)) {
+            throw new IOException("Class " + clazz.getName() + " is not an Avro record");
+        }
+        Class<?> avroClass = getAvroClass(clazz);
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(inputStream, null);
+        int version = decoder.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported Avro response version " + version);
+        }
+        long fingerprint = decoder.readLong();
+        if (fingerprint != 0 && fingerprint != getFingerprint(avroClass)) {
+            throw new IOException("Avro schema of the results does not match the schema of " + avroClass.getName()
+                    + ", client and server data models are different");
+        }
+
+        CellBaseDataResponse<T> response = new CellBaseDataResponse<>();
+        response.setApiVersion(decoder.readString());
+        response.setDataRelease(decoder.readInt());
+        response.setTime(decoder.readInt());
+        response.setEvents(readEvents(decoder));
+        response.setParams(new ObjectMap());
+
+        SpecificDatumReader<SpecificRecord> reader = getReader(avroClass);
+        long numResponses = decoder.readLong();
+        List<CellBaseDataResult<T>> results = new ArrayList<>((int) numResponses);
+        for (long i = 0; i < numResponses; i++) {
+            String id = decoder.readString();
+            int time = decoder.readInt();
+            int numResults = decoder.readInt();
+            long numMatches = decoder.readLong();
+            List<Event> events = readEvents(decoder);
+            long size = decoder.readLong();
+            List<T> objects = null;
+            if (size >= 0) {
+                objects = new ArrayList<>((int) size);
+                for (long j = 0; j < size; j++) {
+                    SpecificRecord record = reader.read(null, decoder);
+                    objects.add((T) (Variant.class.equals(clazz) ? new Variant((VariantAvro) record) : record));
+                }
+            }
+            results.add(new CellBaseDataResult<>(id, time, events, numResults, objects, numMatches));
+        }
+        response.setResponses(results);
+        return response;
+    }
+
+    private static void writeEvents(List<Event> events, BinaryEncoder encoder) throws IOException {
+        if (events == null) {
+            encoder.writeLong(0);
+            return;
+        }
+        encoder.writeLong(events.size());
+        for (Event event : events) {
+            encoder.writeString(event.getType() != null ? event.getType().name() : "");
+            encoder.writeString(nonNull(event.getMessage()));
+        }
+    }
+
+    private static List<Event> readEvents(BinaryDecoder decoder) throws IOException {
+        long numEvents = decoder.readLong();
+        List<Event> events = new ArrayList<>((int) numEvents);
+        for (long i = 0; i < numEvents; i++) {
+            String type = decoder.readString();
+            String message = decoder.readString();
+            events.add(new Event(type.isEmpty() ? null : Event.Type.valueOf(type), message));
+        }
+        return events;
+    }
+
+    private static Class<?> getAvroClass(Class<?> clazz) {
+        return Variant.class.equals(clazz) ? VariantAvro.class : clazz;
+    }
+
+    private static long getFingerprint(Class<?> avroClass) {
+        Schema schema = SpecificData.get().getSchema(avroClass);
+        return SchemaNormalization.parsingFingerprint64(schema);
+    }
+
+    private static SpecificDatumWriter<SpecificRecord> getWriter(Class<?> avroClass) {
+        return WRITERS.computeIfAbsent(avroClass, k -> new SpecificDatumWriter<>(SpecificData.get().getSchema(k)));
+    }
+
+    private static SpecificDatumReader<SpecificRecord> getReader(Class<?> avroClass) {
+        return READERS.computeIfAbsent(avroClass, k -> new SpecificDatumReader<>(SpecificData.get().getSchema(k)));
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -20,14 +20,15 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.zip.GZIPOutputStream;
+import java.util.function.Consumer;
 
 /**
  * Created by parce on 2/6/15.
@@ -41,7 +42,9 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
     private boolean serializeEmptyValues;
     private boolean excludeNullValues;
     private boolean requireGettersForSetters;
+    private ObjectMapper jsonObjectMapper;
     private ObjectWriter jsonObjectWriter;
+    private Consumer<ObjectNode> privateFields;
 
     public CellBaseJsonFileSerializer(Path outdir) {
         this(outdir, null);
@@ -79,7 +82,7 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
     }
 
     private void init() {
-        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper = new ObjectMapper();
         if (serializeEmptyValues) {
             if (excludeNullValues) {
                 jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
@@ -95,11 +98,18 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
         try {
             if (bufferedWriters.get(filename) == null) {
                 Path outputFilePath = outdir.resolve(filename + ".json.gz");
+                // Block-gzipped (BGZF) files are still valid gzip files, and the loader can decompress them in parallel
                 BufferedWriter bw = new BufferedWriter(
-                        new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(outputFilePath))));
+                        new OutputStreamWriter(new BlockCompressedOutputStream(outputFilePath.toFile())));
                 bufferedWriters.put(filename, bw);
             }
-            bufferedWriters.get(filename).write(jsonObjectWriter.writeValueAsString(elem));
+            if (privateFields != null) {
+                ObjectNode node = jsonObjectMapper.valueToTree(elem);
+                privateFields.accept(node);
+                bufferedWriters.get(filename).write(jsonObjectWriter.writeValueAsString(node));
+            } else {
+                bufferedWriters.get(filename).write(jsonObjectWriter.writeValueAsString(elem));
+            }
             bufferedWriters.get(filename).newLine();
         } catch (IOException e) {
             e.printStackTrace();
@@ -112,6 +122,21 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
         return null;
     }
 
+    public Consumer<ObjectNode> getPrivateFields() {
+        return privateFields;
+    }
+
+    /**
+     * Adds fields that are not part of the data model to every serialized object, e.g. the _chunkIds indexed by the
+     * database, so that they do not need to be computed when the files are loaded.
+     * @param privateFields function adding the fields to the JSON object, null to write the objects as they are
+     * @return this serializer
+     */
+    public CellBaseJsonFileSerializer setPrivateFields(Consumer<ObjectNode> privateFields) {
+        this.privateFields = privateFields;
+        return this;
+    }
+
     public Path getOutdir() {
         return outdir;
     }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.utils;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Static, immutable interval tree of one single sequence, e.g. a chromosome. Items are sorted by start and laid out
+ * as an implicit balanced binary tree over the sorted array, each node keeping the maximum end of its subtree. Overlap
+ * queries are O(log n + k) and the whole structure takes three arrays, no node objects are created.
+ * Coordinates are 1-based and inclusive. Instances are thread-safe.
+ *
+ * @param <T> item type
+ */
+public class IntervalTree<T> {
+
+    // Subtrees with less than 2^(LINEAR_LEVEL + 1) items are scanned linearly
+    private static final int LINEAR_LEVEL = 3;
+
+    private final Object[] items;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final int maxLevel;
+
+    public IntervalTree(Collection<T> items, ToIntFunction<T> startFunction, ToIntFunction<T> endFunction) {
+        List<T> sortedItems = new ArrayList<>(items);
+        sortedItems.sort(Comparator.comparingInt(startFunction));
+
+        int size = sortedItems.size();
+        this.items = sortedItems.toArray();
+        this.starts = new int[size];
+        this.ends = new int[size];
+        this.maxEnds = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = startFunction.applyAsInt(sortedItems.get(i));
+            ends[i] = endFunction.applyAsInt(sortedItems.get(i));
+        }
+        this.maxLevel = index();
+    }
+
+    /**
+     * Computes the maximum end of every subtree, bottom-up. Leaves are the even positions, nodes at level k are the
+     * positions whose k lowest bits are set.
+     * @return level of the root node
+     */
+    private int index() {
+        int size = starts.length;
+        if (size == 0) {
+            return -1;
+        }
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastIndex = i;
+            maxEnds[i] = ends[i];
+            last = ends[i];
+        }
+        int level;
+        for (level = 1; 1 << level <= size; level++) {
+            int halfStep = 1 << (level - 1);
+            int first = (halfStep << 1) - 1;
+            int step = halfStep << 2;
+            for (int i = first; i < size; i += step) {
+                int leftMax = maxEnds[i - halfStep];
+                // The right child may be out of the array, the last node of the previous level stands in for it
+                int rightMax = i + halfStep < size ? maxEnds[i + halfStep] : last;
+                maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+            }
+            lastIndex = ((lastIndex >> level) & 1) != 0 ? lastIndex - halfStep : lastIndex + halfStep;
+            if (lastIndex < size && maxEnds[lastIndex] > last) {
+                last = maxEnds[lastIndex];
+            }
+        }
+        return level - 1;
+    }
+
+    /**
+     * Fetches the items overlapping a region.
+     * @param start 1-based start coordinate
+     * @param end 1-based end coordinate, inclusive
+     * @return overlapping items sorted by start, empty list if none
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getOverlapping(int start, int end) {
+        if (maxLevel < 0) {
+            return Collections.emptyList();
+        }
+        int size = starts.length;
+        List<Integer> hits = new ArrayList<>();
+        // Stack of nodes to visit: level, position and whether the left child has been visited already
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{maxLevel, (1 << maxLevel) - 1, 0});
+        while (!stack.isEmpty()) {
+            int[] node = stack.pop();
+            int level = node[0];
+            int position = node[1];
+            if (level <= LINEAR_LEVEL) {
+                int from = position >> level << level;
+                int to = Math.min(from + (1 << (level + 1)) - 1, size);
+                for (int i = from; i < to && starts[i] <= end; i++) {
+                    if (ends[i] >= start) {
+                        hits.add(i);
+                    }
+                }
+            } else if (node[2] == 0) {
+                int left = position - (1 << (level - 1));
+                stack.push(new int[]{level, position, 1});
+                if (left >= size || maxEnds[left] >= start) {
+                    stack.push(new int[]{level - 1, left, 0});
+                }
+            } else if (position < size && starts[position] <= end) {
+                if (ends[position] >= start) {
+                    hits.add(position);
+                }
+                stack.push(new int[]{level - 1, position + (1 << (level - 1)), 0});
+            }
+        }
+
+        Collections.sort(hits);
+        List<T> result = new ArrayList<>(hits.size());
+        for (int i : hits) {
+            result.add((T) items[i]);
+        }
+        return result;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("IntervalTree{");
+        sb.append("size=").append(starts.length);
+        sb.append(", maxLevel=").append(maxLevel);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe, bounded, least recently used cache. Once the maximum size is reached the least recently accessed entry
+ * is evicted. Hits and misses are counted to monitor the cache efficiency.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    private final Map<K, V> map;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public LruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be greater than 0, found: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Returns the value associated with the key and marks it as the most recently used.
+     * @param key key
+     * @return the cached value or null if the key is not cached
+     */
+    public V get(K key) {
+        V value;
+        synchronized (map) {
+            value = map.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        synchronized (map) {
+            map.put(key, value);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Fraction of the lookups that found the key cached.
+     * @return hit rate between 0 and 1, 0 if no lookups were done
+     */
+    public double getHitRate() {
+        long numHits = hits.sum();
+        long total = numHits + misses.sum();
+        return total == 0 ? 0 : (double) numHits / total;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LruCache{");
+        sb.append("size=").append(size());
+        sb.append(", maxSize=").append(maxSize);
+        sb.append(", hits=").append(getHits());
+        sb.append(", misses=").append(getMisses());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenomicFloatScoreRegionTest {
+
+    @Test
+    public void testCopyFrom() {
+        GenomicFloatScoreRegion region = new GenomicFloatScoreRegion("1", 1998, 2002, "phastCons");
+        assertEquals(5, region.size());
+        assertTrue(Float.isNaN(region.getValue(1998)));
+
+        // Chunk covering only the last three positions of the region
+        region.copyFrom(new GenomicFloatScoreRegion("1", 2000, 2003, "phastCons", new float[]{0.1f, 0.2f, 0.3f, 0.4f}));
+        assertTrue(Float.isNaN(region.getValue(1999)));
+        assertEquals(0.1f, region.getValue(2000));
+        assertEquals(0.3f, region.getValue(2002));
+        assertTrue(Float.isNaN(region.getValue(2003)));
+
+        // Chunk not overlapping the region
+        region.copyFrom(new GenomicFloatScoreRegion("1", 3000, 3001, "phastCons", new float[]{0.5f, 0.6f}));
+        assertTrue(Float.isNaN(region.getValue(1998)));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.result;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Event;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellBaseDataResponseAvroCodecTest {
+
+    @Test
+    public void testEncodeDecode() throws IOException {
+        List<Variant> variants = Arrays.asList(new Variant("1:1000:A:T"), new Variant("2:2000:-:GC"));
+        CellBaseDataResult<Variant> result1 = new CellBaseDataResult<>("1:1000:A:T,2:2000:-:GC", 12,
+                Collections.singletonList(new Event(Event.Type.WARNING, "warning")), 2, variants, 2);
+        CellBaseDataResult<Variant> result2 = new CellBaseDataResult<>("3:3000:C:G", 0, Collections.emptyList(), 0, null, 0);
+        CellBaseDataResponse<Variant> response = new CellBaseDataResponse<>("v5", 2, 15, Collections.emptyList(),
+                new ObjectMap("species", "hsapiens"), Arrays.asList(result1, result2));
+        assertTrue(CellBaseDataResponseAvroCodec.isEncodable(response));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CellBaseDataResponseAvroCodec.encode(response, outputStream);
+        CellBaseDataResponse<Variant> decoded = CellBaseDataResponseAvroCodec
+                .decode(new ByteArrayInputStream(outputStream.toByteArray()), Variant.class);
+
+        assertEquals("v5", decoded.getApiVersion());
+        assertEquals(2, decoded.getDataRelease());
+        assertEquals(15, decoded.getTime());
+        assertEquals(2, decoded.getResponses().size());
+        assertEquals(result1.getId(), decoded.getResponses().get(0).getId());
+        assertEquals(12, decoded.getResponses().get(0).getTime());
+        assertEquals("warning", decoded.getResponses().get(0).getEvents().get(0).getMessage());
+        assertEquals(2, decoded.getResponses().get(0).getResults().size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(variants.get(i).getImpl(), decoded.getResponses().get(0).getResults().get(i).getImpl());
+        }
+        assertNull(decoded.getResponses().get(1).getResults());
+    }
+
+    @Test
+    public void testNotEncodable() {
+        CellBaseDataResponse<Object> response = new CellBaseDataResponse<>(new ObjectMap(),
+                Collections.singletonList(new CellBaseDataResult<>("id", 0, Collections.emptyList(), 2,
+                        Arrays.asList(new Variant("1:1000:A:T"), "text"), 2)));
+        assertFalse(CellBaseDataResponseAvroCodec.isEncodable(response));
+        assertFalse(CellBaseDataResponseAvroCodec.isEncodable(String.class));
+        assertThrows(IOException.class, () -> CellBaseDataResponseAvroCodec.encode(response, new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntervalTreeTest {
+
+    @Test
+    public void testGetOverlapping() {
+        List<int[]> intervals = Arrays.asList(new int[]{100, 200}, new int[]{150, 160}, new int[]{1, 10000},
+                new int[]{300, 400}, new int[]{201, 299});
+        IntervalTree<int[]> tree = new IntervalTree<>(intervals, interval -> interval[0], interval -> interval[1]);
+
+        assertEquals(5, tree.size());
+        assertEquals(Arrays.asList(intervals.get(2), intervals.get(0)), tree.getOverlapping(200, 200));
+        assertEquals(Arrays.asList(intervals.get(2), intervals.get(0), intervals.get(1)), tree.getOverlapping(155, 155));
+        assertEquals(Collections.singletonList(intervals.get(2)), tree.getOverlapping(5000, 6000));
+        assertTrue(tree.getOverlapping(10001, 20000).isEmpty());
+        assertTrue(new IntervalTree<int[]>(Collections.emptyList(), interval -> interval[0], interval -> interval[1])
+                .getOverlapping(1, 100).isEmpty());
+    }
+
+    @Test
+    public void testGetOverlappingRandom() {
+        Random random = new Random(1);
+        List<int[]> intervals = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int start = 1 + random.nextInt(1000000);
+            // A few long intervals, like genes spanning many others
+            intervals.add(new int[]{start, start + random.nextInt(i % 50 == 0 ? 100000 : 2000)});
+        }
+        IntervalTree<int[]> tree = new IntervalTree<>(intervals, interval -> interval[0], interval -> interval[1]);
+
+        for (int i = 0; i < 500; i++) {
+            int start = 1 + random.nextInt(1000000);
+            int end = start + random.nextInt(10000);
+            int expected = 0;
+            for (int[] interval : intervals) {
+                if (interval[0] <= end && interval[1] >= start) {
+                    expected++;
+                }
+            }
+            List<int[]> overlapping = tree.getOverlapping(start, end);
+            assertEquals(expected, overlapping.size());
+            for (int[] interval : overlapping) {
+                assertTrue(interval[0] <= end && interval[1] >= start);
+            }
+        }
+    }
+}
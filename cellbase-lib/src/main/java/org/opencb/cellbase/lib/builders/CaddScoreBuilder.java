@@ -18,12 +18,15 @@ package org.opencb.cellbase.lib.builders;
 
 import org.opencb.biodata.models.core.GenomicScoreRegion;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
+import org.opencb.cellbase.lib.impl.file.PositionScoreFile;
+import org.opencb.cellbase.lib.impl.file.PositionScoreFileWriter;
 import org.opencb.commons.utils.FileUtils;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,13 +37,27 @@ import java.util.Map;
 public class CaddScoreBuilder extends CellBaseBuilder {
 
     private Path caddFilePath;
+    private Path scoreFilePath;
 
     private static final int CHUNK_SIZE = 1000;
     private static final int DECIMAL_RESOLUTION = 100;
 
     public CaddScoreBuilder(Path caddFilePath, CellBaseSerializer serializer) {
+        this(caddFilePath, serializer, null);
+    }
+
+    /**
+     * Besides the CADD chunks, this builder also writes all the scores into a position score file that can be
+     * memory-mapped by CellBase instead of querying MongoDB. Columns are named after the source and alternate, e.g.
+     * cadd_raw:A, and keep the same packed values as the chunks.
+     * @param caddFilePath CADD whole genome SNVs file
+     * @param serializer serializer for the CADD chunks
+     * @param scoreFilePath output position score file, no file is written if null
+     */
+    public CaddScoreBuilder(Path caddFilePath, CellBaseSerializer serializer, Path scoreFilePath) {
         super(serializer);
         this.caddFilePath = caddFilePath;
+        this.scoreFilePath = scoreFilePath;
 
         logger = LoggerFactory.getLogger(ConservationBuilder.class);
     }
@@ -77,6 +94,17 @@ public class CaddScoreBuilder extends CellBaseBuilder {
         String chromosome = null;
 
         String[] nucleotides = new String[]{"A", "C", "G", "T"};
+        PositionScoreFileWriter scoreFileWriter = null;
+        short[] scoreFileValues = new short[2 * nucleotides.length];
+        if (scoreFilePath != null) {
+            List<String> columns = new ArrayList<>();
+            for (String source : Arrays.asList("cadd_raw", "cadd_scaled")) {
+                for (String nucleotide : nucleotides) {
+                    columns.add(PositionScoreFile.getColumnName(source, nucleotide));
+                }
+            }
+            scoreFileWriter = new PositionScoreFileWriter(scoreFilePath, columns);
+        }
         long rawLongValue = 0;
         long scaledLongValue = 0;
         Map<String, Float> rawScoreValuesMap = new HashMap<>();
@@ -178,6 +206,13 @@ public class CaddScoreBuilder extends CellBaseBuilder {
 //                    }
                     rawValues.add(rawLongValue);
                     scaledValues.add(scaledLongValue);
+                    if (scoreFileWriter != null) {
+                        for (int i = 0; i < nucleotides.length; i++) {
+                            scoreFileValues[i] = (short) (rawLongValue >> (48 - 16 * i));
+                            scoreFileValues[nucleotides.length + i] = (short) (scaledLongValue >> (48 - 16 * i));
+                        }
+                        scoreFileWriter.add(fields[0], newPosition, scoreFileValues);
+                    }
 
                     counter++;
                     rawLongValue = 0;
@@ -202,6 +237,10 @@ public class CaddScoreBuilder extends CellBaseBuilder {
 
         serializer.close();
         bufferedReader.close();
+        if (scoreFileWriter != null) {
+            scoreFileWriter.close();
+            logger.info("CADD score file written at {}", scoreFilePath);
+        }
         logger.info("Parsing finished.");
     }
 }
@@ -18,6 +18,7 @@ package org.opencb.cellbase.lib.builders;
 
 import org.opencb.biodata.models.core.GenomeSequenceChunk;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
+import org.opencb.cellbase.lib.impl.file.TwoBitSequenceFileWriter;
 import org.opencb.commons.utils.FileUtils;
 
 import java.io.BufferedReader;
@@ -27,12 +28,25 @@ import java.nio.file.Path;
 public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
 
     private Path genomeReferenceFastaFile;
+    private Path twoBitSequenceFile;
 
     private static final int CHUNK_SIZE = 2000;
 
     public GenomeSequenceFastaBuilder(Path genomeReferenceFastaFile, CellBaseSerializer serializer) {
+        this(genomeReferenceFastaFile, serializer, null);
+    }
+
+    /**
+     * Besides the genome sequence chunks, this builder also writes the whole genome into a 2-bit sequence file that
+     * can be memory-mapped by CellBase instead of querying MongoDB.
+     * @param genomeReferenceFastaFile genome reference FASTA file
+     * @param serializer serializer for the genome sequence chunks
+     * @param twoBitSequenceFile output 2-bit sequence file, no file is written if null
+     */
+    public GenomeSequenceFastaBuilder(Path genomeReferenceFastaFile, CellBaseSerializer serializer, Path twoBitSequenceFile) {
         super(serializer);
         this.genomeReferenceFastaFile = genomeReferenceFastaFile;
+        this.twoBitSequenceFile = twoBitSequenceFile;
     }
 
     @Override
@@ -48,6 +62,7 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
             // Preparing input and output files
             BufferedReader br;
             br = FileUtils.newBufferedReader(genomeReferenceFastaFile);
+            TwoBitSequenceFileWriter twoBitWriter = (twoBitSequenceFile != null) ? new TwoBitSequenceFileWriter(twoBitSequenceFile) : null;
 
             while ((line = br.readLine()) != null) {
 
@@ -59,6 +74,9 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
                         if (!sequenceName.contains("PATCH") && !sequenceName.contains("HSCHR") && !sequenceName.contains("contig")) {
                             System.out.println(sequenceName);
                             serializeGenomeSequence(sequenceName, sequenceType, sequenceAssembly, sequenceStringBuilder.toString());
+                            if (twoBitWriter != null) {
+                                twoBitWriter.add(sequenceName, sequenceType, sequenceAssembly, sequenceStringBuilder);
+                            }
                         }
                     }
 
@@ -77,9 +95,15 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
             // Last chromosome must be processed
             if (!sequenceName.contains("PATCH") && !sequenceName.contains("HSCHR") && !sequenceName.contains("contig")) {
                 serializeGenomeSequence(sequenceName, sequenceType, sequenceAssembly, sequenceStringBuilder.toString());
+                if (twoBitWriter != null) {
+                    twoBitWriter.add(sequenceName, sequenceType, sequenceAssembly, sequenceStringBuilder);
+                }
             }
 
             br.close();
+            if (twoBitWriter != null) {
+                twoBitWriter.close();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -20,12 +20,13 @@ package org.opencb.cellbase.lib.builders;
 import org.opencb.biodata.models.core.MissenseVariantFunctionalScore;
 import org.opencb.biodata.models.core.TranscriptMissenseVariantFunctionalScore;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
+import org.opencb.cellbase.lib.impl.file.PositionScoreFile;
+import org.opencb.cellbase.lib.impl.file.PositionScoreFileWriter;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -33,11 +34,31 @@ import java.util.zip.ZipInputStream;
 public class RevelScoreBuilder extends CellBaseBuilder {
 
     private Path revelFilePath = null;
+    private Path scoreFilePath;
     private static final String SOURCE = "revel";
+    private static final String AA_CHANGE_SOURCE = "revel_aa";
+    private static final String[] NUCLEOTIDES = {"A", "C", "G", "T"};
+    private static final int DECIMAL_RESOLUTION = 1000;
+    // Amino acid change value of the alternates with several amino acid changes, e.g. in different reading frames
+    private static final short MULTIPLE_AA_CHANGES = -1;
 
     public RevelScoreBuilder(Path revelDirectoryPath, CellBaseSerializer serializer) {
+        this(revelDirectoryPath, serializer, null);
+    }
+
+    /**
+     * Besides the missense scores, this builder also writes the REVEL scores into a position score file that can be
+     * memory-mapped by CellBase instead of querying MongoDB. For each alternate there is a score column, e.g. revel:A,
+     * with the score multiplied by 1000, and an amino acid change column, e.g. revel_aa:A, with the one-letter reference
+     * and alternate amino acids in the high and low bytes, or -1 if the alternate has several amino acid changes.
+     * @param revelDirectoryPath folder with the REVEL file
+     * @param serializer serializer for the missense scores
+     * @param scoreFilePath output position score file, no file is written if null
+     */
+    public RevelScoreBuilder(Path revelDirectoryPath, CellBaseSerializer serializer, Path scoreFilePath) {
         super(serializer);
         this.revelFilePath = revelDirectoryPath.resolve("revel_grch38_all_chromosomes.csv.zip");
+        this.scoreFilePath = scoreFilePath;
         logger = LoggerFactory.getLogger(ConservationBuilder.class);
 
     }
@@ -59,6 +80,20 @@ public class RevelScoreBuilder extends CellBaseBuilder {
         String currentEntry = null;
         List<TranscriptMissenseVariantFunctionalScore> scores = new ArrayList<>();
         MissenseVariantFunctionalScore predictions = null;
+
+        PositionScoreFileWriter scoreFileWriter = null;
+        // The file is sorted by GRCh37 position, rows of each chromosome are sorted by GRCh38 position before being written
+        TreeMap<Integer, short[]> scoreFileRows = new TreeMap<>();
+        String scoreFileChromosome = null;
+        if (scoreFilePath != null) {
+            List<String> columns = new ArrayList<>();
+            for (String source : Arrays.asList(SOURCE, AA_CHANGE_SOURCE)) {
+                for (String nucleotide : NUCLEOTIDES) {
+                    columns.add(PositionScoreFile.getColumnName(source, nucleotide));
+                }
+            }
+            scoreFileWriter = new PositionScoreFileWriter(scoreFilePath, columns);
+        }
         while ((line = bufferedReader.readLine()) != null) {
             fields = line.split(",");
             String chromosome = fields[0];
@@ -91,14 +126,57 @@ public class RevelScoreBuilder extends CellBaseBuilder {
                     alternate, aaReference, aaAlternate, score);
             scores.add(predictedScore);
             lastEntry = chromosome + position;
+
+            if (scoreFileWriter != null) {
+                if (!chromosome.equals(scoreFileChromosome)) {
+                    writeScoreFileRows(scoreFileWriter, scoreFileChromosome, scoreFileRows);
+                    scoreFileChromosome = chromosome;
+                }
+                addScoreFileValues(scoreFileRows, position, alternate, aaReference, aaAlternate, score);
+            }
         }
 
         // serialise last entry
         serializer.serialize(predictions);
+        if (scoreFileWriter != null) {
+            writeScoreFileRows(scoreFileWriter, scoreFileChromosome, scoreFileRows);
+            scoreFileWriter.close();
+            logger.info("REVEL score file written at {}", scoreFilePath);
+        }
 
         zis.close();
         zipFile.close();
         inputStream.close();
         bufferedReader.close();
     }
+
+    private void addScoreFileValues(TreeMap<Integer, short[]> rows, int position, String alternate, String aaReference,
+                                    String aaAlternate, double score) {
+        int index = Arrays.asList(NUCLEOTIDES).indexOf(alternate.toUpperCase());
+        if (index < 0 || aaReference.length() != 1 || aaAlternate.length() != 1) {
+            return;
+        }
+        short[] values = rows.get(position);
+        if (values == null) {
+            values = new short[2 * NUCLEOTIDES.length];
+            Arrays.fill(values, PositionScoreFile.MISSING);
+            rows.put(position, values);
+        }
+        short scoreValue = (short) Math.round(score * DECIMAL_RESOLUTION);
+        short aaChangeValue = (short) ((aaReference.toUpperCase().charAt(0) << 8) | aaAlternate.toUpperCase().charAt(0));
+        if (values[index] == PositionScoreFile.MISSING) {
+            values[index] = scoreValue;
+            values[NUCLEOTIDES.length + index] = aaChangeValue;
+        } else if (values[index] != scoreValue || values[NUCLEOTIDES.length + index] != aaChangeValue) {
+            values[NUCLEOTIDES.length + index] = MULTIPLE_AA_CHANGES;
+        }
+    }
+
+    private void writeScoreFileRows(PositionScoreFileWriter writer, String chromosome, TreeMap<Integer, short[]> rows)
+            throws IOException {
+        for (Map.Entry<Integer, short[]> row : rows.entrySet()) {
+            writer.add(chromosome, row.getKey(), row.getValue());
+        }
+        rows.clear();
+    }
 }
@@ -17,6 +17,7 @@
 package org.opencb.cellbase.lib.builders.clinical.variant;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
@@ -29,9 +30,12 @@ import org.rocksdb.RocksIterator;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Created by fjlopez on 26/09/16.
@@ -54,6 +58,9 @@ public class ClinicalVariantBuilder extends CellBaseBuilder {
     private final Path docmFile;
     private final Path hgmdFile;
     private boolean normalize = true;
+    private int numThreads = 1;
+
+    private static final int BATCH_SIZE = 1000;
 
 
     public ClinicalVariantBuilder(Path clinicalVariantFolder, boolean normalize, Path genomeSequenceFilePath,
@@ -100,7 +107,23 @@ public class ClinicalVariantBuilder extends CellBaseBuilder {
         this.assembly = assembly;
     }
 
+    /**
+     * Number of threads used to integrate the clinical sources. With more than one thread every source is indexed
+     * concurrently into its own RocksDB and the indexes are merged by variant when they are serialized.
+     * @param numThreads number of threads, 1 indexes all the sources sequentially into one RocksDB
+     * @return this builder
+     */
+    public ClinicalVariantBuilder setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        return this;
+    }
+
     public void parse() throws IOException, RocksDBException {
+        Map<String, ClinicalIndexerTask> indexerTasks = getIndexerTasks();
+        if (numThreads > 1 && indexerTasks.size() > 1) {
+            parallelParse(indexerTasks);
+            return;
+        }
 
         RocksDB rdb = null;
         Options dbOption = null;
@@ -112,82 +135,144 @@ public class ClinicalVariantBuilder extends CellBaseBuilder {
             dbOption = (Options) dbConnection[1];
             dbLocation = (String) dbConnection[2];
 
-            // COSMIC
             // IMPORTANT: COSMIC must be indexed first (before ClinVar, IARC TP53, DOCM, HGMD,...)!!!
-            if (this.cosmicFile != null && Files.exists(this.cosmicFile)) {
-                CosmicIndexer cosmicIndexer = new CosmicIndexer(cosmicFile, normalize, genomeSequenceFilePath, assembly, rdb);
-                cosmicIndexer.index();
-            } else {
-                logger.warn("Cosmic file {} missing. Skipping Cosmic data", cosmicFile);
+            for (ClinicalIndexerTask indexerTask : indexerTasks.values()) {
+                indexerTask.index(rdb);
             }
 
-            // ClinVar
-            if (this.clinvarXMLFile != null && this.clinvarSummaryFile != null
-                    && this.clinvarVariationAlleleFile != null && Files.exists(clinvarXMLFile)
-                    && Files.exists(clinvarSummaryFile) && Files.exists(clinvarVariationAlleleFile)) {
-              ClinVarIndexer clinvarIndexer = new ClinVarIndexer(clinvarXMLFile.getParent().resolve("clinvar_chunks"), clinvarSummaryFile,
-                        clinvarVariationAlleleFile, clinvarEFOFile, normalize, genomeSequenceFilePath, assembly, rdb);
-                clinvarIndexer.index();
-            } else {
-                logger.warn("One or more of required ClinVar files are missing. Skipping ClinVar data.\n"
-                        + "Please, ensure that these two files exist:\n"
-                        + "{}\n"
-                        + "{}", this.clinvarXMLFile.toString(), this.clinvarSummaryFile.toString());
-            }
+            serializeRDB(rdb);
+            closeIndex(rdb, dbOption, dbLocation);
+            serializer.close();
+        } catch (Exception e) {
+            closeIndex(rdb, dbOption, dbLocation);
+            serializer.close();
+            throw e;
+        }
 
-            // IARC TP53
-            if (this.iarctp53GermlineFile != null && this.iarctp53SomaticFile != null
-                    && Files.exists(iarctp53GermlineFile) && Files.exists(iarctp53SomaticFile)) {
-                IARCTP53Indexer iarctp53Indexer = new IARCTP53Indexer(iarctp53GermlineFile,
-                        iarctp53GermlineReferencesFile, iarctp53SomaticFile, iarctp53SomaticReferencesFile,
-                        normalize, genomeSequenceFilePath, assembly, rdb);
-                iarctp53Indexer.index();
-            } else {
-                logger.warn("One or more of required IARCTP53 files are missing. Skipping IARCTP53 data.");
-            }
+    }
+
+    /**
+     * Indexers of the available sources, sorted as they must be indexed into one single RocksDB.
+     */
+    private Map<String, ClinicalIndexerTask> getIndexerTasks() {
+        Map<String, ClinicalIndexerTask> indexerTasks = new LinkedHashMap<>();
+
+        // COSMIC
+        if (this.cosmicFile != null && Files.exists(this.cosmicFile)) {
+            indexerTasks.put("cosmic", rdb -> new CosmicIndexer(cosmicFile, normalize, genomeSequenceFilePath, assembly, rdb).index());
+        } else {
+            logger.warn("Cosmic file {} missing. Skipping Cosmic data", cosmicFile);
+        }
+
+        // ClinVar
+        if (this.clinvarXMLFile != null && this.clinvarSummaryFile != null
+                && this.clinvarVariationAlleleFile != null && Files.exists(clinvarXMLFile)
+                && Files.exists(clinvarSummaryFile) && Files.exists(clinvarVariationAlleleFile)) {
+            indexerTasks.put("clinvar", rdb -> new ClinVarIndexer(clinvarXMLFile.getParent().resolve("clinvar_chunks"),
+                    clinvarSummaryFile, clinvarVariationAlleleFile, clinvarEFOFile, normalize, genomeSequenceFilePath, assembly,
+                    rdb).index());
+        } else {
+            logger.warn("One or more of required ClinVar files are missing. Skipping ClinVar data.\n"
+                    + "Please, ensure that these two files exist:\n"
+                    + "{}\n"
+                    + "{}", this.clinvarXMLFile.toString(), this.clinvarSummaryFile.toString());
+        }
+
+        // IARC TP53
+        if (this.iarctp53GermlineFile != null && this.iarctp53SomaticFile != null
+                && Files.exists(iarctp53GermlineFile) && Files.exists(iarctp53SomaticFile)) {
+            indexerTasks.put("iarctp53", rdb -> new IARCTP53Indexer(iarctp53GermlineFile,
+                    iarctp53GermlineReferencesFile, iarctp53SomaticFile, iarctp53SomaticReferencesFile,
+                    normalize, genomeSequenceFilePath, assembly, rdb).index());
+        } else {
+            logger.warn("One or more of required IARCTP53 files are missing. Skipping IARCTP53 data.");
+        }
+
+        // DOCM
+        if (this.docmFile != null && Files.exists(docmFile)) {
+            indexerTasks.put("docm", rdb -> new DOCMIndexer(docmFile, normalize, genomeSequenceFilePath, assembly, rdb).index());
+        } else {
+            logger.warn("The DOCM file {} is missing. Skipping DOCM data.", docmFile);
+        }
+
+        // HGMD
+        if (this.hgmdFile != null && Files.exists(hgmdFile)) {
+            indexerTasks.put("hgmd", rdb -> new HGMDIndexer(hgmdFile, normalize, genomeSequenceFilePath, assembly, rdb).index());
+        } else {
+            logger.warn("The HGMD file {} is missing. Skipping HGMD data.", hgmdFile);
+        }
 
-            // DOCM
-            if (this.docmFile != null && Files.exists(docmFile)) {
-                DOCMIndexer docmIndexer = new DOCMIndexer(docmFile, normalize, genomeSequenceFilePath, assembly, rdb);
-                docmIndexer.index();
+        // GWAS catalog
+        if (gwasFile != null && Files.exists(gwasFile)) {
+            if (dbsnpFile != null && Files.exists(dbsnpFile)) {
+                Path tabixFile = Paths.get(dbsnpFile.toAbsolutePath() + ".tbi");
+                if (tabixFile != null && Files.exists(tabixFile)) {
+                    indexerTasks.put("gwas", rdb -> new GwasIndexer(gwasFile, dbsnpFile, genomeSequenceFilePath, assembly, rdb).index());
+                } else {
+                    logger.warn("The dbSNP tabix file {} is missing. Skipping GWAS catalog data.", tabixFile);
+                }
             } else {
-                logger.warn("The DOCM file {} is missing. Skipping DOCM data.", docmFile);
+                logger.warn("The dbSNP file {} is missing. Skipping GWAS catalog data.", dbsnpFile);
             }
+        } else {
+            logger.warn("The GWAS catalog file {} is missing. Skipping GWAS catalog data.", gwasFile);
+        }
 
-            // HGMD
-            if (this.hgmdFile != null && Files.exists(hgmdFile)) {
-                HGMDIndexer hgmdIndexer = new HGMDIndexer(hgmdFile, normalize, genomeSequenceFilePath, assembly, rdb);
-                hgmdIndexer.index();
-            } else {
-                logger.warn("The HGMD file {} is missing. Skipping HGMD data.", hgmdFile);
+        return indexerTasks;
+    }
+
+    private void parallelParse(Map<String, ClinicalIndexerTask> indexerTasks) throws IOException, RocksDBException {
+        List<RocksDB> rdbs = new ArrayList<>();
+        List<Options> dbOptions = new ArrayList<>();
+        List<String> dbLocations = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<String, ClinicalIndexerTask> entry : indexerTasks.entrySet()) {
+                Object[] dbConnection = getDBConnection(clinvarXMLFile.getParent().toString() + "/integration.idx."
+                        + entry.getKey(), true);
+                RocksDB rdb = (RocksDB) dbConnection[0];
+                rdbs.add(rdb);
+                dbOptions.add((Options) dbConnection[1]);
+                dbLocations.add((String) dbConnection[2]);
+
+                logger.info("Indexing {} clinical variants", entry.getKey());
+                futures.add(executor.submit(() -> {
+                    entry.getValue().index(rdb);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                getFutureResult(future);
             }
 
-            // GWAS catalog
-            if (gwasFile != null && Files.exists(gwasFile)) {
-                if (dbsnpFile != null && Files.exists(dbsnpFile)) {
-                    Path tabixFile = Paths.get(dbsnpFile.toAbsolutePath() + ".tbi");
-                    if (tabixFile != null && Files.exists(tabixFile)) {
-                        GwasIndexer gwasIndexer = new GwasIndexer(gwasFile, dbsnpFile, genomeSequenceFilePath, assembly, rdb);
-                        gwasIndexer.index();
-                    } else {
-                        logger.warn("The dbSNP tabix file {} is missing. Skipping GWAS catalog data.", tabixFile);
-                    }
-                } else {
-                    logger.warn("The dbSNP file {} is missing. Skipping GWAS catalog data.", dbsnpFile);
+            serializeRDBs(rdbs, executor);
+        } finally {
+            // When an indexer fails the others are interrupted, they must have stopped before their RocksDB indexes are
+            // closed, native code would crash the JVM otherwise
+            executor.shutdownNow();
+            if (awaitTermination(executor)) {
+                for (int i = 0; i < dbLocations.size(); i++) {
+                    closeIndex(rdbs.get(i), dbOptions.get(i), dbLocations.get(i));
                 }
             } else {
-                logger.warn("The GWAS catalog file {} is missing. Skipping GWAS catalog data.", gwasFile);
+                logger.warn("Interrupted while waiting for the clinical indexers to stop, RocksDB indexes are left open");
             }
-
-            serializeRDB(rdb);
-            closeIndex(rdb, dbOption, dbLocation);
             serializer.close();
-        } catch (Exception e) {
-            closeIndex(rdb, dbOption, dbLocation);
-            serializer.close();
-            throw e;
         }
+    }
 
+    private boolean awaitTermination(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for the clinical indexers to stop");
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     private void serializeRDB(RocksDB rdb) throws IOException {
@@ -214,6 +299,214 @@ public class ClinicalVariantBuilder extends CellBaseBuilder {
         logger.info("Done.");
     }
 
+    /**
+     * Merges the indexes of the sources and serializes the variants. Keys are partitioned by chromosome, each chromosome
+     * is read, merged and parsed by one thread, variants are written by the calling thread.
+     */
+    private void serializeRDBs(List<RocksDB> rdbs, ExecutorService executor) throws IOException {
+        logger.info("Merging {} RocksDB indexes and serializing to {}.json.gz", rdbs.size(),
+                serializer.getOutdir().resolve(serializer.getFileName()));
+        BlockingQueue<List<Variant>> queue = new ArrayBlockingQueue<>(4 * numThreads);
+        List<Variant> end = Collections.emptyList();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String chromosome : getChromosomes(rdbs)) {
+            futures.add(CompletableFuture.runAsync(() -> mergeChromosome(rdbs, chromosome, queue), executor));
+        }
+        CompletableFuture<Void> merge = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        merge.whenComplete((result, throwable) -> {
+            try {
+                queue.put(end);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        int counter = 0;
+        try {
+            for (List<Variant> batch = queue.take(); batch != end; batch = queue.take()) {
+                for (Variant variant : batch) {
+                    serializer.serialize(variant);
+                    counter++;
+                    if (counter % 10000 == 0) {
+                        logger.info("{} written", counter);
+                    }
+                }
+            }
+            merge.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while serializing clinical variants", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Error merging clinical variant indexes", e.getCause());
+        }
+        serializer.close();
+        logger.info("Done.");
+    }
+
+    private Set<String> getChromosomes(List<RocksDB> rdbs) {
+        // Keys start with the chromosome, one seek per chromosome jumps over all its variants
+        Set<String> chromosomes = new TreeSet<>();
+        for (RocksDB rdb : rdbs) {
+            RocksIterator rocksIterator = rdb.newIterator();
+            try {
+                rocksIterator.seekToFirst();
+                while (rocksIterator.isValid()) {
+                    String key = new String(rocksIterator.key());
+                    int index = key.indexOf(':');
+                    if (index < 0) {
+                        // Not a variant id, skipped when serializing
+                        rocksIterator.next();
+                        continue;
+                    }
+                    String chromosome = key.substring(0, index);
+                    chromosomes.add(chromosome);
+                    rocksIterator.seek((chromosome + ";").getBytes());
+                }
+            } finally {
+                rocksIterator.dispose();
+            }
+        }
+        return chromosomes;
+    }
+
+    private void mergeChromosome(List<RocksDB> rdbs, String chromosome, BlockingQueue<List<Variant>> queue) {
+        byte[] prefix = (chromosome + ":").getBytes();
+        ObjectReader reader = new ObjectMapper().readerFor(VariantAnnotation.class);
+        List<RocksIterator> rocksIterators = new ArrayList<>(rdbs.size());
+        try {
+            for (RocksDB rdb : rdbs) {
+                RocksIterator rocksIterator = rdb.newIterator();
+                rocksIterator.seek(prefix);
+                rocksIterators.add(rocksIterator);
+            }
+
+            List<Variant> batch = new ArrayList<>(BATCH_SIZE);
+            List<VariantAnnotation> variantAnnotations = new ArrayList<>(rdbs.size());
+            byte[] key = nextKey(rocksIterators, prefix);
+            while (key != null) {
+                // Sources are merged in the same order they are indexed into one single RocksDB
+                variantAnnotations.clear();
+                for (RocksIterator rocksIterator : rocksIterators) {
+                    if (rocksIterator.isValid() && Arrays.equals(key, rocksIterator.key())) {
+                        variantAnnotations.add(reader.readValue(rocksIterator.value()));
+                        rocksIterator.next();
+                    }
+                }
+                Variant variant = parseVariantFromVariantId(new String(key));
+                if (variant != null) {
+                    variant.setAnnotation(mergeVariantAnnotations(variantAnnotations));
+                    batch.add(variant);
+                    if (batch.size() == BATCH_SIZE) {
+                        queue.put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                key = nextKey(rocksIterators, prefix);
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } finally {
+            rocksIterators.forEach(RocksIterator::dispose);
+        }
+    }
+
+    private byte[] nextKey(List<RocksIterator> rocksIterators, byte[] prefix) {
+        byte[] minKey = null;
+        for (RocksIterator rocksIterator : rocksIterators) {
+            if (rocksIterator.isValid()) {
+                byte[] key = rocksIterator.key();
+                if (startsWith(key, prefix) && (minKey == null || compareKeys(key, minKey) < 0)) {
+                    minKey = key;
+                }
+            }
+        }
+        return minKey;
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compareKeys(byte[] a, byte[] b) {
+        // Same unsigned byte order of the RocksDB default comparator
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int compare = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Merges the annotations indexed by the different sources for one variant. Sources only add evidences, drugs, xrefs
+     * and GWAS associations, lists are concatenated in the order of the sources.
+     * @param variantAnnotations annotations of the variant, sorted by source
+     * @return the merged annotation
+     */
+    static VariantAnnotation mergeVariantAnnotations(List<VariantAnnotation> variantAnnotations) {
+        if (variantAnnotations.size() == 1) {
+            return variantAnnotations.get(0);
+        }
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setTraitAssociation(new ArrayList<>());
+        for (VariantAnnotation sourceAnnotation : variantAnnotations) {
+            if (sourceAnnotation.getTraitAssociation() != null) {
+                variantAnnotation.getTraitAssociation().addAll(sourceAnnotation.getTraitAssociation());
+            }
+            variantAnnotation.setDrugs(concat(variantAnnotation.getDrugs(), sourceAnnotation.getDrugs()));
+            variantAnnotation.setXrefs(concat(variantAnnotation.getXrefs(), sourceAnnotation.getXrefs()));
+            variantAnnotation.setGwas(concat(variantAnnotation.getGwas(), sourceAnnotation.getGwas()));
+        }
+        return variantAnnotation;
+    }
+
+    private static <T> List<T> concat(List<T> list, List<T> other) {
+        if (other == null) {
+            return list;
+        }
+        if (list == null) {
+            return new ArrayList<>(other);
+        }
+        list.addAll(other);
+        return list;
+    }
+
+    private static void getFutureResult(Future<?> future) throws IOException, RocksDBException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing clinical variants", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RocksDBException) {
+                throw (RocksDBException) e.getCause();
+            }
+            throw new IOException("Error indexing clinical variants", e.getCause());
+        }
+    }
+
     private Variant parseVariantFromVariantId(String variantId) {
         try {
             String[] parts = variantId.split(":", -1); // -1 to include empty fields
@@ -276,4 +569,9 @@ public class ClinicalVariantBuilder extends CellBaseBuilder {
 
     }
 
+    @FunctionalInterface
+    private interface ClinicalIndexerTask {
+        void index(RocksDB rdb) throws IOException, RocksDBException;
+    }
+
 }
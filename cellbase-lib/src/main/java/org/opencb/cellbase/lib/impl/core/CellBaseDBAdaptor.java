@@ -84,6 +84,22 @@ public class CellBaseDBAdaptor extends MongoDBAdaptor {
         return sb.toString();
     }
 
+    /**
+     * Number of a data release, release 0 is resolved to the active release.
+     * @param dataRelease data release, 0 for the active one
+     * @return release number, 0 if there is no active release
+     */
+    public int getReleaseNumber(int dataRelease) {
+        if (dataRelease == 0 && CollectionUtils.isNotEmpty(dataReleases)) {
+            for (DataRelease release : dataReleases) {
+                if (release.isActive()) {
+                    return release.getRelease();
+                }
+            }
+        }
+        return dataRelease;
+    }
+
     public List<DataRelease> getDataReleases() {
         return dataReleases;
     }
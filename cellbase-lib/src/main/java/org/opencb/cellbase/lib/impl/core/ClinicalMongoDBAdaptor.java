@@ -24,6 +24,7 @@ import org.bson.conversions.Bson;
 import org.opencb.biodata.models.clinical.interpretation.ClinicalVariant;
 import org.opencb.biodata.models.core.Gene;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.api.ClinicalVariantQuery;
@@ -32,6 +33,7 @@ import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.variant.ClinicalPhasedQueryManager;
+import org.opencb.cellbase.lib.impl.core.converters.DocumentConverter;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
 import org.opencb.cellbase.lib.managers.GenomeManager;
@@ -424,9 +426,104 @@ public class ClinicalMongoDBAdaptor extends CellBaseDBAdaptor implements CellBas
 
     public List<CellBaseDataResult<Variant>> getByVariant(List<Variant> variants, List<Gene> geneList, QueryOptions queryOptions,
                                                           int dataRelease) throws CellBaseException {
-        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getClinicalVariant(variant, genomeManager, geneList, queryOptions, dataRelease));
+        return getByVariant(variants, geneList, null, queryOptions, dataRelease);
+    }
+
+    /**
+     * Fetches the clinical variants matching a list of variants. Variants are matched either by position and alleles, with
+     * one query per chromosome, or, if the amino acid change is checked, by protein HGVS with one single query for the
+     * whole list. CNVs are still queried one by one.
+     * @param variants list of Variant objects to query
+     * @param geneList genes overlapping the variants, used to calculate the protein HGVS
+     * @param hgvsList HGVS already calculated for each variant, e.g. by the variant annotation, null or null items to
+     *                 calculate them here
+     * @param queryOptions query options
+     * @param dataRelease release of the data (aka, version)
+     * @return list of CellBaseDataResult of Variant objects, positions within the list correspond to the positions of the
+     * Variant objects in the "variants" query list
+     * @throws CellBaseException if the data release is not valid or the HGVS can not be calculated
+     */
+    public List<CellBaseDataResult<Variant>> getByVariant(List<Variant> variants, List<Gene> geneList, List<List<String>> hgvsList,
+                                                          QueryOptions queryOptions, int dataRelease) throws CellBaseException {
+        boolean checkAminoAcidChange = queryOptions.get(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key()) != null
+                && (Boolean) queryOptions.get(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key())
+                && genomeManager != null
+                && geneList != null
+                && !geneList.isEmpty();
+        HgvsCalculator hgvsCalculator = null;
+
+        List<CellBaseDataResult<Variant>> results = new ArrayList<>(Collections.nCopies(variants.size(), null));
+        Map<String, Map<String, List<Integer>>> indexesByChromosome = new LinkedHashMap<>();
+        Map<String, List<Integer>> indexesByProteinHgvs = new HashMap<>();
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            if (VariantType.CNV.equals(variant.getType())) {
+                results.set(i, getClinicalVariant(variant, genomeManager, geneList, queryOptions, dataRelease));
+                continue;
+            }
+            List<String> proteinHgvsList = Collections.emptyList();
+            if (checkAminoAcidChange) {
+                List<String> variantHgvsList = hgvsList != null ? hgvsList.get(i) : null;
+                if (variantHgvsList == null) {
+                    if (hgvsCalculator == null) {
+                        hgvsCalculator = new HgvsCalculator(genomeManager, dataRelease);
+                    }
+                    variantHgvsList = hgvsCalculator.run(variant, geneList);
+                }
+                proteinHgvsList = getProteinHgvs(variantHgvsList);
+            }
+            // The protein hgvs query must be enough to solve the variant match if it is a protein coding variant, the
+            // genomic query is raised otherwise
+            if (!proteinHgvsList.isEmpty()) {
+                for (String proteinHgvs : proteinHgvsList) {
+                    indexesByProteinHgvs.computeIfAbsent(proteinHgvs, k -> new ArrayList<>()).add(i);
+                }
+            } else {
+                indexesByChromosome.computeIfAbsent(variant.getChromosome(), k -> new HashMap<>())
+                        .computeIfAbsent(getAllelesKey(variant), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        long dbTimeStart = System.currentTimeMillis();
+        QueryOptions parsedOptions = addPrivateExcludeOptions(parseQueryOptions(queryOptions, new Query()), PRIVATE_CLINICAL_FIELDS);
+        if (parsedOptions.containsKey(QueryOptions.INCLUDE)) {
+            // Fields needed to match the clinical variants back to the query variants
+            List<String> includes = new ArrayList<>(parsedOptions.getAsStringList(QueryOptions.INCLUDE));
+            includes.addAll(Arrays.asList("chromosome", "start", "reference", "alternate", "annotation.hgvs"));
+            parsedOptions.put(QueryOptions.INCLUDE, includes);
+        }
+        MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
+        List<List<Variant>> matches = new ArrayList<>(Collections.nCopies(variants.size(), null));
+        for (Map.Entry<String, Map<String, List<Integer>>> entry : indexesByChromosome.entrySet()) {
+            Set<Integer> starts = new HashSet<>();
+            for (List<Integer> indexes : entry.getValue().values()) {
+                starts.add(variants.get(indexes.get(0)).getStart());
+            }
+            Bson bson = Filters.and(Filters.eq("chromosome", entry.getKey()), Filters.in("start", starts));
+            for (Variant clinicalVariant : mongoDBCollection.find(bson, null, Variant.class, parsedOptions).getResults()) {
+                addMatches(clinicalVariant, entry.getValue().get(getAllelesKey(clinicalVariant)), matches);
+            }
+        }
+        if (!indexesByProteinHgvs.isEmpty()) {
+            Bson bson = Filters.in("annotation.hgvs", indexesByProteinHgvs.keySet());
+            for (Variant clinicalVariant : mongoDBCollection.find(bson, null, Variant.class, parsedOptions).getResults()) {
+                Set<Integer> indexes = new TreeSet<>();
+                if (clinicalVariant.getAnnotation() != null && clinicalVariant.getAnnotation().getHgvs() != null) {
+                    for (String hgvs : clinicalVariant.getAnnotation().getHgvs()) {
+                        indexes.addAll(indexesByProteinHgvs.getOrDefault(hgvs, Collections.emptyList()));
+                    }
+                }
+                addMatches(clinicalVariant, indexes, matches);
+            }
+        }
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        for (int i = 0; i < variants.size(); i++) {
+            if (results.get(i) == null) {
+                List<Variant> variantMatches = matches.get(i) != null ? matches.get(i) : new ArrayList<>();
+                results.set(i, new CellBaseDataResult<>(variants.get(i).toString(), dbTime, new ArrayList<>(), variantMatches.size(),
+                        variantMatches, variantMatches.size()));
+            }
         }
         if (queryOptions.get(ParamConstants.QueryParams.PHASE.key()) != null
                 && (Boolean) queryOptions.get(ParamConstants.QueryParams.PHASE.key())) {
@@ -436,12 +533,31 @@ public class ClinicalMongoDBAdaptor extends CellBaseDBAdaptor implements CellBas
         return results;
     }
 
+    private static String getAllelesKey(Variant variant) {
+        return variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate();
+    }
+
+    private static void addMatches(Variant clinicalVariant, Collection<Integer> indexes, List<List<Variant>> matches) {
+        if (indexes == null) {
+            return;
+        }
+        boolean shared = false;
+        for (int index : indexes) {
+            if (matches.get(index) == null) {
+                matches.set(index, new ArrayList<>());
+            }
+            // Phased queries remove evidences from the matched variants, each query variant must get its own copy
+            matches.get(index).add(shared ? new Variant(VariantAvro.newBuilder(clinicalVariant.getImpl()).build()) : clinicalVariant);
+            shared = true;
+        }
+    }
+
     @Override
     public CellBaseIterator iterator(ClinicalVariantQuery query) throws CellBaseException {
         Bson bson = parseQuery(query);
         QueryOptions queryOptions = query.toQueryOptions();
         Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<Variant> converter = new GenericDocumentComplexConverter<>(Variant.class);
+        GenericDocumentComplexConverter<Variant> converter = new DocumentConverter<>(Variant.class);
 
         MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, query.getDataRelease());
         MongoDBIterator<Variant> iterator = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
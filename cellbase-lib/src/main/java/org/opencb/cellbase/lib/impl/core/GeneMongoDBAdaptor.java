@@ -34,6 +34,7 @@ import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
+import org.opencb.cellbase.lib.impl.core.converters.DocumentConverter;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
 import org.opencb.commons.datastore.core.Query;
@@ -55,7 +56,7 @@ public class GeneMongoDBAdaptor extends CellBaseDBAdaptor implements CellBaseCor
     private static final GenericDocumentComplexConverter<Gene> CONVERTER;
 
     static {
-        CONVERTER = new GenericDocumentComplexConverter<>(Gene.class);
+        CONVERTER = new DocumentConverter<>(Gene.class);
 
         CONSTRAINT_NAMES.add("exac_oe_lof");
         CONSTRAINT_NAMES.add("exac_pLI");
@@ -17,7 +17,6 @@
 package org.opencb.cellbase.lib.impl.core;
 
 import com.mongodb.MongoClient;
-import com.mongodb.QueryBuilder;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
@@ -33,8 +32,10 @@ import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.api.GenomeQuery;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.models.GenomicFloatScoreRegion;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
+import org.opencb.cellbase.lib.impl.file.TwoBitSequenceFile;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
@@ -46,6 +47,7 @@ import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -61,7 +63,10 @@ public class GenomeMongoDBAdaptor extends CellBaseDBAdaptor implements CellBaseC
     private static final String STAIN = "stain";
     private static final String NAME = "name";
     private static final Object CHROMOSOMES = "chromosomes";
+    // Max region size of conservation queries, longer regions are truncated
+    private static final int MAX_CONSERVATION_REGION_SIZE = 10000;
     private Document genomeInfo = null;
+    private String genomeSequenceFile;
 
     public GenomeMongoDBAdaptor(MongoDataStore mongoDataStore) {
         super(mongoDataStore);
@@ -77,6 +82,34 @@ public class GenomeMongoDBAdaptor extends CellBaseDBAdaptor implements CellBaseC
         conservationMongoDBCollectionByRelease = buildCollectionByReleaseMap("conservation");
     }
 
+    public String getGenomeSequenceFile() {
+        return genomeSequenceFile;
+    }
+
+    /**
+     * Sets the 2-bit genome sequence file used to read genome sequences instead of querying the database.
+     * @param genomeSequenceFile path to the genome sequence file, "{dataRelease}" is replaced by the data release number;
+     *                           null to read sequences from the database
+     * @return this adaptor
+     */
+    public GenomeMongoDBAdaptor setGenomeSequenceFile(String genomeSequenceFile) {
+        this.genomeSequenceFile = genomeSequenceFile;
+        return this;
+    }
+
+    private TwoBitSequenceFile getGenomeSequenceFile(int dataRelease) throws CellBaseException {
+        if (genomeSequenceFile == null) {
+            return null;
+        }
+        try {
+            // Releases with no file keep reading sequences from the database
+            return TwoBitSequenceFile.open(genomeSequenceFile, getReleaseNumber(dataRelease));
+        } catch (IOException e) {
+            throw new CellBaseException("Error opening genome sequence file '" + genomeSequenceFile + "' of release " + dataRelease
+                    + ": " + e.getMessage());
+        }
+    }
+
     public CellBaseDataResult getGenomeInfo(QueryOptions queryOptions, int dataRelease) throws CellBaseException {
         MongoDBCollection mongoDBCollection = getCollectionByRelease(genomeInfoMongoDBCollectionByRelease, dataRelease);
         return new CellBaseDataResult<>(mongoDBCollection.find(new Document(), queryOptions));
@@ -176,6 +209,12 @@ public class GenomeMongoDBAdaptor extends CellBaseDBAdaptor implements CellBaseC
 
     public CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions, int dataRelease)
             throws CellBaseException {
+        // Regions within the sequence bounds are read from the 2-bit file if available, the rest keep the database behaviour
+        TwoBitSequenceFile sequenceFile = getGenomeSequenceFile(dataRelease);
+        if (sequenceFile != null && region.getStart() >= 1 && region.getStart() <= sequenceFile.getLength(region.getChromosome())) {
+            return getSequenceFromFile(sequenceFile, region);
+        }
+
         Query query = new Query("region", region.toString());
         CellBaseDataResult<Document> cellBaseDataResult = nativeGet(query, queryOptions, dataRelease);
         List<Document> cellBaseDataResultList = cellBaseDataResult.getResults();
@@ -220,214 +259,188 @@ public class GenomeMongoDBAdaptor extends CellBaseDBAdaptor implements CellBaseC
         return result;
     }
 
-    public List<CellBaseDataResult<GenomicScoreRegion<Float>>> getConservation(List<Region> regionList, QueryOptions options,
-                                                                               int dataRelease) throws CellBaseException {
-        //TODO not finished yet
-        List<Document> queries = new ArrayList<>();
-        List<String> ids = new ArrayList<>(regionList.size());
-        List<String> integerChunkIds;
-
-        List<Region> regions = regionList;
-        for (Region region : regions) {
-            integerChunkIds = new ArrayList<>();
-            // positions below 1 are not allowed
-            if (region.getStart() < 1) {
-                region.setStart(1);
-            }
-            if (region.getEnd() < 1) {
-                region.setEnd(1);
-            }
-
-            // Max region size is 10000bp
-            if (region.getEnd() - region.getStart() > 10000) {
-                region.setEnd(region.getStart() + 10000);
-            }
-
-            QueryBuilder builder;
-            int regionChunkStart = getChunkId(region.getStart(), MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE);
-            int regionChunkEnd = getChunkId(region.getEnd(), MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE);
-            if (regionChunkStart == regionChunkEnd) {
-                builder = QueryBuilder.start("_chunkIds")
-                        .is(getChunkIdPrefix(region.getChromosome(), region.getStart(),
-                                MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE));
-            } else {
-                builder = QueryBuilder.start("chromosome").is(region.getChromosome()).and("end")
-                        .greaterThanEquals(region.getStart()).and("start").lessThanEquals(region.getEnd());
-            }
-            queries.add(new Document(builder.get().toMap()));
-            ids.add(region.toString());
-        }
-
-        MongoDBCollection mongoDBCollection = getCollectionByRelease(conservationMongoDBCollectionByRelease, dataRelease);
-        List<CellBaseDataResult> cellBaseDataResults = executeQueryList2(ids, queries, options, mongoDBCollection);
-        List<CellBaseDataResult<GenomicScoreRegion<Float>>> conservationCellBaseDataResults = new ArrayList<>();
-
-        for (int i = 0; i < regions.size(); i++) {
-            Region region = regions.get(i);
-            CellBaseDataResult cellBaseDataResult = cellBaseDataResults.get(i);
-            CellBaseDataResult<GenomicScoreRegion<Float>> conservationCellBaseDataResult = new CellBaseDataResult<>();
-            List list = cellBaseDataResult.getResults();
-
-            Map<String, List<Float>> typeMap = new HashMap<>();
-            for (int j = 0; j < list.size(); j++) {
-                Document chunk = (Document) list.get(j);
-                String source = chunk.getString("source");
-                List<Float> valuesList;
-                if (!typeMap.containsKey(source)) {
-                    valuesList = new ArrayList<>(region.getEnd() - region.getStart() + 1);
-                    for (int val = 0; val < region.getEnd() - region.getStart() + 1; val++) {
-                        valuesList.add(null);
-                    }
-                    typeMap.put(source, valuesList);
-                } else {
-                    valuesList = typeMap.get(source);
-                }
+    private CellBaseDataResult<GenomeSequenceFeature> getSequenceFromFile(TwoBitSequenceFile sequenceFile, Region region) {
+        String chromosome = region.getChromosome();
+        String sequence = sequenceFile.getSequence(chromosome, region.getStart(), region.getEnd());
 
-                ArrayList valuesChunk = chunk.get("values", ArrayList.class);
+        CellBaseDataResult<GenomeSequenceFeature> result = new CellBaseDataResult<>(region.toString());
+        result.setResults(Collections.singletonList(new GenomeSequenceFeature(chromosome, region.getStart(), region.getEnd(), 1,
+                sequenceFile.getSequenceType(chromosome), sequenceFile.getAssembly(chromosome), sequence)));
+        result.setNumMatches(1);
+        result.setNumResults(1);
+        return result;
+    }
 
-                int pos = 0;
-                if (region.getStart() > chunk.getInteger("start")) {
-                    pos = region.getStart() - chunk.getInteger("start");
-                }
+    public List<CellBaseDataResult<GenomicScoreRegion<Float>>> getConservation(List<Region> regionList, QueryOptions options,
+                                                                               int dataRelease) throws CellBaseException {
+        List<Map<String, GenomicFloatScoreRegion>> scoreRegionsList = getConservationScores(regionList, MAX_CONSERVATION_REGION_SIZE,
+                dataRelease);
 
-                for (; pos < valuesChunk.size() && (pos + chunk.getInteger("start") <= region.getEnd()); pos++) {
-                    valuesList.set(pos + chunk.getInteger("start") - region.getStart(), new Float((Double) valuesChunk.get(pos)));
-                }
-            }
+        List<CellBaseDataResult<GenomicScoreRegion<Float>>> conservationCellBaseDataResults = new ArrayList<>(regionList.size());
+        for (int i = 0; i < regionList.size(); i++) {
             List<GenomicScoreRegion<Float>> resultList = new ArrayList<>();
-            GenomicScoreRegion<Float> conservedRegionChunk;
-            for (Map.Entry<String, List<Float>> elem : typeMap.entrySet()) {
-                conservedRegionChunk = new GenomicScoreRegion<>(region.getChromosome(), region.getStart(), region.getEnd(),
-                        elem.getKey(), elem.getValue());
-                resultList.add(conservedRegionChunk);
+            for (GenomicFloatScoreRegion scoreRegion : scoreRegionsList.get(i).values()) {
+                // Positions with no score are returned as null values
+                List<Float> values = new ArrayList<>(scoreRegion.size());
+                for (float value : scoreRegion.getValues()) {
+                    values.add(Float.isNaN(value) ? null : value);
+                }
+                resultList.add(new GenomicScoreRegion<>(scoreRegion.getChromosome(), scoreRegion.getStart(), scoreRegion.getEnd(),
+                        scoreRegion.getSource(), values));
             }
+            CellBaseDataResult<GenomicScoreRegion<Float>> conservationCellBaseDataResult = new CellBaseDataResult<>();
             conservationCellBaseDataResult.setResults(resultList);
             conservationCellBaseDataResult.setNumResults(resultList.size());
             conservationCellBaseDataResult.setNumMatches(-1);
             conservationCellBaseDataResults.add(conservationCellBaseDataResult);
-
         }
-
         return conservationCellBaseDataResults;
     }
 
     public List<CellBaseDataResult<Score>> getAllScoresByRegionList(List<Region> regionList, QueryOptions options, int dataRelease)
             throws CellBaseException {
-        //TODO not finished yet
-        List<Document> queries = new ArrayList<>();
-        List<String> ids = new ArrayList<>(regionList.size());
-        List<Integer> integerChunkIds;
-
-        List<CellBaseDataResult<Score>> allScoresByRegionList = new ArrayList();
-
-        List<Region> regions = regionList;
-        for (Region region : regions) {
-            integerChunkIds = new ArrayList<>();
-            // positions below 1 are not allowed
-            if (region.getStart() < 1) {
-                region.setStart(1);
-            }
-            if (region.getEnd() < 1) {
-                region.setEnd(1);
-            }
+        List<Map<String, GenomicFloatScoreRegion>> scoreRegionsList = getConservationScores(regionList, Integer.MAX_VALUE,
+                dataRelease);
 
-            /****/
-            QueryBuilder builder;
-            int regionChunkStart = getChunkId(region.getStart(), MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE);
-            int regionChunkEnd = getChunkId(region.getEnd(), MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE);
-            if (regionChunkStart == regionChunkEnd) {
-                builder = QueryBuilder.start("_chunkIds")
-                        .is(getChunkIdPrefix(region.getChromosome(), region.getStart(),
-                                MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE));
+        List<CellBaseDataResult<Score>> allScoresByRegionList = new ArrayList<>(regionList.size());
+        for (Map<String, GenomicFloatScoreRegion> scoreRegions : scoreRegionsList) {
+            List<Score> resultList = new ArrayList<>();
+            for (GenomicFloatScoreRegion scoreRegion : scoreRegions.values()) {
+                for (float value : scoreRegion.getValues()) {
+                    if (!Float.isNaN(value)) {
+                        resultList.add(new Score((double) value, scoreRegion.getSource(), null));
+                    }
+                }
+            }
+            CellBaseDataResult<Score> result = new CellBaseDataResult<>();
+            if (!resultList.isEmpty()) {
+                result.setResults(resultList);
+                result.setNumResults(resultList.size());
             } else {
-//                for (int chunkId = regionChunkStart; chunkId <= regionChunkEnd; chunkId++) {
-//                    integerChunkIds.add(chunkId);
-//                }
-//    //            QueryBuilder builder = QueryBuilder.start("chromosome").is(region.getChromosomeInfo()).and("chunkId").in(hunkIds);
-//                builder = QueryBuilder.start("chromosome").is(region.getChromosomeInfo()).and("chunkId").in(integerChunkIds);
-                builder = QueryBuilder.start("chromosome").is(region.getChromosome()).and("end")
-                        .greaterThanEquals(region.getStart()).and("start").lessThanEquals(region.getEnd());
+                result.setResults(null);
             }
-            /****/
-
-
-            queries.add(new Document(builder.get().toMap()));
-            ids.add(region.toString());
-
-//            logger.debug(builder.get().toString());
-
+            allScoresByRegionList.add(result);
         }
+        return allScoresByRegionList;
+    }
 
-        MongoDBCollection mongoDBCollection = getCollectionByRelease(conservationMongoDBCollectionByRelease, dataRelease);
-        List<CellBaseDataResult> queryResults = executeQueryList2(ids, queries, options, mongoDBCollection);
-//        List<QueryResult> queryResults = executeQueryList(ids, queries, options);
-
-        for (int i = 0; i < regions.size(); i++) {
-            Region region = regions.get(i);
-            CellBaseDataResult queryResult = queryResults.get(i);
-            List<Document> list = (List<Document>) queryResult.getResults();
-            Map<String, List<Float>> typeMap = new HashMap();
-
-
-//            int start = region.getStart();
-
-
-            for (int j = 0; j < list.size(); j++) {
-                Document chunk = list.get(j);
-                if (!chunk.isEmpty()) {
-//                    BasicDBList valuesChunk = (BasicDBList) chunk.get("values");
-                    ArrayList valuesChunk = chunk.get("values", ArrayList.class);
+    /**
+     * Fetches the conservation scores of a list of regions with one single query: regions are grouped into chunk
+     * aligned windows, all windows are fetched at once and their values decoded straight into primitive arrays.
+     * @param regionList list of regions, positions below 1 are not allowed and are moved to 1, and regions longer than
+     *                   10000bp are truncated
+     * @param dataRelease data release
+     * @return for each region, in the same order, the scores of each conservation source indexed by source. Positions
+     * with no score are NaN
+     * @throws CellBaseException if the data release is not valid
+     */
+    public List<Map<String, GenomicFloatScoreRegion>> getConservationScores(List<Region> regionList, int dataRelease)
+            throws CellBaseException {
+        return getConservationScores(regionList, MAX_CONSERVATION_REGION_SIZE, dataRelease);
+    }
 
+    private List<Map<String, GenomicFloatScoreRegion>> getConservationScores(List<Region> regionList, int maxRegionSize,
+                                                                             int dataRelease) throws CellBaseException {
+        int chunkSize = MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE;
+        Map<String, TreeSet<Integer>> chunksByChromosome = new HashMap<>();
+        for (Region region : regionList) {
+            TreeSet<Integer> chunks = chunksByChromosome.computeIfAbsent(region.getChromosome(), k -> new TreeSet<>());
+            for (int chunk = getChunkId(getConservationStart(region), chunkSize);
+                 chunk <= getChunkId(getConservationEnd(region, maxRegionSize), chunkSize); chunk++) {
+                chunks.add(chunk);
+            }
+        }
 
-                    String source = chunk.getString("source");
-                    List<Float> valuesList;
-                    if (!typeMap.containsKey(source)) {
-                        valuesList = new ArrayList<>(region.getEnd() - region.getStart() + 1);
-                        for (int val = 0; val < region.getEnd() - region.getStart() + 1; val++) {
-                            valuesList.add(null);
-                        }
-                        typeMap.put(source, valuesList);
-                    } else {
-                        valuesList = typeMap.get(source);
+        // Consecutive chunks are merged into a single window, sorted batches end up in a handful of ranges
+        List<Bson> windows = new ArrayList<>();
+        for (Map.Entry<String, TreeSet<Integer>> entry : chunksByChromosome.entrySet()) {
+            Integer windowStart = null;
+            Integer windowEnd = null;
+            for (Integer chunk : entry.getValue()) {
+                if (windowEnd != null && chunk == windowEnd + 1) {
+                    windowEnd = chunk;
+                } else {
+                    if (windowStart != null) {
+                        windows.add(getWindowQuery(entry.getKey(), windowStart, windowEnd, chunkSize));
                     }
+                    windowStart = chunk;
+                    windowEnd = chunk;
+                }
+            }
+            if (windowStart != null) {
+                windows.add(getWindowQuery(entry.getKey(), windowStart, windowEnd, chunkSize));
+            }
+        }
 
-//                        valuesChunk = (BasicDBList) chunk.get("values");
-                    valuesChunk = chunk.get("values", ArrayList.class);
-                    int pos = 0;
-                    if (region.getStart() > chunk.getInteger("start")) {
-                        pos = region.getStart() - chunk.getInteger("start");
+        // Documents are indexed by the chunk of their start position
+        Map<String, List<GenomicFloatScoreRegion>> chunksById = new HashMap<>();
+        if (!windows.isEmpty()) {
+            Bson bson = windows.size() == 1 ? windows.get(0) : Filters.or(windows);
+            logger.debug("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()).toJson());
+            QueryOptions queryOptions = new QueryOptions(QueryOptions.INCLUDE, "chromosome,start,source,values");
+            MongoDBCollection mongoDBCollection = getCollectionByRelease(conservationMongoDBCollectionByRelease, dataRelease);
+            MongoDBIterator<Document> iterator = mongoDBCollection.nativeQuery().find(bson, queryOptions);
+            try {
+                while (iterator.hasNext()) {
+                    Document chunk = iterator.next();
+                    List<?> valuesChunk = chunk.get("values", List.class);
+                    if (valuesChunk == null) {
+                        logger.error("values field not present in conservation chunk document. This "
+                                + "should not be happening - every conservation chunk must have a list of values."
+                                + " Please check. Chunk id: " + chunk.get("_chunkIds"));
+                        continue;
                     }
-
-                    for (; pos < valuesChunk.size() && (pos + chunk.getInteger("start") <= region.getEnd()); pos++) {
-                        valuesList.set(pos + chunk.getInteger("start") - region.getStart(), new Float((Double) valuesChunk.get(pos)));
+                    float[] values = new float[valuesChunk.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = ((Number) valuesChunk.get(i)).floatValue();
                     }
-                } else {
-                    logger.error("values field not present in conservation chunk document. This "
-                            + "should not be happening - every conservation chunk must have a list of values."
-                            + " Please check. Chunk id: " + chunk.get("_chunkIds"));
-                    continue;
+                    String chromosome = chunk.getString("chromosome");
+                    int start = chunk.getInteger("start");
+                    chunksById.computeIfAbsent(getChunkIdPrefix(chromosome, start, chunkSize), k -> new ArrayList<>())
+                            .add(new GenomicFloatScoreRegion(chromosome, start, start + values.length - 1, chunk.getString("source"),
+                                    values));
                 }
-
-
+            } finally {
+                iterator.close();
             }
-            List<Score> resultList = new ArrayList<>();
-            for (Map.Entry<String, List<Float>> elem : typeMap.entrySet()) {
-                for (Float score : elem.getValue()) {
-                    if (score != null) {
-                        resultList.add(new Score(new Double(score), elem.getKey(), null));
+        }
+
+        List<Map<String, GenomicFloatScoreRegion>> scoreRegionsList = new ArrayList<>(regionList.size());
+        for (Region region : regionList) {
+            int start = getConservationStart(region);
+            int end = getConservationEnd(region, maxRegionSize);
+            Map<String, GenomicFloatScoreRegion> scoreRegions = new HashMap<>();
+            for (int chunk = Math.max(getChunkId(start, chunkSize) - 1, 0); chunk <= getChunkId(end, chunkSize); chunk++) {
+                List<GenomicFloatScoreRegion> chunks = chunksById
+                        .get(getChunkIdPrefix(region.getChromosome(), chunk * chunkSize, chunkSize));
+                if (chunks == null) {
+                    continue;
+                }
+                for (GenomicFloatScoreRegion chunkScores : chunks) {
+                    if (chunkScores.getStart() <= end && chunkScores.getEnd() >= start) {
+                        scoreRegions.computeIfAbsent(chunkScores.getSource(),
+                                source -> new GenomicFloatScoreRegion(region.getChromosome(), start, end, source))
+                                .copyFrom(chunkScores);
                     }
                 }
             }
-            CellBaseDataResult<Score> result = new CellBaseDataResult<>();
-            if (!resultList.isEmpty()) {
-                result.setResults(resultList);
-            } else {
-                result.setResults(null);
-            }
-            allScoresByRegionList.add(result);
+            scoreRegionsList.add(scoreRegions);
         }
+        return scoreRegionsList;
+    }
 
-        return allScoresByRegionList;
+    private int getConservationStart(Region region) {
+        return Math.max(region.getStart(), 1);
+    }
+
+    private int getConservationEnd(Region region, int maxRegionSize) {
+        int end = Math.max(region.getEnd(), 1);
+        return (long) end - getConservationStart(region) > maxRegionSize ? getConservationStart(region) + maxRegionSize : end;
+    }
+
+    private Bson getWindowQuery(String chromosome, int firstChunk, int lastChunk, int chunkSize) {
+        return Filters.and(Filters.eq("chromosome", chromosome), Filters.lte("start", (lastChunk + 1) * chunkSize - 1),
+                Filters.gte("end", firstChunk * chunkSize));
     }
 
     @Deprecated
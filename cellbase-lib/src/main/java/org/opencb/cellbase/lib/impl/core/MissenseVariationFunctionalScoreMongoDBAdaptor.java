@@ -20,20 +20,30 @@ import com.mongodb.client.model.Filters;
 import org.bson.conversions.Bson;
 import org.opencb.biodata.models.core.MissenseVariantFunctionalScore;
 import org.opencb.biodata.models.core.TranscriptMissenseVariantFunctionalScore;
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.impl.file.PositionScoreFile;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 public class MissenseVariationFunctionalScoreMongoDBAdaptor extends CellBaseDBAdaptor {
 
+    private static final String REVEL = "revel";
+    private static final String REVEL_AA_CHANGE = "revel_aa";
+    private static final double DECIMAL_RESOLUTION = 1000d;
+    // Alternates with several amino acid changes are not resolved from the score file
+    private static final short MULTIPLE_AA_CHANGES = -1;
+
+    private String revelScoreFile;
 
     public MissenseVariationFunctionalScoreMongoDBAdaptor(MongoDataStore mongoDataStore) {
         super(mongoDataStore);
@@ -47,6 +57,34 @@ public class MissenseVariationFunctionalScoreMongoDBAdaptor extends CellBaseDBAd
         mongoDBCollectionByRelease = buildCollectionByReleaseMap("missense_variation_functional_score");
     }
 
+    public String getRevelScoreFile() {
+        return revelScoreFile;
+    }
+
+    /**
+     * Sets the REVEL position score file used to read REVEL scores instead of querying the database.
+     * @param revelScoreFile path to the REVEL score file, "{dataRelease}" is replaced by the data release number; null to
+     *                       read scores from the database
+     * @return this adaptor
+     */
+    public MissenseVariationFunctionalScoreMongoDBAdaptor setRevelScoreFile(String revelScoreFile) {
+        this.revelScoreFile = revelScoreFile;
+        return this;
+    }
+
+    private PositionScoreFile getRevelScoreFile(int dataRelease) throws CellBaseException {
+        if (revelScoreFile == null) {
+            return null;
+        }
+        try {
+            // Releases with no file keep reading scores from the database
+            return PositionScoreFile.open(revelScoreFile, getReleaseNumber(dataRelease));
+        } catch (IOException e) {
+            throw new CellBaseException("Error opening REVEL score file '" + revelScoreFile + "' of release " + dataRelease + ": "
+                    + e.getMessage());
+        }
+    }
+
     public CellBaseDataResult<MissenseVariantFunctionalScore> query(String chromosome, int position, String reference, int dataRelease)
             throws CellBaseException {
         List<Bson> andBsonList = new ArrayList<>();
@@ -64,6 +102,37 @@ public class MissenseVariationFunctionalScoreMongoDBAdaptor extends CellBaseDBAd
                                                                                   String alternate, String aaReference,
                                                                                   String aaAlternate, int dataRelease)
             throws CellBaseException {
+        return getScores(getRevelScoreFile(dataRelease), chromosome, position, reference, alternate, aaReference, aaAlternate,
+                dataRelease);
+    }
+
+    /**
+     * Gets the REVEL scores of a batch of missense variants, the REVEL score file is looked up once for the whole batch.
+     * @param variants list of variants
+     * @param aaReferences reference amino acids, in the same order as the variants
+     * @param aaAlternates alternate amino acids, in the same order as the variants
+     * @param dataRelease data release
+     * @return one result per variant, in the same order
+     * @throws CellBaseException if the data release is not valid or the score file can not be opened
+     */
+    public List<CellBaseDataResult<TranscriptMissenseVariantFunctionalScore>> getScores(List<Variant> variants, List<String> aaReferences,
+                                                                                        List<String> aaAlternates, int dataRelease)
+            throws CellBaseException {
+        PositionScoreFile scoreFile = getRevelScoreFile(dataRelease);
+        List<CellBaseDataResult<TranscriptMissenseVariantFunctionalScore>> results = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            results.add(getScores(scoreFile, variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate(),
+                    aaReferences.get(i), aaAlternates.get(i), dataRelease));
+        }
+        return results;
+    }
+
+    private CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> getScores(PositionScoreFile scoreFile, String chromosome,
+                                                                                   int position, String reference, String alternate,
+                                                                                   String aaReference, String aaAlternate,
+                                                                                   int dataRelease)
+            throws CellBaseException {
         List<Bson> andBsonList = new ArrayList<>();
         andBsonList.add(Filters.eq("chromosome", chromosome));
         andBsonList.add(Filters.eq("position", position));
@@ -72,13 +141,21 @@ public class MissenseVariationFunctionalScoreMongoDBAdaptor extends CellBaseDBAd
 
         final String id = chromosome + ":" + position + ":" + reference + ":" + alternate;
 
+        // Search for the right aa change
+        String aaReferenceAbbreviation = VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aaReference);
+        String aaAlternateAbbreviation = VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aaAlternate);
+        if (scoreFile != null) {
+            CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> result = getScoresFromFile(scoreFile, id, chromosome, position,
+                    alternate, aaReferenceAbbreviation, aaAlternateAbbreviation);
+            if (result != null) {
+                return result;
+            }
+        }
+
         MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
         DataResult<MissenseVariantFunctionalScore> missenseVariantFunctionalScoreDataResult =
                 mongoDBCollection.find(query, null, MissenseVariantFunctionalScore.class, new QueryOptions());
 
-        // Search for the right aa change
-        String aaReferenceAbbreviation = VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aaReference);
-        String aaAlternateAbbreviation = VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aaAlternate);
         if (missenseVariantFunctionalScoreDataResult.getNumResults() > 0) {
             for (MissenseVariantFunctionalScore score : missenseVariantFunctionalScoreDataResult.getResults()) {
                 for (TranscriptMissenseVariantFunctionalScore transcriptScore : score.getScores()) {
@@ -93,4 +170,28 @@ public class MissenseVariationFunctionalScoreMongoDBAdaptor extends CellBaseDBAd
         return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 0, null, 0);
     }
 
+    private CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> getScoresFromFile(PositionScoreFile scoreFile, String id,
+                                                                                           String chromosome, int position,
+                                                                                           String alternate, String aaReference,
+                                                                                           String aaAlternate) {
+        int scoreColumn = scoreFile.getColumnIndex(PositionScoreFile.getColumnName(REVEL, alternate));
+        int aaChangeColumn = scoreFile.getColumnIndex(PositionScoreFile.getColumnName(REVEL_AA_CHANGE, alternate));
+        if (scoreColumn < 0 || aaChangeColumn < 0 || aaReference == null || aaAlternate == null) {
+            return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 0, null, 0);
+        }
+        short aaChange = scoreFile.getValue(chromosome, position, aaChangeColumn);
+        if (aaChange == MULTIPLE_AA_CHANGES) {
+            // Several amino acid changes for this alternate, they are only stored in the database
+            return null;
+        }
+        short score = scoreFile.getValue(chromosome, position, scoreColumn);
+        if (score != PositionScoreFile.MISSING
+                && aaReference.equalsIgnoreCase(String.valueOf((char) ((aaChange >> 8) & 0xFF)))
+                && aaAlternate.equalsIgnoreCase(String.valueOf((char) (aaChange & 0xFF)))) {
+            TranscriptMissenseVariantFunctionalScore transcriptScore = new TranscriptMissenseVariantFunctionalScore("", alternate,
+                    aaReference, aaAlternate, score / DECIMAL_RESOLUTION);
+            return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 1, Collections.singletonList(transcriptScore), 1);
+        }
+        return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 0, null, 0);
+    }
 }
@@ -16,7 +16,6 @@
 
 package org.opencb.cellbase.lib.impl.core;
 
-import com.mongodb.BasicDBList;
 import com.mongodb.MongoClient;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
@@ -134,17 +133,7 @@ public class ProteinMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
                 } else {
                     List<Score> scoreList = null;
                     if (result.getNumResults() == 1 && aaPositionsDocument != null) {
-                        scoreList = new ArrayList<>(NUM_PROTEIN_SUBSTITUTION_SCORE_METHODS);
-                        Document positionDocument = (Document) aaPositionsDocument.get(Integer.toString(position));
-                        Document aaDocument = (Document) positionDocument.get(aaShortName);
-                        if (aaDocument.get("ss") != null) {
-                            scoreList.add(new Score(Double.parseDouble("" + aaDocument.get("ss")),
-                                    "sift", VariantAnnotationUtils.SIFT_DESCRIPTIONS.get(aaDocument.get("se"))));
-                        }
-                        if (aaDocument.get("ps") != null) {
-                            scoreList.add(new Score(Double.parseDouble("" + aaDocument.get("ps")),
-                                    "polyphen", VariantAnnotationUtils.POLYPHEN_DESCRIPTIONS.get(aaDocument.get("pe"))));
-                        }
+                        scoreList = getScores(aaPositionsDocument, position, aaShortName);
                     }
                     result.setResults(scoreList);
                 }
@@ -155,6 +144,25 @@ public class ProteinMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
 
     }
 
+    private List<Score> getScores(Document aaPositionsDocument, int position, String aaShortName) {
+        List<Score> scoreList = new ArrayList<>(NUM_PROTEIN_SUBSTITUTION_SCORE_METHODS);
+        Document positionDocument = aaPositionsDocument != null
+                ? (Document) aaPositionsDocument.get(Integer.toString(position))
+                : null;
+        Document aaDocument = positionDocument != null ? (Document) positionDocument.get(aaShortName) : null;
+        if (aaDocument != null) {
+            if (aaDocument.get("ss") != null) {
+                scoreList.add(new Score(Double.parseDouble("" + aaDocument.get("ss")),
+                        "sift", VariantAnnotationUtils.SIFT_DESCRIPTIONS.get(aaDocument.get("se"))));
+            }
+            if (aaDocument.get("ps") != null) {
+                scoreList.add(new Score(Double.parseDouble("" + aaDocument.get("ps")),
+                        "polyphen", VariantAnnotationUtils.POLYPHEN_DESCRIPTIONS.get(aaDocument.get("pe"))));
+            }
+        }
+        return scoreList;
+    }
+
 //    public CellBaseDataResult<Score> getSubstitutionScores(Query query, QueryOptions options) {
 //        CellBaseDataResult result = null;
 //
@@ -219,72 +227,131 @@ public class ProteinMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
     public CellBaseDataResult<ProteinVariantAnnotation> getVariantAnnotation(String ensemblTranscriptId, int position, String aaReference,
                                                                       String aaAlternate, QueryOptions options, int dataRelease)
             throws CellBaseException {
-        CellBaseDataResult<ProteinVariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>();
-        cellBaseDataResult.setId(ensemblTranscriptId + "/" + position + "/" + aaAlternate);
+        return getVariantAnnotation(Collections.singletonList(ensemblTranscriptId), Collections.singletonList(position),
+                Collections.singletonList(aaReference), Collections.singletonList(aaAlternate), options, dataRelease).get(0);
+    }
+
+    /**
+     * Batch version of {@link #getVariantAnnotation(String, int, String, String, QueryOptions, int)}. Substitution scores of all
+     * the transcripts are fetched with one single query, UniProt entries are fetched once and their features are then resolved
+     * by position in memory.
+     * @param ensemblTranscriptIds Ensembl transcript ids
+     * @param positions amino acid positions, one per transcript id
+     * @param aaReferences reference amino acids, one per transcript id
+     * @param aaAlternates alternate amino acids, one per transcript id
+     * @param options query options
+     * @param dataRelease data release
+     * @return one result per transcript id, in the same order
+     * @throws CellBaseException if the data release is not valid
+     */
+    public List<CellBaseDataResult<ProteinVariantAnnotation>> getVariantAnnotation(List<String> ensemblTranscriptIds,
+                                                                                   List<Integer> positions, List<String> aaReferences,
+                                                                                   List<String> aaAlternates, QueryOptions options,
+                                                                                   int dataRelease)
+            throws CellBaseException {
         long dbTimeStart = System.currentTimeMillis();
+        Map<String, Document> aaPositionsByTranscript = getAaPositions(ensemblTranscriptIds, positions, aaReferences, aaAlternates,
+                dataRelease);
+        Map<String, UniProtFeatureIndex> featureIndexByTranscript = getUniProtFeatureIndexes(ensemblTranscriptIds, aaAlternates,
+                dataRelease);
+        int dbTime = Long.valueOf(System.currentTimeMillis() - dbTimeStart).intValue();
+
+        List<CellBaseDataResult<ProteinVariantAnnotation>> results = new ArrayList<>(ensemblTranscriptIds.size());
+        for (int i = 0; i < ensemblTranscriptIds.size(); i++) {
+            String ensemblTranscriptId = ensemblTranscriptIds.get(i);
+            int position = positions.get(i);
+            String aaReference = aaReferences.get(i);
+            String aaAlternate = aaAlternates.get(i);
+
+            ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
+            proteinVariantAnnotation.setPosition(position);
+            proteinVariantAnnotation.setReference(aaReference);
+            proteinVariantAnnotation.setAlternate(aaAlternate);
+            // Stop_gain/lost variants do not have SIFT/POLYPHEN scores, scores are left null when the transcript has no
+            // SIFT/POLYPHEN document
+            Document aaPositionsDocument = aaPositionsByTranscript.get(ensemblTranscriptId.split("\\.")[0]);
+            if (!aaAlternate.equals("STOP") && !aaReference.equals("STOP") && aaPositionsDocument != null) {
+                proteinVariantAnnotation.setSubstitutionScores(getScores(aaPositionsDocument, position,
+                        aaShortNameMap.get(aaAlternate.toUpperCase())));
+            }
+
+            String shortAlternativeAa = aaShortNameMap.get(aaAlternate);
+            UniProtFeatureIndex featureIndex = featureIndexByTranscript.get(ensemblTranscriptId);
+            if (shortAlternativeAa != null && featureIndex != null) {
+                List<Document> featureList = featureIndex.getFeatures(position, shortAlternativeAa);
+                if (!featureList.isEmpty()) {
+                    processProteinVariantData(proteinVariantAnnotation, shortAlternativeAa, featureIndex.getAccession(),
+                            featureIndex.getKeywords(), featureList);
+                }
+            }
 
-        ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
-        proteinVariantAnnotation.setPosition(position);
-        proteinVariantAnnotation.setReference(aaReference);
-        proteinVariantAnnotation.setAlternate(aaAlternate);
-//        Query query = new Query("transcript", ensemblTranscriptId).append("position", position).append("aa", aaAlternate);
-        // Stop_gain/lost variants do not have SIFT/POLYPHEN scores
-//        System.out.println("aaReference = " + aaReference);
-//        System.out.println("aaAlternate = " + aaAlternate);
-        if (!aaAlternate.equals("STOP") && !aaReference.equals("STOP")) {
-            TranscriptQuery query = new TranscriptQuery();
-            query.setTranscriptsId(Collections.singletonList(ensemblTranscriptId));
-            proteinVariantAnnotation.setSubstitutionScores(getSubstitutionScores(query, position, aaAlternate).getResults());
+            CellBaseDataResult<ProteinVariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>();
+            cellBaseDataResult.setId(ensemblTranscriptId + "/" + position + "/" + aaAlternate);
+            cellBaseDataResult.setTime(dbTime);
+            cellBaseDataResult.setNumResults(1);
+            cellBaseDataResult.setResults(Collections.singletonList(proteinVariantAnnotation));
+            results.add(cellBaseDataResult);
         }
+        return results;
+    }
 
-        CellBaseDataResult proteinVariantData;
-        String shortAlternativeAa = aaShortNameMap.get(aaAlternate);
-        if (shortAlternativeAa != null) {
-            List<Bson> pipeline = new ArrayList<>();
-            pipeline.add(new Document("$match", new Document("dbReference.id", ensemblTranscriptId)));
-
-            Document projection = new Document();
-            projection.put("accession", 1);
-            projection.put("keyword", 1);
-            projection.put("feature", 1);
-            pipeline.add(new Document("$project", projection));
-
-            pipeline.add(new Document("$unwind", "$feature"));
-
-            BasicDBList andDBList2 = new BasicDBList();
-            andDBList2.add(new Document("feature.location.position.position", position));
-            andDBList2.add(new Document("feature.variation", shortAlternativeAa));
-            Document firstOr = new Document("$and", andDBList2);
-            BasicDBList andDBList3 = new BasicDBList();
-            andDBList3.add(new Document("feature.location.end.position", new Document("$gte", position)));
-            andDBList3.add(new Document("feature.location.begin.position", new Document("$lte", position)));
-            Document secondOr = new Document();
-            secondOr.put("$and", andDBList3);
-            BasicDBList orList = new BasicDBList();
-            orList.add(firstOr);
-            orList.add(secondOr);
-            pipeline.add(new Document("$match", new Document("$or", orList)));
-
-            Document groupFields = new Document();
-            groupFields.put("_id", "$accession");
-            groupFields.put("keyword", new Document("$addToSet", "$keyword"));
-            groupFields.put("feature", new Document("$addToSet", "$feature"));
-            pipeline.add(new Document("$group", groupFields));
+    private Map<String, Document> getAaPositions(List<String> ensemblTranscriptIds, List<Integer> positions,
+                                                 List<String> aaReferences, List<String> aaAlternates, int dataRelease)
+            throws CellBaseException {
+        // Projection is used to minimize the returned data, only the requested positions and amino acids are included
+        Set<String> transcriptIds = new HashSet<>();
+        Set<String> projectionFields = new LinkedHashSet<>();
+        projectionFields.add("transcriptId");
+        for (int i = 0; i < ensemblTranscriptIds.size(); i++) {
+            String aaShortName = aaShortNameMap.get(aaAlternates.get(i).toUpperCase());
+            if (aaShortName != null && !aaReferences.get(i).equals("STOP")) {
+                transcriptIds.add(ensemblTranscriptIds.get(i).split("\\.")[0]);
+                projectionFields.add("aaPositions." + positions.get(i) + "." + aaShortName);
+            }
+        }
 
-            MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
-            proteinVariantData = executeAggregation2(ensemblTranscriptId + "_" + String.valueOf(position) + "_"
-                    + aaAlternate, pipeline, new QueryOptions(), mongoDBCollection);
-            if (proteinVariantData.getNumResults() > 0) {
-                proteinVariantAnnotation = processProteinVariantData(proteinVariantAnnotation, shortAlternativeAa,
-                        (Document) proteinVariantData.getResults().get(0));
+        Map<String, Document> aaPositionsByTranscript = new HashMap<>();
+        if (!transcriptIds.isEmpty()) {
+            MongoDBCollection mongoDBCollection = getCollectionByRelease(proteinSubstitutionMongoDBCollectionByRelease, dataRelease);
+            Bson query = Filters.in("transcriptId", transcriptIds);
+            Bson projection = Projections.include(new ArrayList<>(projectionFields));
+            for (Document document : mongoDBCollection.find(query, projection, new QueryOptions()).getResults()) {
+                aaPositionsByTranscript.putIfAbsent(document.getString("transcriptId"), (Document) document.get("aaPositions"));
             }
         }
+        return aaPositionsByTranscript;
+    }
 
-        long dbTimeEnd = System.currentTimeMillis();
-        cellBaseDataResult.setTime(Long.valueOf(dbTimeEnd - dbTimeStart).intValue());
-        cellBaseDataResult.setNumResults(1);
-        cellBaseDataResult.setResults(Collections.singletonList(proteinVariantAnnotation));
-        return cellBaseDataResult;
+    private Map<String, UniProtFeatureIndex> getUniProtFeatureIndexes(List<String> ensemblTranscriptIds, List<String> aaAlternates,
+                                                                      int dataRelease)
+            throws CellBaseException {
+        Set<String> transcriptIds = new HashSet<>();
+        for (int i = 0; i < ensemblTranscriptIds.size(); i++) {
+            if (aaShortNameMap.get(aaAlternates.get(i)) != null) {
+                transcriptIds.add(ensemblTranscriptIds.get(i));
+            }
+        }
+
+        // Several transcripts usually share one entry, every entry is indexed once
+        Map<String, UniProtFeatureIndex> featureIndexByTranscript = new HashMap<>();
+        if (!transcriptIds.isEmpty()) {
+            MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
+            Bson query = Filters.in("dbReference.id", transcriptIds);
+            Bson projection = Projections.include("accession", "keyword", "feature", "dbReference.id");
+            for (Document entry : mongoDBCollection.find(query, projection, new QueryOptions()).getResults()) {
+                UniProtFeatureIndex featureIndex = null;
+                for (Object dbReference : entry.get("dbReference", List.class)) {
+                    String id = ((Document) dbReference).getString("id");
+                    if (transcriptIds.contains(id) && !featureIndexByTranscript.containsKey(id)) {
+                        if (featureIndex == null) {
+                            featureIndex = new UniProtFeatureIndex(entry);
+                        }
+                        featureIndexByTranscript.put(id, featureIndex);
+                    }
+                }
+            }
+        }
+        return featureIndexByTranscript;
     }
 
     @Override
@@ -430,18 +497,17 @@ public class ProteinMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
 //    }
 
     private ProteinVariantAnnotation processProteinVariantData(ProteinVariantAnnotation proteinVariantAnnotation,
-                                                               String shortAlternativeAa, Document proteinVariantData) {
+                                                               String shortAlternativeAa, String accession,
+                                                               List<Document> keywordList, List<Document> featureList) {
 
-        proteinVariantAnnotation.setUniprotAccession(proteinVariantData.get("_id", ArrayList.class).get(0).toString());
+        proteinVariantAnnotation.setUniprotAccession(accession);
 
         proteinVariantAnnotation.setKeywords(new ArrayList<>());
-        ArrayList keywordList = (ArrayList) proteinVariantData.get("keyword", ArrayList.class).get(0);
-        for (Object keywordObject : keywordList) {
-            proteinVariantAnnotation.getKeywords().add((String) ((Document) keywordObject).get("value"));
+        for (Document keywordDocument : keywordList) {
+            proteinVariantAnnotation.getKeywords().add((String) keywordDocument.get("value"));
         }
 
         proteinVariantAnnotation.setFeatures(new ArrayList<>());
-        ArrayList featureList = proteinVariantData.get("feature", ArrayList.class);
         for (Object featureObject : featureList) {
             Document featureDocument = (Document) featureObject;
             String type = (String) featureDocument.get("type");
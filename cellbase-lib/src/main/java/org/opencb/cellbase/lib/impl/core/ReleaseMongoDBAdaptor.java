@@ -35,6 +35,7 @@ import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.List;
+import java.util.Map;
 
 public class ReleaseMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCoreDBAdaptor {
 
@@ -70,6 +71,27 @@ public class ReleaseMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         mongoDBCollection.findAndUpdate(query, projection, null, update, queryOptions);
     }
 
+    /**
+     * Replaces the load checkpoint of an input file, or adds it when the file has no checkpoint yet. Each statement updates
+     * only the element of the file in the 'checkpoints' array, so concurrent loads of other files do not lose updates.
+     * @param release data release
+     * @param data data being loaded
+     * @param file input file name
+     * @param checkpoint checkpoint document
+     */
+    public void updateCheckpoint(int release, String data, String file, Map<String, Object> checkpoint) {
+        Bson elemMatch = Filters.elemMatch("checkpoints", Filters.and(Filters.eq("data", data), Filters.eq("file", file)));
+        Bson replaceQuery = Filters.and(Filters.eq("release", release), elemMatch);
+        Bson pushQuery = Filters.and(Filters.eq("release", release), Filters.not(elemMatch));
+        Bson replace = Updates.set("checkpoints.$", checkpoint);
+        Bson push = Updates.push("checkpoints", checkpoint);
+        if (mongoDBCollection.update(replaceQuery, replace, QueryOptions.empty()).getNumMatches() == 0
+                && mongoDBCollection.update(pushQuery, push, QueryOptions.empty()).getNumMatches() == 0) {
+            // The checkpoint was added in between by another writer
+            mongoDBCollection.update(replaceQuery, replace, QueryOptions.empty());
+        }
+    }
+
     @Override
     public CellBaseDataResult query(AbstractQuery query) {
         return null;
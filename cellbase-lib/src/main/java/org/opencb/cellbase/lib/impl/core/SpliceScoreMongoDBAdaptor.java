@@ -21,6 +21,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.bson.conversions.Bson;
 import org.opencb.biodata.models.core.SpliceScore;
 import org.opencb.biodata.models.core.SpliceScoreAlternate;
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.EtlCommons;
@@ -29,9 +30,7 @@ import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 public class SpliceScoreMongoDBAdaptor extends CellBaseDBAdaptor {
 
@@ -70,23 +69,82 @@ public class SpliceScoreMongoDBAdaptor extends CellBaseDBAdaptor {
         MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
         DataResult<SpliceScore> spliceScoreDataResult = mongoDBCollection.find(query, null, SpliceScore.class, new QueryOptions());
 
-        List<SpliceScore> results = new ArrayList<>();
+        List<SpliceScore> results = getAlternateScores(spliceScoreDataResult.getResults(), alt);
+        int dbTime = Long.valueOf(System.currentTimeMillis() - dbTimeStart).intValue();
+        return new CellBaseDataResult<>(id, dbTime, new ArrayList<>(), results.size(), results, results.size());
+    }
 
-        // Search for the right splice score
-        if (spliceScoreDataResult.getNumResults() > 0) {
-//            System.out.println("\t\tgetScores >>>>>>> num. results = " + spliceScoreDataResult.getNumResults());
-            for (SpliceScore score : spliceScoreDataResult.getResults()) {
-                for (SpliceScoreAlternate scoreAlternate : score.getAlternates()) {
-                    if (alt.equals(scoreAlternate.getAltAllele())) {
-                        score.setAlternates(Collections.singletonList(scoreAlternate));
-//                        System.out.println("\t\t\t\tgetScores, MATCH (" + score.getSource() + "): " + alt + " vs "
-//                                + scoreAlternate.getAltAllele());
-                        results.add(score);
-                    }
-                }
+    /**
+     * Fetches the splice scores of a list of variants with one single query per chromosome, documents are then indexed by
+     * position and reference allele and the alternates are resolved in memory.
+     * @param variants list of Variant objects to query
+     * @param dataRelease release of the data (aka, version)
+     * @return list of CellBaseDataResult of SpliceScore objects, positions within the list correspond to the positions of the
+     * Variant objects in the "variants" query list
+     * @throws CellBaseException if the data release is not valid
+     */
+    public List<CellBaseDataResult<SpliceScore>> getScores(List<Variant> variants, int dataRelease) throws CellBaseException {
+        long dbTimeStart = System.currentTimeMillis();
+
+        Map<String, Set<Integer>> positionsByChromosome = new LinkedHashMap<>();
+        for (Variant variant : variants) {
+            positionsByChromosome.computeIfAbsent(variant.getChromosome(), k -> new HashSet<>()).add(variant.getStart());
+        }
+
+        MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
+        Map<String, List<SpliceScore>> spliceScoresByKey = new HashMap<>();
+        for (Map.Entry<String, Set<Integer>> entry : positionsByChromosome.entrySet()) {
+            Bson query = Filters.and(Filters.eq("chromosome", entry.getKey()), Filters.in("position", entry.getValue()));
+            DataResult<SpliceScore> spliceScoreDataResult = mongoDBCollection.find(query, null, SpliceScore.class, new QueryOptions());
+            for (SpliceScore spliceScore : spliceScoreDataResult.getResults()) {
+                String key = getSpliceScoreKey(spliceScore.getChromosome(), spliceScore.getPosition(), spliceScore.getRefAllele());
+                spliceScoresByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(spliceScore);
             }
         }
         int dbTime = Long.valueOf(System.currentTimeMillis() - dbTimeStart).intValue();
-        return new CellBaseDataResult<>(id, dbTime, new ArrayList<>(), results.size(), results, results.size());
+
+        List<CellBaseDataResult<SpliceScore>> cellBaseDataResults = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            String ref = StringUtils.isEmpty(variant.getReference()) ? "-" : variant.getReference();
+            String alt = StringUtils.isEmpty(variant.getAlternate()) ? "-" : variant.getAlternate();
+            String id = variant.getChromosome() + ":" + variant.getStart() + ":" + ref + ":" + alt;
+            List<SpliceScore> spliceScores = spliceScoresByKey.get(getSpliceScoreKey(variant.getChromosome(), variant.getStart(), ref));
+            List<SpliceScore> results = spliceScores != null ? getAlternateScores(spliceScores, alt) : new ArrayList<>();
+            cellBaseDataResults.add(new CellBaseDataResult<>(id, dbTime, new ArrayList<>(), results.size(), results, results.size()));
+        }
+        return cellBaseDataResults;
+    }
+
+    private static String getSpliceScoreKey(String chromosome, int position, String reference) {
+        return chromosome + ":" + position + ":" + reference;
+    }
+
+    /**
+     * Search for the right splice scores, i.e. the alternates of each document matching the variant alternate.
+     * @param spliceScores splice score documents of the variant position and reference allele
+     * @param alt variant alternate allele
+     * @return splice scores with only the matching alternate, documents are not modified since they may be shared by
+     * several variants
+     */
+    private static List<SpliceScore> getAlternateScores(List<SpliceScore> spliceScores, String alt) {
+        List<SpliceScore> results = new ArrayList<>();
+        for (SpliceScore score : spliceScores) {
+            for (SpliceScoreAlternate scoreAlternate : score.getAlternates()) {
+                if (alt.equals(scoreAlternate.getAltAllele())) {
+                    SpliceScore result = new SpliceScore();
+                    result.setChromosome(score.getChromosome());
+                    result.setPosition(score.getPosition());
+                    result.setRefAllele(score.getRefAllele());
+                    result.setGeneId(score.getGeneId());
+                    result.setGeneName(score.getGeneName());
+                    result.setTranscriptId(score.getTranscriptId());
+                    result.setExonId(score.getExonId());
+                    result.setSource(score.getSource());
+                    result.setAlternates(Collections.singletonList(scoreAlternate));
+                    results.add(result);
+                }
+            }
+        }
+        return results;
     }
 }
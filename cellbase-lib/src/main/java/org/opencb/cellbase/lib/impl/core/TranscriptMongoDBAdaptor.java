@@ -32,6 +32,7 @@ import org.opencb.cellbase.core.api.TranscriptQuery;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.impl.core.converters.DocumentConverter;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
 import org.opencb.commons.datastore.core.Query;
@@ -54,7 +55,7 @@ public class TranscriptMongoDBAdaptor extends CellBaseDBAdaptor implements CellB
     private static final GenericDocumentComplexConverter<Transcript> CONVERTER;
 
     static {
-        CONVERTER = new GenericDocumentComplexConverter<>(Transcript.class);
+        CONVERTER = new DocumentConverter<>(Transcript.class);
     }
 
     public TranscriptMongoDBAdaptor(MongoDataStore mongoDataStore) {
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.bson.Document;
+
+import java.util.*;
+
+/**
+ * Features of one UniProt entry indexed by location. The features affected by a protein variant are resolved in memory
+ * with the same criteria as the aggregation run for single variants: features at the variant position that list the
+ * alternate amino acid as variation, and features whose begin-end range contains the variant position.
+ */
+final class UniProtFeatureIndex {
+
+    private final String accession;
+    private final List<Document> keywords;
+    private final List<Document> features;
+
+    // Features located at one single position, by position
+    private final Map<Integer, List<Integer>> positionFeatures;
+    // Features located in a range, sorted by begin, with the running maximum of the ends to stop scanning early
+    private final int[] begins;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final int[] rangeFeatures;
+
+    @SuppressWarnings("unchecked")
+    UniProtFeatureIndex(Document entry) {
+        List<Object> accessions = entry.get("accession", List.class);
+        this.accession = accessions != null && !accessions.isEmpty() ? accessions.get(0).toString() : null;
+        List<Document> keywordList = entry.get("keyword", List.class);
+        this.keywords = keywordList != null ? keywordList : Collections.emptyList();
+        List<Document> featureList = entry.get("feature", List.class);
+        this.features = featureList != null ? featureList : Collections.emptyList();
+
+        this.positionFeatures = new HashMap<>();
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            Document location = (Document) features.get(i).get("location");
+            if (location == null) {
+                continue;
+            }
+            Integer position = getPosition(location, "position");
+            if (position != null) {
+                positionFeatures.computeIfAbsent(position, k -> new ArrayList<>()).add(i);
+            } else {
+                Integer begin = getPosition(location, "begin");
+                Integer end = getPosition(location, "end");
+                if (begin != null && end != null) {
+                    ranges.add(new int[]{begin, end, i});
+                }
+            }
+        }
+
+        ranges.sort(Comparator.comparingInt(range -> range[0]));
+        this.begins = new int[ranges.size()];
+        this.ends = new int[ranges.size()];
+        this.maxEnds = new int[ranges.size()];
+        this.rangeFeatures = new int[ranges.size()];
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < ranges.size(); i++) {
+            begins[i] = ranges.get(i)[0];
+            ends[i] = ranges.get(i)[1];
+            maxEnd = Math.max(maxEnd, ends[i]);
+            maxEnds[i] = maxEnd;
+            rangeFeatures[i] = ranges.get(i)[2];
+        }
+    }
+
+    private static Integer getPosition(Document location, String key) {
+        Document positionDocument = (Document) location.get(key);
+        if (positionDocument != null && positionDocument.get("position") instanceof Number) {
+            return ((Number) positionDocument.get("position")).intValue();
+        }
+        return null;
+    }
+
+    /**
+     * Features affected by an amino acid change.
+     * @param position 1-based amino acid position
+     * @param shortAlternativeAa one letter code of the alternate amino acid
+     * @return distinct affected features, in the order found in the entry
+     */
+    List<Document> getFeatures(int position, String shortAlternativeAa) {
+        // Sorted indexes keep the entry order
+        Set<Integer> matches = new TreeSet<>();
+        for (int i : positionFeatures.getOrDefault(position, Collections.emptyList())) {
+            Object variation = features.get(i).get("variation");
+            if (variation instanceof List && ((List<?>) variation).contains(shortAlternativeAa)) {
+                matches.add(i);
+            }
+        }
+        // Every range up to 'last' begins at or before the position, scanning stops when none of the remaining ends after it
+        for (int i = lastBeginningAtOrBefore(position); i >= 0 && maxEnds[i] >= position; i--) {
+            if (ends[i] >= position) {
+                matches.add(rangeFeatures[i]);
+            }
+        }
+
+        Set<Document> featureSet = new LinkedHashSet<>();
+        for (int i : matches) {
+            featureSet.add(features.get(i));
+        }
+        return new ArrayList<>(featureSet);
+    }
+
+    private int lastBeginningAtOrBefore(int position) {
+        int low = 0;
+        int high = begins.length - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (begins[mid] <= position) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return last;
+    }
+
+    String getAccession() {
+        return accession;
+    }
+
+    List<Document> getKeywords() {
+        return keywords;
+    }
+}
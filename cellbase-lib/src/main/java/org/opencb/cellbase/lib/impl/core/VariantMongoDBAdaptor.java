@@ -18,7 +18,6 @@ package org.opencb.cellbase.lib.impl.core;
 
 import com.mongodb.BulkWriteException;
 import com.mongodb.MongoClient;
-import com.mongodb.QueryBuilder;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.model.Filters;
 import org.apache.commons.lang3.StringUtils;
@@ -35,12 +34,15 @@ import org.opencb.cellbase.core.api.query.LogicalList;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.core.utils.LruCache;
 import org.opencb.cellbase.core.variant.PopulationFrequencyPhasedQueryManager;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.cellbase.lib.impl.core.converters.VariantConverter;
+import org.opencb.cellbase.lib.impl.file.PositionScoreFile;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
 import org.opencb.cellbase.lib.iterator.VariantMongoDBIterator;
+import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -48,6 +50,7 @@ import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -61,11 +64,17 @@ public class VariantMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
     private static final float DECIMAL_RESOLUTION = 100f;
     private static final String ENSEMBL_GENE_ID_PATTERN = "ENSG00";
     private static final String ENSEMBL_TRANSCRIPT_ID_PATTERN = "ENST00";
+    private static final String CADD_RAW = "cadd_raw";
+    private static final String CADD_SCALED = "cadd_scaled";
+    // Each cached chunk keeps the raw and scaled CADD values of 1,000 positions, about 16 KB, i.e. about 64 MB by default
+    public static final int DEFAULT_CADD_CHUNK_CACHE_SIZE = 4000;
     private static PopulationFrequencyPhasedQueryManager populationFrequencyPhasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
 
 
     private Map<Integer, MongoDBCollection> caddDBCollectionByRelease;
+    private LruCache<String, List<CaddChunk>> caddChunkCache;
+    private String caddScoreFile;
 
     public VariantMongoDBAdaptor(MongoDataStore mongoDataStore) {
         super(mongoDataStore);
@@ -78,6 +87,45 @@ public class VariantMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
 
         mongoDBCollectionByRelease = buildCollectionByReleaseMap("variation");
         caddDBCollectionByRelease = buildCollectionByReleaseMap("variation_functional_score");
+        caddChunkCache = new LruCache<>(DEFAULT_CADD_CHUNK_CACHE_SIZE);
+    }
+
+    /**
+     * Sets the maximum number of CADD chunks kept in memory, cached chunks are dropped.
+     * @param caddChunkCacheSize number of chunks, values lower than 1 fall back to {@link #DEFAULT_CADD_CHUNK_CACHE_SIZE}
+     * @return this adaptor
+     */
+    public VariantMongoDBAdaptor setCaddChunkCacheSize(int caddChunkCacheSize) {
+        caddChunkCache = new LruCache<>(caddChunkCacheSize > 0 ? caddChunkCacheSize : DEFAULT_CADD_CHUNK_CACHE_SIZE);
+        return this;
+    }
+
+    public String getCaddScoreFile() {
+        return caddScoreFile;
+    }
+
+    /**
+     * Sets the CADD position score file used to read CADD scores instead of querying the database.
+     * @param caddScoreFile path to the CADD score file, "{dataRelease}" is replaced by the data release number; null to
+     *                      read scores from the database
+     * @return this adaptor
+     */
+    public VariantMongoDBAdaptor setCaddScoreFile(String caddScoreFile) {
+        this.caddScoreFile = caddScoreFile;
+        return this;
+    }
+
+    private PositionScoreFile getCaddScoreFile(int dataRelease) throws CellBaseException {
+        if (caddScoreFile == null) {
+            return null;
+        }
+        try {
+            // Releases with no file keep reading scores from the database
+            return PositionScoreFile.open(caddScoreFile, getReleaseNumber(dataRelease));
+        } catch (IOException e) {
+            throw new CellBaseException("Error opening CADD score file '" + caddScoreFile + "' of release " + dataRelease + ": "
+                    + e.getMessage());
+        }
     }
 
     public CellBaseDataResult<Variant> next(Query query, QueryOptions options) {
@@ -549,101 +597,136 @@ public class VariantMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
 
     public CellBaseDataResult<Score> getFunctionalScoreVariant(Variant variant, QueryOptions queryOptions, int dataRelease)
             throws CellBaseException {
-        String chromosome = variant.getChromosome();
-        int position = variant.getStart();
-        String reference = variant.getReference();
-        String alternate = variant.getAlternate();
-
-        String chunkId = getChunkIdPrefix(chromosome, position, MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE);
-        QueryBuilder builder = QueryBuilder.start("_chunkIds").is(chunkId);
-//                .and("chromosome").is(chromosome)
-//                .and("start").is(position);
-//        System.out.println(chunkId);
-        MongoDBCollection mongoDBCollection = getCollectionByRelease(caddDBCollectionByRelease, dataRelease);
-        CellBaseDataResult result = executeQuery(chromosome + "_" + position + "_" + reference + "_" + alternate,
-                new Document(builder.get().toMap()), queryOptions, mongoDBCollection);
-
-//        System.out.println("result = " + result);
-
-        List<Score> scores = new ArrayList<>();
-        for (Object object : result.getResults()) {
-//            System.out.println("object = " + object);
-            Document dbObject = (Document) object;
-            int chunkStart = dbObject.getInteger("start");
-            int chunkEnd = dbObject.getInteger("end");
-            // CADD positions are not continuous through the whole chromosome. Several documents may be associated with
-            // the same chunk id: we have to be sure that current document contains queried position. Only two documents
-            // will contain queried position - one for raw and one for scaled values
-            if (position >= chunkStart && position <= chunkEnd) {
-                int offset = (position - chunkStart);
-                ArrayList basicDBList = dbObject.get("values", ArrayList.class);
-
-//                long l1 = 0L; // TODO: delete
-//                try { // TODO: delete
-                long l1 = Long.parseLong(basicDBList.get(offset).toString());
-//                                 l1 = (Long) basicDBList.get(offset);
-//                } catch (Exception e) {  // TODO: delete
-//                    logger.error("problematic variant: {}", variant.toString());
-//                    throw e;
-//                }
-
-                if (dbObject.getString("source").equalsIgnoreCase("cadd_raw")) {
-                    float value = 0f;
-                    switch (alternate.toLowerCase()) {
-                        case "a":
-//                            value = ((short) (l1 >> 48) - 10000) / DECIMAL_RESOLUTION;
-                            value = (((short) (l1 >> 48)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "c":
-                            value = (((short) (l1 >> 32)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "g":
-                            value = (((short) (l1 >> 16)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "t":
-                            value = (((short) (l1 >> 0)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        default:
-                            break;
-                    }
+        return getFunctionalScoreVariant(Collections.singletonList(variant), queryOptions, dataRelease).get(0);
+    }
+
+    /**
+     * Fetches the CADD scores of a list of variants. Each distinct CADD chunk is queried only once, its packed values
+     * are decoded into primitive arrays and kept in a LRU cache, so that neighbour variants are resolved with array reads.
+     * @param variants list of Variant objects to query
+     * @param queryOptions query options, not used: only the fields needed to decode the scores are fetched
+     * @param dataRelease release of the data (aka, version)
+     * @return list of CellBaseDataResult of Score objects, positions within the list correspond to the positions of the
+     * Variant objects in the "variants" query list
+     * @throws CellBaseException CellBase exception
+     */
+    public List<CellBaseDataResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions queryOptions,
+                                                                     int dataRelease) throws CellBaseException {
+        PositionScoreFile scoreFile = getCaddScoreFile(dataRelease);
+        if (scoreFile != null) {
+            return getFunctionalScoreVariantFromFile(scoreFile, variants);
+        }
+
+        long dbTimeStart = System.currentTimeMillis();
+        Map<String, List<CaddChunk>> caddChunksById = getCaddChunks(variants, dataRelease);
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        List<CellBaseDataResult<Score>> results = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            int position = variant.getStart();
+            String chunkId = getChunkIdPrefix(variant.getChromosome(), position,
+                    MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE);
+            List<Score> scores = new ArrayList<>();
+            for (CaddChunk caddChunk : caddChunksById.get(chunkId)) {
+                // CADD positions are not continuous through the whole chromosome. Several documents may be associated with
+                // the same chunk id: we have to be sure that current document contains queried position. Only two documents
+                // will contain queried position - one for raw and one for scaled values
+                if (position >= caddChunk.start && position <= caddChunk.end) {
                     scores.add(Score.newBuilder()
-                            .setScore(value)
-                            .setSource(dbObject.getString("source"))
+                            .setScore(caddChunk.getScore(position, variant.getAlternate()))
+                            .setSource(caddChunk.source)
                             .setDescription(null)
-                            //                        .setDescription("")
                             .build());
                 }
+            }
+            String id = variant.getChromosome() + "_" + position + "_" + variant.getReference() + "_" + variant.getAlternate();
+            results.add(new CellBaseDataResult<>(id, dbTime, new ArrayList<>(), scores.size(), scores, scores.size()));
+        }
+        return results;
+    }
 
-                if (dbObject.getString("source").equalsIgnoreCase("cadd_scaled")) {
-                    float value = 0f;
-                    switch (alternate.toLowerCase()) {
-                        case "a":
-                            value = ((short) (l1 >> 48)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "c":
-                            value = ((short) (l1 >> 32)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "g":
-                            value = ((short) (l1 >> 16)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "t":
-                            value = ((short) (l1 >> 0)) / DECIMAL_RESOLUTION;
-                            break;
-                        default:
-                            break;
+    private List<CellBaseDataResult<Score>> getFunctionalScoreVariantFromFile(PositionScoreFile scoreFile, List<Variant> variants) {
+        long startTime = System.currentTimeMillis();
+        List<CellBaseDataResult<Score>> results = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            List<Score> scores = new ArrayList<>(2);
+            if (scoreFile.contains(variant.getChromosome(), variant.getStart())) {
+                for (String source : Arrays.asList(CADD_RAW, CADD_SCALED)) {
+                    // Same values as the database chunks, alternates other than A, C, G and T get a 0 score as well
+                    int column = scoreFile.getColumnIndex(PositionScoreFile.getColumnName(source, variant.getAlternate()));
+                    float score = 0f;
+                    if (column >= 0) {
+                        short value = scoreFile.getValue(variant.getChromosome(), variant.getStart(), column);
+                        score = CADD_RAW.equals(source) ? (value / DECIMAL_RESOLUTION) - 10 : value / DECIMAL_RESOLUTION;
+                    }
+                    scores.add(Score.newBuilder().setScore(score).setSource(source).setDescription(null).build());
+                }
+            }
+            String id = variant.getChromosome() + "_" + variant.getStart() + "_" + variant.getReference() + "_" + variant.getAlternate();
+            results.add(new CellBaseDataResult<>(id, (int) (System.currentTimeMillis() - startTime), new ArrayList<>(), scores.size(),
+                    scores, scores.size()));
+        }
+        return results;
+    }
+
+    private Map<String, List<CaddChunk>> getCaddChunks(List<Variant> variants, int dataRelease) throws CellBaseException {
+        Map<String, List<CaddChunk>> caddChunksById = new HashMap<>();
+        Set<String> missingChunkIds = new HashSet<>();
+        for (Variant variant : variants) {
+            String chunkId = getChunkIdPrefix(variant.getChromosome(), variant.getStart(),
+                    MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE);
+            if (!caddChunksById.containsKey(chunkId) && !missingChunkIds.contains(chunkId)) {
+                List<CaddChunk> caddChunks = caddChunkCache.get(getCaddChunkCacheKey(chunkId, dataRelease));
+                if (caddChunks != null) {
+                    caddChunksById.put(chunkId, caddChunks);
+                } else {
+                    missingChunkIds.add(chunkId);
+                }
+            }
+        }
+
+        if (!missingChunkIds.isEmpty()) {
+            Map<String, List<CaddChunk>> fetchedChunksById = new HashMap<>();
+            for (String chunkId : missingChunkIds) {
+                fetchedChunksById.put(chunkId, new ArrayList<>(2));
+            }
+
+            Bson bson = Filters.in("_chunkIds", missingChunkIds);
+            QueryOptions options = new QueryOptions(QueryOptions.INCLUDE, "start,end,source,values,_chunkIds");
+            logger.debug("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()).toJson());
+            MongoDBCollection mongoDBCollection = getCollectionByRelease(caddDBCollectionByRelease, dataRelease);
+            MongoDBIterator<Document> iterator = mongoDBCollection.nativeQuery().find(bson, options);
+            try {
+                while (iterator.hasNext()) {
+                    Document document = iterator.next();
+                    String source = document.getString("source");
+                    if (!CADD_RAW.equalsIgnoreCase(source) && !CADD_SCALED.equalsIgnoreCase(source)) {
+                        continue;
+                    }
+                    // A document may span several chunks, it is shared by all the requested ones
+                    CaddChunk caddChunk = new CaddChunk(document);
+                    for (Object chunkId : document.get("_chunkIds", List.class)) {
+                        List<CaddChunk> caddChunks = fetchedChunksById.get(chunkId);
+                        if (caddChunks != null) {
+                            caddChunks.add(caddChunk);
+                        }
                     }
-                    scores.add(Score.newBuilder()
-                            .setScore(value)
-                            .setSource(dbObject.getString("source"))
-                            .setDescription(null)
-                            //                        .setDescription("")
-                            .build());
                 }
+            } finally {
+                iterator.close();
+            }
+
+            // Chunks with no CADD values are cached too, they will not be queried again
+            for (Map.Entry<String, List<CaddChunk>> entry : fetchedChunksById.entrySet()) {
+                caddChunkCache.put(getCaddChunkCacheKey(entry.getKey(), dataRelease), entry.getValue());
+                caddChunksById.put(entry.getKey(), entry.getValue());
             }
         }
+        return caddChunksById;
+    }
 
-        result.setResults(scores);
-        return result;
+    private static String getCaddChunkCacheKey(String chunkId, int dataRelease) {
+        return chunkId + "_" + dataRelease;
     }
 
     /**
@@ -658,9 +741,12 @@ public class VariantMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
      */
     public List<CellBaseDataResult<Variant>> getPopulationFrequencyByVariant(List<Variant> variants, QueryOptions queryOptions,
                                                                              int dataRelease) throws CellBaseException {
-        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getByVariant(variant, queryOptions, dataRelease));
+        // Simple short variants are fetched in batch, the rest fall back to the single variant query
+        List<CellBaseDataResult<Variant>> results = getShortVariantsByChunk(variants, queryOptions, dataRelease);
+        for (int i = 0; i < variants.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, getByVariant(variants.get(i), queryOptions, dataRelease));
+            }
         }
 
         if (queryOptions.get(ParamConstants.QueryParams.PHASE.key()) != null && queryOptions.getBoolean(
@@ -671,16 +757,90 @@ public class VariantMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
         return results;
     }
 
+    /**
+     * Fetches simple short variants grouping them by chunk: one single query per chromosome looks for all the batch
+     * positions within the variants chunks, reference and alternate alleles are then matched in memory.
+     * @param variants list of Variant objects to query
+     * @param queryOptions query options
+     * @param dataRelease release of the data (aka, version)
+     * @return list with the same size and order as "variants", positions of variants that cannot be resolved by chunk
+     * (i.e. structural variants with confidence intervals) are left null
+     * @throws CellBaseException CellBase exception
+     */
+    private List<CellBaseDataResult<Variant>> getShortVariantsByChunk(List<Variant> variants, QueryOptions queryOptions,
+                                                                      int dataRelease) throws CellBaseException {
+        List<CellBaseDataResult<Variant>> results = new ArrayList<>(Collections.nCopies(variants.size(), null));
+
+        Map<String, Set<String>> chunkIdsByChromosome = new LinkedHashMap<>();
+        Map<String, Set<Integer>> startsByChromosome = new HashMap<>();
+        for (Variant variant : variants) {
+            if (isChunkQueryable(variant)) {
+                chunkIdsByChromosome.computeIfAbsent(variant.getChromosome(), k -> new HashSet<>())
+                        .add(getChunkIdPrefix(variant.getChromosome(), variant.getStart(),
+                                MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE));
+                startsByChromosome.computeIfAbsent(variant.getChromosome(), k -> new HashSet<>()).add(variant.getStart());
+            }
+        }
+        if (chunkIdsByChromosome.isEmpty()) {
+            return results;
+        }
+
+        // Alleles are needed to match the candidates, they are added if the caller restricted the included fields
+        QueryOptions options = addVariantPrivateExcludeOptions(new QueryOptions(queryOptions));
+        if (StringUtils.isNotEmpty(options.getString(QueryOptions.INCLUDE))) {
+            options.put(QueryOptions.INCLUDE, options.getString(QueryOptions.INCLUDE) + ",chromosome,start,reference,alternate");
+        }
+
+        MongoDBCollection mongoDBCollection = getCollectionByRelease(mongoDBCollectionByRelease, dataRelease);
+        Map<String, List<Variant>> candidatesByKey = new HashMap<>();
+        int dbTime = 0;
+        for (Map.Entry<String, Set<String>> entry : chunkIdsByChromosome.entrySet()) {
+            Bson bson = Filters.and(Filters.in("_chunkIds", entry.getValue()),
+                    Filters.in("start", startsByChromosome.get(entry.getKey())));
+            logger.debug("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()).toJson());
+            DataResult<Variant> dataResult = mongoDBCollection.find(bson, null, Variant.class, options);
+            dbTime += dataResult.getTime();
+            for (Variant candidate : dataResult.getResults()) {
+                candidatesByKey.computeIfAbsent(getAlleleKey(candidate), k -> new ArrayList<>()).add(candidate);
+            }
+        }
+
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            if (isChunkQueryable(variant)) {
+                List<Variant> matches = new ArrayList<>(candidatesByKey.getOrDefault(getAlleleKey(variant), Collections.emptyList()));
+                // Matches are not counted, as in the single variant query
+                results.set(i, new CellBaseDataResult<>("", dbTime, new ArrayList<>(), matches.size(), matches, -1));
+            }
+        }
+        return results;
+    }
+
+    private boolean isChunkQueryable(Variant variant) {
+        // Insertions may have end < start, if both fall in different chunks the start chunk is not indexed for the variant
+        return !hasConfidenceIntervals(variant)
+                && getChunkId(variant.getStart(), MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE)
+                <= getChunkId(variant.getEnd(), MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE);
+    }
+
+    private static boolean hasConfidenceIntervals(Variant variant) {
+        return variant.getSv() != null
+                && variant.getSv().getCiStartLeft() != null
+                && variant.getSv().getCiStartRight() != null
+                && variant.getSv().getCiEndLeft() != null
+                && variant.getSv().getCiEndRight() != null;
+    }
+
+    private static String getAlleleKey(Variant variant) {
+        return variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate();
+    }
+
     CellBaseDataResult getByVariant(Variant variant, QueryOptions options, int dataRelease) throws CellBaseException {
         Query query;
 //        if (VariantType.CNV.equals(variant.getType())) {
 
         // Queries for CNVs,SVs are different from simple short variants queries
-        if (variant.getSv() != null
-                && variant.getSv().getCiStartLeft() != null
-                && variant.getSv().getCiStartRight() != null
-                && variant.getSv().getCiEndLeft() != null
-                && variant.getSv().getCiEndRight() != null) {
+        if (hasConfidenceIntervals(variant)) {
             query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome());
             // Imprecise queries can just be enabled for structural variants providing CIPOS positions. Imprecise queries
             // can be disabled by using the imprecise=false query option
@@ -763,6 +923,53 @@ public class VariantMongoDBAdaptor extends CellBaseDBAdaptor implements CellBase
         }
         return results;
     }
-}
 
+    /**
+     * CADD document decoded into primitive values. Each value packs the scores of the four possible alternate alleles
+     * (A, C, G, T) as four shorts.
+     */
+    private static final class CaddChunk {
+        private final int start;
+        private final int end;
+        private final String source;
+        private final boolean raw;
+        private final long[] values;
+
+        CaddChunk(Document document) {
+            this.start = document.getInteger("start");
+            this.end = document.getInteger("end");
+            this.source = document.getString("source");
+            this.raw = CADD_RAW.equalsIgnoreCase(source);
+
+            List<?> valueList = document.get("values", List.class);
+            this.values = new long[valueList.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object value = valueList.get(i);
+                values[i] = (value instanceof Number) ? ((Number) value).longValue() : Long.parseLong(value.toString());
+            }
+        }
 
+        float getScore(int position, String alternate) {
+            long packedValue = values[position - start];
+            short value;
+            switch (alternate.toLowerCase()) {
+                case "a":
+                    value = (short) (packedValue >> 48);
+                    break;
+                case "c":
+                    value = (short) (packedValue >> 32);
+                    break;
+                case "g":
+                    value = (short) (packedValue >> 16);
+                    break;
+                case "t":
+                    value = (short) packedValue;
+                    break;
+                default:
+                    return 0f;
+            }
+            // Raw scores were shifted by 10 to be stored as positive values
+            return raw ? (value / DECIMAL_RESOLUTION) - 10 : value / DECIMAL_RESOLUTION;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core.converters;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.bson.Document;
+import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Converts MongoDB documents into data models without the JSON text round trip of
+ * {@link GenericDocumentComplexConverter}. Documents are walked once into a Jackson token buffer, which is read by the
+ * model deserializer, so field names, strings and numbers are never written to or parsed from text.
+ *
+ * @param <T> data model type, e.g. Gene
+ */
+public class DocumentConverter<T> extends GenericDocumentComplexConverter<T> {
+
+    private final Class<T> clazz;
+    private final ObjectMapper objectMapper;
+
+    public DocumentConverter(Class<T> clazz) {
+        this(clazz, createObjectMapper());
+    }
+
+    public DocumentConverter(Class<T> clazz, ObjectMapper objectMapper) {
+        super(clazz);
+
+        this.clazz = clazz;
+        this.objectMapper = objectMapper;
+    }
+
+    private static ObjectMapper createObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
+        objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        return objectMapper;
+    }
+
+    @Override
+    public T convertToDataModelType(Document document) {
+        restoreDots(document);
+        return readDocument(document);
+    }
+
+    protected T readDocument(Document document) {
+        try {
+            TokenBuffer tokenBuffer = new TokenBuffer(objectMapper, false);
+            writeValue(document, tokenBuffer);
+            return objectMapper.readValue(tokenBuffer.asParser(), clazz);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeValue(Object value, TokenBuffer tokenBuffer) throws IOException {
+        // Types decoded by the MongoDB driver are written directly, any other one is serialized by the object mapper
+        if (value == null) {
+            tokenBuffer.writeNull();
+        } else if (value instanceof String) {
+            tokenBuffer.writeString((String) value);
+        } else if (value instanceof Integer) {
+            tokenBuffer.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            tokenBuffer.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            tokenBuffer.writeNumber((Double) value);
+        } else if (value instanceof Boolean) {
+            tokenBuffer.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            tokenBuffer.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                tokenBuffer.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue(), tokenBuffer);
+            }
+            tokenBuffer.writeEndObject();
+        } else if (value instanceof Collection) {
+            tokenBuffer.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(element, tokenBuffer);
+            }
+            tokenBuffer.writeEndArray();
+        } else {
+            tokenBuffer.writeObject(value);
+        }
+    }
+}
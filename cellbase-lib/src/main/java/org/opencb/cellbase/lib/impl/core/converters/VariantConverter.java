@@ -16,44 +16,25 @@
 
 package org.opencb.cellbase.lib.impl.core.converters;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.bson.Document;
 import org.opencb.biodata.models.variant.Variant;
-import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
-
-public class VariantConverter extends GenericDocumentComplexConverter<Variant> {
-
-    private final ObjectMapper objectMapper;
+public class VariantConverter extends DocumentConverter<Variant> {
 
     public VariantConverter() {
         super(Variant.class);
-
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        this.objectMapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
-        this.objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
     }
 
     public VariantConverter(ObjectMapper objectMapper) {
-        super(Variant.class);
-
-        this.objectMapper = objectMapper;
+        super(Variant.class, objectMapper);
     }
 
     @Override
     public Variant convertToDataModelType(Document document) {
-        try {
-            restoreDots(document);
-            restoreId(document);
-            String json = objectMapper.writeValueAsString(document);
-            return objectMapper.readValue(json, Variant.class);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        restoreDots(document);
+        restoreId(document);
+        return readDocument(document);
     }
 
     // if the id is too long to index, we store temporarily in the _originalId field
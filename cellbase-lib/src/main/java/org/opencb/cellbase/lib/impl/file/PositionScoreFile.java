@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only, memory-mapped file of per-position genomic scores, e.g. CADD or REVEL, as written by
+ * {@link PositionScoreFileWriter}. Every covered position has one packed short per column, the meaning and scaling of
+ * each column are defined by the writer, e.g. one column per score source and alternate nucleotide. Values are read
+ * straight from the mapped pages with one binary search over the blocks of the chromosome. Instances are immutable
+ * and thread-safe, and shared per file and data release through {@link #open(String, int)}.
+ *
+ * File layout: header (magic, version), rows of shorts for blocks of consecutive positions, index (column names and,
+ * per chromosome, start, end and first row of each block), and a trailing long with the index offset.
+ */
+public final class PositionScoreFile {
+
+    static final int MAGIC = 0x43425053;
+    static final int VERSION = 1;
+    static final long DATA_OFFSET = 8;
+
+    /**
+     * Value of the columns with no score at a covered position.
+     */
+    public static final short MISSING = Short.MIN_VALUE;
+
+    // Each mapping is limited to 2 GB, rows are mapped in segments of up to 1 GB that never split a row
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+    private static final ReleaseFileCache<PositionScoreFile> OPEN_FILES = new ReleaseFileCache<>(PositionScoreFile::new);
+
+    private final Path path;
+    private final List<String> columns;
+    private final int rowSize;
+    private final long rowsPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final Map<String, ChromosomeEntry> chromosomes;
+
+    private PositionScoreFile(Path path) throws IOException {
+        this.path = path;
+        this.chromosomes = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("File '" + path + "' is not a position score file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported position score file version " + version + " in file '" + path + "'");
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            channel.read(trailer, channel.size() - 8);
+            trailer.flip();
+            long indexOffset = trailer.getLong();
+
+            channel.position(indexOffset);
+            DataInputStream index = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int numColumns = index.readInt();
+            List<String> columnList = new ArrayList<>(numColumns);
+            for (int i = 0; i < numColumns; i++) {
+                columnList.add(index.readUTF());
+            }
+            this.columns = Collections.unmodifiableList(columnList);
+            this.rowSize = 2 * numColumns;
+
+            int numChromosomes = index.readInt();
+            for (int i = 0; i < numChromosomes; i++) {
+                String name = index.readUTF();
+                int numBlocks = index.readInt();
+                int[] starts = new int[numBlocks];
+                int[] ends = new int[numBlocks];
+                long[] firstRows = new long[numBlocks];
+                for (int j = 0; j < numBlocks; j++) {
+                    starts[j] = index.readInt();
+                    ends[j] = index.readInt();
+                    firstRows[j] = index.readLong();
+                }
+                chromosomes.put(name, new ChromosomeEntry(starts, ends, firstRows));
+            }
+
+            long dataSize = indexOffset - DATA_OFFSET;
+            this.rowsPerSegment = MAX_SEGMENT_SIZE / rowSize;
+            long segmentSize = rowsPerSegment * rowSize;
+            this.segments = new MappedByteBuffer[(int) ((dataSize + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, DATA_OFFSET + offset, Math.min(segmentSize, dataSize - offset));
+            }
+        }
+    }
+
+    /**
+     * Opens the position score file of a data release. Files are opened and mapped only once per JVM and data release,
+     * checked on disk every few seconds and opened again if they change, or right away once closed.
+     * @param file path to the file, "{dataRelease}" is replaced by the data release number
+     * @param dataRelease data release, already resolved if the default release was requested
+     * @return the opened file, null if the file does not exist
+     * @throws IOException if the file can not be read or is not a valid position score file
+     */
+    public static PositionScoreFile open(String file, int dataRelease) throws IOException {
+        return OPEN_FILES.open(file, dataRelease);
+    }
+
+    /**
+     * Closes a position score file for all the data releases, e.g. before it is rebuilt, the next request opens it again.
+     * @param path path to the file
+     */
+    public static void close(Path path) {
+        OPEN_FILES.close(path);
+    }
+
+    /**
+     * Name of the column keeping the scores of a source for one alternate allele, e.g. cadd_raw:A.
+     * @param source score source
+     * @param alternate alternate allele
+     * @return column name
+     */
+    public static String getColumnName(String source, String alternate) {
+        return source + ":" + alternate.toUpperCase();
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Position of a column within the rows.
+     * @param column column name
+     * @return column index, or -1 if the file does not have the column
+     */
+    public int getColumnIndex(String column) {
+        return columns.indexOf(column);
+    }
+
+    public boolean contains(String chromosome, int position) {
+        return getRow(chromosome, position) >= 0;
+    }
+
+    /**
+     * Reads the value of one column at a position.
+     * @param chromosome chromosome name
+     * @param position 1-based position
+     * @param column column index, see {@link #getColumnIndex(String)}
+     * @return the packed value, {@link #MISSING} if the position is not covered or has no value for the column
+     */
+    public short getValue(String chromosome, int position, int column) {
+        long row = getRow(chromosome, position);
+        if (row < 0) {
+            return MISSING;
+        }
+        // Absolute gets do not modify the buffer state, concurrent reads are safe
+        return segments[(int) (row / rowsPerSegment)].getShort((int) (row % rowsPerSegment) * rowSize + 2 * column);
+    }
+
+    private long getRow(String chromosome, int position) {
+        ChromosomeEntry entry = chromosomes.get(chromosome);
+        if (entry == null) {
+            return -1;
+        }
+        int block = entry.lastBlockStartingAtOrBefore(position);
+        if (block < 0 || position > entry.ends[block]) {
+            return -1;
+        }
+        return entry.firstRows[block] + position - entry.starts[block];
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PositionScoreFile{");
+        sb.append("path=").append(path);
+        sb.append(", columns=").append(columns);
+        sb.append(", numChromosomes=").append(chromosomes.size());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static class ChromosomeEntry {
+        // Blocks of consecutive positions, 1-based and inclusive, sorted by start and not overlapping
+        private final int[] starts;
+        private final int[] ends;
+        private final long[] firstRows;
+
+        ChromosomeEntry(int[] starts, int[] ends, long[] firstRows) {
+            this.starts = starts;
+            this.ends = ends;
+            this.firstRows = firstRows;
+        }
+
+        int lastBlockStartingAtOrBefore(int position) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes the position score files read by {@link PositionScoreFile}. Rows are written as they are added, positions
+ * must be increasing while a chromosome is being added, the index is written when the writer is closed.
+ */
+public class PositionScoreFileWriter implements AutoCloseable {
+
+    private final DataOutputStream outputStream;
+    private final List<String> columns;
+    private final Map<String, List<long[]>> blocksByChromosome;
+    private long numRows;
+
+    private String chromosome;
+    private int blockStart;
+    private int lastPosition;
+    private long blockFirstRow;
+
+    public PositionScoreFileWriter(Path path, List<String> columns) throws IOException {
+        this(Files.newOutputStream(path), columns);
+    }
+
+    public PositionScoreFileWriter(OutputStream outputStream, List<String> columns) throws IOException {
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.columns = new ArrayList<>(columns);
+        this.blocksByChromosome = new LinkedHashMap<>();
+
+        this.outputStream.writeInt(PositionScoreFile.MAGIC);
+        this.outputStream.writeInt(PositionScoreFile.VERSION);
+    }
+
+    /**
+     * Writes the values of one position.
+     * @param chromosome chromosome name
+     * @param position 1-based position, greater than the previous one added for the same chromosome
+     * @param values one value per column, {@link PositionScoreFile#MISSING} if there is no value
+     * @throws IOException if the values can not be written or the position is not sorted
+     */
+    public void add(String chromosome, int position, short[] values) throws IOException {
+        if (values.length != columns.size()) {
+            throw new IOException("Expected " + columns.size() + " values at " + chromosome + ":" + position + " but found "
+                    + values.length);
+        }
+        if (!chromosome.equals(this.chromosome)) {
+            closeBlock();
+            this.chromosome = chromosome;
+            blockStart = position;
+            blockFirstRow = numRows;
+        } else if (position <= lastPosition) {
+            throw new IOException("Position " + chromosome + ":" + position + " is not sorted, previous position was "
+                    + lastPosition);
+        } else if (position > lastPosition + 1) {
+            closeBlock();
+            blockStart = position;
+            blockFirstRow = numRows;
+        }
+        for (short value : values) {
+            outputStream.writeShort(value);
+        }
+        lastPosition = position;
+        numRows++;
+    }
+
+    private void closeBlock() {
+        if (chromosome != null) {
+            blocksByChromosome.computeIfAbsent(chromosome, k -> new ArrayList<>())
+                    .add(new long[]{blockStart, lastPosition, blockFirstRow});
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeBlock();
+        long indexOffset = PositionScoreFile.DATA_OFFSET + numRows * 2 * columns.size();
+        outputStream.writeInt(columns.size());
+        for (String column : columns) {
+            outputStream.writeUTF(column);
+        }
+        outputStream.writeInt(blocksByChromosome.size());
+        for (Map.Entry<String, List<long[]>> entry : blocksByChromosome.entrySet()) {
+            // A chromosome may have been added in several rounds, blocks are sorted to be binary searched
+            List<long[]> blocks = entry.getValue();
+            blocks.sort(Comparator.comparingLong(block -> block[0]));
+            for (int i = 1; i < blocks.size(); i++) {
+                if (blocks.get(i)[0] <= blocks.get(i - 1)[1]) {
+                    outputStream.close();
+                    throw new IOException("Overlapping positions found in chromosome " + entry.getKey() + " at position "
+                            + blocks.get(i)[0]);
+                }
+            }
+            outputStream.writeUTF(entry.getKey());
+            outputStream.writeInt(blocks.size());
+            for (long[] block : blocks) {
+                outputStream.writeInt((int) block[0]);
+                outputStream.writeInt((int) block[1]);
+                outputStream.writeLong(block[2]);
+            }
+        }
+        outputStream.writeLong(indexOffset);
+        outputStream.close();
+    }
+}
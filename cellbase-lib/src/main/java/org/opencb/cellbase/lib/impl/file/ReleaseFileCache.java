@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files opened once per JVM and data release and shared by all the adaptors. The configured file name may contain
+ * {@link #DATA_RELEASE_PLACEHOLDER}, replaced by the release number, so that every release reads its own file.
+ *
+ * Lookups are lock-free and do not touch the file system: a file is checked on disk at most once per revalidation
+ * interval, and opened again when its size or modification time change, e.g. when it is rebuilt at the same path.
+ * {@link #close(Path)} makes the next request open the file again right away.
+ *
+ * @param <T> type of the opened files
+ */
+final class ReleaseFileCache<T> {
+
+    /**
+     * Placeholder of the data release number in configured file names, e.g. /opt/cellbase/release_{dataRelease}/genome.2bit.
+     */
+    static final String DATA_RELEASE_PLACEHOLDER = "{dataRelease}";
+
+    static final long DEFAULT_REVALIDATION_MILLIS = 10_000;
+
+    private final FileOpener<T> opener;
+    private final long revalidationNanos;
+    private final Map<String, OpenFile<T>> openFiles;
+
+    ReleaseFileCache(FileOpener<T> opener) {
+        this(opener, DEFAULT_REVALIDATION_MILLIS);
+    }
+
+    ReleaseFileCache(FileOpener<T> opener, long revalidationMillis) {
+        this.opener = opener;
+        this.revalidationNanos = TimeUnit.MILLISECONDS.toNanos(revalidationMillis);
+        this.openFiles = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the file of a data release, opening it if needed. Files open, or missing, since less than the revalidation
+     * interval are returned without any lock or file system access.
+     * @param file file name, may contain {@link #DATA_RELEASE_PLACEHOLDER}
+     * @param dataRelease data release, already resolved if the default release was requested
+     * @return the opened file, null if the file does not exist
+     * @throws IOException if the file can not be read or is not valid
+     */
+    T open(String file, int dataRelease) throws IOException {
+        String key = dataRelease + ":" + file;
+        OpenFile<T> openFile = openFiles.get(key);
+        if (openFile != null && System.nanoTime() - openFile.validated < revalidationNanos) {
+            return openFile.file;
+        }
+        return revalidate(key, file, dataRelease);
+    }
+
+    private synchronized T revalidate(String key, String file, int dataRelease) throws IOException {
+        // Another thread may have revalidated the file while this one was waiting
+        OpenFile<T> openFile = openFiles.get(key);
+        long now = System.nanoTime();
+        if (openFile != null && now - openFile.validated < revalidationNanos) {
+            return openFile.file;
+        }
+
+        Path path = getPath(file, dataRelease);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            openFiles.put(key, new OpenFile<>(path, null, -1, null, now));
+            return null;
+        }
+        if (openFile == null || openFile.file == null || openFile.size != attributes.size()
+                || !openFile.lastModified.equals(attributes.lastModifiedTime())) {
+            openFile = new OpenFile<>(path, opener.open(path), attributes.size(), attributes.lastModifiedTime(), now);
+        } else {
+            openFile = new OpenFile<>(path, openFile.file, openFile.size, openFile.lastModified, now);
+        }
+        openFiles.put(key, openFile);
+        return openFile.file;
+    }
+
+    /**
+     * Closes a file for all the data releases, e.g. after it is rebuilt or created, the next request opens it again.
+     * Memory mappings are released once the instances in use are no longer referenced.
+     * @param path path to the file
+     */
+    synchronized void close(Path path) {
+        Path normalizedPath = path.toAbsolutePath().normalize();
+        openFiles.values().removeIf(openFile -> openFile.path.equals(normalizedPath));
+    }
+
+    static Path getPath(String file, int dataRelease) {
+        return Paths.get(file.replace(DATA_RELEASE_PLACEHOLDER, String.valueOf(dataRelease))).toAbsolutePath().normalize();
+    }
+
+    interface FileOpener<T> {
+        T open(Path path) throws IOException;
+    }
+
+    private static class OpenFile<T> {
+        private final Path path;
+        private final T file;
+        private final long size;
+        private final FileTime lastModified;
+        private final long validated;
+
+        OpenFile(Path path, T file, long size, FileTime lastModified, long validated) {
+            this.path = path;
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.validated = validated;
+        }
+    }
+}
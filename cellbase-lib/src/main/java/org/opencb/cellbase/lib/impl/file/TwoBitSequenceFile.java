@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped genome sequence file with 2 bits per nucleotide, as written by
+ * {@link TwoBitSequenceFileWriter}. Sub-sequences are decoded straight from the mapped pages, no database or disk
+ * copy is involved. Instances are immutable and thread-safe, and shared per file and data release through
+ * {@link #open(String, int)}.
+ *
+ * File layout: header (magic, version), packed sequences back to back (4 nucleotides per byte, A=0, C=1, G=2, T=3),
+ * index (name, sequence type, assembly, length, data offset and runs of non-ACGT characters per sequence), and a
+ * trailing long with the index offset.
+ */
+public final class TwoBitSequenceFile {
+
+    static final int MAGIC = 0x43423242;
+    static final int VERSION = 1;
+    static final char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    private static final ReleaseFileCache<TwoBitSequenceFile> OPEN_FILES = new ReleaseFileCache<>(TwoBitSequenceFile::new);
+
+    private final Path path;
+    private final Map<String, SequenceEntry> sequences;
+
+    private TwoBitSequenceFile(Path path) throws IOException {
+        this.path = path;
+        this.sequences = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("File '" + path + "' is not a 2-bit genome sequence file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported 2-bit genome sequence file version " + version + " in file '" + path + "'");
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            channel.read(trailer, channel.size() - 8);
+            trailer.flip();
+            long indexOffset = trailer.getLong();
+
+            channel.position(indexOffset);
+            DataInputStream index = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int numSequences = index.readInt();
+            for (int i = 0; i < numSequences; i++) {
+                String name = index.readUTF();
+                String sequenceType = index.readUTF();
+                String assembly = index.readUTF();
+                int length = index.readInt();
+                long dataOffset = index.readLong();
+                int numRuns = index.readInt();
+                int[] runStarts = new int[numRuns];
+                int[] runEnds = new int[numRuns];
+                char[] runCharacters = new char[numRuns];
+                for (int j = 0; j < numRuns; j++) {
+                    runStarts[j] = index.readInt();
+                    runEnds[j] = runStarts[j] + index.readInt();
+                    runCharacters[j] = index.readChar();
+                }
+                // Each sequence is mapped on its own, a single mapping cannot exceed 2 GB
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, (length + 3L) / 4);
+                sequences.put(name, new SequenceEntry(sequenceType, assembly, length, data, runStarts, runEnds, runCharacters));
+            }
+        }
+    }
+
+    /**
+     * Opens the 2-bit genome sequence file of a data release. Files are opened and mapped only once per JVM and data
+     * release, checked on disk every few seconds and opened again if they change, or right away once closed.
+     * @param file path to the file, "{dataRelease}" is replaced by the data release number
+     * @param dataRelease data release, already resolved if the default release was requested
+     * @return the opened file, null if the file does not exist
+     * @throws IOException if the file can not be read or is not a valid 2-bit genome sequence file
+     */
+    public static TwoBitSequenceFile open(String file, int dataRelease) throws IOException {
+        return OPEN_FILES.open(file, dataRelease);
+    }
+
+    /**
+     * Closes a 2-bit genome sequence file for all the data releases, e.g. before it is rebuilt, the next request opens
+     * it again.
+     * @param path path to the file
+     */
+    public static void close(Path path) {
+        OPEN_FILES.close(path);
+    }
+
+    public boolean contains(String chromosome) {
+        return sequences.containsKey(chromosome);
+    }
+
+    /**
+     * Length of a sequence.
+     * @param chromosome sequence name
+     * @return number of nucleotides, or -1 if the sequence is not in the file
+     */
+    public int getLength(String chromosome) {
+        SequenceEntry entry = sequences.get(chromosome);
+        return entry != null ? entry.length : -1;
+    }
+
+    public String getSequenceType(String chromosome) {
+        SequenceEntry entry = sequences.get(chromosome);
+        return entry != null ? entry.sequenceType : null;
+    }
+
+    public String getAssembly(String chromosome) {
+        SequenceEntry entry = sequences.get(chromosome);
+        return entry != null ? entry.assembly : null;
+    }
+
+    /**
+     * Reads a sub-sequence, the end is clipped to the length of the sequence.
+     * @param chromosome sequence name
+     * @param start 1-based start coordinate
+     * @param end 1-based end coordinate, inclusive
+     * @return the sub-sequence, or null if the sequence is not in the file
+     */
+    public String getSequence(String chromosome, int start, int end) {
+        SequenceEntry entry = sequences.get(chromosome);
+        if (entry == null) {
+            return null;
+        }
+        int from = Math.max(start, 1) - 1;
+        int to = Math.min(end, entry.length);
+        if (from >= to) {
+            return "";
+        }
+
+        char[] sequence = new char[to - from];
+        for (int i = from; i < to; i++) {
+            // Absolute gets do not modify the buffer state, concurrent reads are safe
+            int packedByte = entry.data.get(i >>> 2);
+            sequence[i - from] = NUCLEOTIDES[(packedByte >>> (6 - 2 * (i & 3))) & 3];
+        }
+
+        // Restore the non-ACGT characters (N, IUPAC codes, ...) overlapping the sub-sequence
+        for (int run = entry.firstRunEndingAfter(from); run < entry.runStarts.length && entry.runStarts[run] < to; run++) {
+            int runFrom = Math.max(from, entry.runStarts[run]);
+            int runTo = Math.min(to, entry.runEnds[run]);
+            for (int i = runFrom; i < runTo; i++) {
+                sequence[i - from] = entry.runCharacters[run];
+            }
+        }
+        return new String(sequence);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TwoBitSequenceFile{");
+        sb.append("path=").append(path);
+        sb.append(", numSequences=").append(sequences.size());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static class SequenceEntry {
+        private final String sequenceType;
+        private final String assembly;
+        private final int length;
+        private final MappedByteBuffer data;
+        // Runs of non-ACGT characters, 0-based and half-open, sorted by start
+        private final int[] runStarts;
+        private final int[] runEnds;
+        private final char[] runCharacters;
+
+        SequenceEntry(String sequenceType, String assembly, int length, MappedByteBuffer data, int[] runStarts, int[] runEnds,
+                      char[] runCharacters) {
+            this.sequenceType = sequenceType;
+            this.assembly = assembly;
+            this.length = length;
+            this.data = data;
+            this.runStarts = runStarts;
+            this.runEnds = runEnds;
+            this.runCharacters = runCharacters;
+        }
+
+        int firstRunEndingAfter(int position) {
+            // Runs do not overlap, hence ends are sorted too
+            int low = 0;
+            int high = runEnds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (runEnds[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the 2-bit genome sequence files read by {@link TwoBitSequenceFile}. Sequences are packed as they are added,
+ * the index is written when the writer is closed.
+ */
+public class TwoBitSequenceFileWriter implements AutoCloseable {
+
+    private final DataOutputStream outputStream;
+    private final List<IndexEntry> index;
+    private long offset;
+
+    public TwoBitSequenceFileWriter(Path path) throws IOException {
+        this(Files.newOutputStream(path));
+    }
+
+    public TwoBitSequenceFileWriter(OutputStream outputStream) throws IOException {
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.index = new ArrayList<>();
+
+        this.outputStream.writeInt(TwoBitSequenceFile.MAGIC);
+        this.outputStream.writeInt(TwoBitSequenceFile.VERSION);
+        this.offset = 8;
+    }
+
+    /**
+     * Packs and writes a whole sequence, e.g. a chromosome.
+     * @param name sequence name
+     * @param sequenceType sequence type, e.g. chromosome
+     * @param assembly assembly name
+     * @param sequence nucleotide sequence, characters other than A, C, G and T are stored as runs
+     * @throws IOException if the sequence can not be written
+     */
+    public void add(String name, String sequenceType, String assembly, CharSequence sequence) throws IOException {
+        IndexEntry entry = new IndexEntry(name, sequenceType, assembly, sequence.length(), offset);
+
+        int packedByte = 0;
+        for (int i = 0; i < sequence.length(); i++) {
+            char nucleotide = sequence.charAt(i);
+            int code;
+            switch (nucleotide) {
+                case 'A':
+                    code = 0;
+                    break;
+                case 'C':
+                    code = 1;
+                    break;
+                case 'G':
+                    code = 2;
+                    break;
+                case 'T':
+                    code = 3;
+                    break;
+                default:
+                    code = 0;
+                    entry.addRunPosition(i, nucleotide);
+                    break;
+            }
+            packedByte = (packedByte << 2) | code;
+            if ((i & 3) == 3) {
+                outputStream.write(packedByte);
+                packedByte = 0;
+                offset++;
+            }
+        }
+        int remainder = sequence.length() & 3;
+        if (remainder != 0) {
+            outputStream.write(packedByte << (2 * (4 - remainder)));
+            offset++;
+        }
+        index.add(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        long indexOffset = offset;
+        outputStream.writeInt(index.size());
+        for (IndexEntry entry : index) {
+            outputStream.writeUTF(entry.name);
+            outputStream.writeUTF(entry.sequenceType != null ? entry.sequenceType : "");
+            outputStream.writeUTF(entry.assembly != null ? entry.assembly : "");
+            outputStream.writeInt(entry.length);
+            outputStream.writeLong(entry.dataOffset);
+            outputStream.writeInt(entry.runStarts.size());
+            for (int i = 0; i < entry.runStarts.size(); i++) {
+                outputStream.writeInt(entry.runStarts.get(i));
+                outputStream.writeInt(entry.runLengths.get(i));
+                outputStream.writeChar(entry.runCharacters.get(i));
+            }
+        }
+        outputStream.writeLong(indexOffset);
+        outputStream.close();
+    }
+
+    private static class IndexEntry {
+        private final String name;
+        private final String sequenceType;
+        private final String assembly;
+        private final int length;
+        private final long dataOffset;
+        private final List<Integer> runStarts;
+        private final List<Integer> runLengths;
+        private final List<Character> runCharacters;
+
+        IndexEntry(String name, String sequenceType, String assembly, int length, long dataOffset) {
+            this.name = name;
+            this.sequenceType = sequenceType;
+            this.assembly = assembly;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.runStarts = new ArrayList<>();
+            this.runLengths = new ArrayList<>();
+            this.runCharacters = new ArrayList<>();
+        }
+
+        void addRunPosition(int position, char character) {
+            int last = runStarts.size() - 1;
+            if (last >= 0 && runCharacters.get(last) == character && runStarts.get(last) + runLengths.get(last) == position) {
+                runLengths.set(last, runLengths.get(last) + 1);
+            } else {
+                runStarts.add(position);
+                runLengths.add(1);
+                runCharacters.add(character);
+            }
+        }
+    }
+}
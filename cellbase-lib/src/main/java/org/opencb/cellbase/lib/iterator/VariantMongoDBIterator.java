@@ -16,9 +16,9 @@
 
 package org.opencb.cellbase.lib.iterator;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.bson.Document;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.cellbase.lib.impl.core.converters.VariantConverter;
 
 import java.util.Iterator;
 import java.util.function.Consumer;
@@ -29,7 +29,7 @@ import java.util.function.Consumer;
 public class VariantMongoDBIterator implements Iterator<Variant> {
 
     private Iterator<Document> mongoCursor;
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final VariantConverter CONVERTER = new VariantConverter();
 
     public VariantMongoDBIterator(Iterator<Document> mongoCursor) {
         this.mongoCursor = mongoCursor;
@@ -44,7 +44,7 @@ public class VariantMongoDBIterator implements Iterator<Variant> {
     @Override
     public Variant next() {
         Document next = mongoCursor.next();
-        return OBJECT_MAPPER.convertValue(next, Variant.class);
+        return CONVERTER.convertToDataModelType(next);
     }
 
     @Override
@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * Created by parce on 18/02/15.
@@ -44,6 +45,12 @@ public abstract class CellBaseLoader implements Callable<Integer> {
 
     protected CellBaseConfiguration cellBaseConfiguration;
 
+    // Writes run on this executor, if any, while the loader thread parses the next batch
+    protected Executor writeExecutor;
+    protected LoadMetrics metrics;
+    // Batches are acknowledged once written, if any
+    protected LoadCheckpoint checkpoint;
+
     protected final Logger logger;
 
     public CellBaseLoader(BlockingQueue<List<String>> blockingQueue, String data, int dataRelease, String database,
@@ -79,6 +86,21 @@ public abstract class CellBaseLoader implements Callable<Integer> {
 
     public abstract void init() throws LoaderException;
 
+    public CellBaseLoader setWriteExecutor(Executor writeExecutor) {
+        this.writeExecutor = writeExecutor;
+        return this;
+    }
+
+    public CellBaseLoader setMetrics(LoadMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public CellBaseLoader setCheckpoint(LoadCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
     @Override
     public abstract Integer call() throws LoaderException;
 
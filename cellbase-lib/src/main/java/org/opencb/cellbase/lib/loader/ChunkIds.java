@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Private _chunkIds field indexed in the collections queried by genomic region, e.g. 1_120_2k for the second chunk
+ * of 2000 bp. The field can be computed by the loader, or at build time with {@link #jsonPrivateFields(String)} so that
+ * the loader only has to insert the documents.
+ */
+public final class ChunkIds {
+
+    public static final String CHUNK_IDS_FIELD = "_chunkIds";
+
+    private ChunkIds() {
+    }
+
+    /**
+     * Chunk sizes of a collection.
+     * @param data data loaded, e.g. gene
+     * @return chunk sizes, or null if the collection has no _chunkIds
+     */
+    public static int[] getChunkSizes(String data) {
+        if (data == null) {
+            return null;
+        }
+        switch (data) {
+            case "genome_sequence":
+                return new int[]{MongoDBCollectionConfiguration.GENOME_SEQUENCE_CHUNK_SIZE};
+            case "gene":
+            case "refseq":
+                return new int[]{MongoDBCollectionConfiguration.GENE_CHUNK_SIZE};
+            case "variation":  // TODO: why are we using different chunk sizes??
+                return new int[]{MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE,
+                        10 * MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE, };
+            case "variation_functional_score":
+                return new int[]{MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE};
+            case "regulatory_region":
+                return new int[]{MongoDBCollectionConfiguration.REGULATORY_REGION_CHUNK_SIZE};
+            case "repeats":
+                return new int[]{MongoDBCollectionConfiguration.REPEATS_CHUNK_SIZE};
+            case "splice_score":
+                return new int[]{MongoDBCollectionConfiguration.SPLICE_CHUNK_SIZE};
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Chunk ids of a genomic feature.
+     * @param chromosome chromosome or sequence name
+     * @param start start position
+     * @param end end position
+     * @param chunkSizes chunk sizes, see {@link #getChunkSizes(String)}
+     * @return the chunk ids of all the chunk sizes
+     */
+    public static List<String> getChunkIds(String chromosome, int start, int end, int[] chunkSizes) {
+        List<String> chunkIds = new ArrayList<>();
+        for (int chunkSize : chunkSizes) {
+            int chunkStart = start / chunkSize;
+            int chunkEnd = end / chunkSize;
+            String chunkIdSuffix = chunkSize / 1000 + "k";
+            for (int i = chunkStart; i <= chunkEnd; i++) {
+                chunkIds.add(chromosome + "_" + i + "_" + chunkIdSuffix);
+            }
+        }
+        return chunkIds;
+    }
+
+    /**
+     * Adds the private fields of a collection to the JSON objects written by the builders, see
+     * {@link org.opencb.cellbase.core.serializer.CellBaseJsonFileSerializer#setPrivateFields(Consumer)}.
+     * @param data data built, e.g. gene
+     * @return the function adding the private fields, or null if the collection has none
+     */
+    public static Consumer<ObjectNode> jsonPrivateFields(String data) {
+        int[] chunkSizes = getChunkSizes(data);
+        if (chunkSizes == null) {
+            return null;
+        }
+        return node -> {
+            // Same fields used by the loader
+            JsonNode position = node.get("position");
+            JsonNode start = position != null ? position : node.get("start");
+            JsonNode end = position != null ? position : node.get("end");
+            JsonNode chromosome = node.has("chromosome") ? node.get("chromosome") : node.get("sequenceName");
+            if (chromosome == null || start == null || end == null) {
+                return;
+            }
+            ArrayNode chunkIds = node.putArray(CHUNK_IDS_FIELD);
+            for (String chunkId : getChunkIds(chromosome.asText(), start.asInt(), end.asInt(), chunkSizes)) {
+                chunkIds.add(chunkId);
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks the input offset, i.e. the number of records from the beginning of the file, up to which all the batches have
+ * been written into the database. Batches are written concurrently and out of order, the offset only advances when all
+ * the previous batches have been acknowledged. A batch that fails is never acknowledged, so a resumed load starts at the
+ * first batch that may not have been written. The offset is saved every 'interval' records, together with the virtual
+ * offset of the same record in block-gzipped files, or 0. Thread-safe.
+ */
+public class LoadCheckpoint {
+
+    /**
+     * Saves a checkpoint.
+     */
+    public interface Saver {
+        void save(long offset, long virtualOffset);
+    }
+
+    private final Saver saver;
+    private final long interval;
+
+    // End offset of the batches read and not written yet, and whether they have been acknowledged
+    private final Map<List<String>, Long> batchEnds;
+    private final TreeMap<Long, Boolean> pending;
+    private final Map<Long, Long> virtualOffsets;
+    private long offset;
+    private long virtualOffset;
+    private long savedOffset;
+
+    /**
+     * Creates a checkpoint.
+     * @param startOffset offset of the first record read
+     * @param startVirtualOffset virtual offset of the first record read, or 0
+     * @param interval minimum number of records between two saves
+     * @param saver saves the offset, e.g. into the data release
+     */
+    public LoadCheckpoint(long startOffset, long startVirtualOffset, long interval, Saver saver) {
+        this.saver = saver;
+        this.interval = interval;
+        this.batchEnds = new IdentityHashMap<>();
+        this.pending = new TreeMap<>();
+        this.virtualOffsets = new HashMap<>();
+        this.offset = startOffset;
+        this.virtualOffset = startVirtualOffset;
+        this.savedOffset = startOffset;
+    }
+
+    /**
+     * Registers a batch before it is sent to the loaders, batches must be registered in input order.
+     * @param batch records of the batch, identified by reference
+     * @param endOffset offset of the record following the batch
+     * @param endVirtualOffset virtual offset of the record following the batch, or 0
+     */
+    public synchronized void register(List<String> batch, long endOffset, long endVirtualOffset) {
+        batchEnds.put(batch, endOffset);
+        pending.put(endOffset, false);
+        virtualOffsets.put(endOffset, endVirtualOffset);
+    }
+
+    /**
+     * Acknowledges that all the records of a batch have been written, or deliberately skipped.
+     * @param batch registered batch
+     */
+    public synchronized void acknowledge(List<String> batch) {
+        Long endOffset = batchEnds.remove(batch);
+        if (endOffset == null) {
+            return;
+        }
+        pending.put(endOffset, true);
+        while (!pending.isEmpty() && pending.firstEntry().getValue()) {
+            offset = pending.pollFirstEntry().getKey();
+            virtualOffset = virtualOffsets.remove(offset);
+        }
+        if (offset - savedOffset >= interval) {
+            save();
+        }
+    }
+
+    /**
+     * Saves the current offset if it has changed since the last save.
+     */
+    public synchronized void save() {
+        if (offset != savedOffset) {
+            saver.save(offset, virtualOffset);
+            savedOffset = offset;
+        }
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    public synchronized long getVirtualOffset() {
+        return virtualOffset;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("LoadCheckpoint{");
+        sb.append("offset=").append(offset);
+        sb.append(", virtualOffset=").append(virtualOffset);
+        sb.append(", savedOffset=").append(savedOffset);
+        sb.append(", pendingBatches=").append(pending.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
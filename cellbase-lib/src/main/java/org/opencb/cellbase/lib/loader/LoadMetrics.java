@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records and busy time of the load pipeline stages: reading (and decompressing) the input file, parsing and converting
+ * the JSON lines into documents, and writing them into the database. Stages run concurrently, the throughput of each
+ * stage is computed over its own busy time, summed over all its threads, so that the slowest stage stands out.
+ * Thread-safe.
+ */
+public class LoadMetrics {
+
+    private final Stage read = new Stage("read");
+    private final Stage parse = new Stage("parse");
+    private final Stage write = new Stage("write");
+    private final long startTime = System.nanoTime();
+
+    public Stage getRead() {
+        return read;
+    }
+
+    public Stage getParse() {
+        return parse;
+    }
+
+    public Stage getWrite() {
+        return write;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LoadMetrics{");
+        sb.append("elapsed=").append(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime)).append("s");
+        sb.append(", ").append(read);
+        sb.append(", ").append(parse);
+        sb.append(", ").append(write);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static class Stage {
+
+        private final String name;
+        private final AtomicLong records = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds the records processed by one thread of the stage.
+         * @param numRecords number of records
+         * @param startNanos {@link System#nanoTime()} when the thread started processing the records
+         */
+        public void add(long numRecords, long startNanos) {
+            records.addAndGet(numRecords);
+            nanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        public long getRecords() {
+            return records.get();
+        }
+
+        /**
+         * Records processed per second of busy time of one thread.
+         * @return throughput of the stage per thread
+         */
+        public double getThroughput() {
+            long time = nanos.get();
+            return time > 0 ? records.get() * 1e9 / time : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s={records=%d, busy=%ds, throughput=%.0f records/s per thread}", name, records.get(),
+                    TimeUnit.NANOSECONDS.toSeconds(nanos.get()), getThroughput());
+        }
+    }
+}
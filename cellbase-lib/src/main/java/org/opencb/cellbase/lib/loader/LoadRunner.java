@@ -17,17 +17,23 @@
 package org.opencb.cellbase.lib.loader;
 
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.models.DataReleaseCheckpoint;
+import org.opencb.cellbase.lib.managers.DataReleaseManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.zip.GZIPInputStream;
@@ -42,6 +48,7 @@ public class LoadRunner {
     private String loader;
 
     private final int numThreads;
+    private final int maxInFlightWrites;
     private CellBaseConfiguration cellBaseConfiguration;
 
     protected BlockingQueue<List<String>> blockingQueue;
@@ -49,14 +56,34 @@ public class LoadRunner {
     private final Logger logger;
 
     private static final int QUEUE_CAPACITY = 10;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+    // Number of records between two saves of the load checkpoint
+    private static final long CHECKPOINT_INTERVAL = 100000;
+    private boolean resume;
     private int batchSize;
     public static final List<String> POISON_PILL = new ArrayList<>();
 
 
     public LoadRunner(String loader, String database, int numThreads, CellBaseConfiguration cellBaseConfiguration) {
+        this(loader, database, numThreads, numThreads, cellBaseConfiguration);
+    }
+
+    /**
+     * Creates a runner with a multi-stage load pipeline: the input file is read, and decompressed in parallel when it is
+     * block-gzipped, by one thread; 'numThreads' loaders parse and convert the JSON lines into documents; and up to
+     * 'maxInFlightWrites' batches are written concurrently into the database.
+     * @param loader class name of the database specific CellBaseLoader
+     * @param database database name
+     * @param numThreads number of parse and convert threads, also used to decompress block-gzipped files
+     * @param maxInFlightWrites maximum number of batches being written concurrently
+     * @param cellBaseConfiguration CellBase configuration
+     */
+    public LoadRunner(String loader, String database, int numThreads, int maxInFlightWrites,
+                      CellBaseConfiguration cellBaseConfiguration) {
         this.loader = loader;
         this.database = database;
         this.numThreads = numThreads;
+        this.maxInFlightWrites = Math.max(1, maxInFlightWrites);
         this.cellBaseConfiguration = cellBaseConfiguration;
 
         this.blockingQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
@@ -64,6 +91,17 @@ public class LoadRunner {
         logger = LoggerFactory.getLogger(this.getClass());
     }
 
+    /**
+     * Resumes the loads of files that failed before, skipping the records already written in the data release. Completely
+     * loaded files are skipped.
+     * @param resume resume the loads
+     * @return this runner
+     */
+    public LoadRunner setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
     @Deprecated
     public void load(Path filePath, String data) throws ClassNotFoundException, NoSuchMethodException, InstantiationException,
             IllegalAccessException, InvocationTargetException, ExecutionException, InterruptedException, IOException {
@@ -94,6 +132,39 @@ public class LoadRunner {
                 batchSize = 200;
             }
 
+            // Progress is saved in the data release, field updates are not checkpointed
+            LoadCheckpoint checkpoint = null;
+            long startOffset = 0;
+            long startVirtualOffset = 0;
+            DataReleaseManager dataReleaseManager = null;
+            String file = filePath.getFileName().toString();
+            if (dataRelease > 0 && field == null) {
+                try {
+                    dataReleaseManager = new DataReleaseManager(database, cellBaseConfiguration);
+                } catch (CellBaseException e) {
+                    throw new LoaderException(e);
+                }
+                if (resume) {
+                    DataReleaseCheckpoint previous = dataReleaseManager.getCheckpoint(dataRelease, data, file);
+                    if (previous != null && previous.isComplete()) {
+                        logger.info("File '{}' was already loaded into data release {}, skipping", filePath, dataRelease);
+                        return;
+                    }
+                    if (previous != null) {
+                        startOffset = previous.getOffset();
+                        startVirtualOffset = previous.getVirtualOffset();
+                        logger.info("Resuming the load of '{}' after record {}", filePath, startOffset);
+                    }
+                }
+                DataReleaseManager manager = dataReleaseManager;
+                checkpoint = new LoadCheckpoint(startOffset, startVirtualOffset, CHECKPOINT_INTERVAL,
+                        (offset, virtualOffset) -> saveCheckpoint(manager, dataRelease, data, file, offset, virtualOffset, false));
+                if (!resume) {
+                    // Discard the progress of previous loads of this file
+                    saveCheckpoint(dataReleaseManager, dataRelease, data, file, 0, 0, false);
+                }
+            }
+
             // One CellBaseLoader is created for each thread in 'numThreads' variable
             List<CellBaseLoader> cellBaseLoaders = new ArrayList<>(numThreads);
             for (int i = 0; i < numThreads; i++) {
@@ -104,6 +175,14 @@ public class LoadRunner {
                 logger.debug("CellBase loader thread '{}' created", i);
             }
 
+            /*
+             * Writes are shared by all the loaders. When all the write threads are busy and the queue is full the loader
+             * thread writes the batch itself, which keeps the number of batches in memory bounded.
+             */
+            LoadMetrics metrics = new LoadMetrics();
+            ThreadPoolExecutor writeExecutor = new ThreadPoolExecutor(maxInFlightWrites, maxInFlightWrites, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(maxInFlightWrites), new ThreadPoolExecutor.CallerRunsPolicy());
+
             /*
              * ExecutorServices and Futures are created, all CellBaseLoaders are initialized and submitted to them.
              * After this the different loaders are blocked waiting for the blockingQueue to be populated.
@@ -111,6 +190,7 @@ public class LoadRunner {
             ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
             List<Future<Integer>> futures = new ArrayList<>(numThreads);
             for (int i = 0; i < numThreads; i++) {
+                cellBaseLoaders.get(i).setWriteExecutor(writeExecutor).setMetrics(metrics).setCheckpoint(checkpoint);
                 cellBaseLoaders.get(i).init();
                 futures.add(executorService.submit(cellBaseLoaders.get(i)));
                 logger.debug("CellBaseLoader '{}' initialized and submitted to the ExecutorService", i);
@@ -120,7 +200,7 @@ public class LoadRunner {
              * Execution starts by reading the file and loading batches to the blockingQueue. This makes the loaders
              * to start fetching and loading batches into the database. The number of records processed is returned.
              */
-            int processedRecords = readInputJsonFile(filePath);
+            int processedRecords = readInputJsonFile(filePath, metrics, startOffset, startVirtualOffset, checkpoint);
             // Check if all the records have been loaded
             int loadedRecords = 0;
             for (Future<Integer> future : futures) {
@@ -131,6 +211,12 @@ public class LoadRunner {
             } else {
                 logger.warn("Only '{}' out of '{}' have been loaded into the database", loadedRecords, processedRecords);
             }
+            logger.info("Load pipeline of '{}': {}", filePath.getFileName(), metrics);
+            if (checkpoint != null) {
+                long offset = checkpoint.getOffset();
+                saveCheckpoint(dataReleaseManager, dataRelease, data, file, offset, checkpoint.getVirtualOffset(),
+                        offset == startOffset + processedRecords);
+            }
 
             /*
              * For sanity database connection and other resources must be released. This close() call must be
@@ -142,30 +228,75 @@ public class LoadRunner {
             }
 
             executorService.shutdown();
+            writeExecutor.shutdown();
         } catch (LoaderException e) {
             logger.error("Error executing CellBase Load: " + e.getMessage());
         }
 
     }
 
-    private int readInputJsonFile(Path inputFile) {
+    private void saveCheckpoint(DataReleaseManager dataReleaseManager, int dataRelease, String data, String file, long offset,
+                                long virtualOffset, boolean complete) {
+        try {
+            dataReleaseManager.updateCheckpoint(dataRelease, new DataReleaseCheckpoint(data, file, offset, complete,
+                    new SimpleDateFormat("yyyyMMddHHmmss").format(new Date())).setVirtualOffset(virtualOffset));
+            logger.debug("Load checkpoint of '{}' saved at record {}", file, offset);
+        } catch (Exception e) {
+            // A checkpoint not saved only makes a resumed load start earlier
+            logger.warn("Error saving the load checkpoint of '{}' at record {}: {}", file, offset, e.getMessage());
+        }
+    }
+
+    private int readInputJsonFile(Path inputFile, LoadMetrics metrics, long startOffset, long startVirtualOffset,
+                                  LoadCheckpoint checkpoint) {
         int inputFileRecords = 0;
+        ExecutorService inflateExecutor = null;
+        ParallelBgzfInputStream bgzf = null;
+        BufferedReader br = null;
         try {
-            BufferedReader br;
+            long skippedRecords = startOffset;
             if (inputFile.toString().endsWith(".gz")) {
-                br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFile.toFile()))));
+                if (ParallelBgzfInputStream.isBgzf(inputFile)) {
+                    logger.info("Block-gzipped file '{}' is decompressed with {} threads", inputFile, numThreads);
+                    inflateExecutor = Executors.newFixedThreadPool(numThreads);
+                    if (startOffset > 0 && startVirtualOffset > 0) {
+                        // Records already written by a previous load are not read
+                        bgzf = new ParallelBgzfInputStream(inputFile, inflateExecutor, 4 * numThreads, startVirtualOffset);
+                        skippedRecords = 0;
+                    } else {
+                        bgzf = new ParallelBgzfInputStream(inputFile, inflateExecutor, 4 * numThreads);
+                    }
+                } else {
+                    br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFile.toFile()),
+                            GZIP_BUFFER_SIZE)));
+                }
             } else {
                 br = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile.toFile())));
             }
 
+            // Records already written by a previous load are read but not parsed
+            for (long i = 0; i < skippedRecords; i++) {
+                if (readLine(br, bgzf) == null) {
+                    logger.warn("File '{}' has less than {} records", inputFile, startOffset);
+                    break;
+                }
+            }
+
             List<String> batch = new ArrayList<>(batchSize);
             String jsonLine;
-            while ((jsonLine = br.readLine()) != null) {
+            long readStart = System.nanoTime();
+            while ((jsonLine = readLine(br, bgzf)) != null) {
                 batch.add(jsonLine);
                 inputFileRecords++;
                 if (inputFileRecords % batchSize == 0) {
+                    // Time waiting for the loaders is not accounted to the read stage
+                    metrics.getRead().add(batch.size(), readStart);
+                    if (checkpoint != null) {
+                        checkpoint.register(batch, startOffset + inputFileRecords, getVirtualOffset(bgzf));
+                    }
                     blockingQueue.put(batch);
                     batch = new ArrayList<>(batchSize);
+                    readStart = System.nanoTime();
                 }
                 if (inputFileRecords % batchSize == 0) {
                     logger.info("{} records read from {}", inputFileRecords, inputFile.toString());
@@ -173,6 +304,10 @@ public class LoadRunner {
             }
             // Last batch
             if (!batch.isEmpty()) {
+                metrics.getRead().add(batch.size(), readStart);
+                if (checkpoint != null) {
+                    checkpoint.register(batch, startOffset + inputFileRecords, getVirtualOffset(bgzf));
+                }
                 blockingQueue.put(batch);
             }
 
@@ -184,7 +319,28 @@ public class LoadRunner {
             }
         } catch (Exception e) {
             logger.error(e.getMessage());
+        } finally {
+            Closeable closeable = bgzf != null ? bgzf : br;
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing file '{}': {}", inputFile, e.getMessage());
+                }
+            }
+            if (inflateExecutor != null) {
+                inflateExecutor.shutdown();
+            }
         }
         return inputFileRecords;
     }
+
+    // BGZF lines are read from the stream itself, a reader would read ahead and hide the virtual offset
+    private static String readLine(BufferedReader br, ParallelBgzfInputStream bgzf) throws IOException {
+        return bgzf != null ? bgzf.readLine() : br.readLine();
+    }
+
+    private static long getVirtualOffset(ParallelBgzfInputStream bgzf) {
+        return bgzf != null ? bgzf.getVirtualOffset() : 0;
+    }
 }
@@ -35,7 +35,6 @@ import org.opencb.cellbase.core.config.DatabaseCredentials;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.models.DataRelease;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
-import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.cellbase.lib.db.MongoDBManager;
 import org.opencb.cellbase.lib.impl.core.CellBaseDBAdaptor;
 import org.opencb.cellbase.lib.managers.DataReleaseManager;
@@ -49,6 +48,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -162,35 +163,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
     }
 
     private void getChunkSizes() {
-        if (data != null) {
-            switch (data) {
-                case "genome_sequence":
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.GENOME_SEQUENCE_CHUNK_SIZE};
-                    break;
-                case "gene":
-                case "refseq":
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.GENE_CHUNK_SIZE};
-                    break;
-                case "variation":  // TODO: why are we using different chunk sizes??
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE,
-                            10 * MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE, };
-                    break;
-                case "variation_functional_score":
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE};
-                    break;
-                case "regulatory_region":
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.REGULATORY_REGION_CHUNK_SIZE};
-                    break;
-                case "repeats":
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.REPEATS_CHUNK_SIZE};
-                    break;
-                case "splice_score":
-                    chunkSizes = new int[]{MongoDBCollectionConfiguration.SPLICE_CHUNK_SIZE};
-                    break;
-                default:
-                    break;
-            }
-        }
+        chunkSizes = ChunkIds.getChunkSizes(data);
     }
 
     @Override
@@ -235,6 +208,8 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
 
     private int prepareBatchAndLoad() {
         int numLoadedObjects = 0;
+        // Batches being written by the write executor
+        List<CompletableFuture<Integer>> writes = new ArrayList<>();
         boolean finished = false;
         while (!finished) {
             try {
@@ -242,6 +217,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 if (batch == LoadRunner.POISON_PILL) {
                     finished = true;
                 } else {
+                    long parseStart = System.nanoTime();
                     List<Document> documentBatch = new ArrayList<>(batch.size());
                     for (String jsonLine : batch) {
                         Document document = Document.parse(jsonLine);
@@ -253,7 +229,15 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
 //                        addVariationPrivateFields(document);
                         documentBatch.add(document);
                     }
-                    numLoadedObjects += load(documentBatch);
+                    if (metrics != null) {
+                        metrics.getParse().add(documentBatch.size(), parseStart);
+                    }
+                    if (writeExecutor != null) {
+                        writes.add(CompletableFuture.supplyAsync(() -> timedLoad(documentBatch, batch), writeExecutor));
+                        numLoadedObjects += removeCompletedWrites(writes);
+                    } else {
+                        numLoadedObjects += timedLoad(documentBatch, batch);
+                    }
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
@@ -263,10 +247,47 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 logger.error("Error Loading batch: " + e.getMessage());
             }
         }
+        for (CompletableFuture<Integer> write : writes) {
+            try {
+                numLoadedObjects += write.join();
+            } catch (CompletionException e) {
+                logger.error("Error Loading batch: " + e.getCause().getMessage());
+            }
+        }
         logger.debug("'load' finished. " + numLoadedObjects + " records loaded");
         return numLoadedObjects;
     }
 
+    private int removeCompletedWrites(List<CompletableFuture<Integer>> writes) {
+        int numLoadedObjects = 0;
+        Iterator<CompletableFuture<Integer>> iterator = writes.iterator();
+        while (iterator.hasNext()) {
+            CompletableFuture<Integer> write = iterator.next();
+            if (write.isDone()) {
+                try {
+                    numLoadedObjects += write.join();
+                } catch (CompletionException e) {
+                    logger.error("Error Loading batch: " + e.getCause().getMessage());
+                }
+                iterator.remove();
+            }
+        }
+        return numLoadedObjects;
+    }
+
+    private int timedLoad(List<Document> documentBatch, List<String> batch) {
+        long writeStart = System.nanoTime();
+        int numLoadedObjects = load(documentBatch);
+        if (metrics != null) {
+            metrics.getWrite().add(numLoadedObjects, writeStart);
+        }
+        // Documents not inserted were duplicated or deliberately skipped, the batch is done
+        if (checkpoint != null) {
+            checkpoint.acknowledge(batch);
+        }
+        return numLoadedObjects;
+    }
+
     private void addClinicalPrivateFields(Document document) throws JsonProcessingException, FileFormatException {
         if (data.equals(CLINICAL_VARIANTS_COLLECTION)) {
             Document annotationDocument = (Document) document.get("annotation");
@@ -536,7 +557,8 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
         // End recursive calls
         if (batch.size() > 0) {
             try {
-                DataResult result = mongoDBCollection.insert(batch, new QueryOptions());
+                // Unordered bulk writes are not stopped by the first error, e.g. a duplicated key after a resume
+                DataResult result = mongoDBCollection.insert(batch, new QueryOptions("ordered", false));
                 return Math.toIntExact(result.getNumInserted());
             } catch (BsonSerializationException e) {
                 // End recursive calls
@@ -569,14 +591,22 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 }
                 return nInserted;
             } catch (MongoBulkWriteException e) {
+                int lastErrorIndex = -1;
                 for (BulkWriteError bulkWriteError : e.getWriteErrors()) {
-                    // Duplicated key due to a batch which was partially inserted before, just skip the variant
-                    if (ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
-                        return 0;
+                    // Duplicated key due to a batch which was partially inserted before, just skip the document
+                    if (!ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                        // It is not a duplicated key error - propagate it
+                        throw e;
                     }
+                    lastErrorIndex = Math.max(lastErrorIndex, bulkWriteError.getIndex());
                 }
-                // It is not a duplicated key error - propagate it
-                throw e;
+                int nInserted = e.getWriteResult().getInsertedCount();
+                // Unordered writes attempt all the documents, ordered writes stop at the first error and the
+                // remaining documents must be inserted again
+                if (nInserted + e.getWriteErrors().size() < batch.size()) {
+                    nInserted += load(batch.subList(lastErrorIndex + 1, batch.size()));
+                }
+                return nInserted;
             }
         } else {
             return 0;
@@ -584,25 +614,16 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
     }
 
     private void addChunkId(Document document) {
-        if (chunkSizes != null && chunkSizes.length > 0) {
-            List<String> chunkIds = new ArrayList<>();
-            for (int chunkSize : chunkSizes) {
-                int start = document.get("position") != null ? (Integer) document.get("position") : (Integer) document.get("start");
-                int end = document.get("position") != null ? (Integer) document.get("position") : (Integer) document.get("end");
-
-                int chunkStart = start / chunkSize;
-                int chunkEnd = end / chunkSize;
-                String chunkIdSuffix = chunkSize / 1000 + "k";
-                for (int i = chunkStart; i <= chunkEnd; i++) {
-                    if (document.containsKey("chromosome")) {
-                        chunkIds.add(document.get("chromosome") + "_" + i + "_" + chunkIdSuffix);
-                    } else {
-                        chunkIds.add(document.get("sequenceName") + "_" + i + "_" + chunkIdSuffix);
-                    }
-                }
-            }
-            logger.debug("Setting chunkIds to {}", chunkIds.toString());
-            document.put("_chunkIds", chunkIds);
+        // Chunk ids may have been computed at build time
+        if (chunkSizes != null && chunkSizes.length > 0 && !document.containsKey(ChunkIds.CHUNK_IDS_FIELD)) {
+            int start = document.get("position") != null ? (Integer) document.get("position") : (Integer) document.get("start");
+            int end = document.get("position") != null ? (Integer) document.get("position") : (Integer) document.get("end");
+            String chromosome = document.containsKey("chromosome")
+                    ? String.valueOf(document.get("chromosome"))
+                    : String.valueOf(document.get("sequenceName"));
+            List<String> chunkIds = ChunkIds.getChunkIds(chromosome, start, end, chunkSizes);
+            logger.debug("Setting chunkIds to {}", chunkIds);
+            document.put(ChunkIds.CHUNK_IDS_FIELD, chunkIds);
         }
     }
 
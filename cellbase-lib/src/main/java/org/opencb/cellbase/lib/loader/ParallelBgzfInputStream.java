@@ -0,0 +1,323 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses block-gzipped (BGZF) files, e.g. written by bgzip or by CellBaseJsonFileSerializer, in parallel. BGZF
+ * files are valid gzip files made of independent gzip members of up to 64 KB, whose compressed size is stored in the
+ * header. Blocks are read sequentially, which is cheap, inflated by the executor threads and returned in order. Plain
+ * gzip files can not be split and must be read with {@link java.util.zip.GZIPInputStream}, see {@link #isBgzf(Path)}.
+ * Reading can start at a virtual offset, i.e. the compressed offset of a block shifted 16 bits left plus the offset within
+ * the uncompressed block, as returned by {@link #getVirtualOffset()} after {@link #readLine()}.
+ */
+public class ParallelBgzfInputStream extends InputStream {
+
+    private static final int HEADER_SIZE = 12;
+    private static final int FOOTER_SIZE = 8;
+
+    private final InputStream inputStream;
+    private final ExecutorService executorService;
+    private final int readAhead;
+    private final Deque<Future<byte[]>> blocks;
+    private final Deque<Long> blockAddresses;
+    private long address;
+    private boolean endOfFile;
+
+    private byte[] buffer;
+    private long bufferAddress;
+    private int position;
+    // Offset within the first block when reading starts at a virtual offset
+    private int skip;
+
+    /**
+     * Creates the stream, the executor is not shut down when the stream is closed.
+     * @param path BGZF file
+     * @param executorService executor inflating the blocks
+     * @param readAhead maximum number of blocks being inflated or waiting to be read
+     * @throws IOException if the file can not be opened
+     */
+    public ParallelBgzfInputStream(Path path, ExecutorService executorService, int readAhead) throws IOException {
+        this(path, executorService, readAhead, 0);
+    }
+
+    /**
+     * Creates the stream starting at a virtual offset, the executor is not shut down when the stream is closed.
+     * @param path BGZF file
+     * @param executorService executor inflating the blocks
+     * @param readAhead maximum number of blocks being inflated or waiting to be read
+     * @param virtualOffset virtual offset of the first byte read
+     * @throws IOException if the file can not be opened
+     */
+    public ParallelBgzfInputStream(Path path, ExecutorService executorService, int readAhead, long virtualOffset)
+            throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(path);
+        channel.position(virtualOffset >>> 16);
+        this.inputStream = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        this.executorService = executorService;
+        this.readAhead = Math.max(1, readAhead);
+        this.blocks = new ArrayDeque<>(this.readAhead);
+        this.blockAddresses = new ArrayDeque<>(this.readAhead);
+        this.address = virtualOffset >>> 16;
+        this.buffer = new byte[0];
+        this.bufferAddress = address;
+        this.skip = (int) (virtualOffset & 0xffff);
+    }
+
+    /**
+     * Checks whether the file starts with a BGZF block, i.e. a gzip header with the BC extra subfield.
+     * @param path file
+     * @return true if the file is block-gzipped
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isBgzf(Path path) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path))) {
+            byte[] header = new byte[HEADER_SIZE];
+            if (!readFully(inputStream, header, 0, HEADER_SIZE) || !isGzipWithExtraField(header)) {
+                return false;
+            }
+            byte[] extra = new byte[unsignedShort(header, 10)];
+            return readFully(inputStream, extra, 0, extra.length) && getBlockSize(extra) > 0;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillBuffer()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fillBuffer()) {
+            return -1;
+        }
+        int n = Math.min(length, buffer.length - position);
+        System.arraycopy(buffer, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Reads a line of UTF-8 text terminated by '\n' or '\r\n', without reading ahead so that {@link #getVirtualOffset()}
+     * points to the next line.
+     * @return the line without the terminator, or null at the end of the file
+     * @throws IOException if the file can not be read
+     */
+    public String readLine() throws IOException {
+        ByteArrayOutputStream line = null;
+        while (fillBuffer()) {
+            int start = position;
+            while (position < buffer.length && buffer[position] != '\n') {
+                position++;
+            }
+            if (position < buffer.length) {
+                // Line terminator found
+                position++;
+                if (line == null) {
+                    return toLine(buffer, start, position - 1 - start);
+                }
+                line.write(buffer, start, position - 1 - start);
+                return toLine(line.toByteArray(), 0, line.size());
+            }
+            if (line == null) {
+                line = new ByteArrayOutputStream();
+            }
+            line.write(buffer, start, position - start);
+        }
+        return line == null ? null : toLine(line.toByteArray(), 0, line.size());
+    }
+
+    private static String toLine(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the virtual offset of the next byte to be read.
+     * @return compressed offset of the current block shifted 16 bits left plus the offset within the uncompressed block
+     */
+    public long getVirtualOffset() {
+        return (bufferAddress << 16) | position;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        while (position >= buffer.length) {
+            submitBlocks();
+            Future<byte[]> block = blocks.poll();
+            if (block == null) {
+                return false;
+            }
+            try {
+                buffer = block.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw new IOException("Error inflating BGZF block: " + e.getCause().getMessage(), e.getCause());
+            }
+            bufferAddress = blockAddresses.poll();
+            position = skip;
+            skip = 0;
+        }
+        return true;
+    }
+
+    private void submitBlocks() throws IOException {
+        while (!endOfFile && blocks.size() < readAhead) {
+            long blockAddress = address;
+            byte[] block = readBlock();
+            if (block == null) {
+                endOfFile = true;
+            } else {
+                address += block.length;
+                blocks.add(executorService.submit(() -> inflate(block)));
+                blockAddresses.add(blockAddress);
+            }
+        }
+    }
+
+    private byte[] readBlock() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        if (!readFully(inputStream, header, 0, HEADER_SIZE)) {
+            return null;
+        }
+        if (!isGzipWithExtraField(header)) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int extraLength = unsignedShort(header, 10);
+        byte[] extra = new byte[extraLength];
+        if (!readFully(inputStream, extra, 0, extraLength)) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        int blockSize = getBlockSize(extra);
+        if (blockSize < HEADER_SIZE + extraLength + FOOTER_SIZE) {
+            throw new IOException("Invalid BGZF block size " + blockSize);
+        }
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, HEADER_SIZE);
+        System.arraycopy(extra, 0, block, HEADER_SIZE, extraLength);
+        if (!readFully(inputStream, block, HEADER_SIZE + extraLength, blockSize - HEADER_SIZE - extraLength)) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return block;
+    }
+
+    static byte[] inflate(byte[] block) throws IOException {
+        int dataOffset = HEADER_SIZE + unsignedShort(block, 10);
+        int dataLength = block.length - dataOffset - FOOTER_SIZE;
+        int size = unsignedInt(block, block.length - 4);
+        byte[] bytes = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataOffset, dataLength);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, n, size - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != size) {
+                throw new IOException("BGZF block inflated to " + n + " bytes, expected " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid BGZF block data: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, size);
+        if ((int) crc32.getValue() != unsignedInt(block, block.length - 8)) {
+            throw new IOException("BGZF block CRC does not match");
+        }
+        return bytes;
+    }
+
+    private static boolean isGzipWithExtraField(byte[] header) {
+        // Magic number, deflate compression method and FEXTRA flag
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && (header[3] & 4) != 0;
+    }
+
+    private static int getBlockSize(byte[] extra) {
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            int subfieldLength = unsignedShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2 && i + 6 <= extra.length) {
+                return unsignedShort(extra, i + 4) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static int unsignedShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8);
+    }
+
+    private static int unsignedInt(byte[] bytes, int offset) {
+        return unsignedShort(bytes, offset) | (unsignedShort(bytes, offset + 2) << 16);
+    }
+
+    private static boolean readFully(InputStream inputStream, byte[] bytes, int offset, int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            int read = inputStream.read(bytes, offset + n, length - n);
+            if (read < 0) {
+                if (n == 0) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of BGZF file");
+            }
+            n += read;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> block : blocks) {
+            block.cancel(false);
+        }
+        blocks.clear();
+        blockAddresses.clear();
+        inputStream.close();
+    }
+}
@@ -18,6 +18,7 @@ package org.opencb.cellbase.lib.managers;
 
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.SpeciesConfiguration;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.utils.SpeciesUtils;
 import org.opencb.cellbase.lib.db.MongoDBManager;
@@ -90,6 +91,60 @@ public class AbstractManager implements AutoCloseable {
         return queries;
     }
 
+    /**
+     * Path to the 2-bit genome sequence file configured for the species and assembly of this manager, if any. Files are
+     * opened by the adaptors for each data release.
+     * @return the genome sequence file, or null if no file is configured
+     * @throws CellBaseException if the species or assembly are not valid
+     */
+    protected String getGenomeSequenceFile() throws CellBaseException {
+        SpeciesConfiguration.Assembly speciesAssembly = getSpeciesAssembly();
+        if (speciesAssembly == null || StringUtils.isEmpty(speciesAssembly.getGenomeSequenceFile())) {
+            return null;
+        }
+        logger.info("Genome sequences for {} {} are read from {}", species, speciesAssembly.getName(),
+                speciesAssembly.getGenomeSequenceFile());
+        return speciesAssembly.getGenomeSequenceFile();
+    }
+
+    /**
+     * Path to the CADD position score file configured for the species and assembly of this manager, if any.
+     * @return the CADD score file, or null if no file is configured
+     * @throws CellBaseException if the species or assembly are not valid
+     */
+    protected String getCaddScoreFile() throws CellBaseException {
+        SpeciesConfiguration.Assembly speciesAssembly = getSpeciesAssembly();
+        return speciesAssembly != null ? getPositionScoreFile("CADD", speciesAssembly.getCaddScoreFile()) : null;
+    }
+
+    /**
+     * Path to the REVEL position score file configured for the species and assembly of this manager, if any.
+     * @return the REVEL score file, or null if no file is configured
+     * @throws CellBaseException if the species or assembly are not valid
+     */
+    protected String getRevelScoreFile() throws CellBaseException {
+        SpeciesConfiguration.Assembly speciesAssembly = getSpeciesAssembly();
+        return speciesAssembly != null ? getPositionScoreFile("REVEL", speciesAssembly.getRevelScoreFile()) : null;
+    }
+
+    private String getPositionScoreFile(String name, String file) {
+        if (StringUtils.isEmpty(file)) {
+            return null;
+        }
+        logger.info("{} scores for {} {} are read from {}", name, species, assembly, file);
+        return file;
+    }
+
+    private SpeciesConfiguration.Assembly getSpeciesAssembly() throws CellBaseException {
+        SpeciesConfiguration speciesConfiguration = SpeciesUtils.getSpeciesConfiguration(configuration, species);
+        if (speciesConfiguration == null) {
+            return null;
+        }
+        return StringUtils.isNotEmpty(assembly)
+                ? SpeciesUtils.getAssembly(speciesConfiguration, assembly)
+                : SpeciesUtils.getDefaultAssembly(speciesConfiguration);
+    }
+
     @Override
     public void close()  {
         mongoDBManager.close();
@@ -20,6 +20,9 @@ import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.config.SpeciesConfiguration;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.utils.SpeciesUtils;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationMemoCache;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationScheduler;
+import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +48,8 @@ public class CellBaseManagerFactory {
     private FileManager fileManager;
     private PublicationManager publicationManager;
 
+    private Map<String, VariantAnnotationCalculator> variantAnnotationCalculators;
+
     private Map<String, DataReleaseManager> dataReleaseManagers;
 
     private Logger logger;
@@ -65,6 +70,7 @@ public class CellBaseManagerFactory {
         tfManagers = new HashMap<>();
         ontologyManagers = new HashMap<>();
         dataReleaseManagers = new HashMap<>();
+        variantAnnotationCalculators = new HashMap<>();
 
         System.out.println("In CellBaseManagerFactory");
     }
@@ -361,4 +367,38 @@ public class CellBaseManagerFactory {
         }
         return publicationManager;
     }
+
+    /**
+     * Bounded thread pool of the annotation configuration, shared by all the variant annotation calculators of the JVM.
+     * @return the annotation scheduler, created on first use from the 'annotation' configuration
+     */
+    public AnnotationScheduler getAnnotationScheduler() {
+        return AnnotationScheduler.get(configuration.getAnnotation());
+    }
+
+    /**
+     * Memo cache of variant annotations set in the annotation configuration, shared by all the factories of the JVM.
+     * @return the memo cache, null if it is not enabled or can not be opened
+     */
+    public AnnotationMemoCache getAnnotationMemoCache() {
+        return AnnotationMemoCache.open(configuration.getAnnotation());
+    }
+
+    /**
+     * Variant annotation calculator shared by all the annotation requests of a species, assembly and data release.
+     * Request options are passed on every call, so the calculator is safe to be used by concurrent requests.
+     * @param species species
+     * @param assembly assembly
+     * @param dataRelease data release
+     * @return the calculator, created on first use
+     * @throws CellBaseException if the species or assembly are not valid
+     */
+    public synchronized VariantAnnotationCalculator getVariantAnnotationCalculator(String species, String assembly, int dataRelease)
+            throws CellBaseException {
+        String multiKey = getMultiKey(species, assembly) + "_" + dataRelease;
+        if (!variantAnnotationCalculators.containsKey(multiKey)) {
+            variantAnnotationCalculators.put(multiKey, new VariantAnnotationCalculator(species, assembly, dataRelease, this));
+        }
+        return variantAnnotationCalculators.get(multiKey);
+    }
 }
@@ -100,4 +100,9 @@ public class ClinicalManager extends AbstractManager implements AggregationApi<C
                                                           QueryOptions queryOptions, int dataRelease) throws CellBaseException {
         return clinicalDBAdaptor.getByVariant(variants, geneList, queryOptions, dataRelease);
     }
+
+    public List<CellBaseDataResult<Variant>> getByVariant(List<Variant> variants, List<Gene> geneList, List<List<String>> hgvsList,
+                                                          QueryOptions queryOptions, int dataRelease) throws CellBaseException {
+        return clinicalDBAdaptor.getByVariant(variants, geneList, hgvsList, queryOptions, dataRelease);
+    }
 }
@@ -25,6 +25,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.models.DataRelease;
+import org.opencb.cellbase.core.models.DataReleaseCheckpoint;
 import org.opencb.cellbase.core.models.DataReleaseSource;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.CellBaseDBAdaptor;
@@ -87,7 +88,8 @@ public class DataReleaseManager extends AbstractManager {
                 // Increment the release number, only if the previous release has collections
                 lastRelease.setRelease(lastRelease.getRelease() + 1)
                         .setActive(false)
-                        .setDate(sdf.format(new Date()));
+                        .setDate(sdf.format(new Date()))
+                        .setCheckpoints(Collections.emptyList());
                 // Write it to the database
                 releaseDBAdaptor.insert(lastRelease);
             } else {
@@ -197,6 +199,48 @@ public class DataReleaseManager extends AbstractManager {
         }
     }
 
+    /**
+     * Gets the load progress of an input file.
+     * @param release data release
+     * @param data data being loaded, e.g. variation
+     * @param file input file name
+     * @return the checkpoint, or null if the file has not been loaded before in this release
+     */
+    public DataReleaseCheckpoint getCheckpoint(int release, String data, String file) {
+        DataRelease dataRelease = get(release);
+        if (dataRelease != null && dataRelease.getCheckpoints() != null) {
+            for (DataReleaseCheckpoint checkpoint : dataRelease.getCheckpoints()) {
+                if (Objects.equals(data, checkpoint.getData()) && Objects.equals(file, checkpoint.getFile())) {
+                    return checkpoint;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves the load progress of an input file, replacing the previous checkpoint of the same data and file. The update is
+     * atomic in the database, so checkpoints of files loaded concurrently, e.g. by other processes, are not overwritten.
+     * @param release data release
+     * @param checkpoint load progress
+     */
+    public void updateCheckpoint(int release, DataReleaseCheckpoint checkpoint) {
+        releaseDBAdaptor.updateCheckpoint(release, checkpoint.getData(), checkpoint.getFile(), toMap(checkpoint));
+    }
+
+    private Map<String, Object> toMap(DataReleaseCheckpoint checkpoint) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("data", checkpoint.getData());
+        map.put("file", checkpoint.getFile());
+        map.put("offset", checkpoint.getOffset());
+        map.put("virtualOffset", checkpoint.getVirtualOffset());
+        map.put("complete", checkpoint.isComplete());
+        if (StringUtils.isNotEmpty(checkpoint.getDate())) {
+            map.put("date", checkpoint.getDate());
+        }
+        return map;
+    }
+
     public DataRelease active(int release) throws JsonProcessingException {
         // Gel all releases and check if the input release exists
         DataRelease prevActive = null;
@@ -20,23 +20,31 @@ import org.opencb.biodata.models.core.Gene;
 import org.opencb.biodata.models.core.GenomeSequenceFeature;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.core.TranscriptTfbs;
+import org.opencb.biodata.models.variant.avro.GeneMirnaTarget;
 import org.opencb.cellbase.core.api.GeneQuery;
+import org.opencb.cellbase.core.api.query.LogicalList;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
+import org.opencb.cellbase.core.api.query.QueryException;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.core.utils.LruCache;
 import org.opencb.cellbase.lib.impl.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.GeneMongoDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.GenomeMongoDBAdaptor;
+import org.opencb.cellbase.lib.variant.annotation.GeneIntervalIndex;
 import org.opencb.commons.datastore.core.QueryOptions;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 public class GeneManager extends AbstractManager implements AggregationApi<GeneQuery, Gene> {
 
+    private static final int MIRNA_TARGETS_CACHE_SIZE = 5000;
+
     private GeneMongoDBAdaptor geneDBAdaptor;
     private GenomeMongoDBAdaptor genomeDBAdaptor;
+    private final Map<String, GeneIntervalIndex> geneIndexes = new HashMap<>();
+    private final LruCache<String, List<GeneMirnaTarget>> mirnaTargetsCache = new LruCache<>(MIRNA_TARGETS_CACHE_SIZE);
 
     public GeneManager(String species, CellBaseConfiguration configuration) throws CellBaseException {
         this(species, null, configuration);
@@ -48,9 +56,10 @@ public class GeneManager extends AbstractManager implements AggregationApi<GeneQ
         this.init();
     }
 
-    private void init() {
+    private void init() throws CellBaseException {
         geneDBAdaptor = dbAdaptorFactory.getGeneDBAdaptor();
         genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor();
+        genomeDBAdaptor.setGenomeSequenceFile(getGenomeSequenceFile());
     }
 
     @Override
@@ -99,4 +108,63 @@ public class GeneManager extends AbstractManager implements AggregationApi<GeneQ
         return geneDBAdaptor.startsWith(query, queryOptions, dataRelease);
     }
 
+    public boolean isGeneIndexEnabled() {
+        return configuration.getAnnotation() != null && configuration.getAnnotation().isGeneIndex();
+    }
+
+    /**
+     * In-memory interval tree index of all the genes of a source and data release, loaded on first use and kept for the
+     * lifetime of this manager.
+     * @param source gene source, i.e. ensembl or refseq
+     * @param includeFields gene fields to be loaded, indexes with different fields are kept apart
+     * @param dataRelease data release
+     * @return the gene index
+     * @throws CellBaseException if the data release is not valid
+     */
+    public synchronized GeneIntervalIndex getGeneIndex(String source, List<String> includeFields, int dataRelease)
+            throws CellBaseException {
+        String key = source + "_" + dataRelease + "_" + includeFields;
+        GeneIntervalIndex geneIndex = geneIndexes.get(key);
+        if (geneIndex == null) {
+            logger.info("Loading gene index for source '{}' and data release {}", source, dataRelease);
+            geneIndex = GeneIntervalIndex.load(this, source, includeFields, dataRelease);
+            logger.info("Gene index loaded: {}", geneIndex);
+            geneIndexes.put(key, geneIndex);
+        }
+        return geneIndex;
+    }
+
+    /**
+     * Genes targeted by the mature miRNAs of one miRNA gene. Targets do not change within a data release, they are
+     * queried once and cached by data release and mature miRNA ids.
+     * @param matureIds mature miRNA ids
+     * @param dataRelease data release
+     * @return target genes, a new list every call
+     * @throws QueryException if the query is not valid
+     * @throws IllegalAccessException if the query can not be parsed
+     * @throws CellBaseException if the data release is not valid
+     */
+    public List<GeneMirnaTarget> getMirnaTargets(List<String> matureIds, int dataRelease)
+            throws QueryException, IllegalAccessException, CellBaseException {
+        String key = dataRelease + "_" + String.join(",", matureIds);
+        List<GeneMirnaTarget> geneMirnaTargets = mirnaTargetsCache.get(key);
+        if (geneMirnaTargets == null) {
+            GeneQuery geneQuery = new GeneQuery();
+            geneQuery.setAnnotationTargets(new LogicalList<>(matureIds, false));
+            geneQuery.setIncludes(Arrays.asList("id", "name", "biotype"));
+            geneQuery.setDataRelease(dataRelease);
+            geneMirnaTargets = new ArrayList<>();
+            for (Gene gene : search(geneQuery).getResults()) {
+                geneMirnaTargets.add(new GeneMirnaTarget(gene.getId(), gene.getName(), gene.getBiotype()));
+            }
+            mirnaTargetsCache.put(key, geneMirnaTargets);
+        }
+
+        // Annotations are modified by clients, cached targets are not shared
+        List<GeneMirnaTarget> copy = new ArrayList<>(geneMirnaTargets.size());
+        for (GeneMirnaTarget geneMirnaTarget : geneMirnaTargets) {
+            copy.add(new GeneMirnaTarget(geneMirnaTarget.getGeneId(), geneMirnaTarget.getGeneName(), geneMirnaTarget.getBiotype()));
+        }
+        return copy;
+    }
 }
@@ -27,6 +27,7 @@ import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.api.GenomeQuery;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.models.GenomicFloatScoreRegion;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.GenomeMongoDBAdaptor;
@@ -35,6 +36,7 @@ import org.opencb.commons.datastore.core.QueryOptions;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class GenomeManager extends AbstractManager implements AggregationApi<GenomeQuery, Chromosome> {
 
@@ -51,8 +53,9 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
         this.init();
     }
 
-    private void init() {
+    private void init() throws CellBaseException {
         genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor();
+        genomeDBAdaptor.setGenomeSequenceFile(getGenomeSequenceFile());
     }
 
     @Override
@@ -144,6 +147,11 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
         return genomeDBAdaptor.getAllScoresByRegionList(regionList, options, dataRelease);
     }
 
+    public List<Map<String, GenomicFloatScoreRegion>> getConservationScores(List<Region> regionList, int dataRelease)
+            throws CellBaseException {
+        return genomeDBAdaptor.getConservationScores(regionList, dataRelease);
+    }
+
     public CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions, int dataRelease)
             throws CellBaseException {
         return genomeDBAdaptor.getSequence(region, queryOptions, dataRelease);
@@ -55,10 +55,11 @@ public class ProteinManager extends AbstractManager implements AggregationApi<Pr
         this.init();
     }
 
-    private void init() {
+    private void init() throws CellBaseException {
         proteinDBAdaptor = dbAdaptorFactory.getProteinDBAdaptor();
         transcriptDBAdaptor = dbAdaptorFactory.getTranscriptDBAdaptor();
         missenseVariationFunctionalScoreMongoDBAdaptor = dbAdaptorFactory.getMissenseVariationFunctionalScoreMongoDBAdaptor();
+        missenseVariationFunctionalScoreMongoDBAdaptor.setRevelScoreFile(getRevelScoreFile());
     }
 
     @Override
@@ -103,15 +104,44 @@ public class ProteinManager extends AbstractManager implements AggregationApi<Pr
                                                                              int dataRelease) throws CellBaseException {
         CellBaseDataResult<ProteinVariantAnnotation> proteinVariantAnnotation = proteinDBAdaptor.getVariantAnnotation(ensemblTranscriptId,
                 aaPosition, aaReference, aaAlternate, options, dataRelease);
-        CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> revelResults =
-                missenseVariationFunctionalScoreMongoDBAdaptor.getScores(
-                        variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate(),
-                        aaReference, aaAlternate, dataRelease);
+        addRevelScore(proteinVariantAnnotation, missenseVariationFunctionalScoreMongoDBAdaptor.getScores(variant.getChromosome(),
+                variant.getStart(), variant.getReference(), variant.getAlternate(), aaReference, aaAlternate, dataRelease));
+        return proteinVariantAnnotation;
+    }
+
+    /**
+     * Protein annotation of a batch of amino acid changes, e.g. all missense consequence types of a batch of variants.
+     * @param variants variants, one per amino acid change
+     * @param ensemblTranscriptIds Ensembl transcript ids, one per amino acid change
+     * @param aaPositions amino acid positions
+     * @param aaReferences reference amino acids
+     * @param aaAlternates alternate amino acids
+     * @param options query options
+     * @param dataRelease data release
+     * @return one result per amino acid change, in the same order
+     * @throws CellBaseException if the data release is not valid
+     */
+    public List<CellBaseDataResult<ProteinVariantAnnotation>> getVariantAnnotation(List<Variant> variants,
+                                                                                   List<String> ensemblTranscriptIds,
+                                                                                   List<Integer> aaPositions, List<String> aaReferences,
+                                                                                   List<String> aaAlternates, QueryOptions options,
+                                                                                   int dataRelease) throws CellBaseException {
+        List<CellBaseDataResult<ProteinVariantAnnotation>> proteinVariantAnnotations = proteinDBAdaptor.getVariantAnnotation(
+                ensemblTranscriptIds, aaPositions, aaReferences, aaAlternates, options, dataRelease);
+        List<CellBaseDataResult<TranscriptMissenseVariantFunctionalScore>> revelResults =
+                missenseVariationFunctionalScoreMongoDBAdaptor.getScores(variants, aaReferences, aaAlternates, dataRelease);
+        for (int i = 0; i < variants.size(); i++) {
+            addRevelScore(proteinVariantAnnotations.get(i), revelResults.get(i));
+        }
+        return proteinVariantAnnotations;
+    }
+
+    private void addRevelScore(CellBaseDataResult<ProteinVariantAnnotation> proteinVariantAnnotation,
+                               CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> revelResults) {
         if (proteinVariantAnnotation.getResults() != null && revelResults.getResults() != null) {
             proteinVariantAnnotation.getResults().get(0).getSubstitutionScores().add(
                     new Score(revelResults.first().getScore(), "revel", ""));
         }
-        return proteinVariantAnnotation;
     }
 }
 
@@ -37,14 +37,17 @@ import org.opencb.cellbase.lib.impl.core.SpliceScoreMongoDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.VariantMongoDBAdaptor;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
+import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationContext;
 import org.opencb.cellbase.lib.variant.hgvs.HgvsCalculator;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class VariantManager extends AbstractManager implements AggregationApi<VariantQuery, Variant> {
@@ -73,6 +76,10 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
 
     private void init() throws CellBaseException {
         variantDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor();
+        variantDBAdaptor.setCaddScoreFile(getCaddScoreFile());
+        if (configuration.getAnnotation() != null) {
+            variantDBAdaptor.setCaddChunkCacheSize(configuration.getAnnotation().getCaddChunkCacheSize());
+        }
         spliceDBAdaptor = dbAdaptorFactory.getSpliceScoreDBAdaptor();
         cellbaseManagerFactory = new CellBaseManagerFactory(configuration);
         genomeManager = cellbaseManagerFactory.getGenomeManager(species, assembly);
@@ -92,11 +99,13 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
         List<Variant> variantList = parseVariants(variants);
         HgvsCalculator hgvsCalculator = new HgvsCalculator(genomeManager, dataRelease);
         List<CellBaseDataResult<String>> results = new ArrayList<>();
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                dataRelease, cellbaseManagerFactory);
-        List<Gene> batchGeneList = variantAnnotationCalculator.getBatchGeneList(variantList);
+        VariantAnnotationCalculator variantAnnotationCalculator = cellbaseManagerFactory.getVariantAnnotationCalculator(species,
+                assembly, dataRelease);
+        // HGVS are calculated for Ensembl genes only
+        VariantAnnotationContext context = new VariantAnnotationContext(new QueryOptions("consequenceTypeSource", "ensembl"));
+        List<Gene> batchGeneList = variantAnnotationCalculator.getBatchGeneList(variantList, context);
         for (Variant variant : variantList) {
-            List<Gene> variantGeneList = variantAnnotationCalculator.getAffectedGenes(batchGeneList, variant);
+            List<Gene> variantGeneList = variantAnnotationCalculator.getAffectedGenes(batchGeneList, variant, context);
             List<String> hgvsStrings = hgvsCalculator.run(variant, variantGeneList, false);
             results.add(new CellBaseDataResult<>(variant.getId(), 0, new ArrayList<>(), hgvsStrings.size(), hgvsStrings, -1));
         }
@@ -113,8 +122,8 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
      */
     public CellBaseDataResult<Variant> getNormalizationByVariant(String variants, int dataRelease) throws CellBaseException {
         List<Variant> variantList = parseVariants(variants);
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                dataRelease, cellbaseManagerFactory);
+        VariantAnnotationCalculator variantAnnotationCalculator = cellbaseManagerFactory.getVariantAnnotationCalculator(species,
+                assembly, dataRelease);
         List<Variant> normalisedVariants = variantAnnotationCalculator.normalizer(variantList);
         return new CellBaseDataResult<>(variants, 0, new ArrayList<>(), normalisedVariants.size(), normalisedVariants, -1);
     }
@@ -134,6 +143,80 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
                                                                               int dataRelease)
             throws ExecutionException, InterruptedException, CellBaseException, QueryException, IllegalAccessException {
         List<Variant> variantList = parseVariants(variants);
+        setAnnotationQueryOptions(queryOptions, normalize, skipDecompose, ignorePhase, phased, imprecise, svExtraPadding,
+                cnvExtraPadding, checkAminoAcidChange, consequenceTypeSource, enable);
+
+        VariantAnnotationCalculator variantAnnotationCalculator = cellbaseManagerFactory.getVariantAnnotationCalculator(species,
+                assembly, dataRelease);
+        List<CellBaseDataResult<VariantAnnotation>> queryResults =
+                variantAnnotationCalculator.getAnnotationByVariantList(variantList, queryOptions);
+        return queryResults;
+    }
+
+    /**
+     * Annotates a comma-separated list of variants in batches. Variants are parsed and annotated one batch at a time and
+     * each batch is handed to the consumer as soon as it is annotated, so the annotation of the whole list is never held
+     * in memory, e.g. to stream large annotation requests.
+     *
+     * @param queryOptions query options, e.g. include and exclude
+     * @param variants comma-separated list of variants
+     * @param normalize whether variants are normalised
+     * @param skipDecompose whether MNV decomposition is skipped
+     * @param ignorePhase whether phase is ignored
+     * @param phased deprecated, use ignorePhase
+     * @param imprecise whether imprecise search is used for structural variants
+     * @param svExtraPadding extra padding for structural variants
+     * @param cnvExtraPadding extra padding for CNVs
+     * @param checkAminoAcidChange whether clinical variants are also matched at the amino acid change level
+     * @param consequenceTypeSource gene sets, ensembl and/or refseq
+     * @param enable fields disabled by default to be enabled, e.g. hgmd
+     * @param dataRelease data release
+     * @param batchSize number of variants annotated at once
+     * @param consumer receives the annotation results of every batch, in input order
+     * @throws ExecutionException if an annotation task fails
+     * @throws InterruptedException if the annotation is interrupted
+     * @throws CellBaseException if the annotation fails
+     * @throws QueryException if the query is not valid
+     * @throws IllegalAccessException if the query can not be built
+     */
+    public void streamAnnotationByVariant(QueryOptions queryOptions, String variants, Boolean normalize, Boolean skipDecompose,
+                                          Boolean ignorePhase, @Deprecated Boolean phased, Boolean imprecise,
+                                          Integer svExtraPadding, Integer cnvExtraPadding, Boolean checkAminoAcidChange,
+                                          String consequenceTypeSource, String enable, int dataRelease, int batchSize,
+                                          Consumer<List<CellBaseDataResult<VariantAnnotation>>> consumer)
+            throws ExecutionException, InterruptedException, CellBaseException, QueryException, IllegalAccessException {
+        if (variants == null || variants.isEmpty()) {
+            return;
+        }
+        setAnnotationQueryOptions(queryOptions, normalize, skipDecompose, ignorePhase, phased, imprecise, svExtraPadding,
+                cnvExtraPadding, checkAminoAcidChange, consequenceTypeSource, enable);
+
+        VariantAnnotationCalculator variantAnnotationCalculator = cellbaseManagerFactory.getVariantAnnotationCalculator(species,
+                assembly, dataRelease);
+        VariantAnnotationContext context = new VariantAnnotationContext(queryOptions);
+        List<Variant> batch = new ArrayList<>(batchSize);
+        int start = 0;
+        while (start < variants.length()) {
+            // Variants are parsed while iterating, the input is not split at once
+            int end = variants.indexOf(',', start);
+            if (end < 0) {
+                end = variants.length();
+            }
+            // Empty items, e.g. 'a,,b' or a trailing comma, are skipped
+            if (end > start) {
+                batch.add(parseVariant(variants.substring(start, end)));
+            }
+            start = end + 1;
+            if (batch.size() == batchSize || (start >= variants.length() && !batch.isEmpty())) {
+                consumer.accept(variantAnnotationCalculator.getAnnotationByVariantList(batch, context));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    private void setAnnotationQueryOptions(QueryOptions queryOptions, Boolean normalize, Boolean skipDecompose, Boolean ignorePhase,
+                                           Boolean phased, Boolean imprecise, Integer svExtraPadding, Integer cnvExtraPadding,
+                                           Boolean checkAminoAcidChange, String consequenceTypeSource, String enable) {
         logger.debug("queryOptions: " + queryOptions);
 
         // If ignorePhase (new parameter) is present, then overrides presence of "phased"
@@ -172,12 +255,6 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
         if (enable != null) {
             queryOptions.put("enable", enable);
         }
-
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                dataRelease, cellbaseManagerFactory);
-        List<CellBaseDataResult<VariantAnnotation>> queryResults =
-                variantAnnotationCalculator.getAnnotationByVariantList(variantList, queryOptions);
-        return queryResults;
     }
 
     private List<Variant> parseVariants(String variantsString) {
@@ -274,10 +351,21 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
 
     public List<CellBaseDataResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions options, int dataRelease)
             throws CellBaseException {
+        // Only SNVs have CADD scores, they are all fetched at once so that each CADD chunk is read only once
+        List<Variant> snvs = new ArrayList<>(variants.size());
+        for (Variant variant: variants) {
+            if (variant.getType() == VariantType.SNV) {
+                snvs.add(variant);
+            }
+        }
+        Iterator<CellBaseDataResult<Score>> snvResults = snvs.isEmpty()
+                ? Collections.emptyIterator()
+                : variantDBAdaptor.getFunctionalScoreVariant(snvs, options, dataRelease).iterator();
+
         List<CellBaseDataResult<Score>> cellBaseDataResults = new ArrayList<>(variants.size());
         for (Variant variant: variants) {
             if (variant.getType() == VariantType.SNV) {
-                cellBaseDataResults.add(getFunctionalScoreVariant(variant, options, dataRelease));
+                cellBaseDataResults.add(snvResults.next());
             } else {
                 cellBaseDataResults.add(new CellBaseDataResult<>(variant.toString(), 0, Collections.emptyList(), 0));
             }
@@ -296,11 +384,8 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
     }
 
     public List<CellBaseDataResult<SpliceScore>> getSpliceScoreVariant(List<Variant> variants, int dataRelease) throws CellBaseException {
-        List<CellBaseDataResult<SpliceScore>> cellBaseDataResults = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            cellBaseDataResults.add(getSpliceScoreVariant(variant, dataRelease));
-        }
-        return cellBaseDataResults;
+        // All the variants of the batch are fetched with one query per chromosome
+        return spliceDBAdaptor.getScores(variants, dataRelease);
     }
 
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Transcript;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Spliced sequence and exon coordinates of a transcript, computed once per transcript and shared by the consequence
+ * type and HGVS calculators. Exon offsets in the cDNA are precomputed so that genomic positions are mapped to cDNA
+ * positions with a binary search over the exons.
+ */
+public final class SplicedTranscript {
+
+    private static final int CACHE_SIZE = 50000;
+    // Weak keys are compared by identity, entries are released with the transcripts they were computed from
+    private static final Cache<Transcript, SplicedTranscript> CACHE = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
+    private final boolean positiveStrand;
+    private final String sequence;
+    // Exon coordinates in transcript order, i.e. decreasing genomic coordinates in the negative strand
+    private final int[] exonStarts;
+    private final int[] exonEnds;
+    // cDNA length of the exons before each exon
+    private final int[] cdnaOffsets;
+
+    SplicedTranscript(Transcript transcript) {
+        List<Exon> exons = transcript.getExons();
+        this.positiveStrand = "+".equals(transcript.getStrand());
+        this.exonStarts = new int[exons.size()];
+        this.exonEnds = new int[exons.size()];
+        this.cdnaOffsets = new int[exons.size()];
+
+        int cdnaOffset = 0;
+        for (int i = 0; i < exons.size(); i++) {
+            Exon exon = exons.get(i);
+            exonStarts[i] = exon.getStart();
+            exonEnds[i] = exon.getEnd();
+            cdnaOffsets[i] = cdnaOffset;
+            cdnaOffset += exon.getEnd() - exon.getStart() + 1;
+        }
+
+        // Exon sequences are concatenated in genomic order, as the calculators read codons from both strands
+        StringBuilder sequenceBuilder = new StringBuilder(cdnaOffset);
+        for (int i = 0; i < exons.size(); i++) {
+            sequenceBuilder.append(exons.get(positiveStrand ? i : exons.size() - 1 - i).getSequence());
+        }
+        this.sequence = sequenceBuilder.toString();
+    }
+
+    /**
+     * Returns the spliced transcript of a transcript, computed on first use.
+     * @param transcript transcript with exons
+     * @return the spliced transcript
+     */
+    public static SplicedTranscript of(Transcript transcript) {
+        try {
+            return CACHE.get(transcript, () -> new SplicedTranscript(transcript));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error computing spliced sequence of transcript " + transcript.getId(), e.getCause());
+        }
+    }
+
+    /**
+     * Concatenated exon sequences in genomic order, the cDNA is the reverse complement in the negative strand.
+     * @return spliced sequence
+     */
+    public String getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Maps a genomic position to the cDNA. Positions in introns are mapped relative to the next exon in the transcript.
+     * @param genomicPosition genomic position
+     * @return 1-based cDNA position
+     * @throws IndexOutOfBoundsException if the position is after the last exon of the transcript
+     */
+    public int getCdnaPosition(int genomicPosition) {
+        int i = getExonIndex(genomicPosition);
+        if (positiveStrand) {
+            return cdnaOffsets[i] + genomicPosition - exonStarts[i] + 1;
+        } else {
+            return cdnaOffsets[i] + exonEnds[i] - genomicPosition + 1;
+        }
+    }
+
+    /**
+     * Checks whether a genomic position falls within an exon.
+     * @param genomicPosition genomic position
+     * @return true if the position is exonic
+     */
+    public boolean isExonic(int genomicPosition) {
+        int i = getExonIndex(genomicPosition);
+        return i < exonStarts.length && genomicPosition >= exonStarts[i] && genomicPosition <= exonEnds[i];
+    }
+
+    /**
+     * First exon, in transcript order, that ends at or after the position in the transcript direction.
+     */
+    private int getExonIndex(int genomicPosition) {
+        int low = 0;
+        int high = exonStarts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            boolean before = positiveStrand ? genomicPosition > exonEnds[mid] : genomicPosition < exonStarts[mid];
+            if (before) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.common.GitRepositoryState;
+import org.opencb.cellbase.core.config.AnnotationProperties;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.models.DataRelease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memo cache of finished variant annotations, keyed by the normalised variant and everything else the annotation
+ * depends on, see {@link VariantAnnotationCalculator}. Annotations are stored Avro encoded, so every hit returns a new
+ * copy that callers are free to modify. Implementations must be thread-safe; failures are logged and handled as
+ * misses, the cache never makes an annotation fail.
+ */
+public abstract class AnnotationMemoCache implements AutoCloseable {
+
+    public static final String LRU = "lru";
+    public static final String ROCKSDB = "rocksdb";
+
+    public static final int DEFAULT_SIZE = 100000;
+    public static final int DEFAULT_MAX_DISK_SIZE = 10240;
+
+    private static final SpecificDatumWriter<VariantAnnotation> WRITER = new SpecificDatumWriter<>(VariantAnnotation.class);
+    private static final SpecificDatumReader<VariantAnnotation> READER = new SpecificDatumReader<>(VariantAnnotation.class);
+    private static final Map<String, AnnotationMemoCache> OPEN_CACHES = new HashMap<>();
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    protected static Logger logger = LoggerFactory.getLogger(AnnotationMemoCache.class);
+
+    protected AnnotationMemoCache() {
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Opens the memo cache set in the annotation configuration. Caches are opened only once per JVM and shared, they are
+     * closed on shutdown. Annotation works without the cache, so an invalid configuration or a cache that can not be
+     * opened, e.g. a RocksDB directory locked by another process, is logged and the cache disabled.
+     * @param annotationProperties annotation configuration
+     * @return the memo cache, null if it is not enabled or can not be opened
+     */
+    public static synchronized AnnotationMemoCache open(AnnotationProperties annotationProperties) {
+        if (annotationProperties == null || StringUtils.isEmpty(annotationProperties.getMemoCache())
+                || "none".equalsIgnoreCase(annotationProperties.getMemoCache())) {
+            return null;
+        }
+        String key = annotationProperties.getMemoCache().toLowerCase() + ":" + annotationProperties.getMemoCacheSize() + ":"
+                + annotationProperties.getMemoCacheDirectory();
+        AnnotationMemoCache memoCache = OPEN_CACHES.get(key);
+        if (memoCache == null) {
+            try {
+                memoCache = create(annotationProperties);
+            } catch (CellBaseException e) {
+                logger.warn("Annotation memo cache disabled: {}", e.getMessage());
+                return null;
+            }
+            AnnotationMemoCache shutdownMemoCache = memoCache;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                logger.info("Closing annotation memo cache: {}", shutdownMemoCache);
+                shutdownMemoCache.close();
+            }));
+            OPEN_CACHES.put(key, memoCache);
+        }
+        return memoCache;
+    }
+
+    /**
+     * Prefix of the memo keys of the annotations of a data release. Besides species, assembly and release number, it
+     * fingerprints the collections and sources of the release, the annotation model and the software version, so that
+     * persistent caches do not serve annotations of another active release, of data loaded later or of another version.
+     * @param species species
+     * @param assembly assembly
+     * @param dataRelease data release, already resolved when the default release is requested
+     * @return key prefix
+     */
+    public static String getKeyPrefix(String species, String assembly, DataRelease dataRelease) {
+        StringBuilder fingerprint = new StringBuilder();
+        if (dataRelease.getCollections() != null) {
+            fingerprint.append(new TreeMap<>(dataRelease.getCollections()));
+        }
+        fingerprint.append('|').append(dataRelease.getSources());
+        fingerprint.append('|').append(SchemaNormalization.parsingFingerprint64(VariantAnnotation.getClassSchema()));
+        fingerprint.append('|').append(getSoftwareVersion());
+        return species + "_" + assembly + "_" + dataRelease.getRelease() + "_" + DigestUtils.sha256Hex(fingerprint.toString());
+    }
+
+    private static String getSoftwareVersion() {
+        try {
+            return GitRepositoryState.get().getBuildVersion() + "_" + GitRepositoryState.get().getCommitId();
+        } catch (RuntimeException e) {
+            // git.properties is only generated by the Maven build
+            return String.valueOf(AnnotationMemoCache.class.getPackage().getImplementationVersion());
+        }
+    }
+
+    private static AnnotationMemoCache create(AnnotationProperties annotationProperties) throws CellBaseException {
+        switch (annotationProperties.getMemoCache().toLowerCase()) {
+            case LRU:
+                return new LruAnnotationMemoCache(annotationProperties.getMemoCacheSize() > 0
+                        ? annotationProperties.getMemoCacheSize()
+                        : DEFAULT_SIZE);
+            case ROCKSDB:
+                if (StringUtils.isEmpty(annotationProperties.getMemoCacheDirectory())) {
+                    throw new CellBaseException("Missing directory of the RocksDB annotation memo cache");
+                }
+                return new RocksDBAnnotationMemoCache(Paths.get(annotationProperties.getMemoCacheDirectory()),
+                        annotationProperties.getMemoCacheMaxDiskSize() > 0
+                                ? annotationProperties.getMemoCacheMaxDiskSize()
+                                : DEFAULT_MAX_DISK_SIZE);
+            default:
+                throw new CellBaseException("Unknown annotation memo cache '" + annotationProperties.getMemoCache()
+                        + "', valid values are: " + LRU + ", " + ROCKSDB);
+        }
+    }
+
+    /**
+     * Looks up an annotation.
+     * @param key memo key
+     * @return a new copy of the annotation, null if it is not cached
+     */
+    public VariantAnnotation get(String key) {
+        VariantAnnotation variantAnnotation = null;
+        byte[] value = read(key);
+        if (value != null) {
+            try {
+                BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(value, null);
+                variantAnnotation = READER.read(null, decoder);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unable to decode memoized annotation of '{}': {}", key, e.getMessage());
+            }
+        }
+        if (variantAnnotation != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return variantAnnotation;
+    }
+
+    /**
+     * Stores a copy of an annotation, later changes of the annotation are not seen by the cache.
+     * @param key memo key
+     * @param variantAnnotation finished annotation
+     */
+    public void put(String key, VariantAnnotation variantAnnotation) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(4096);
+            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+            WRITER.write(variantAnnotation, encoder);
+            encoder.flush();
+            write(key, outputStream.toByteArray());
+        } catch (IOException | RuntimeException e) {
+            // Incomplete annotations, e.g. missing mandatory fields, can not be encoded
+            logger.debug("Annotation of '{}' not memoized: {}", key, e.getMessage());
+        }
+    }
+
+    protected abstract byte[] read(String key);
+
+    protected abstract void write(String key, byte[] value);
+
+    @Override
+    public abstract void close();
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Fraction of the lookups that found the annotation cached.
+     * @return hit rate between 0 and 1, 0 if no lookups were done
+     */
+    public double getHitRate() {
+        long numHits = hits.sum();
+        long total = numHits + misses.sum();
+        return total == 0 ? 0 : (double) numHits / total;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(getClass().getSimpleName()).append('{');
+        sb.append("hits=").append(getHits());
+        sb.append(", misses=").append(getMisses());
+        sb.append(", hitRate=").append(String.format("%.3f", getHitRate()));
+        sb.append('}');
+        return sb.toString();
+    }
+}
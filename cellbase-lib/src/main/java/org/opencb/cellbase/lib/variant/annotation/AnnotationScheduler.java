@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.cellbase.core.config.AnnotationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded thread pool running the asynchronous annotators of the VariantAnnotationCalculator. Tasks are exposed as
+ * CompletableFutures so that results are merged as soon as they are available, with no polling. Queue depth and
+ * per-annotator latencies are tracked for monitoring. Schedulers are created once per JVM and configuration, see
+ * {@link #get(AnnotationProperties)}.
+ */
+public class AnnotationScheduler implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final Map<String, AnnotationScheduler> SCHEDULERS = new HashMap<>();
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, AnnotatorStats> stats;
+
+    private static Logger logger = LoggerFactory.getLogger(AnnotationScheduler.class);
+
+    public AnnotationScheduler(AnnotationProperties annotationProperties) {
+        this(getNumThreads(annotationProperties), getQueueSize(annotationProperties));
+    }
+
+    private AnnotationScheduler(int numThreads, int queueSize) {
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "annotation-scheduler-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // When the queue is full the submitting thread runs the annotator itself, this throttles producers instead of
+        // failing or growing the number of threads. Once closed tasks are rejected, CallerRunsPolicy would silently drop them
+        RejectedExecutionHandler rejectedExecutionHandler = (runnable, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Annotation scheduler is closed");
+            }
+            runnable.run();
+        };
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize),
+                threadFactory, rejectedExecutionHandler);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.stats = new ConcurrentHashMap<>();
+
+        logger.debug("Annotation scheduler created with {} threads and a queue of {} tasks", numThreads, queueSize);
+    }
+
+    /**
+     * Scheduler shared by all the annotation calculators of the JVM with the same annotation configuration, so that the
+     * number of annotator threads is bounded no matter how many manager factories are created.
+     * @param annotationProperties annotation configuration, the number of threads and the queue size are used
+     * @return the scheduler, created on first use or again once closed
+     */
+    public static synchronized AnnotationScheduler get(AnnotationProperties annotationProperties) {
+        int numThreads = getNumThreads(annotationProperties);
+        int queueSize = getQueueSize(annotationProperties);
+        String key = numThreads + ":" + queueSize;
+        AnnotationScheduler scheduler = SCHEDULERS.get(key);
+        if (scheduler == null || scheduler.executor.isShutdown()) {
+            scheduler = new AnnotationScheduler(numThreads, queueSize);
+            SCHEDULERS.put(key, scheduler);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Closes all the schedulers of the JVM, e.g. when a command exits. Tasks already submitted are completed.
+     */
+    public static synchronized void closeAll() {
+        for (AnnotationScheduler scheduler : SCHEDULERS.values()) {
+            scheduler.close();
+        }
+        SCHEDULERS.clear();
+    }
+
+    private static int getNumThreads(AnnotationProperties annotationProperties) {
+        return (annotationProperties != null && annotationProperties.getNumThreads() > 0)
+                ? annotationProperties.getNumThreads()
+                : 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    private static int getQueueSize(AnnotationProperties annotationProperties) {
+        return (annotationProperties != null && annotationProperties.getQueueSize() > 0)
+                ? annotationProperties.getQueueSize()
+                : DEFAULT_QUEUE_SIZE;
+    }
+
+    /**
+     * Submits an annotator task.
+     * @param annotator annotator name, used to group the latency metrics
+     * @param task the annotator task
+     * @param <T> result type
+     * @return future completed with the task result, or exceptionally if the task fails or the scheduler is closed
+     */
+    public <T> CompletableFuture<T> submit(String annotator, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AnnotatorStats annotatorStats = stats.computeIfAbsent(annotator, k -> new AnnotatorStats());
+        long submitTime = System.nanoTime();
+        Runnable runnable = () -> {
+            long startTime = System.nanoTime();
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = task.call();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            // Metrics are recorded before completing the future, so they already include the task when the caller gets it
+            annotatorStats.add(startTime - submitTime, System.nanoTime() - startTime);
+            if (failure == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        };
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Number of annotator tasks waiting for a thread.
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Snapshot of the latency metrics collected so far.
+     * @return latency metrics per annotator name, sorted by annotator name
+     */
+    public Map<String, AnnotatorStats> getStats() {
+        return new TreeMap<>(stats);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AnnotationScheduler{");
+        sb.append("poolSize=").append(getPoolSize());
+        sb.append(", activeCount=").append(getActiveCount());
+        sb.append(", queueDepth=").append(getQueueDepth());
+        sb.append(", stats=").append(getStats());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Stops accepting tasks, the tasks already submitted are completed. Tasks submitted afterwards complete exceptionally
+     * with a RejectedExecutionException.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public static class AnnotatorStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder queueTimeNanos = new LongAdder();
+        private final LongAdder runTimeNanos = new LongAdder();
+        private final AtomicLong maxRunTimeNanos = new AtomicLong();
+
+        void add(long queueTime, long runTime) {
+            count.increment();
+            queueTimeNanos.add(queueTime);
+            runTimeNanos.add(runTime);
+            maxRunTimeNanos.accumulateAndGet(runTime, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanQueueTimeMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : queueTimeNanos.sum() / 1e6 / n;
+        }
+
+        public double getMeanRunTimeMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : runTimeNanos.sum() / 1e6 / n;
+        }
+
+        public double getMaxRunTimeMillis() {
+            return maxRunTimeNanos.get() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, meanQueueTime=%.1fms, meanRunTime=%.1fms, maxRunTime=%.1fms}", getCount(),
+                    getMeanQueueTimeMillis(), getMeanRunTimeMillis(), getMaxRunTimeMillis());
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.opencb.biodata.models.variant.avro.ConsequenceType;
 import org.opencb.biodata.models.variant.avro.ExonOverlap;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.lib.variant.SplicedTranscript;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.commons.datastore.core.QueryOptions;
 
@@ -240,7 +241,7 @@ public class ConsequenceTypeGenericRegionCalculator extends ConsequenceTypeCalcu
         Exon exon = transcript.getExons().get(0);
         int exonSize = exon.getEnd() - exon.getStart() + 1;
         String exonStringSuffix = "/" + transcript.getExons().size();
-        String transcriptSequence = exon.getSequence();
+        String transcriptSequence = SplicedTranscript.of(transcript).getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);
         int cdnaVariantStart = -1;
@@ -287,7 +288,6 @@ public class ConsequenceTypeGenericRegionCalculator extends ConsequenceTypeCalcu
             int prevSpliceSite = exon.getStart() - 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
             exonSize = exon.getEnd() - exon.getStart() + 1;
-            transcriptSequence = exon.getSequence() + transcriptSequence;
             // Set firsCdsPhase only when the first coding exon is reached
             if (firstCdsPhase == -1 && transcript.getGenomicCodingEnd() >= exon.getStart()) {
                 firstCdsPhase = exon.getPhase();
@@ -504,7 +504,7 @@ public class ConsequenceTypeGenericRegionCalculator extends ConsequenceTypeCalcu
         Exon exon = transcript.getExons().get(0);
         int exonSize = exon.getEnd() - exon.getStart() + 1;
         String exonStringSuffix = "/" + transcript.getExons().size();
-        String transcriptSequence = exon.getSequence();
+        String transcriptSequence = SplicedTranscript.of(transcript).getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);
         int cdnaVariantStart = -1;
@@ -551,7 +551,6 @@ public class ConsequenceTypeGenericRegionCalculator extends ConsequenceTypeCalcu
             int prevSpliceSite = exon.getEnd() + 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
             exonSize = exon.getEnd() - exon.getStart() + 1;
-            transcriptSequence = transcriptSequence + exon.getSequence();
             // Set firsCdsPhase only when the first coding exon is reached
             if (firstCdsPhase == -1 && transcript.getGenomicCodingStart() <= exon.getEnd()) {
                 firstCdsPhase = exon.getPhase();
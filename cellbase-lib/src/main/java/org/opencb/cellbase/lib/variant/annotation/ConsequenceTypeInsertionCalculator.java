@@ -25,6 +25,7 @@ import org.opencb.biodata.models.variant.avro.ExonOverlap;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.lib.managers.GenomeManager;
+import org.opencb.cellbase.lib.variant.SplicedTranscript;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.commons.datastore.core.QueryOptions;
 
@@ -200,7 +201,7 @@ public class ConsequenceTypeInsertionCalculator extends ConsequenceTypeCalculato
 
     protected void solveCodingNegativeTranscript() throws CellBaseException {
         Exon exon = transcript.getExons().get(0);
-        String transcriptSequence = exon.getSequence();
+        String transcriptSequence = SplicedTranscript.of(transcript).getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);
         int cdnaVariantStart = -1;
@@ -237,7 +238,6 @@ public class ConsequenceTypeInsertionCalculator extends ConsequenceTypeCalculato
         while (exonCounter < transcript.getExons().size() && variantAhead) {
             int prevSpliceSite = exon.getStart() - 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
-            transcriptSequence = exon.getSequence() + transcriptSequence;
             // Set firsCdsPhase only when the first coding exon is reached
             if (firstCdsPhase == -1 && exon.getGenomicCodingEnd() >= exon.getStart()) {
                 firstCdsPhase = exon.getPhase();
@@ -567,7 +567,7 @@ public class ConsequenceTypeInsertionCalculator extends ConsequenceTypeCalculato
     protected void solveCodingPositiveTranscript() throws CellBaseException {
 
         Exon exon = transcript.getExons().get(0);
-        String transcriptSequence = exon.getSequence();
+        String transcriptSequence = SplicedTranscript.of(transcript).getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);
         int cdnaVariantStart = -1;
@@ -606,7 +606,6 @@ public class ConsequenceTypeInsertionCalculator extends ConsequenceTypeCalculato
         while (exonCounter < transcript.getExons().size() && variantAhead) {
             int prevSpliceSite = exon.getEnd() + 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
-            transcriptSequence = transcriptSequence + exon.getSequence();
             // Set firsCdsPhase only when the first coding exon is reached
             if (firstCdsPhase == -1 && transcript.getGenomicCodingStart() <= exon.getEnd()) {
                 firstCdsPhase = exon.getPhase();
@@ -22,6 +22,7 @@ import org.opencb.biodata.models.variant.avro.ConsequenceType;
 import org.opencb.biodata.models.variant.avro.ExonOverlap;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.lib.variant.SplicedTranscript;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.commons.datastore.core.QueryOptions;
 
@@ -112,7 +113,6 @@ public class ConsequenceTypeSNVCalculator extends ConsequenceTypeCalculator {
     protected void solveNonCodingNegativeTranscript() {
         Exon exon = transcript.getExons().get(0);
         int exonSize = exon.getEnd() - exon.getStart() + 1;
-        String transcriptSequence = exon.getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);  // cdnaExonEnd poinst to the same base than exonStart
         int cdnaVariantPosition = -1;
@@ -135,7 +135,6 @@ public class ConsequenceTypeSNVCalculator extends ConsequenceTypeCalculator {
             int prevSpliceSite = exon.getStart() - 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
             exonSize = exon.getEnd() - exon.getStart() + 1;
-            transcriptSequence = exon.getSequence() + transcriptSequence;
             solveJunction(exon.getEnd() + 1, prevSpliceSite, VariantAnnotationUtils.SPLICE_ACCEPTOR_VARIANT,
                     VariantAnnotationUtils.SPLICE_DONOR_VARIANT, junctionSolution);
 
@@ -164,7 +163,7 @@ public class ConsequenceTypeSNVCalculator extends ConsequenceTypeCalculator {
     protected void solveCodingNegativeTranscript() {
         Exon exon = transcript.getExons().get(0);
         int exonSize = exon.getEnd() - exon.getStart() + 1;
-        String transcriptSequence = exon.getSequence();
+        String transcriptSequence = SplicedTranscript.of(transcript).getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);  // cdnaExonEnd poinst to the same base than exonStart
         int cdnaVariantPosition = -1;
@@ -192,7 +191,6 @@ public class ConsequenceTypeSNVCalculator extends ConsequenceTypeCalculator {
             int prevSpliceSite = exon.getStart() - 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
             exonSize = exon.getEnd() - exon.getStart() + 1;
-            transcriptSequence = exon.getSequence() + transcriptSequence;
             // Set firsCdsPhase only when the first coding exon is reached
             if (firstCdsPhase == -1 && transcript.getGenomicCodingEnd() >= exon.getStart()) {
                 firstCdsPhase = exon.getPhase();
@@ -437,7 +435,7 @@ public class ConsequenceTypeSNVCalculator extends ConsequenceTypeCalculator {
     protected void solveCodingPositiveTranscript() {
         Exon exon = transcript.getExons().get(0);
         int exonSize = exon.getEnd() - exon.getStart() + 1;
-        String transcriptSequence = exon.getSequence();
+        String transcriptSequence = SplicedTranscript.of(transcript).getSequence();
         boolean variantAhead = true; // we need a first iteration within the while to ensure junction is solved in case needed
         int cdnaExonEnd = (exon.getEnd() - exon.getStart() + 1);
         int cdnaVariantPosition = -1;
@@ -465,7 +463,6 @@ public class ConsequenceTypeSNVCalculator extends ConsequenceTypeCalculator {
             int prevSpliceSite = exon.getEnd() + 1;
             exon = transcript.getExons().get(exonCounter);          // next exon has been loaded
             exonSize = exon.getEnd() - exon.getStart() + 1;
-            transcriptSequence = transcriptSequence + exon.getSequence();
             // Set firsCdsPhase only when the first coding exon is reached
             if (firstCdsPhase == -1 && transcript.getGenomicCodingStart() <= exon.getEnd()) {
                 firstCdsPhase = exon.getPhase();
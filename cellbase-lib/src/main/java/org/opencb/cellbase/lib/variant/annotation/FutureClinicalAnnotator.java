@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.EvidenceEntry;
+import org.opencb.biodata.models.variant.avro.GwasAssociation;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.ParamConstants;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.EtlCommons;
+import org.opencb.cellbase.lib.managers.ClinicalManager;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Async trait association annotation of a batch of variants. All the variants of the batch are matched with one
+ * batched clinical query, see {@link ClinicalManager#getByVariant(List, List, List, QueryOptions, int)}.
+ */
+class FutureClinicalAnnotator implements Callable<List<CellBaseDataResult<Variant>>> {
+
+    private final ClinicalManager clinicalManager;
+    private final List<Variant> variantList;
+    private final List<Gene> batchGeneList;
+    private final QueryOptions queryOptions;
+    private final boolean includeHgmd;
+    private final int dataRelease;
+    private List<List<String>> hgvsList;
+
+    private static Logger logger = LoggerFactory.getLogger(FutureClinicalAnnotator.class);
+
+    FutureClinicalAnnotator(ClinicalManager clinicalManager, List<Variant> variantList, List<Gene> batchGeneList, boolean phased,
+                            boolean checkAminoAcidChange, boolean includeHgmd, int dataRelease) {
+        this.clinicalManager = clinicalManager;
+        this.variantList = variantList;
+        this.batchGeneList = batchGeneList;
+        this.queryOptions = new QueryOptions(ParamConstants.QueryParams.PHASE.key(), phased)
+                .append(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key(), checkAminoAcidChange);
+        this.includeHgmd = includeHgmd;
+        this.dataRelease = dataRelease;
+    }
+
+    /**
+     * Reuses the HGVS calculated by the main annotation loop, they must be set before the annotator is run.
+     * @param variantAnnotationList annotations of the variants, in the same order
+     */
+    void setHgvs(List<VariantAnnotation> variantAnnotationList) {
+        hgvsList = new ArrayList<>(variantAnnotationList.size());
+        for (VariantAnnotation variantAnnotation : variantAnnotationList) {
+            hgvsList.add(variantAnnotation.getHgvs());
+        }
+    }
+
+    @Override
+    public List<CellBaseDataResult<Variant>> call() throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<CellBaseDataResult<Variant>> clinicalCellBaseDataResultList = clinicalManager.getByVariant(variantList, batchGeneList,
+                hgvsList, queryOptions, dataRelease);
+        logger.debug("Clinical query performance is {}ms for {} variants", System.currentTimeMillis() - startTime, variantList.size());
+        return clinicalCellBaseDataResultList;
+    }
+
+    public void processResults(List<CellBaseDataResult<Variant>> clinicalCellBaseDataResults,
+                               List<VariantAnnotation> variantAnnotationList) {
+        if (clinicalCellBaseDataResults != null) {
+            for (int i = 0; i < variantAnnotationList.size(); i++) {
+                CellBaseDataResult<Variant> clinicalCellBaseDataResult = clinicalCellBaseDataResults.get(i);
+                if (clinicalCellBaseDataResult.getResults() != null && clinicalCellBaseDataResult.getResults().size() > 0) {
+                    variantAnnotationList.get(i).setTraitAssociation(getAllTraitAssociations(clinicalCellBaseDataResult));
+                    // Add GWAS info
+                    List<GwasAssociation> gwas = clinicalCellBaseDataResult.getResults().get(0).getAnnotation().getGwas();
+                    if (CollectionUtils.isNotEmpty(gwas)) {
+                        variantAnnotationList.get(i).setGwas(gwas);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<EvidenceEntry> getAllTraitAssociations(CellBaseDataResult<Variant> clinicalQueryResult) {
+        List<EvidenceEntry> traitAssociations = new ArrayList<>();
+        for (Variant variant: clinicalQueryResult.getResults()) {
+            if (includeHgmd) {
+                traitAssociations.addAll(variant.getAnnotation().getTraitAssociation());
+            } else {
+                for (EvidenceEntry entry : variant.getAnnotation().getTraitAssociation()) {
+                    if (entry.getSource() == null || !EtlCommons.HGMD_DATA.equals(entry.getSource().getName())) {
+                        traitAssociations.add(entry);
+                    }
+                }
+            }
+        }
+        return traitAssociations;
+    }
+}
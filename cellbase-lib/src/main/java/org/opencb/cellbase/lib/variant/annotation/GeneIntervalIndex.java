@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+import org.opencb.cellbase.core.api.GeneQuery;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.utils.IntervalTree;
+import org.opencb.cellbase.lib.iterator.CellBaseIterator;
+import org.opencb.cellbase.lib.managers.GeneManager;
+
+import java.util.*;
+
+/**
+ * In-memory index of all the genes of one source (Ensembl or RefSeq) and data release, one interval tree per
+ * chromosome. Gene models do not change within a data release, so the index is loaded once and the gene overlap
+ * queries of the variant annotation are then answered from memory. Genes must be treated as read-only, they are
+ * shared by all the annotation threads.
+ */
+public class GeneIntervalIndex {
+
+    private final String source;
+    private final int dataRelease;
+    private final Map<String, IntervalTree<Gene>> genesByChromosome;
+    private final int numGenes;
+    private final int numTranscripts;
+    private final long loadTime;
+    private final long memoryUsage;
+
+    public GeneIntervalIndex(String source, int dataRelease, Collection<Gene> genes, long loadTime, long memoryUsage) {
+        this.source = source;
+        this.dataRelease = dataRelease;
+        this.loadTime = loadTime;
+        this.memoryUsage = memoryUsage;
+
+        Map<String, List<Gene>> genesMap = new HashMap<>();
+        int transcriptCount = 0;
+        for (Gene gene : genes) {
+            genesMap.computeIfAbsent(gene.getChromosome(), k -> new ArrayList<>()).add(gene);
+            List<Transcript> transcripts = gene.getTranscripts();
+            transcriptCount += transcripts != null ? transcripts.size() : 0;
+        }
+        this.genesByChromosome = new HashMap<>(genesMap.size());
+        for (Map.Entry<String, List<Gene>> entry : genesMap.entrySet()) {
+            genesByChromosome.put(entry.getKey(), new IntervalTree<>(entry.getValue(), Gene::getStart, Gene::getEnd));
+        }
+        this.numGenes = genes.size();
+        this.numTranscripts = transcriptCount;
+    }
+
+    /**
+     * Fetches all the genes of a source from the database. The memory footprint is estimated from the heap usage
+     * before and after loading, hence it is only accurate when no other thread allocates memory meanwhile.
+     * @param geneManager gene manager used to query the database
+     * @param source gene source, i.e. ensembl or refseq
+     * @param includeFields gene fields to be loaded
+     * @param dataRelease data release
+     * @return the loaded index
+     * @throws CellBaseException if the data release is not valid
+     */
+    public static GeneIntervalIndex load(GeneManager geneManager, String source, List<String> includeFields, int dataRelease)
+            throws CellBaseException {
+        long startTime = System.currentTimeMillis();
+        Runtime runtime = Runtime.getRuntime();
+        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+
+        GeneQuery query = new GeneQuery();
+        query.setIncludes(includeFields);
+        query.setSource(Collections.singletonList(source));
+        query.setDataRelease(dataRelease);
+        List<Gene> genes = new ArrayList<>();
+        try (CellBaseIterator<Gene> iterator = geneManager.iterator(query)) {
+            while (iterator.hasNext()) {
+                genes.add(iterator.next());
+            }
+        }
+
+        long memoryUsage = Math.max(runtime.totalMemory() - runtime.freeMemory() - usedMemory, 0);
+        return new GeneIntervalIndex(source, dataRelease, genes, System.currentTimeMillis() - startTime, memoryUsage);
+    }
+
+    /**
+     * Genes overlapping a region.
+     * @param chromosome chromosome name
+     * @param start 1-based start coordinate
+     * @param end 1-based end coordinate, inclusive
+     * @return overlapping genes sorted by start, empty list if none
+     */
+    public List<Gene> getOverlapping(String chromosome, int start, int end) {
+        IntervalTree<Gene> genes = genesByChromosome.get(chromosome);
+        return genes != null ? genes.getOverlapping(start, end) : Collections.emptyList();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getDataRelease() {
+        return dataRelease;
+    }
+
+    public int getNumGenes() {
+        return numGenes;
+    }
+
+    public int getNumTranscripts() {
+        return numTranscripts;
+    }
+
+    /**
+     * Warm-up time, i.e. time spent loading the genes from the database and building the index.
+     * @return load time in milliseconds
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * Approximate heap memory taken by the index.
+     * @return memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("GeneIntervalIndex{");
+        sb.append("source='").append(source).append('\'');
+        sb.append(", dataRelease=").append(dataRelease);
+        sb.append(", numChromosomes=").append(genesByChromosome.size());
+        sb.append(", numGenes=").append(numGenes);
+        sb.append(", numTranscripts=").append(numTranscripts);
+        sb.append(", loadTime=").append(loadTime).append("ms");
+        sb.append(", memoryUsage=").append(memoryUsage / (1024 * 1024)).append("MB");
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.cellbase.core.utils.LruCache;
+
+/**
+ * On-heap memo cache keeping up to a maximum number of encoded annotations, least recently used first out.
+ */
+public class LruAnnotationMemoCache extends AnnotationMemoCache {
+
+    private final LruCache<String, byte[]> cache;
+
+    public LruAnnotationMemoCache(int maxSize) {
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    @Override
+    protected byte[] read(String key) {
+        return cache.get(key);
+    }
+
+    @Override
+    protected void write(String key, byte[] value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public void close() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.managers.ProteinManager;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.*;
+
+/**
+ * Protein annotations requested while the consequence types of a batch of variants are calculated. Requests are
+ * fetched together by {@link #resolve(ProteinManager, int)}, which then sets the protein variant annotation of every
+ * consequence type added.
+ */
+class ProteinAnnotationBatch {
+
+    // Last request of every consequence type, phased variants may replace a request added before
+    private final Map<ConsequenceType, Request> requests;
+
+    ProteinAnnotationBatch() {
+        this.requests = new IdentityHashMap<>();
+    }
+
+    /**
+     * Adds a request for the current amino acid change of a consequence type, the change is copied so later updates of
+     * the consequence type do not modify the request.
+     * @param variant variant, used to fetch the missense scores
+     * @param consequenceType consequence type to be annotated
+     * @return the request, null if the consequence type has no protein variant annotation
+     */
+    Request add(Variant variant, ConsequenceType consequenceType) {
+        Request request = null;
+        ProteinVariantAnnotation proteinVariantAnnotation = consequenceType.getProteinVariantAnnotation();
+        if (proteinVariantAnnotation != null) {
+            request = new Request(variant, consequenceType.getTranscriptId(), proteinVariantAnnotation);
+        }
+        requests.put(consequenceType, request);
+        return request;
+    }
+
+    /**
+     * Sets the result of a request added before to another consequence type.
+     * @param request request as returned by {@link #add(Variant, ConsequenceType)}
+     * @param consequenceType consequence type to be annotated
+     */
+    void add(Request request, ConsequenceType consequenceType) {
+        requests.put(consequenceType, request);
+    }
+
+    int size() {
+        return requests.size();
+    }
+
+    /**
+     * Fetches all requests at once and sets the results to their consequence types, the batch is empty afterwards.
+     * @param proteinManager protein manager
+     * @param dataRelease data release
+     * @throws CellBaseException if the data release is not valid
+     */
+    void resolve(ProteinManager proteinManager, int dataRelease) throws CellBaseException {
+        // Replaced requests are not fetched, requests shared by several consequence types are fetched once
+        Set<Request> requestSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Variant> variants = new ArrayList<>();
+        List<String> transcriptIds = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<String> references = new ArrayList<>();
+        List<String> alternates = new ArrayList<>();
+        List<Request> requestList = new ArrayList<>();
+        for (Request request : requests.values()) {
+            if (request != null && requestSet.add(request)) {
+                requestList.add(request);
+                variants.add(request.variant);
+                transcriptIds.add(request.transcriptId);
+                positions.add(request.position);
+                references.add(request.reference);
+                alternates.add(request.alternate);
+            }
+        }
+
+        if (!requestList.isEmpty()) {
+            List<CellBaseDataResult<ProteinVariantAnnotation>> results = proteinManager.getVariantAnnotation(variants, transcriptIds,
+                    positions, references, alternates, new QueryOptions(), dataRelease);
+            for (int i = 0; i < requestList.size(); i++) {
+                Request request = requestList.get(i);
+                CellBaseDataResult<ProteinVariantAnnotation> result = results.get(i);
+                // Set proteinId
+                result.getResults().get(0).setProteinId(request.proteinId);
+                if (result.getNumResults() > 0) {
+                    request.proteinVariantAnnotation = result.getResults().get(0);
+                }
+            }
+        }
+
+        for (Map.Entry<ConsequenceType, Request> entry : requests.entrySet()) {
+            entry.getKey().setProteinVariantAnnotation(entry.getValue() != null ? entry.getValue().proteinVariantAnnotation : null);
+        }
+        requests.clear();
+    }
+
+    static class Request {
+        private final Variant variant;
+        private final String transcriptId;
+        private final int position;
+        private final String reference;
+        private final String alternate;
+        private final String proteinId;
+        private ProteinVariantAnnotation proteinVariantAnnotation;
+
+        Request(Variant variant, String transcriptId, ProteinVariantAnnotation proteinVariantAnnotation) {
+            this.variant = variant;
+            // transcript may contain version, e.g. ENST00000382011.9. sift/polyphen do NOT contain version, so remove version
+            this.transcriptId = transcriptId != null && transcriptId.contains(".") ? transcriptId.split("\\.")[0] : transcriptId;
+            this.position = proteinVariantAnnotation.getPosition();
+            this.reference = proteinVariantAnnotation.getReference();
+            this.alternate = proteinVariantAnnotation.getAlternate();
+            this.proteinId = proteinVariantAnnotation.getProteinId();
+        }
+    }
+}
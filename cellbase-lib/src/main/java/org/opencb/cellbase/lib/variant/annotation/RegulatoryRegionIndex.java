@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.core.RegulatoryFeature;
+import org.opencb.cellbase.core.ParamConstants;
+import org.opencb.cellbase.core.api.RegulationQuery;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.lib.iterator.CellBaseIterator;
+import org.opencb.cellbase.lib.managers.RegulatoryManager;
+
+import java.util.*;
+
+/**
+ * In-memory index of the regulatory features overlapping a batch of variants. Regulatory features are fetched once
+ * per batch and the overlap flags required by the consequence type calculators are then answered from memory.
+ */
+public class RegulatoryRegionIndex {
+
+    private static final String TF_BINDING_SITE = ParamConstants.FeatureType.TF_binding_site.name();
+    private static final String TF_BINDING_SITE_MOTIF = ParamConstants.FeatureType.TF_binding_site_motif.name();
+
+    // Regions larger than this are not pre-fetched, they are resolved with the per-variant (limit 1) queries
+    static final int MAX_REGION_SIZE = 10000;
+    // Regions closer than this are merged into one to keep the batch query small
+    private static final int MERGE_DISTANCE = 1000;
+
+    // Merged regions that were actually fetched from the database, only these can be answered from the index
+    private final Map<String, Intervals> coveredRegions;
+    private final Map<String, Intervals> allFeatures;
+    private final Map<String, Intervals> tfbsFeatures;
+    private final Map<String, Intervals> tfbsMotifFeatures;
+    private final int size;
+
+    public RegulatoryRegionIndex(List<Region> coveredRegionList, Collection<RegulatoryFeature> regulatoryFeatures) {
+        Map<String, List<int[]>> covered = new HashMap<>();
+        for (Region region : coveredRegionList) {
+            covered.computeIfAbsent(region.getChromosome(), k -> new ArrayList<>()).add(new int[]{region.getStart(), region.getEnd()});
+        }
+
+        Map<String, List<int[]>> all = new HashMap<>();
+        Map<String, List<int[]>> tfbs = new HashMap<>();
+        Map<String, List<int[]>> tfbsMotif = new HashMap<>();
+        int count = 0;
+        for (RegulatoryFeature regulatoryFeature : regulatoryFeatures) {
+            int[] interval = new int[]{regulatoryFeature.getStart(), regulatoryFeature.getEnd()};
+            String chromosome = regulatoryFeature.getChromosome();
+            all.computeIfAbsent(chromosome, k -> new ArrayList<>()).add(interval);
+            if (TF_BINDING_SITE.equals(regulatoryFeature.getFeatureType())) {
+                tfbs.computeIfAbsent(chromosome, k -> new ArrayList<>()).add(interval);
+            } else if (TF_BINDING_SITE_MOTIF.equals(regulatoryFeature.getFeatureType())) {
+                tfbsMotif.computeIfAbsent(chromosome, k -> new ArrayList<>()).add(interval);
+            }
+            count++;
+        }
+
+        this.coveredRegions = toIntervals(covered);
+        this.allFeatures = toIntervals(all);
+        this.tfbsFeatures = toIntervals(tfbs);
+        this.tfbsMotifFeatures = toIntervals(tfbsMotif);
+        this.size = count;
+    }
+
+    /**
+     * Fetches, in one single query, all regulatory features overlapping the given regions.
+     * @param regulatoryManager regulatory manager used to query the database
+     * @param regionList regions to be checked later on, typically one per variant of the batch
+     * @param dataRelease data release
+     * @return index covering all regions except those larger than MAX_REGION_SIZE
+     * @throws CellBaseException if the data release is not valid
+     */
+    public static RegulatoryRegionIndex load(RegulatoryManager regulatoryManager, List<Region> regionList, int dataRelease)
+            throws CellBaseException {
+        List<Region> smallRegionList = new ArrayList<>(regionList.size());
+        for (Region region : regionList) {
+            if (region.getEnd() - region.getStart() < MAX_REGION_SIZE) {
+                smallRegionList.add(region);
+            }
+        }
+        List<Region> mergedRegionList = mergeRegions(smallRegionList, MERGE_DISTANCE);
+
+        List<RegulatoryFeature> regulatoryFeatureList = new ArrayList<>();
+        if (!mergedRegionList.isEmpty()) {
+            RegulationQuery query = new RegulationQuery();
+            query.setExcludes(Collections.singletonList("_id"));
+            query.setIncludes(Arrays.asList("chromosome", "start", "end", "featureType"));
+            query.setRegions(mergedRegionList);
+            query.setDataRelease(dataRelease);
+            // Use an iterator, dense regions may return more features than allowed by a regular search
+            try (CellBaseIterator<RegulatoryFeature> iterator = regulatoryManager.iterator(query)) {
+                while (iterator.hasNext()) {
+                    regulatoryFeatureList.add(iterator.next());
+                }
+            }
+        }
+        return new RegulatoryRegionIndex(mergedRegionList, regulatoryFeatureList);
+    }
+
+    static List<Region> mergeRegions(List<Region> regionList, int mergeDistance) {
+        List<Region> sortedRegionList = new ArrayList<>(regionList);
+        sortedRegionList.sort(Comparator.comparing(Region::getChromosome).thenComparingInt(Region::getStart));
+
+        List<Region> mergedRegionList = new ArrayList<>();
+        Region current = null;
+        for (Region region : sortedRegionList) {
+            if (current != null && current.getChromosome().equals(region.getChromosome())
+                    && region.getStart() <= current.getEnd() + mergeDistance) {
+                current.setEnd(Math.max(current.getEnd(), region.getEnd()));
+            } else {
+                current = new Region(region.getChromosome(), region.getStart(), region.getEnd());
+                mergedRegionList.add(current);
+            }
+        }
+        return mergedRegionList;
+    }
+
+    /**
+     * Checks whether the region [start, end] was fully fetched when building this index, i.e. whether the overlap
+     * flags for it can be answered from memory.
+     * @param chromosome chromosome name
+     * @param start 1-based start coordinate
+     * @param end 1-based end coordinate, inclusive
+     * @return true if the region is fully contained within the regions used to build the index
+     */
+    public boolean covers(String chromosome, int start, int end) {
+        Intervals intervals = coveredRegions.get(chromosome);
+        return intervals != null && intervals.contains(start, end);
+    }
+
+    /**
+     * Mimics the single-position regulatory query used by the annotation: TF binding site motifs are considered TF
+     * binding sites.
+     * @param chromosome chromosome name
+     * @param position 1-based position
+     * @return array of two booleans: 0 - overlaps any regulatory region type, 1 - overlaps a TF binding site
+     */
+    public boolean[] getOverlaps(String chromosome, int position) {
+        boolean[] overlapsRegulatoryRegion = {false, false};
+        if (overlaps(allFeatures, chromosome, position, position)) {
+            overlapsRegulatoryRegion[0] = true;
+            overlapsRegulatoryRegion[1] = overlaps(tfbsFeatures, chromosome, position, position)
+                    || overlaps(tfbsMotifFeatures, chromosome, position, position);
+        }
+        return overlapsRegulatoryRegion;
+    }
+
+    /**
+     * Mimics the range regulatory query used by the annotation: only TF_binding_site features flag a TF binding site.
+     * @param chromosome chromosome name
+     * @param start 1-based start coordinate
+     * @param end 1-based end coordinate, inclusive
+     * @return array of two booleans: 0 - overlaps any regulatory region type, 1 - overlaps a TF binding site
+     */
+    public boolean[] getOverlaps(String chromosome, int start, int end) {
+        boolean[] overlapsRegulatoryRegion = {false, false};
+        if (overlaps(tfbsFeatures, chromosome, start, end)) {
+            overlapsRegulatoryRegion[0] = true;
+            overlapsRegulatoryRegion[1] = true;
+        } else {
+            overlapsRegulatoryRegion[0] = overlaps(allFeatures, chromosome, start, end);
+        }
+        return overlapsRegulatoryRegion;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean overlaps(Map<String, Intervals> intervalsMap, String chromosome, int start, int end) {
+        Intervals intervals = intervalsMap.get(chromosome);
+        return intervals != null && intervals.overlaps(start, end);
+    }
+
+    private static Map<String, Intervals> toIntervals(Map<String, List<int[]>> intervalsByChromosome) {
+        Map<String, Intervals> intervalsMap = new HashMap<>(intervalsByChromosome.size());
+        for (Map.Entry<String, List<int[]>> entry : intervalsByChromosome.entrySet()) {
+            intervalsMap.put(entry.getKey(), new Intervals(entry.getValue()));
+        }
+        return intervalsMap;
+    }
+
+    /**
+     * Static set of intervals sorted by start. The running maximum of the end coordinates makes both the overlap
+     * and the containment checks a single binary search.
+     */
+    static class Intervals {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] maxEnds;
+
+        Intervals(List<int[]> intervals) {
+            intervals.sort(Comparator.comparingInt(interval -> interval[0]));
+            starts = new int[intervals.size()];
+            ends = new int[intervals.size()];
+            maxEnds = new int[intervals.size()];
+            int maxEnd = Integer.MIN_VALUE;
+            for (int i = 0; i < intervals.size(); i++) {
+                starts[i] = intervals.get(i)[0];
+                ends[i] = intervals.get(i)[1];
+                maxEnd = Math.max(maxEnd, ends[i]);
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        boolean overlaps(int start, int end) {
+            // Every interval up to 'last' starts at or before 'end', one of them overlaps if any ends at or after 'start'
+            int last = lastStartingAtOrBefore(end);
+            return last >= 0 && maxEnds[last] >= start;
+        }
+
+        boolean contains(int start, int end) {
+            // Covered regions are merged before building the index, hence a single interval must contain the region
+            int last = lastStartingAtOrBefore(start);
+            return last >= 0 && ends[last] >= end;
+        }
+
+        private int lastStartingAtOrBefore(int position) {
+            int low = 0;
+            int high = starts.length - 1;
+            int last = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= position) {
+                    last = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return last;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.rocksdb.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap memo cache backed by a RocksDB database on local disk, so it can be larger than the heap and survives
+ * restarts. The disk size is checked every time a sixteenth of the maximum size has been written, when it is exceeded
+ * entries are removed in key order, i.e. in no particular age order, until it is back to three quarters of the maximum.
+ */
+public class RocksDBAnnotationMemoCache extends AnnotationMemoCache {
+
+    // Fraction of the maximum size written between two size checks
+    private static final int SIZE_CHECKS = 16;
+
+    private final Path path;
+    private final long maxDiskSize;
+    private final Options options;
+    private final RocksDB rocksDB;
+
+    private final AtomicLong bytesSinceCheck;
+    private final AtomicBoolean evicting;
+
+    /**
+     * Opens or creates the cache.
+     * @param path database directory
+     * @param maxDiskSize maximum disk size in MB
+     * @throws CellBaseException if the database can not be opened
+     */
+    public RocksDBAnnotationMemoCache(Path path, int maxDiskSize) throws CellBaseException {
+        this.path = path;
+        this.maxDiskSize = maxDiskSize * 1024L * 1024L;
+        this.options = new Options().setCreateIfMissing(true);
+        this.bytesSinceCheck = new AtomicLong();
+        this.evicting = new AtomicBoolean();
+        try {
+            Files.createDirectories(path);
+            this.rocksDB = RocksDB.open(options, path.toString());
+        } catch (IOException | RocksDBException e) {
+            options.dispose();
+            throw new CellBaseException("Unable to open the annotation memo cache at '" + path + "': " + e.getMessage());
+        }
+        logger.info("Annotation memo cache opened at '{}', maximum size {} MB", path, maxDiskSize);
+    }
+
+    @Override
+    protected byte[] read(String key) {
+        try {
+            return rocksDB.get(key.getBytes(StandardCharsets.UTF_8));
+        } catch (RocksDBException e) {
+            logger.warn("Unable to read the annotation memo cache at '{}': {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected void write(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        try {
+            rocksDB.put(keyBytes, value);
+        } catch (RocksDBException e) {
+            logger.warn("Unable to write the annotation memo cache at '{}': {}", path, e.getMessage());
+            return;
+        }
+        if (bytesSinceCheck.addAndGet(keyBytes.length + value.length) >= maxDiskSize / SIZE_CHECKS
+                && evicting.compareAndSet(false, true)) {
+            try {
+                bytesSinceCheck.set(0);
+                evict();
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Removes entries until the cache is back to three quarters of the maximum size, if it is exceeded.
+     */
+    void evict() {
+        long diskSize = getDiskSize();
+        if (diskSize <= maxDiskSize) {
+            return;
+        }
+        long bytesToFree = diskSize - maxDiskSize * 3 / 4;
+        long removed = 0;
+        RocksIterator rocksIterator = rocksDB.newIterator();
+        try {
+            for (rocksIterator.seekToFirst(); rocksIterator.isValid() && bytesToFree > 0; rocksIterator.next()) {
+                byte[] key = rocksIterator.key();
+                bytesToFree -= key.length + rocksIterator.value().length;
+                rocksDB.remove(key);
+                removed++;
+            }
+        } catch (RocksDBException e) {
+            logger.warn("Unable to evict entries from the annotation memo cache at '{}': {}", path, e.getMessage());
+        } finally {
+            rocksIterator.dispose();
+        }
+        logger.info("Annotation memo cache at '{}' reached {} MB, {} entries removed", path, diskSize / 1024 / 1024, removed);
+    }
+
+    /**
+     * Estimated size of the data written to disk, entries still in memory are not included.
+     * @return size in bytes
+     */
+    long getDiskSize() {
+        try {
+            return Long.parseLong(rocksDB.getProperty("rocksdb.estimate-live-data-size"));
+        } catch (RocksDBException | NumberFormatException e) {
+            logger.warn("Unable to get the size of the annotation memo cache at '{}': {}", path, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the entries in memory to disk.
+     * @throws RocksDBException if the entries can not be written
+     */
+    void flush() throws RocksDBException {
+        FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true);
+        try {
+            rocksDB.flush(flushOptions);
+        } finally {
+            flushOptions.dispose();
+        }
+    }
+
+    @Override
+    public void close() {
+        rocksDB.close();
+        options.dispose();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.exception.CellBaseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Genomic features, e.g. genes, overlapping a window that slides forward along one chromosome. Designed for
+ * coordinate-sorted input: when the window advances only the newly entered span is fetched and the features left
+ * behind are dropped, so the total number of fetched features is proportional to the genome size and not to the number
+ * of batches. A retention span is kept behind the last requested position so that batches annotated concurrently, and
+ * hence requested slightly out of order, are still served from the window. Thread-safe.
+ *
+ * @param <T> feature type
+ */
+public class SlidingFeatureWindow<T> {
+
+    private final FeatureLoader<T> loader;
+    private final ToIntFunction<T> startFunction;
+    private final ToIntFunction<T> endFunction;
+    private final int retention;
+
+    private String chromosome;
+    private int windowStart;
+    private int windowEnd;
+    private List<T> features;
+
+    private long numLoads;
+    private long numLoadedFeatures;
+
+    /**
+     * Fetches the features overlapping a region.
+     * @param <T> feature type
+     */
+    @FunctionalInterface
+    public interface FeatureLoader<T> {
+        List<T> load(Region region) throws CellBaseException;
+    }
+
+    public SlidingFeatureWindow(FeatureLoader<T> loader, ToIntFunction<T> startFunction, ToIntFunction<T> endFunction,
+                                int retention) {
+        this.loader = loader;
+        this.startFunction = startFunction;
+        this.endFunction = endFunction;
+        this.retention = retention;
+        this.features = new ArrayList<>();
+    }
+
+    /**
+     * Fetches the features overlapping [start, end], moving the window forward if needed.
+     * @param chromosome chromosome name
+     * @param start 1-based start
+     * @param end 1-based end, inclusive
+     * @return features overlapping the region, in loading order
+     * @throws CellBaseException if the features can not be fetched
+     */
+    public synchronized List<T> get(String chromosome, int start, int end) throws CellBaseException {
+        List<T> candidates;
+        if (!chromosome.equals(this.chromosome) || start > windowEnd + 1) {
+            // New chromosome or a gap ahead, the window restarts at this region
+            features = load(new Region(chromosome, start, end));
+            this.chromosome = chromosome;
+            windowStart = start;
+            windowEnd = end;
+            candidates = features;
+        } else if (start < windowStart) {
+            // Region already left behind, it is fetched on its own and the window is not moved back
+            candidates = load(new Region(chromosome, start, end));
+        } else {
+            if (end > windowEnd) {
+                // Features starting within the current window were fetched already
+                for (T feature : load(new Region(chromosome, windowEnd + 1, end))) {
+                    if (startFunction.applyAsInt(feature) > windowEnd) {
+                        features.add(feature);
+                    }
+                }
+                windowEnd = end;
+            }
+            if (start - retention > windowStart) {
+                windowStart = start - retention;
+                features.removeIf(feature -> endFunction.applyAsInt(feature) < windowStart);
+            }
+            candidates = features;
+        }
+
+        List<T> overlapping = new ArrayList<>();
+        for (T feature : candidates) {
+            if (startFunction.applyAsInt(feature) <= end && endFunction.applyAsInt(feature) >= start) {
+                overlapping.add(feature);
+            }
+        }
+        return overlapping;
+    }
+
+    private List<T> load(Region region) throws CellBaseException {
+        List<T> loaded = new ArrayList<>(loader.load(region));
+        numLoads++;
+        numLoadedFeatures += loaded.size();
+        return loaded;
+    }
+
+    public synchronized long getNumLoads() {
+        return numLoads;
+    }
+
+    public synchronized long getNumLoadedFeatures() {
+        return numLoadedFeatures;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("SlidingFeatureWindow{");
+        sb.append("chromosome='").append(chromosome).append('\'');
+        sb.append(", windowStart=").append(windowStart);
+        sb.append(", windowEnd=").append(windowEnd);
+        sb.append(", size=").append(features.size());
+        sb.append(", numLoads=").append(numLoads);
+        sb.append(", numLoadedFeatures=").append(numLoadedFeatures);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.core.RegulatoryFeature;
+import org.opencb.cellbase.core.api.GeneQuery;
+import org.opencb.cellbase.core.api.RegulationQuery;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.lib.iterator.CellBaseIterator;
+import org.opencb.cellbase.lib.managers.GeneManager;
+import org.opencb.cellbase.lib.managers.RegulatoryManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Sliding windows of genes and regulatory features used to annotate coordinate-sorted input, e.g. a VCF file. Each
+ * batch only fetches the genomic span not covered by the previous batches. One instance is meant to be shared by all
+ * the annotation threads, batches spanning several chromosomes are not handled and must be resolved with the regular
+ * per-batch queries.
+ */
+public class SortedAnnotationWindow {
+
+    // Span kept behind the last requested position, batches annotated by other threads may arrive late
+    private static final int RETENTION = 2000000;
+
+    private final GeneManager geneManager;
+    private final RegulatoryManager regulatoryManager;
+    private final int dataRelease;
+
+    private final Map<String, SlidingFeatureWindow<Gene>> geneWindows;
+    private List<String> geneIncludeFields;
+    private final SlidingFeatureWindow<RegulatoryFeature> regulatoryWindow;
+
+    private final Logger logger = LoggerFactory.getLogger(SortedAnnotationWindow.class);
+
+    public SortedAnnotationWindow(GeneManager geneManager, RegulatoryManager regulatoryManager, int dataRelease) {
+        this.geneManager = geneManager;
+        this.regulatoryManager = regulatoryManager;
+        this.dataRelease = dataRelease;
+        this.geneWindows = new HashMap<>();
+        this.regulatoryWindow = new SlidingFeatureWindow<>(this::loadRegulatoryFeatures, RegulatoryFeature::getStart,
+                RegulatoryFeature::getEnd, RETENTION);
+    }
+
+    /**
+     * Genes overlapping the regions of a batch.
+     * @param regionList batch regions, gene search padding included
+     * @param sources gene sources, i.e. ensembl and/or refseq
+     * @param includeFields gene fields to be fetched, the windows are reset when they change
+     * @return overlapping genes of all sources, or null if the regions are not on one single chromosome
+     * @throws CellBaseException if the genes can not be fetched
+     */
+    public synchronized List<Gene> getGenes(List<Region> regionList, List<String> sources, List<String> includeFields)
+            throws CellBaseException {
+        Region span = getSpan(regionList, Integer.MAX_VALUE);
+        if (span == null) {
+            return null;
+        }
+        if (!includeFields.equals(geneIncludeFields)) {
+            geneWindows.clear();
+            geneIncludeFields = new ArrayList<>(includeFields);
+        }
+
+        List<Gene> geneList = new ArrayList<>();
+        for (String source : sources) {
+            SlidingFeatureWindow<Gene> geneWindow = geneWindows.computeIfAbsent(source, k -> new SlidingFeatureWindow<>(
+                    region -> loadGenes(region, k), Gene::getStart, Gene::getEnd, RETENTION));
+            for (Gene gene : geneWindow.get(span.getChromosome(), span.getStart(), span.getEnd())) {
+                // Only genes overlapping any of the regions, as returned by the regular region query
+                for (Region region : regionList) {
+                    if (gene.getStart() <= region.getEnd() && gene.getEnd() >= region.getStart()) {
+                        geneList.add(gene);
+                        break;
+                    }
+                }
+            }
+            logger.debug("Gene window: {}", geneWindow);
+        }
+        return geneList;
+    }
+
+    /**
+     * Regulatory feature index covering the regions of a batch, regions too large to be pre-fetched are left out as in
+     * {@link RegulatoryRegionIndex#load}.
+     * @param regionList batch regions
+     * @return the index, or null if the regions are not on one single chromosome
+     * @throws CellBaseException if the regulatory features can not be fetched
+     */
+    public RegulatoryRegionIndex getRegulatoryRegionIndex(List<Region> regionList) throws CellBaseException {
+        Region span = getSpan(regionList, RegulatoryRegionIndex.MAX_REGION_SIZE);
+        if (span == null) {
+            return null;
+        }
+        List<RegulatoryFeature> regulatoryFeatures = regulatoryWindow.get(span.getChromosome(), span.getStart(), span.getEnd());
+        return new RegulatoryRegionIndex(Collections.singletonList(span), regulatoryFeatures);
+    }
+
+    private Region getSpan(List<Region> regionList, int maxRegionSize) {
+        Region span = null;
+        for (Region region : regionList) {
+            if (region.getEnd() - region.getStart() >= maxRegionSize) {
+                continue;
+            }
+            if (span == null) {
+                span = new Region(region.getChromosome(), region.getStart(), region.getEnd());
+            } else if (span.getChromosome().equals(region.getChromosome())) {
+                span.setStart(Math.min(span.getStart(), region.getStart()));
+                span.setEnd(Math.max(span.getEnd(), region.getEnd()));
+            } else {
+                return null;
+            }
+        }
+        return span;
+    }
+
+    private List<Gene> loadGenes(Region region, String source) throws CellBaseException {
+        GeneQuery query = new GeneQuery();
+        query.setIncludes(geneIncludeFields);
+        query.setRegions(Collections.singletonList(region));
+        query.setSource(Collections.singletonList(source));
+        query.setDataRelease(dataRelease);
+        return fetch(geneManager.iterator(query));
+    }
+
+    private List<RegulatoryFeature> loadRegulatoryFeatures(Region region) throws CellBaseException {
+        RegulationQuery query = new RegulationQuery();
+        query.setExcludes(Collections.singletonList("_id"));
+        query.setIncludes(Arrays.asList("chromosome", "start", "end", "featureType"));
+        query.setRegions(Collections.singletonList(region));
+        query.setDataRelease(dataRelease);
+        return fetch(regulatoryManager.iterator(query));
+    }
+
+    private static <T> List<T> fetch(CellBaseIterator<T> iterator) {
+        // Iterators are used since a window may contain more features than allowed by a regular search
+        List<T> features = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                features.add(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
+        return features;
+    }
+}
@@ -20,7 +20,6 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.models.core.*;
 import org.opencb.biodata.models.variant.Variant;
-import org.opencb.biodata.models.variant.VariantBuilder;
 import org.opencb.biodata.models.variant.annotation.ConsequenceTypeMappings;
 import org.opencb.biodata.models.variant.avro.GeneCancerAssociation;
 import org.opencb.biodata.models.variant.avro.*;
@@ -30,11 +29,10 @@ import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.api.GeneQuery;
 import org.opencb.cellbase.core.api.RegulationQuery;
 import org.opencb.cellbase.core.api.RepeatsQuery;
-import org.opencb.cellbase.core.api.query.LogicalList;
 import org.opencb.cellbase.core.api.query.QueryException;
 import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.models.DataRelease;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
-import org.opencb.cellbase.lib.EtlCommons;
 import org.opencb.cellbase.lib.managers.*;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.cellbase.lib.variant.hgvs.HgvsCalculator;
@@ -70,26 +68,25 @@ public class VariantAnnotationCalculator {
     private RepeatsManager repeatsManager;
     private ProteinManager proteinManager;
     private int dataRelease;
-    private Set<String> annotatorSet;
-    private List<String> includeGeneFields;
 
+    // Request options are kept in a VariantAnnotationContext, one calculator can then serve concurrent requests
     private final VariantNormalizer normalizer;
-    private boolean normalize = false;
-    private boolean decompose = true;
-    private boolean phased = true;
-    private Boolean imprecise = true;
-    private Integer svExtraPadding = 0;
-    private Integer cnvExtraPadding = 0;
-    private Boolean checkAminoAcidChange = false;
-    private String consequenceTypeSource = null;
-    private String enable = null;
-
-    private static HgvsCalculator hgvsCalculator;
+    private final VariantNormalizer noDecomposeNormalizer;
+
+    private final HgvsCalculator hgvsCalculator;
+    private final AnnotationScheduler annotationScheduler;
+    private SortedAnnotationWindow sortedAnnotationWindow;
+    private final AnnotationMemoCache annotationMemoCache;
+    private final String memoKeyPrefix;
+
+    private static final List<String> GENE_INDEX_FIELDS = VariantAnnotationContext.getIncludedGeneFields(
+            new HashSet<>(Arrays.asList("expression", "geneDisease", "drugInteraction", "geneConstraints", "mirnaTargets",
+                    "cancerGeneAssociation")));
 
     private static final String REGULATORY_REGION_FEATURE_TYPE_ATTRIBUTE = "featureType";
     private static final String TF_BINDING_SITE = ParamConstants.FeatureType.TF_binding_site.name();
+    private static final Set<VariantType> MEMOIZABLE_VARIANT_TYPES = EnumSet.of(VariantType.SNV, VariantType.MNV, VariantType.INDEL);
 
-    private static final ExecutorService CACHED_THREAD_POOL = Executors.newCachedThreadPool();
     private static Logger logger = LoggerFactory.getLogger(VariantAnnotationCalculator.class);
 
     public VariantAnnotationCalculator(String species, String assembly, int dataRelease, CellBaseManagerFactory cellbaseManagerFactory)
@@ -101,19 +98,45 @@ public class VariantAnnotationCalculator {
         this.proteinManager = cellbaseManagerFactory.getProteinManager(species, assembly);
         this.clinicalManager = cellbaseManagerFactory.getClinicalManager(species, assembly);
         this.repeatsManager = cellbaseManagerFactory.getRepeatsManager(species, assembly);
+        this.annotationScheduler = cellbaseManagerFactory.getAnnotationScheduler();
 
         this.dataRelease = dataRelease;
 
-        // Initialises normaliser configuration with default values. HEADS UP: configuration might be updated
-        // at parseQueryParam
-        this.normalizer = new VariantNormalizer(getNormalizerConfig());
+        // Normalisers are not modified after creation, the one to use depends on the skipDecompose option
+        this.normalizer = new VariantNormalizer(getNormalizerConfig(true));
+        this.noDecomposeNormalizer = new VariantNormalizer(getNormalizerConfig(false));
 
-        hgvsCalculator = new HgvsCalculator(genomeManager, dataRelease);
+        this.hgvsCalculator = new HgvsCalculator(genomeManager, dataRelease);
+
+        // Memo keys need the collections of the release, annotations are not memoized if they are not known
+        DataRelease memoDataRelease = null;
+        AnnotationMemoCache memoCache = cellbaseManagerFactory.getAnnotationMemoCache();
+        if (memoCache != null) {
+            DataReleaseManager dataReleaseManager = cellbaseManagerFactory.getDataReleaseManager(species, assembly);
+            memoDataRelease = dataRelease == 0 ? dataReleaseManager.getDefault() : dataReleaseManager.get(dataRelease);
+            if (memoDataRelease == null) {
+                logger.warn("Annotation memo cache disabled, data release {} not found", dataRelease);
+            }
+        }
+        this.annotationMemoCache = memoDataRelease != null ? memoCache : null;
+        this.memoKeyPrefix = memoDataRelease != null ? AnnotationMemoCache.getKeyPrefix(species, assembly, memoDataRelease) : null;
 
         logger.debug("VariantAnnotationMongoDBAdaptor: in 'constructor'");
     }
 
-    private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig() {
+    /**
+     * Input sorted by coordinate: genes and regulatory features are taken from a sliding window, shared by all the
+     * calculators annotating the same input, and each batch only fetches the genomic span not seen before. Not to be
+     * set on the calculators shared through {@link CellBaseManagerFactory#getVariantAnnotationCalculator}.
+     * @param sortedAnnotationWindow window, null to query the database for every batch
+     * @return this calculator
+     */
+    public VariantAnnotationCalculator setSortedAnnotationWindow(SortedAnnotationWindow sortedAnnotationWindow) {
+        this.sortedAnnotationWindow = sortedAnnotationWindow;
+        return this;
+    }
+
+    private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig(boolean decompose) {
         return (new VariantNormalizer.VariantNormalizerConfig())
                 .setReuseVariants(false)
                 .setNormalizeAlleles(false)
@@ -126,12 +149,15 @@ public class VariantAnnotationCalculator {
             throws QueryException, IllegalAccessException, CellBaseException {
         long dbTimeStart = System.currentTimeMillis();
 
-        parseQueryParam(queryOptions);
-        List<Gene> batchGeneList = getBatchGeneList(Collections.singletonList(variant));
-        List<Gene> geneList = getAffectedGenes(batchGeneList, variant);
+        VariantAnnotationContext context = new VariantAnnotationContext(queryOptions);
+        List<Gene> batchGeneList = getBatchGeneList(Collections.singletonList(variant), context);
+        List<Gene> geneList = getAffectedGenes(batchGeneList, variant, context);
 
         // TODO the last 'true' parameter needs to be changed by annotatorSet.contains("regulatory") once is ready
-        List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, geneList, true, queryOptions, dataRelease);
+        ProteinAnnotationBatch proteinAnnotationBatch = new ProteinAnnotationBatch();
+        List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, geneList, true, null, queryOptions,
+                proteinAnnotationBatch);
+        proteinAnnotationBatch.resolve(proteinManager, dataRelease);
 
         CellBaseDataResult cellBaseDataResult = new CellBaseDataResult();
         cellBaseDataResult.setId(variant.toString());
@@ -153,15 +179,20 @@ public class VariantAnnotationCalculator {
 
     public List<CellBaseDataResult<VariantAnnotation>> getAnnotationByVariantList(List<Variant> variantList, QueryOptions queryOptions)
             throws InterruptedException, ExecutionException, QueryException, IllegalAccessException, CellBaseException {
+        return getAnnotationByVariantList(variantList, new VariantAnnotationContext(queryOptions));
+    }
+
+    public List<CellBaseDataResult<VariantAnnotation>> getAnnotationByVariantList(List<Variant> variantList,
+                                                                                  VariantAnnotationContext context)
+            throws InterruptedException, ExecutionException, QueryException, IllegalAccessException, CellBaseException {
         logger.debug("Annotating batch");
-        parseQueryParam(queryOptions);
 
         if (variantList == null || variantList.isEmpty()) {
             return new ArrayList<>();
         }
         List<Variant> normalizedVariantList;
-        if (normalize) {
-            normalizedVariantList = normalizer.apply(variantList);
+        if (context.isNormalize()) {
+            normalizedVariantList = (context.isDecompose() ? normalizer : noDecomposeNormalizer).apply(variantList);
         } else {
             normalizedVariantList = variantList;
         }
@@ -169,20 +200,24 @@ public class VariantAnnotationCalculator {
         // Normalized variants already contain updated VariantAnnotation objects since runAnnotationProcess will
         // write on them if available (if not will create and set them) - i.e. no need to use variantAnnotationList
         // really
-        List<VariantAnnotation> variantAnnotationList = runAnnotationProcess(normalizedVariantList, dataRelease);
+        if (annotationMemoCache == null) {
+            runAnnotationProcess(normalizedVariantList, context, dataRelease);
+        } else {
+            runMemoizedAnnotationProcess(normalizedVariantList, context);
+        }
 
-        return generateCellBaseDataResultList(variantList, normalizedVariantList, startTime);
+        return generateCellBaseDataResultList(variantList, normalizedVariantList, context.isDecompose(), startTime);
     }
     private List<CellBaseDataResult<VariantAnnotation>> generateCellBaseDataResultList(List<Variant> variantList,
                                                                                        List<Variant> normalizedVariantList,
-                                                                                       long startTime) {
+                                                                                       boolean decompose, long startTime) {
 
         List<CellBaseDataResult<VariantAnnotation>> annotationResultList = new ArrayList<>(variantList.size());
 
         // Return only one result per CellBaseDataResult if either
         //   - size original variant list and normalised one is the same
         //   - MNV decomposition is switched OFF, i.e. queryOptions.skipDecompose = true and therefore
-        //   this.decompose = false
+        //   decompose = false
         if (!decompose || variantList.size() == normalizedVariantList.size()) {
             for (int i = 0; i < variantList.size(); i++) {
                 CellBaseDataResult<VariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>(variantList.get(i).toString(),
@@ -248,7 +283,7 @@ public class VariantAnnotationCalculator {
         return variantCellBaseDataResult.first();
     }
 
-    private List<Gene> setGeneAnnotation(List<Gene> geneList, Variant variant)
+    private List<Gene> setGeneAnnotation(List<Gene> geneList, Variant variant, Set<String> annotatorSet)
             throws QueryException, IllegalAccessException, CellBaseException {
         // Fetch overlapping genes for this variant
         VariantAnnotation variantAnnotation = variant.getAnnotation();
@@ -417,50 +452,59 @@ public class VariantAnnotationCalculator {
                 mirnas.add(mature.getId());
             }
         }
-        GeneQuery geneQuery = new GeneQuery();
-        geneQuery.setAnnotationTargets(new LogicalList<>(mirnas, false));
-        List<GeneMirnaTarget> geneMirnaTargets = new ArrayList<>();
-        List<Gene> genes = (geneManager.search(geneQuery)).getResults();
-        for (Gene gene : genes) {
-            geneMirnaTargets.add(new GeneMirnaTarget(gene.getId(), gene.getName(), gene.getBiotype()));
+        // Targets are cached by the gene manager, no query is run for miRNAs already seen
+        return geneManager.getMirnaTargets(mirnas, dataRelease);
+    }
+
+    private void runMemoizedAnnotationProcess(List<Variant> normalizedVariantList, VariantAnnotationContext context)
+            throws InterruptedException, ExecutionException, QueryException, IllegalAccessException, CellBaseException {
+        // Annotations only depend on the variant, the data release and the annotation options, memoized ones are copied
+        // into the variants and only the rest are annotated
+        List<Variant> pendingVariantList = new ArrayList<>(normalizedVariantList.size());
+        List<String> pendingKeyList = new ArrayList<>(normalizedVariantList.size());
+        for (Variant variant : normalizedVariantList) {
+            if (!isMemoizable(variant, context)) {
+                pendingVariantList.add(variant);
+                pendingKeyList.add(null);
+                continue;
+            }
+            String key = memoKeyPrefix + "|" + context.getMemoKey() + "|" + variant;
+            VariantAnnotation variantAnnotation = annotationMemoCache.get(key);
+            if (variantAnnotation != null) {
+                variant.setAnnotation(variantAnnotation);
+            } else {
+                pendingVariantList.add(variant);
+                pendingKeyList.add(key);
+            }
+        }
+
+        if (!pendingVariantList.isEmpty()) {
+            runAnnotationProcess(pendingVariantList, context, dataRelease);
+            for (int i = 0; i < pendingVariantList.size(); i++) {
+                if (pendingKeyList.get(i) != null) {
+                    annotationMemoCache.put(pendingKeyList.get(i), pendingVariantList.get(i).getAnnotation());
+                }
+            }
         }
-        return geneMirnaTargets;
+        logger.debug("{} of {} variants annotated from the memo cache: {}", normalizedVariantList.size() - pendingVariantList.size(),
+                normalizedVariantList.size(), annotationMemoCache);
     }
 
-//    private boolean isPhased(Variant variant) {
-//        return (variant.getStudies() != null && !variant.getStudies().isEmpty())
-//            && variant.getStudies().get(0).getSampleDataKeys().contains("PS");
-//    }
-//
-//    private String getCachedVariationIncludeFields() {
-//        StringBuilder stringBuilder = new StringBuilder("annotation.chromosome,annotation.start,annotation.reference");
-//        stringBuilder.append(",annotation.alternate,annotation.id");
-//
-//        if (annotatorSet.contains("variation")) {
-//            stringBuilder.append(",annotation.id,annotation.additionalAttributes.dgvSpecificAttributes");
-//        }
-//        if (annotatorSet.contains("clinical") || annotatorSet.contains("traitAssociation")) {
-//            stringBuilder.append(",annotation.variantTraitAssociation");
-//        }
-//        if (annotatorSet.contains("conservation")) {
-//            stringBuilder.append(",annotation.conservation");
-//        }
-//        if (annotatorSet.contains("functionalScore")) {
-//            stringBuilder.append(",annotation.functionalScore");
-//        }
-//        if (annotatorSet.contains("consequenceType")) {
-//            stringBuilder.append(",annotation.consequenceTypes,annotation.displayConsequenceType");
-//        }
-//        if (annotatorSet.contains("populationFrequencies")) {
-//            stringBuilder.append(",annotation.populationFrequencies");
-//        }
-//
-//        return stringBuilder.toString();
-//    }
-
-    private List<VariantAnnotation> runAnnotationProcess(List<Variant> normalizedVariantList, int dataRelease)
+    private boolean isMemoizable(Variant variant, VariantAnnotationContext context) {
+        // Annotations already present in the input are completed rather than replaced, and phased annotations depend on
+        // the genotypes of the other variants of the batch
+        return variant.getAnnotation() == null
+                && MEMOIZABLE_VARIANT_TYPES.contains(variant.getType())
+                && !(context.isPhased() && CollectionUtils.isNotEmpty(variant.getStudies()));
+    }
+
+    private List<VariantAnnotation> runAnnotationProcess(List<Variant> normalizedVariantList, VariantAnnotationContext context,
+                                                         int dataRelease)
             throws InterruptedException, ExecutionException, QueryException, IllegalAccessException, CellBaseException {
         long globalStartTime = System.currentTimeMillis();
+        Set<String> annotatorSet = context.getAnnotatorSet();
+        boolean phased = context.isPhased();
+        boolean checkAminoAcidChange = context.isCheckAminoAcidChange();
 
         // Object to be returned
         List<VariantAnnotation> variantAnnotationList = new ArrayList<>(normalizedVariantList.size());
@@ -470,65 +514,78 @@ public class VariantAnnotationCalculator {
          * Once the main loop has finished then they will be stored. This provides a ~30% of performance improvement.
          */
         FutureVariationAnnotator futureVariationAnnotator = null;
-        Future<List<CellBaseDataResult<Variant>>> variationFuture = null;
-        List<Gene> batchGeneList = getBatchGeneList(normalizedVariantList);
+        CompletableFuture<List<CellBaseDataResult<Variant>>> variationFuture = null;
+        List<Gene> batchGeneList = getBatchGeneList(normalizedVariantList, context);
+
+        // Regulatory features overlapping the whole batch are fetched at once, consequence types will then check
+        // regulatory overlaps in memory rather than querying the database for every variant
+        RegulatoryRegionIndex regulatoryRegionIndex = null;
+        if (annotatorSet.contains("consequenceType")) {
+            regulatoryRegionIndex = getBatchRegulatoryRegionIndex(normalizedVariantList);
+        }
 
         if (annotatorSet.contains("variation") || annotatorSet.contains("populationFrequencies")) {
             futureVariationAnnotator = new FutureVariationAnnotator(normalizedVariantList, new QueryOptions("include",
                     "id,annotation.populationFrequencies,annotation.additionalAttributes.dgvSpecificAttributes")
-                    .append("imprecise", imprecise), dataRelease);
-            variationFuture = CACHED_THREAD_POOL.submit(futureVariationAnnotator);
+                    .append("imprecise", context.isImprecise()), dataRelease);
+            variationFuture = annotationScheduler.submit("variation", futureVariationAnnotator);
         }
 
         FutureConservationAnnotator futureConservationAnnotator = null;
-        Future<List<CellBaseDataResult<Score>>> conservationFuture = null;
+        CompletableFuture<List<CellBaseDataResult<Score>>> conservationFuture = null;
         if (annotatorSet.contains("conservation")) {
-            futureConservationAnnotator = new FutureConservationAnnotator(normalizedVariantList, QueryOptions.empty(), dataRelease);
-            conservationFuture = CACHED_THREAD_POOL.submit(futureConservationAnnotator);
+            futureConservationAnnotator = new FutureConservationAnnotator(normalizedVariantList, QueryOptions.empty(), context,
+                    dataRelease);
+            conservationFuture = annotationScheduler.submit("conservation", futureConservationAnnotator);
         }
 
         FutureVariantFunctionalScoreAnnotator futureVariantFunctionalScoreAnnotator = null;
-        Future<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture = null;
+        CompletableFuture<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture = null;
         if (annotatorSet.contains("functionalScore")) {
             futureVariantFunctionalScoreAnnotator = new FutureVariantFunctionalScoreAnnotator(normalizedVariantList, QueryOptions.empty(),
                     dataRelease);
-            variantFunctionalScoreFuture = CACHED_THREAD_POOL.submit(futureVariantFunctionalScoreAnnotator);
+            variantFunctionalScoreFuture = annotationScheduler.submit("functionalScore", futureVariantFunctionalScoreAnnotator);
         }
 
         FutureClinicalAnnotator futureClinicalAnnotator = null;
-        Future<List<CellBaseDataResult<Variant>>> clinicalFuture = null;
+        CompletableFuture<List<CellBaseDataResult<Variant>>> clinicalFuture = null;
         // FIXME "clinical" is deprecated, replaced with traitAssociation
         if (annotatorSet.contains("clinical") || annotatorSet.contains("traitAssociation")) {
-            QueryOptions queryOptions = new QueryOptions();
-            queryOptions.add(ParamConstants.QueryParams.PHASE.key(), phased);
-            queryOptions.add(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key(), checkAminoAcidChange);
-            futureClinicalAnnotator = new FutureClinicalAnnotator(normalizedVariantList, batchGeneList, queryOptions);
-            clinicalFuture = CACHED_THREAD_POOL.submit(futureClinicalAnnotator);
+            futureClinicalAnnotator = new FutureClinicalAnnotator(clinicalManager, normalizedVariantList, batchGeneList, phased,
+                    checkAminoAcidChange, context.getEnable().contains("hgmd"), dataRelease);
+            // Protein HGVS calculated by the main loop are reused, the clinical query is then submitted after it. The main
+            // loop does not normalise the variants when calculating the HGVS, they are only reused when the input variants
+            // have been normalised, otherwise the clinical query calculates the HGVS of the normalised variants itself
+            if (!checkAminoAcidChange || !annotatorSet.contains("hgvs") || !context.isNormalize()) {
+                clinicalFuture = annotationScheduler.submit("traitAssociation", futureClinicalAnnotator);
+            }
         }
 
         FutureRepeatsAnnotator futureRepeatsAnnotator = null;
-        Future<List<CellBaseDataResult<Repeat>>> repeatsFuture = null;
+        CompletableFuture<List<CellBaseDataResult<Repeat>>> repeatsFuture = null;
         if (annotatorSet.contains("repeats")) {
-            futureRepeatsAnnotator = new FutureRepeatsAnnotator(normalizedVariantList, dataRelease);
-            repeatsFuture = CACHED_THREAD_POOL.submit(futureRepeatsAnnotator);
+            futureRepeatsAnnotator = new FutureRepeatsAnnotator(normalizedVariantList, context, dataRelease);
+            repeatsFuture = annotationScheduler.submit("repeats", futureRepeatsAnnotator);
         }
 
         FutureCytobandAnnotator futureCytobandAnnotator = null;
-        Future<List<CellBaseDataResult<Cytoband>>> cytobandFuture = null;
+        CompletableFuture<List<CellBaseDataResult<Cytoband>>> cytobandFuture = null;
         if (annotatorSet.contains("cytoband")) {
-            futureCytobandAnnotator = new FutureCytobandAnnotator(normalizedVariantList, QueryOptions.empty(), dataRelease);
-            cytobandFuture = CACHED_THREAD_POOL.submit(futureCytobandAnnotator);
+            futureCytobandAnnotator = new FutureCytobandAnnotator(normalizedVariantList, QueryOptions.empty(), context, dataRelease);
+            cytobandFuture = annotationScheduler.submit("cytoband", futureCytobandAnnotator);
         }
 
         FutureSpliceScoreAnnotator futureSpliceScoreAnnotator = null;
-        Future<List<CellBaseDataResult<SpliceScore>>> spliceScoreFuture = null;
+        CompletableFuture<List<CellBaseDataResult<SpliceScore>>> spliceScoreFuture = null;
         if (annotatorSet.contains("consequenceType")) {
             futureSpliceScoreAnnotator = new FutureSpliceScoreAnnotator(normalizedVariantList, QueryOptions.empty(), dataRelease);
-            spliceScoreFuture = CACHED_THREAD_POOL.submit(futureSpliceScoreAnnotator);
+            spliceScoreFuture = annotationScheduler.submit("spliceScore", futureSpliceScoreAnnotator);
         }
 
         // We iterate over all variants to get the rest of the annotations and to create the VariantAnnotation objects
         Queue<Variant> variantBuffer = new LinkedList<>();
+        // Protein annotations of the missense consequence types are fetched at once after the main loop
+        ProteinAnnotationBatch proteinAnnotationBatch = new ProteinAnnotationBatch();
         long startTime = System.currentTimeMillis();
         for (Variant variant : normalizedVariantList) {
             // normalizedVariantList is the passed by reference argument - modifying normalizedVariantList will
@@ -549,7 +606,7 @@ public class VariantAnnotationCalculator {
             variantAnnotation.setAlternate(variant.getAlternate());
 
             // Get variant overlapping genes
-            List<Gene> affectedGenes = getAffectedGenes(batchGeneList, variant);
+            List<Gene> affectedGenes = getAffectedGenes(batchGeneList, variant, context);
 
             // Better not run HGVS calculation with a Future for the following reasons:
             //   * affectedGenes is needed in order to calculate the hgvs for ALL VARIANTS
@@ -587,11 +644,11 @@ public class VariantAnnotationCalculator {
 
             if (annotatorSet.contains("consequenceType")) {
                 try {
-                    List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, affectedGenes, true, QueryOptions.empty(),
-                            dataRelease);
+                    List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, affectedGenes, true,
+                            regulatoryRegionIndex, QueryOptions.empty(), proteinAnnotationBatch);
                     variantAnnotation.setConsequenceTypes(consequenceTypeList);
                     if (phased) {
-                        checkAndAdjustPhasedConsequenceTypes(variant, variantBuffer, dataRelease);
+                        checkAndAdjustPhasedConsequenceTypes(variant, variantBuffer, proteinAnnotationBatch);
                     }
                     variantAnnotation
                             .setDisplayConsequenceType(getMostSevereConsequenceType(variant.getAnnotation().getConsequenceTypes()));
@@ -608,7 +665,7 @@ public class VariantAnnotationCalculator {
             }
 
             // Get the gene annotation info
-            setGeneAnnotation(affectedGenes, variant);
+            setGeneAnnotation(affectedGenes, variant, annotatorSet);
 
             variantAnnotationList.add(variantAnnotation);
         }
@@ -616,50 +673,60 @@ public class VariantAnnotationCalculator {
         // Adjust phase of two last variants - if still anything remaining to adjust. This can happen if the two last
         // variants in the batch are phased and the distance between them < 3nts
         if (phased && variantBuffer.size() > 1) {
-            adjustPhasedConsequenceTypes(variantBuffer.toArray(), dataRelease);
+            adjustPhasedConsequenceTypes(variantBuffer.toArray(), proteinAnnotationBatch);
+        }
+        if (proteinAnnotationBatch.size() > 0) {
+            long proteinStartTime = System.currentTimeMillis();
+            int numConsequenceTypes = proteinAnnotationBatch.size();
+            proteinAnnotationBatch.resolve(proteinManager, dataRelease);
+            logger.debug("Protein annotation performance is {}ms for {} consequence types", System.currentTimeMillis()
+                    - proteinStartTime, numConsequenceTypes);
         }
 
         logger.debug("Main loop iteration annotation performance is {}ms for {} variants", System.currentTimeMillis()
                 - startTime, normalizedVariantList.size());
+        if (futureClinicalAnnotator != null && clinicalFuture == null) {
+            futureClinicalAnnotator.setHgvs(variantAnnotationList);
+            clinicalFuture = annotationScheduler.submit("traitAssociation", futureClinicalAnnotator);
+        }
 
         /*
          * Now, hopefully the other annotations have finished and we can store the results.
          * Method 'processResults' has been implemented in the same class for sanity.
          */
         if (futureVariationAnnotator != null) {
-            futureVariationAnnotator.processResults(variationFuture, variantAnnotationList, annotatorSet);
+            futureVariationAnnotator.processResults(variationFuture.get(), variantAnnotationList, annotatorSet);
         }
         if (futureConservationAnnotator != null) {
-            futureConservationAnnotator.processResults(conservationFuture, variantAnnotationList);
+            futureConservationAnnotator.processResults(conservationFuture.get(), variantAnnotationList);
         }
         if (futureVariantFunctionalScoreAnnotator != null) {
-            futureVariantFunctionalScoreAnnotator.processResults(variantFunctionalScoreFuture, variantAnnotationList);
+            futureVariantFunctionalScoreAnnotator.processResults(variantFunctionalScoreFuture.get(), variantAnnotationList);
         }
         if (futureClinicalAnnotator != null) {
-            futureClinicalAnnotator.processResults(clinicalFuture, variantAnnotationList);
+            futureClinicalAnnotator.processResults(clinicalFuture.get(), variantAnnotationList);
         }
         if (futureRepeatsAnnotator != null) {
-            futureRepeatsAnnotator.processResults(repeatsFuture, variantAnnotationList);
+            futureRepeatsAnnotator.processResults(repeatsFuture.get(), variantAnnotationList);
         }
         if (futureCytobandAnnotator != null) {
-            futureCytobandAnnotator.processResults(cytobandFuture, variantAnnotationList);
+            futureCytobandAnnotator.processResults(cytobandFuture.get(), variantAnnotationList);
         }
 
         if (futureSpliceScoreAnnotator != null) {
-            futureSpliceScoreAnnotator.processResults(spliceScoreFuture, variantAnnotationList);
+            futureSpliceScoreAnnotator.processResults(spliceScoreFuture.get(), variantAnnotationList);
         }
 
-        // Not needed with newCachedThreadPool
-        // fixedThreadPool.shutdown();
+        logger.debug("Annotation scheduler status: {}", annotationScheduler);
 
         logger.debug("Total batch annotation performance is {}ms for {} variants", System.currentTimeMillis()
                 - globalStartTime, normalizedVariantList.size());
         return variantAnnotationList;
     }
 
-    public List<Gene> getBatchGeneList(List<Variant> variantList)
+    public List<Gene> getBatchGeneList(List<Variant> variantList, VariantAnnotationContext context)
             throws QueryException, IllegalAccessException, CellBaseException {
-        List<Region> regionList = variantListToRegionList(variantList);
+        List<Region> regionList = context.variantListToRegionList(variantList);
         // Add +-5Kb for gene search
         for (Region region : regionList) {
             region.setStart(Math.max(1, region.getStart() - 5000));
@@ -667,117 +734,65 @@ public class VariantAnnotationCalculator {
         }
 
         List<Gene> geneList = new ArrayList<>();
+        if (geneManager.isGeneIndexEnabled()) {
+            for (GeneIntervalIndex geneIndex : getGeneIndexes(context)) {
+                Set<Gene> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Region region : regionList) {
+                    for (Gene gene : geneIndex.getOverlapping(region.getChromosome(), region.getStart(), region.getEnd())) {
+                        if (visited.add(gene)) {
+                            geneList.add(gene);
+                        }
+                    }
+                }
+            }
+            return geneList;
+        }
+        if (sortedAnnotationWindow != null) {
+            List<Gene> windowGeneList = sortedAnnotationWindow.getGenes(regionList, context.getGeneSources(),
+                    context.getIncludeGeneFields());
+            if (windowGeneList != null) {
+                return windowGeneList;
+            }
+        }
+
         GeneQuery geneQuery = new GeneQuery();
-        geneQuery.setIncludes(includeGeneFields);
+        geneQuery.setIncludes(context.getIncludeGeneFields());
         geneQuery.setRegions(regionList);
         geneQuery.setDataRelease(dataRelease);
-
-        if (StringUtils.isNotEmpty(consequenceTypeSource)) {
-            // sources can be "ensembl" and/or "refseq". query is validated before execution, will fail if invalid value
-            String[] sources = consequenceTypeSource.split(",");
-            for (String source : sources) {
-                if (source.equalsIgnoreCase(ParamConstants.QueryParams.ENSEMBL.key())) {
-                    geneQuery.setSource(Collections.singletonList(ParamConstants.QueryParams.ENSEMBL.key()));
-                    geneList.addAll(new CellBaseDataResult<>(geneManager.search(geneQuery)).getResults());
-                }
-                if (source.equalsIgnoreCase(ParamConstants.QueryParams.REFSEQ.key())) {
-                    geneQuery.setSource(Collections.singletonList(ParamConstants.QueryParams.REFSEQ.key()));
-                    geneList.addAll(new CellBaseDataResult<>(geneManager.search(geneQuery)).getResults());
-                }
-            }
-        } else {
-            // if no source specified, default to ensembl
-            geneQuery.setSource(Collections.singletonList(ParamConstants.QueryParams.ENSEMBL.key()));
+        for (String source : context.getGeneSources()) {
+            geneQuery.setSource(Collections.singletonList(source));
             geneList.addAll(new CellBaseDataResult<>(geneManager.search(geneQuery)).getResults());
         }
         return geneList;
     }
 
-    private void parseQueryParam(QueryOptions queryOptions) {
-        // We process include and exclude query options to know which annotators to use.
-        // Include parameter has preference over exclude.
-        annotatorSet = getAnnotatorSet(queryOptions);
-        logger.debug("Annotators to use: {}", annotatorSet.toString());
-
-        // This field contains all the fields to be returned by overlapping genes
-        includeGeneFields = getIncludedGeneFields(annotatorSet);
-
-        // Default behaviour no normalization
-        normalize = (queryOptions.get("normalize") != null && (Boolean) queryOptions.get("normalize"));
-        logger.debug("normalize = {}", normalize);
-
-        // Default behaviour decompose
-        decompose = (queryOptions.get("skipDecompose") == null || !queryOptions.getBoolean("skipDecompose"));
-        logger.debug("decompose = {}", decompose);
-        // Must update normaliser configuration since normaliser was created on constructor
-        normalizer.getConfig().setDecomposeMNVs(decompose);
-
-        // New parameter "ignorePhase" present overrides presence of old "phased" parameter
-        if (queryOptions.get("ignorePhase") != null) {
-            phased = !queryOptions.getBoolean("ignorePhase");
-            // Old parameter "phased" present but new one ("ignorePhase") absent - use old one. Probably someone who has not
-            // yet moved to using the new one.
-        } else if (queryOptions.get("phased") != null) {
-            phased = queryOptions.getBoolean("phased");
-            // Default behaviour - calculate phased annotation
-        } else {
-            phased = true;
+    private List<GeneIntervalIndex> getGeneIndexes(VariantAnnotationContext context) throws CellBaseException {
+        List<GeneIntervalIndex> geneIndexes = new ArrayList<>(2);
+        for (String source : context.getGeneSources()) {
+            // Indexes hold the fields of all annotators, they are shared by every annotation request
+            geneIndexes.add(geneManager.getGeneIndex(source, GENE_INDEX_FIELDS, dataRelease));
         }
-        logger.debug("phased = {}", phased);
-
-        // Default behaviour - enable imprecise searches
-        imprecise = (queryOptions.get("imprecise") == null || queryOptions.getBoolean("imprecise"));
-        logger.debug("imprecise = {}", imprecise);
-
-        // Default behaviour - no extra padding for structural variants
-        svExtraPadding = (queryOptions.get("svExtraPadding") != null ? (Integer) queryOptions.get("svExtraPadding") : 0);
-        logger.debug("svExtraPadding = {}", svExtraPadding);
-
-        // Default behaviour - no extra padding for CNV
-        cnvExtraPadding = (queryOptions.get("cnvExtraPadding") != null ? (Integer) queryOptions.get("cnvExtraPadding") : 0);
-        logger.debug("cnvExtraPadding = {}", cnvExtraPadding);
-
-        checkAminoAcidChange = (queryOptions.get("checkAminoAcidChange") != null && (Boolean) queryOptions.get("checkAminoAcidChange"));
-        logger.debug("checkAminoAcidChange = {}", checkAminoAcidChange);
-
-        consequenceTypeSource = (queryOptions.get("consequenceTypeSource") != null
-                ? (String) queryOptions.get("consequenceTypeSource") : "ensembl,refseq");
-        logger.debug("consequenceTypeSource = {}", consequenceTypeSource);
+        return geneIndexes;
+    }
 
-        enable = (queryOptions.get("enable") != null
-                ? (String) queryOptions.get("enable") : "");
-        logger.debug("enable = {}", enable);
+    public RegulatoryRegionIndex getBatchRegulatoryRegionIndex(List<Variant> variantList) throws CellBaseException {
+        long startTime = System.currentTimeMillis();
+        List<Region> regionList = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            regionList.addAll(variantToRegulatoryRegionList(variant));
+        }
+        RegulatoryRegionIndex regulatoryRegionIndex = sortedAnnotationWindow != null
+                ? sortedAnnotationWindow.getRegulatoryRegionIndex(regionList) : null;
+        if (regulatoryRegionIndex == null) {
+            regulatoryRegionIndex = RegulatoryRegionIndex.load(regulationManager, regionList, dataRelease);
+        }
+        logger.debug("Regulatory pre-fetch performance is {}ms for {} variants, {} features", System.currentTimeMillis() - startTime,
+                variantList.size(), regulatoryRegionIndex.size());
+        return regulatoryRegionIndex;
     }
 
-//    private void mergeAnnotation(VariantAnnotation destination, VariantAnnotation origin) {
-//        destination.setChromosome(origin.getChromosome());
-//        destination.setStart(origin.getStart());
-//        destination.setReference(origin.getReference());
-//        destination.setAlternate(origin.getAlternate());
-//
-//        if (annotatorSet.contains("variation")) {
-//            destination.setId(origin.getId());
-//        }
-//        if (annotatorSet.contains("consequenceType")) {
-//            destination.setDisplayConsequenceType(origin.getDisplayConsequenceType());
-//            destination.setConsequenceTypes(origin.getConsequenceTypes());
-//        }
-//        if (annotatorSet.contains("conservation")) {
-//            destination.setConservation(origin.getConservation());
-//        }
-//        if (annotatorSet.contains("populationFrequencies")) {
-//            destination.setPopulationFrequencies(origin.getPopulationFrequencies());
-//        }
-//        if (annotatorSet.contains("clinical")) {
-//            destination.setVariantTraitAssociation(origin.getVariantTraitAssociation());
-//        }
-//        if (annotatorSet.contains("functionalScore")) {
-//            destination.setFunctionalScore(origin.getFunctionalScore());
-//        }
-//    }
-
-    private void checkAndAdjustPhasedConsequenceTypes(Variant variant, Queue<Variant> variantBuffer, int dataRelease)
-            throws CellBaseException {
+    private void checkAndAdjustPhasedConsequenceTypes(Variant variant, Queue<Variant> variantBuffer,
+                                                      ProteinAnnotationBatch proteinAnnotationBatch) {
         // Only SNVs are currently considered for phase adjustment
         if (variant.getType().equals(VariantType.SNV)) {
             // Check and manage variantBuffer for dealing with phased variants
@@ -796,11 +811,11 @@ public class VariantAnnotationCalculator {
                 case 2:
                     if (potentialCodingSNVOverlap(variantBuffer.peek(), variant)) {
                         variantBuffer.add(variant);
-                        adjustPhasedConsequenceTypes(variantBuffer.toArray(), dataRelease);
+                        adjustPhasedConsequenceTypes(variantBuffer.toArray(), proteinAnnotationBatch);
                         variantBuffer.poll();
                     } else {
                         // Adjust consequence types for the two previous variants
-                        adjustPhasedConsequenceTypes(variantBuffer.toArray(), dataRelease);
+                        adjustPhasedConsequenceTypes(variantBuffer.toArray(), proteinAnnotationBatch);
                         // Remove the two previous variants after adjustment
                         variantBuffer.poll();
                         variantBuffer.poll();
@@ -812,7 +827,7 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private void adjustPhasedConsequenceTypes(Object[] variantArray, int dataRelease) throws CellBaseException {
+    private void adjustPhasedConsequenceTypes(Object[] variantArray, ProteinAnnotationBatch proteinAnnotationBatch) {
         Variant variant0 = (Variant) variantArray[0];
         Variant variant1 = null;
         Variant variant2 = null;
@@ -822,7 +837,7 @@ public class VariantAnnotationCalculator {
         boolean variant2DisplayCTNeedsUpdate = false;
 
         for (ConsequenceType consequenceType1 : variant0.getAnnotation().getConsequenceTypes()) {
-            ProteinVariantAnnotation newProteinVariantAnnotation = null;
+            ProteinAnnotationBatch.Request proteinAnnotationRequest = null;
             // Check if this is a coding consequence type. Also this consequence type may have been already
             // updated if there are 3 consecutive phased SNVs affecting the same codon.
             if (isCoding(consequenceType1)
@@ -869,8 +884,7 @@ public class VariantAnnotationCalculator {
                         consequenceType3.setCdsPosition(cdsPosition);
                         consequenceType3.setCodon(codon);
                         consequenceType3.getProteinVariantAnnotation().setAlternate(alternateAA);
-                        newProteinVariantAnnotation = getProteinAnnotation(variant2, consequenceType3, dataRelease);
-                        consequenceType3.setProteinVariantAnnotation(newProteinVariantAnnotation);
+                        proteinAnnotationRequest = proteinAnnotationBatch.add(variant2, consequenceType3);
                         consequenceType3.setSequenceOntologyTerms(soTerms);
 
                         // Flag these transcripts as already updated for this variant
@@ -910,14 +924,17 @@ public class VariantAnnotationCalculator {
                     // Update consequenceType1 & 2
                     consequenceType1.setCodon(codon);
                     consequenceType1.getProteinVariantAnnotation().setAlternate(alternateAA);
-                    consequenceType1.setProteinVariantAnnotation(newProteinVariantAnnotation == null
-                            ? getProteinAnnotation(variant1, consequenceType1, dataRelease) : newProteinVariantAnnotation);
+                    if (proteinAnnotationRequest == null) {
+                        proteinAnnotationRequest = proteinAnnotationBatch.add(variant1, consequenceType1);
+                    } else {
+                        proteinAnnotationBatch.add(proteinAnnotationRequest, consequenceType1);
+                    }
                     consequenceType1.setSequenceOntologyTerms(soTerms);
                     consequenceType2.setCdnaPosition(cdnaPosition);
                     consequenceType2.setCdsPosition(cdsPosition);
                     consequenceType2.setCodon(codon);
                     consequenceType2.getProteinVariantAnnotation().setAlternate(alternateAA);
-                    consequenceType2.setProteinVariantAnnotation(consequenceType1.getProteinVariantAnnotation());
+                    proteinAnnotationBatch.add(proteinAnnotationRequest, consequenceType2);
                     consequenceType2.setSequenceOntologyTerms(soTerms);
 
                     // Flag these transcripts as already updated for this variant
@@ -1164,56 +1181,22 @@ public class VariantAnnotationCalculator {
         return mostSevereConsequencetype;
     }
 
-    private Set<String> getAnnotatorSet(QueryOptions queryOptions) {
-        Set<String> annotatorSet;
-        List<String> includeList = queryOptions.getAsStringList("include");
-        if (includeList.size() > 0) {
-            annotatorSet = new HashSet<>(includeList);
-        } else {
-            // 'expression' removed in CB 5.0
-            annotatorSet = new HashSet<>(Arrays.asList("variation", "traitAssociation", "conservation", "functionalScore",
-                    "consequenceType", "geneDisease", "drugInteraction", "geneConstraints", "mirnaTargets",
-                    "cancerGeneAssociation", "populationFrequencies", "repeats", "cytoband", "hgvs"));
-            List<String> excludeList = queryOptions.getAsStringList("exclude");
-            excludeList.forEach(annotatorSet::remove);
-        }
-        return annotatorSet;
-    }
-
-    private List<String> getIncludedGeneFields(Set<String> annotatorSet) {
-        List<String> includeGeneFields = new ArrayList<>(Arrays.asList("name", "id", "chromosome", "start", "end", "transcripts.id",
-                "transcripts.proteinId", "transcripts.chromosome", "transcripts.start", "transcripts.end", "transcripts.cdnaSequence",
-                "transcripts.proteinSequence", "transcripts.strand", "transcripts.cdsLength", "transcripts.flags", "transcripts.biotype",
-                "transcripts.genomicCodingStart", "transcripts.genomicCodingEnd", "transcripts.cdnaCodingStart",
-                "transcripts.cdnaCodingEnd", "transcripts.exons.start", "transcripts.exons.cdsStart", "transcripts.exons.end",
-                "transcripts.exons.cdsEnd", "transcripts.exons.sequence", "transcripts.exons.phase",
-                "transcripts.exons.exonNumber", "mirna", "transcripts.exons.genomicCodingStart", "transcripts.exons.genomicCodingEnd"));
-
-        if (annotatorSet.contains("expression")) {
-            includeGeneFields.add("annotation.expression");
-        }
-        if (annotatorSet.contains("geneDisease")) {
-            includeGeneFields.add("annotation.diseases");
-        }
-        if (annotatorSet.contains("drugInteraction")) {
-            includeGeneFields.add("annotation.drugs");
-        }
-        if (annotatorSet.contains("geneConstraints")) {
-            includeGeneFields.add("annotation.constraints");
-        }
-        if (annotatorSet.contains("mirnaTargets")) {
-            includeGeneFields.add("annotation.targets");
-        }
-        if (annotatorSet.contains("cancerGeneAssociation")) {
-            includeGeneFields.add("annotation.cancerAssociations");
+    public List<Gene> getAffectedGenes(List<Gene> batchGeneList, Variant variant, VariantAnnotationContext context)
+            throws CellBaseException {
+        if (geneManager.isGeneIndexEnabled()) {
+            List<Gene> geneList = new ArrayList<>();
+            for (GeneIntervalIndex geneIndex : getGeneIndexes(context)) {
+                for (Region region : context.variantToRegionList(variant)) {
+                    geneList.addAll(geneIndex.getOverlapping(region.getChromosome(), Math.max(1, region.getStart() - 5000),
+                            region.getEnd() + 5000));
+                }
+            }
+            return geneList;
         }
-        return includeGeneFields;
-    }
 
-    public List<Gene> getAffectedGenes(List<Gene> batchGeneList, Variant variant) {
         List<Gene> geneList = new ArrayList<>(batchGeneList.size());
         for (Gene gene : batchGeneList) {
-            for (Region region : variantToRegionList(variant)) {
+            for (Region region : context.variantToRegionList(variant)) {
                 if (region.getChromosome().equals(gene.getChromosome()) && gene.getStart() <= (region.getEnd() + 5000)
                         && gene.getEnd() >= Math.max(1, region.getStart() - 5000)) {
                     geneList.add(gene);
@@ -1223,13 +1206,6 @@ public class VariantAnnotationCalculator {
         return geneList;
     }
 
-//    private List<Gene> getGenesInRange(String chromosome, int start, int end, String includeFields) {
-//        QueryOptions queryOptions = new QueryOptions("include", includeFields);
-//
-//        return geneManager.getByRegion(new Region(chromosome, Math.max(1, start - 5000),
-//                        end + 5000), queryOptions).getResults();
-//    }
-
     private boolean nonSynonymous(ConsequenceType consequenceType, boolean useMitochondrialCode) {
         if (consequenceType.getCodon() == null) {
             return false;
@@ -1242,30 +1218,6 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private ProteinVariantAnnotation getProteinAnnotation(Variant variant, ConsequenceType consequenceType, int dataRelease)
-            throws CellBaseException {
-        ProteinVariantAnnotation proteinVariantAnnotation = null;
-        if (consequenceType.getProteinVariantAnnotation() != null) {
-            String transcriptId = consequenceType.getTranscriptId();
-            // transcript may contain version, e.g. ENST00000382011.9. sift/polyphen do NOT contain version, so remove version
-            if (transcriptId != null && transcriptId.contains(".")) {
-                transcriptId = transcriptId.split("\\.")[0];
-            }
-            CellBaseDataResult<ProteinVariantAnnotation> results = proteinManager.getVariantAnnotation(variant,
-                    transcriptId,
-                    consequenceType.getProteinVariantAnnotation().getPosition(),
-                    consequenceType.getProteinVariantAnnotation().getReference(),
-                    consequenceType.getProteinVariantAnnotation().getAlternate(), new QueryOptions(), dataRelease);
-
-            // Set proteinId
-            results.getResults().get(0).setProteinId(consequenceType.getProteinVariantAnnotation().getProteinId());
-            if (results.getNumResults() > 0) {
-                proteinVariantAnnotation = results.getResults().get(0);
-            }
-        }
-        return proteinVariantAnnotation;
-    }
-
     private ConsequenceTypeCalculator getConsequenceTypeCalculator(Variant variant) throws UnsupportedURLVariantFormat {
         switch (VariantAnnotationUtils.getVariantType(variant)) {
             case SNV:
@@ -1297,7 +1249,28 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private boolean[] getRegulatoryRegionOverlaps(Variant variant) throws QueryException, IllegalAccessException, CellBaseException {
+    private List<Region> variantToRegulatoryRegionList(Variant variant) {
+        // Same regions checked by getRegulatoryRegionOverlaps
+        if (VariantType.SNV.equals(variant.getType())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
+        } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart() - 1, variant.getEnd()));
+        } else if (!VariantType.BREAKEND.equals(variant.getType())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(), variant.getEnd()));
+        } else {
+            List<Region> regionList = new ArrayList<>(2);
+            regionList.add(new Region(variant.getChromosome(), Math.max(1, variant.getStart()), Math.max(1, variant.getStart())));
+            if (variant.getSv() != null && variant.getSv().getBreakend() != null
+                    && variant.getSv().getBreakend().getMate() != null) {
+                int matePosition = Math.max(1, variant.getSv().getBreakend().getMate().getPosition());
+                regionList.add(new Region(variant.getSv().getBreakend().getMate().getChromosome(), matePosition, matePosition));
+            }
+            return regionList;
+        }
+    }
+
+    private boolean[] getRegulatoryRegionOverlaps(Variant variant, RegulatoryRegionIndex regulatoryRegionIndex)
+            throws QueryException, IllegalAccessException, CellBaseException {
         // 0: overlaps any regulatory region type
         // 1: overlaps transcription factor binding site
         boolean[] overlapsRegulatoryRegion = {false, false};
@@ -1305,15 +1278,17 @@ public class VariantAnnotationCalculator {
         // Variant type checked in expected order of frequency of occurrence to minimize number of checks
         // Most queries will be SNVs - it's worth implementing an special case for them
         if (VariantType.SNV.equals(variant.getType())) {
-            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart());
+            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart(), regulatoryRegionIndex);
         } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
-            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart() - 1, variant.getEnd());
+            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart() - 1, variant.getEnd(),
+                    regulatoryRegionIndex);
             // Short deletions and symbolic variants except breakends
         } else if (!VariantType.BREAKEND.equals(variant.getType())) {
-            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart(), variant.getEnd());
+            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart(), variant.getEnd(), regulatoryRegionIndex);
             // Breakend "variants" only annotate features overlapping the exact positions
         } else  {
-            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant.getChromosome(), Math.max(1, variant.getStart()));
+            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant.getChromosome(), Math.max(1, variant.getStart()),
+                    regulatoryRegionIndex);
             // If already found one overlapping regulatory region there's no need to keep checking
             if (overlapsRegulatoryRegion[0]) {
                 return overlapsRegulatoryRegion;
@@ -1322,7 +1297,7 @@ public class VariantAnnotationCalculator {
                 if (variant.getSv() != null && variant.getSv().getBreakend() != null
                         && variant.getSv().getBreakend().getMate() != null) {
                     return getRegulatoryRegionOverlaps(variant.getSv().getBreakend().getMate().getChromosome(),
-                            Math.max(1, variant.getSv().getBreakend().getMate().getPosition()));
+                            Math.max(1, variant.getSv().getBreakend().getMate().getPosition()), regulatoryRegionIndex);
                 } else {
                     return overlapsRegulatoryRegion;
                 }
@@ -1330,8 +1305,12 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private boolean[] getRegulatoryRegionOverlaps(String chromosome, Integer position)
+    private boolean[] getRegulatoryRegionOverlaps(String chromosome, Integer position, RegulatoryRegionIndex regulatoryRegionIndex)
             throws QueryException, IllegalAccessException, CellBaseException {
+        if (regulatoryRegionIndex != null && regulatoryRegionIndex.covers(chromosome, position, position)) {
+            return regulatoryRegionIndex.getOverlaps(chromosome, position);
+        }
+
         // 0: overlaps any regulatory region type
         // 1: overlaps transcription factor binding site
         boolean[] overlapsRegulatoryRegion = {false, false};
@@ -1339,6 +1318,7 @@ public class VariantAnnotationCalculator {
         RegulationQuery query = new RegulationQuery();
         query.setIncludes(Collections.singletonList(REGULATORY_REGION_FEATURE_TYPE_ATTRIBUTE));
         query.setRegions(Collections.singletonList(new Region(chromosome, position)));
+        query.setDataRelease(dataRelease);
         CellBaseDataResult<RegulatoryFeature> cellBaseDataResult = regulationManager.search(query);
 
         if (cellBaseDataResult.getNumResults() > 0) {
@@ -1357,8 +1337,13 @@ public class VariantAnnotationCalculator {
         return overlapsRegulatoryRegion;
     }
 
-    private boolean[] getRegulatoryRegionOverlaps(String chromosome, Integer start, Integer end)
+    private boolean[] getRegulatoryRegionOverlaps(String chromosome, Integer start, Integer end,
+                                                  RegulatoryRegionIndex regulatoryRegionIndex)
             throws QueryException, IllegalAccessException, CellBaseException {
+        if (regulatoryRegionIndex != null && regulatoryRegionIndex.covers(chromosome, start, end)) {
+            return regulatoryRegionIndex.getOverlaps(chromosome, start, end);
+        }
+
         // 0: overlaps any regulatory region type
         // 1: overlaps transcription factor binding site
         boolean[] overlapsRegulatoryRegion = {false, false};
@@ -1369,6 +1354,7 @@ public class VariantAnnotationCalculator {
         query.setLimit(1);
         query.setRegions(Collections.singletonList(new Region(chromosome, start, end)));
         query.setFeatureTypes(Collections.singletonList(TF_BINDING_SITE));
+        query.setDataRelease(dataRelease);
 
         CellBaseDataResult<RegulatoryFeature> cellBaseDataResult = regulationManager.search(query);
 
@@ -1403,11 +1389,12 @@ public class VariantAnnotationCalculator {
     }
 
     private List<ConsequenceType> getConsequenceTypeList(Variant variant, List<Gene> geneList, boolean regulatoryAnnotation,
-                                                         QueryOptions queryOptions, int dataRelease)
+                                                         RegulatoryRegionIndex regulatoryRegionIndex, QueryOptions queryOptions,
+                                                         ProteinAnnotationBatch proteinAnnotationBatch)
             throws QueryException, IllegalAccessException, CellBaseException {
         boolean[] overlapsRegulatoryRegion = {false, false};
         if (regulatoryAnnotation) {
-            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant);
+            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant, regulatoryRegionIndex);
         }
         ConsequenceTypeCalculator consequenceTypeCalculator = getConsequenceTypeCalculator(variant);
         List<ConsequenceType> consequenceTypeList = consequenceTypeCalculator.run(variant, geneList,
@@ -1416,128 +1403,13 @@ public class VariantAnnotationCalculator {
                 || Variant.inferType(variant.getReference(), variant.getAlternate()) == VariantType.SNV) {
             for (ConsequenceType consequenceType : consequenceTypeList) {
                 if (nonSynonymous(consequenceType, variant.getChromosome().equals("MT"))) {
-                    consequenceType.setProteinVariantAnnotation(getProteinAnnotation(variant, consequenceType, dataRelease));
+                    proteinAnnotationBatch.add(variant, consequenceType);
                 }
             }
         }
         return consequenceTypeList;
     }
 
-    private List<Region> variantListToRegionList(List<Variant> variantList) {
-//        return variantList.stream().map((variant) -> variantToRegion(variant)).collect(Collectors.toList());
-
-        // In great majority of cases returned region list size will equal variant list; this will happen except when
-        // there's a breakend within the variantList
-        List<Region> regionList = new ArrayList<>(variantList.size());
-
-        for (Variant variant : variantList) {
-            regionList.addAll(variantToRegionList(variant));
-        }
-
-        return regionList;
-    }
-
-    private List<Region> variantToRegionList(Variant variant) {
-        // Variant type checked in expected order of frequency of occurrence to minimize number of checks
-        // SNV
-        if (VariantType.SNV.equals(variant.getType())) {
-            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(), variant.getEnd()));
-            // Short insertion
-        } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
-            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart() - 1,
-                    variant.getEnd()));
-            // CNV
-        } else if (VariantType.CNV.equals(variant.getType())) {
-            if (imprecise) {
-                return Collections.singletonList(new Region(variant.getChromosome(),
-                        variant.getStart() - cnvExtraPadding, variant.getEnd() + cnvExtraPadding));
-            } else {
-                return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(),
-                        variant.getEnd()));
-            }
-            // BREAKEND
-        } else if (VariantType.BREAKEND.equals(variant.getType())) {
-            List<Region> regionList = new ArrayList<>(2);
-            regionList.add(startBreakpointToRegion(variant));
-            Variant breakendMate = VariantBuilder.getMateBreakend(variant);
-            if (breakendMate != null) {
-                regionList.add(startBreakpointToRegion(breakendMate));
-            }
-            return regionList;
-            // Short deletions and symbolic variants (no BREAKENDS expected althought not checked either)
-        } else {
-            if (imprecise && variant.getSv() != null) {
-                return Collections.singletonList(new Region(variant.getChromosome(),
-                        variant.getSv().getCiStartLeft() != null
-                                ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
-                        variant.getSv().getCiEndRight() != null ? variant.getSv().getCiEndRight() + svExtraPadding
-                                : variant.getEnd()));
-            } else {
-                return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(),
-                        variant.getEnd()));
-            }
-        }
-    }
-
-    private List<Region> breakpointsToRegionList(Variant variant) {
-        List<Region> regionList = new ArrayList<>();
-
-        switch (variant.getType()) {
-            case SNV:
-                regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
-                break;
-            case CNV:
-            case COPY_NUMBER_GAIN:
-            case COPY_NUMBER:
-                if (imprecise) {
-                    regionList.add(new Region(variant.getChromosome(), variant.getStart() - cnvExtraPadding,
-                            variant.getStart() + cnvExtraPadding));
-                    regionList.add(new Region(variant.getChromosome(), variant.getEnd() - cnvExtraPadding,
-                            variant.getEnd() + cnvExtraPadding));
-                } else {
-                    regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
-                    regionList.add(new Region(variant.getChromosome(), variant.getEnd(), variant.getEnd()));
-                }
-                break;
-            case BREAKEND:
-                regionList.add(startBreakpointToRegion(variant));
-                Variant breakendMate = VariantBuilder.getMateBreakend(variant);
-                if (breakendMate != null) {
-                    regionList.add(startBreakpointToRegion(breakendMate));
-                }
-                break;
-            default:
-                if (imprecise && variant.getSv() != null) {
-                    regionList.add(new Region(variant.getChromosome(), variant.getSv().getCiStartLeft() != null
-                            ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
-                            variant.getSv().getCiStartRight() != null
-                                    ? variant.getSv().getCiStartRight() + svExtraPadding : variant.getStart()));
-                    regionList.add(new Region(variant.getChromosome(),
-                            variant.getSv().getCiEndLeft() != null
-                                    ? variant.getSv().getCiEndLeft() - svExtraPadding : variant.getEnd(),
-                            variant.getSv().getCiEndRight() != null
-                                    ? variant.getSv().getCiEndRight() + svExtraPadding : variant.getEnd()));
-                } else {
-                    regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
-                    regionList.add(new Region(variant.getChromosome(), variant.getEnd(), variant.getEnd()));
-                }
-                break;
-        }
-
-        return regionList;
-    }
-
-    private Region startBreakpointToRegion(Variant variant) {
-        if (imprecise && variant.getSv() != null) {
-            return new Region(variant.getChromosome(), variant.getSv().getCiStartLeft() != null
-                    ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
-                    variant.getSv().getCiStartRight() != null
-                            ? variant.getSv().getCiStartRight() + svExtraPadding : variant.getStart());
-        } else {
-            return new Region(variant.getChromosome(), variant.getStart(), variant.getStart());
-        }
-    }
-
     /*
      * Future classes for Async annotations
      */
@@ -1562,15 +1434,9 @@ public class VariantAnnotationCalculator {
             return variationCellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Variant>>> variationFuture,
+        public void processResults(List<CellBaseDataResult<Variant>> variationCellBaseDataResults,
                                    List<VariantAnnotation> variantAnnotationList,
-                                   Set<String> annotatorSet) throws InterruptedException, ExecutionException {
-
-            while (!variationFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Variant>> variationCellBaseDataResults = variationFuture.get();
+                                   Set<String> annotatorSet) {
             if (variationCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     Variant preferredVariant = getPreferredVariant(variationCellBaseDataResults.get(i));
@@ -1598,11 +1464,14 @@ public class VariantAnnotationCalculator {
     class FutureConservationAnnotator implements Callable<List<CellBaseDataResult<Score>>> {
         private List<Variant> variantList;
         private QueryOptions queryOptions;
+        private VariantAnnotationContext context;
         private int dataRelease;
 
-        FutureConservationAnnotator(List<Variant> variantList, QueryOptions queryOptions, int dataRelease) {
+        FutureConservationAnnotator(List<Variant> variantList, QueryOptions queryOptions, VariantAnnotationContext context,
+                                    int dataRelease) {
             this.variantList = variantList;
             this.queryOptions = queryOptions;
+            this.context = context;
             this.dataRelease = dataRelease;
         }
 
@@ -1613,30 +1482,39 @@ public class VariantAnnotationCalculator {
             List<CellBaseDataResult<Score>> cellBaseDataResultList = new ArrayList<>(variantList.size());
 
             logger.debug("Query conservation");
-            // Want to return only one CellBaseDataResult object per Variant
-            for (Variant variant : variantList) {
-
+            // Regions of the whole batch are fetched with a single query, breakends have two regions
+            List<Region> regionList = new ArrayList<>(variantList.size());
+            int[] numRegions = new int[variantList.size()];
+            for (int i = 0; i < variantList.size(); i++) {
                 // Truncate region size of SVs to avoid server collapse
-                List<Region> regionList
-                        = variantToRegionList(variant)
-                        .stream()
-                        .map(region -> region.size() > 50
-                                ? (new Region(region.getChromosome(), region.getStart(), region.getStart() + 49))
-                                : region).collect(Collectors.toList());
-
-                List<CellBaseDataResult<Score>> tmpCellBaseDataResultList = genomeManager.getAllScoresByRegionList(regionList,
-                        queryOptions, dataRelease);
+                for (Region region : context.variantToRegionList(variantList.get(i))) {
+                    regionList.add(region.size() > 50
+                            ? new Region(region.getChromosome(), region.getStart(), region.getStart() + 49)
+                            : region);
+                    numRegions[i]++;
+                }
+            }
+            List<CellBaseDataResult<Score>> tmpCellBaseDataResultList = genomeManager.getAllScoresByRegionList(regionList,
+                    queryOptions, dataRelease);
 
-                // There may be more than one CellBaseDataResult per variant for breakends
+            // Want to return only one CellBaseDataResult object per Variant
+            int regionIndex = 0;
+            for (int i = 0; i < variantList.size(); i++) {
                 // Reuse one of the CellBaseDataResult objects returned by the adaptor
-                CellBaseDataResult<Score> newCellBaseDataResult = tmpCellBaseDataResultList.get(0);
-                if (tmpCellBaseDataResultList.size() > 1 && tmpCellBaseDataResultList.get(1).getResults() != null) {
-                    // Reuse one of the CellBaseDataResult objects - new result is the set formed by the scores corresponding
-                    // to the two breakpoints
-                    newCellBaseDataResult.getResults().addAll(tmpCellBaseDataResultList.get(1).getResults());
-                    newCellBaseDataResult.setNumResults(newCellBaseDataResult.getResults().size());
-                    newCellBaseDataResult.setNumMatches(newCellBaseDataResult.getResults().size());
+                CellBaseDataResult<Score> newCellBaseDataResult = tmpCellBaseDataResultList.get(regionIndex);
+                for (int j = 1; j < numRegions[i]; j++) {
+                    // New result is the set formed by the scores corresponding to the two breakpoints
+                    List<Score> breakpointScores = tmpCellBaseDataResultList.get(regionIndex + j).getResults();
+                    if (breakpointScores != null) {
+                        if (newCellBaseDataResult.getResults() == null) {
+                            newCellBaseDataResult.setResults(new ArrayList<>());
+                        }
+                        newCellBaseDataResult.getResults().addAll(breakpointScores);
+                        newCellBaseDataResult.setNumResults(newCellBaseDataResult.getResults().size());
+                        newCellBaseDataResult.setNumMatches(newCellBaseDataResult.getResults().size());
+                    }
                 }
+                regionIndex += numRegions[i];
                 cellBaseDataResultList.add(newCellBaseDataResult);
             }
 
@@ -1645,14 +1523,8 @@ public class VariantAnnotationCalculator {
             return cellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Score>>> conservationFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-            while (!conservationFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Score>> conservationCellBaseDataResults = conservationFuture.get();
+        public void processResults(List<CellBaseDataResult<Score>> conservationCellBaseDataResults,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (conservationCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     variantAnnotationList.get(i).setConservation(conservationCellBaseDataResults.get(i).getResults());
@@ -1686,15 +1558,8 @@ public class VariantAnnotationCalculator {
             return variantFunctionalScoreCellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-
-            while (!variantFunctionalScoreFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Score>> variantFunctionalScoreCellBaseDataResults = variantFunctionalScoreFuture.get();
+        public void processResults(List<CellBaseDataResult<Score>> variantFunctionalScoreCellBaseDataResults,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (variantFunctionalScoreCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     if (variantFunctionalScoreCellBaseDataResults.get(i).getNumResults() > 0) {
@@ -1706,80 +1571,15 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    class FutureClinicalAnnotator implements Callable<List<CellBaseDataResult<Variant>>> {
-        //        private static final String CLINVAR = "clinvar";
-//        private static final String COSMIC = "cosmic";
-//        private static final String CLINICAL_SIGNIFICANCE_IN_SOURCE_FILE = "ClinicalSignificance_in_source_file";
-//        private static final String REVIEW_STATUS_IN_SOURCE_FILE = "ReviewStatus_in_source_file";
-//        private static final String MUTATION_SOMATIC_STATUS_IN_SOURCE_FILE = "mutationSomaticStatus_in_source_file";
-//        private static final String SYMBOL = "symbol";
-        private List<Variant> variantList;
-        private List<Gene> batchGeneList;
-        private QueryOptions queryOptions;
-
-        FutureClinicalAnnotator(List<Variant> variantList, List<Gene> batchGeneList, QueryOptions queryOptions) {
-            this.variantList = variantList;
-            this.batchGeneList = batchGeneList;
-            this.queryOptions = queryOptions;
-        }
-
-        @Override
-        public List<CellBaseDataResult<Variant>> call() throws Exception {
-            long startTime = System.currentTimeMillis();
-            List<CellBaseDataResult<Variant>> clinicalCellBaseDataResultList = clinicalManager.getByVariant(variantList, batchGeneList,
-                    queryOptions, dataRelease);
-            logger.debug("Clinical query performance is {}ms for {} variants", System.currentTimeMillis() - startTime, variantList.size());
-            return clinicalCellBaseDataResultList;
-        }
-
-        public void processResults(Future<List<CellBaseDataResult<Variant>>> clinicalFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-            while (!clinicalFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Variant>> clinicalCellBaseDataResults = clinicalFuture.get();
-            if (clinicalCellBaseDataResults != null) {
-                for (int i = 0; i < variantAnnotationList.size(); i++) {
-                    CellBaseDataResult<Variant> clinicalCellBaseDataResult = clinicalCellBaseDataResults.get(i);
-                    if (clinicalCellBaseDataResult.getResults() != null && clinicalCellBaseDataResult.getResults().size() > 0) {
-                        variantAnnotationList.get(i).setTraitAssociation(getAllTraitAssociations(clinicalCellBaseDataResult));
-                        // Add GWAS info
-                        List<GwasAssociation> gwas = clinicalCellBaseDataResult.getResults().get(0).getAnnotation().getGwas();
-                        if (CollectionUtils.isNotEmpty(gwas)) {
-                            variantAnnotationList.get(i).setGwas(gwas);
-                        }
-                    }
-                }
-            }
-        }
-
-
-        private List<EvidenceEntry> getAllTraitAssociations(CellBaseDataResult<Variant> clinicalQueryResult) {
-            List<EvidenceEntry> traitAssociations = new ArrayList<>();
-            for (Variant variant: clinicalQueryResult.getResults()) {
-                if (enable.contains("hgmd")) {
-                    traitAssociations.addAll(variant.getAnnotation().getTraitAssociation());
-                } else {
-                    for (EvidenceEntry entry : variant.getAnnotation().getTraitAssociation()) {
-                        if (entry.getSource() == null || !EtlCommons.HGMD_DATA.equals(entry.getSource().getName())) {
-                            traitAssociations.add(entry);
-                        }
-                    }
-                }
-            }
-            return traitAssociations;
-        }
-    }
-
     class FutureRepeatsAnnotator implements Callable<List<CellBaseDataResult<Repeat>>> {
         private List<Variant> variantList;
         private QueryOptions queryOptions;
+        private VariantAnnotationContext context;
         private int dataRelease;
 
-        FutureRepeatsAnnotator(List<Variant> variantList, int dataRelease) {
+        FutureRepeatsAnnotator(List<Variant> variantList, VariantAnnotationContext context, int dataRelease) {
             this.variantList = variantList;
+            this.context = context;
             this.dataRelease = dataRelease;
         }
 
@@ -1792,7 +1592,7 @@ public class VariantAnnotationCalculator {
             // Want to return only one CellBaseDataResult object per Variant
             for (Variant variant : variantList) {
                 List<RepeatsQuery> queries = new ArrayList<>();
-                for (Region region :  breakpointsToRegionList(variant)) {
+                for (Region region :  context.breakpointsToRegionList(variant)) {
                     RepeatsQuery query = new RepeatsQuery();
                     query.setRegions(Collections.singletonList(region));
                     queries.add(query);
@@ -1822,15 +1622,8 @@ public class VariantAnnotationCalculator {
 
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Repeat>>> repeatsFuture,
-                                   List<VariantAnnotation> variantAnnotationResults)
-                throws InterruptedException, ExecutionException {
-//            try {
-            while (!repeatsFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Repeat>> cellBaseDataResultList = repeatsFuture.get();
+        public void processResults(List<CellBaseDataResult<Repeat>> cellBaseDataResultList,
+                                   List<VariantAnnotation> variantAnnotationResults) {
             if (cellBaseDataResultList != null) {
                 for (int i = 0; i < variantAnnotationResults.size(); i++) {
                     CellBaseDataResult<Repeat> cellBaseDataResult = cellBaseDataResultList.get(i);
@@ -1846,11 +1639,14 @@ public class VariantAnnotationCalculator {
     class FutureCytobandAnnotator implements Callable<List<CellBaseDataResult<Cytoband>>> {
         private List<Variant> variantList;
         private QueryOptions queryOptions;
+        private VariantAnnotationContext context;
         private int dataRelease;
 
-        FutureCytobandAnnotator(List<Variant> variantList, QueryOptions queryOptions, int dataRelease) {
+        FutureCytobandAnnotator(List<Variant> variantList, QueryOptions queryOptions, VariantAnnotationContext context,
+                                int dataRelease) {
             this.variantList = variantList;
             this.queryOptions = queryOptions;
+            this.context = context;
             this.dataRelease = dataRelease;
         }
 
@@ -1862,8 +1658,8 @@ public class VariantAnnotationCalculator {
             logger.debug("Query cytoband");
             // Want to return only one CellBaseDataResult object per Variant
             for (Variant variant : variantList) {
-                List<CellBaseDataResult<Cytoband>> tmpCellBaseDataResultList = genomeManager.getCytobands(breakpointsToRegionList(variant),
-                        dataRelease);
+                List<CellBaseDataResult<Cytoband>> tmpCellBaseDataResultList = genomeManager.getCytobands(
+                        context.breakpointsToRegionList(variant), dataRelease);
 
                 // There may be more than one CellBaseDataResult per variant for non SNV variants since there will be
                 // two breakpoints
@@ -1886,14 +1682,8 @@ public class VariantAnnotationCalculator {
             return cellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Cytoband>>> cytobandFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-            while (!cytobandFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Cytoband>> cellBaseDataResultList = cytobandFuture.get();
+        public void processResults(List<CellBaseDataResult<Cytoband>> cellBaseDataResultList,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (cellBaseDataResultList != null) {
                 if (cellBaseDataResultList.isEmpty()) {
                     StringBuilder stringbuilder = new StringBuilder(variantList.get(0).toString());
@@ -1929,26 +1719,16 @@ public class VariantAnnotationCalculator {
         public List<CellBaseDataResult<SpliceScore>> call() throws Exception {
             long startTime = System.currentTimeMillis();
 
-            List<CellBaseDataResult<SpliceScore>> cellBaseDataResultList = new ArrayList<>(variantList.size());
-
             logger.debug("Query splice");
             // Want to return only one CellBaseDataResult object per Variant
-            for (Variant variant : variantList) {
-                cellBaseDataResultList.add(variantManager.getSpliceScoreVariant(variant, dataRelease));
-            }
+            List<CellBaseDataResult<SpliceScore>> cellBaseDataResultList = variantManager.getSpliceScoreVariant(variantList, dataRelease);
             logger.debug("Splice score query performance is {}ms for {} variants", System.currentTimeMillis() - startTime,
                     variantList.size());
             return cellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<SpliceScore>>> spliceFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-            while (!spliceFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<SpliceScore>> spliceCellBaseDataResults = spliceFuture.get();
+        public void processResults(List<CellBaseDataResult<SpliceScore>> spliceCellBaseDataResults,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (CollectionUtils.isNotEmpty(spliceCellBaseDataResults)) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     CellBaseDataResult<SpliceScore> spliceScoreResult = spliceCellBaseDataResults.get(i);
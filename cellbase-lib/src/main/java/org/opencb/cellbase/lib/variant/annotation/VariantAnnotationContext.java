@@ -0,0 +1,361 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.cellbase.core.ParamConstants;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Options of one annotation request, parsed from the query options. Immutable, so that one
+ * {@link VariantAnnotationCalculator} can be shared by concurrent requests, each of them carrying its own context.
+ */
+public class VariantAnnotationContext {
+
+    private final Set<String> annotatorSet;
+    // Fields to be returned by overlapping genes
+    private final List<String> includeGeneFields;
+    private final boolean normalize;
+    private final boolean decompose;
+    private final boolean phased;
+    private final boolean imprecise;
+    private final int svExtraPadding;
+    private final int cnvExtraPadding;
+    private final boolean checkAminoAcidChange;
+    private final String consequenceTypeSource;
+    private final String enable;
+    // Everything but the variant the annotation of a short variant depends on, see getMemoKey()
+    private final String memoKey;
+
+    private static Logger logger = LoggerFactory.getLogger(VariantAnnotationContext.class);
+
+    public VariantAnnotationContext(QueryOptions queryOptions) {
+        // We process include and exclude query options to know which annotators to use.
+        // Include parameter has preference over exclude.
+        annotatorSet = Collections.unmodifiableSet(getAnnotatorSet(queryOptions));
+        logger.debug("Annotators to use: {}", annotatorSet.toString());
+
+        includeGeneFields = Collections.unmodifiableList(getIncludedGeneFields(annotatorSet));
+
+        // Default behaviour no normalization
+        normalize = (queryOptions.get("normalize") != null && (Boolean) queryOptions.get("normalize"));
+        logger.debug("normalize = {}", normalize);
+
+        // Default behaviour decompose
+        decompose = (queryOptions.get("skipDecompose") == null || !queryOptions.getBoolean("skipDecompose"));
+        logger.debug("decompose = {}", decompose);
+
+        // New parameter "ignorePhase" present overrides presence of old "phased" parameter
+        if (queryOptions.get("ignorePhase") != null) {
+            phased = !queryOptions.getBoolean("ignorePhase");
+            // Old parameter "phased" present but new one ("ignorePhase") absent - use old one. Probably someone who has not
+            // yet moved to using the new one.
+        } else if (queryOptions.get("phased") != null) {
+            phased = queryOptions.getBoolean("phased");
+            // Default behaviour - calculate phased annotation
+        } else {
+            phased = true;
+        }
+        logger.debug("phased = {}", phased);
+
+        // Default behaviour - enable imprecise searches
+        imprecise = (queryOptions.get("imprecise") == null || queryOptions.getBoolean("imprecise"));
+        logger.debug("imprecise = {}", imprecise);
+
+        // Default behaviour - no extra padding for structural variants
+        svExtraPadding = (queryOptions.get("svExtraPadding") != null ? (Integer) queryOptions.get("svExtraPadding") : 0);
+        logger.debug("svExtraPadding = {}", svExtraPadding);
+
+        // Default behaviour - no extra padding for CNV
+        cnvExtraPadding = (queryOptions.get("cnvExtraPadding") != null ? (Integer) queryOptions.get("cnvExtraPadding") : 0);
+        logger.debug("cnvExtraPadding = {}", cnvExtraPadding);
+
+        checkAminoAcidChange = (queryOptions.get("checkAminoAcidChange") != null && (Boolean) queryOptions.get("checkAminoAcidChange"));
+        logger.debug("checkAminoAcidChange = {}", checkAminoAcidChange);
+
+        consequenceTypeSource = (queryOptions.get("consequenceTypeSource") != null
+                ? (String) queryOptions.get("consequenceTypeSource") : "ensembl,refseq");
+        logger.debug("consequenceTypeSource = {}", consequenceTypeSource);
+
+        enable = (queryOptions.get("enable") != null
+                ? (String) queryOptions.get("enable") : "");
+        logger.debug("enable = {}", enable);
+
+        memoKey = String.join(",", new TreeSet<>(annotatorSet)) + "|" + phased + "|" + imprecise + "|" + svExtraPadding + "|"
+                + cnvExtraPadding + "|" + checkAminoAcidChange + "|" + consequenceTypeSource + "|" + enable;
+    }
+
+    private static Set<String> getAnnotatorSet(QueryOptions queryOptions) {
+        Set<String> annotatorSet;
+        List<String> includeList = queryOptions.getAsStringList("include");
+        if (includeList.size() > 0) {
+            annotatorSet = new HashSet<>(includeList);
+        } else {
+            // 'expression' removed in CB 5.0
+            annotatorSet = new HashSet<>(Arrays.asList("variation", "traitAssociation", "conservation", "functionalScore",
+                    "consequenceType", "geneDisease", "drugInteraction", "geneConstraints", "mirnaTargets",
+                    "cancerGeneAssociation", "populationFrequencies", "repeats", "cytoband", "hgvs"));
+            List<String> excludeList = queryOptions.getAsStringList("exclude");
+            excludeList.forEach(annotatorSet::remove);
+        }
+        return annotatorSet;
+    }
+
+    static List<String> getIncludedGeneFields(Set<String> annotatorSet) {
+        List<String> includeGeneFields = new ArrayList<>(Arrays.asList("name", "id", "chromosome", "start", "end", "transcripts.id",
+                "transcripts.proteinId", "transcripts.chromosome", "transcripts.start", "transcripts.end", "transcripts.cdnaSequence",
+                "transcripts.proteinSequence", "transcripts.strand", "transcripts.cdsLength", "transcripts.flags", "transcripts.biotype",
+                "transcripts.genomicCodingStart", "transcripts.genomicCodingEnd", "transcripts.cdnaCodingStart",
+                "transcripts.cdnaCodingEnd", "transcripts.exons.start", "transcripts.exons.cdsStart", "transcripts.exons.end",
+                "transcripts.exons.cdsEnd", "transcripts.exons.sequence", "transcripts.exons.phase",
+                "transcripts.exons.exonNumber", "mirna", "transcripts.exons.genomicCodingStart", "transcripts.exons.genomicCodingEnd"));
+
+        if (annotatorSet.contains("expression")) {
+            includeGeneFields.add("annotation.expression");
+        }
+        if (annotatorSet.contains("geneDisease")) {
+            includeGeneFields.add("annotation.diseases");
+        }
+        if (annotatorSet.contains("drugInteraction")) {
+            includeGeneFields.add("annotation.drugs");
+        }
+        if (annotatorSet.contains("geneConstraints")) {
+            includeGeneFields.add("annotation.constraints");
+        }
+        if (annotatorSet.contains("mirnaTargets")) {
+            includeGeneFields.add("annotation.targets");
+        }
+        if (annotatorSet.contains("cancerGeneAssociation")) {
+            includeGeneFields.add("annotation.cancerAssociations");
+        }
+        return includeGeneFields;
+    }
+
+    /**
+     * Gene sources selected by the consequence type source option.
+     * @return "ensembl" and/or "refseq"
+     */
+    public List<String> getGeneSources() {
+        if (StringUtils.isNotEmpty(consequenceTypeSource)) {
+            // sources can be "ensembl" and/or "refseq". query is validated before execution, will fail if invalid value
+            List<String> sources = new ArrayList<>(2);
+            for (String source : consequenceTypeSource.split(",")) {
+                if (source.equalsIgnoreCase(ParamConstants.QueryParams.ENSEMBL.key())) {
+                    sources.add(ParamConstants.QueryParams.ENSEMBL.key());
+                }
+                if (source.equalsIgnoreCase(ParamConstants.QueryParams.REFSEQ.key())) {
+                    sources.add(ParamConstants.QueryParams.REFSEQ.key());
+                }
+            }
+            return sources;
+        } else {
+            // if no source specified, default to ensembl
+            return Collections.singletonList(ParamConstants.QueryParams.ENSEMBL.key());
+        }
+    }
+
+    List<Region> variantListToRegionList(List<Variant> variantList) {
+        // In great majority of cases returned region list size will equal variant list; this will happen except when
+        // there's a breakend within the variantList
+        List<Region> regionList = new ArrayList<>(variantList.size());
+
+        for (Variant variant : variantList) {
+            regionList.addAll(variantToRegionList(variant));
+        }
+
+        return regionList;
+    }
+
+    List<Region> variantToRegionList(Variant variant) {
+        // Variant type checked in expected order of frequency of occurrence to minimize number of checks
+        // SNV
+        if (VariantType.SNV.equals(variant.getType())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(), variant.getEnd()));
+            // Short insertion
+        } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart() - 1,
+                    variant.getEnd()));
+            // CNV
+        } else if (VariantType.CNV.equals(variant.getType())) {
+            if (imprecise) {
+                return Collections.singletonList(new Region(variant.getChromosome(),
+                        variant.getStart() - cnvExtraPadding, variant.getEnd() + cnvExtraPadding));
+            } else {
+                return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(),
+                        variant.getEnd()));
+            }
+            // BREAKEND
+        } else if (VariantType.BREAKEND.equals(variant.getType())) {
+            List<Region> regionList = new ArrayList<>(2);
+            regionList.add(startBreakpointToRegion(variant));
+            Variant breakendMate = VariantBuilder.getMateBreakend(variant);
+            if (breakendMate != null) {
+                regionList.add(startBreakpointToRegion(breakendMate));
+            }
+            return regionList;
+            // Short deletions and symbolic variants (no BREAKENDS expected althought not checked either)
+        } else {
+            if (imprecise && variant.getSv() != null) {
+                return Collections.singletonList(new Region(variant.getChromosome(),
+                        variant.getSv().getCiStartLeft() != null
+                                ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
+                        variant.getSv().getCiEndRight() != null ? variant.getSv().getCiEndRight() + svExtraPadding
+                                : variant.getEnd()));
+            } else {
+                return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(),
+                        variant.getEnd()));
+            }
+        }
+    }
+
+    List<Region> breakpointsToRegionList(Variant variant) {
+        List<Region> regionList = new ArrayList<>();
+
+        switch (variant.getType()) {
+            case SNV:
+                regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
+                break;
+            case CNV:
+            case COPY_NUMBER_GAIN:
+            case COPY_NUMBER:
+                if (imprecise) {
+                    regionList.add(new Region(variant.getChromosome(), variant.getStart() - cnvExtraPadding,
+                            variant.getStart() + cnvExtraPadding));
+                    regionList.add(new Region(variant.getChromosome(), variant.getEnd() - cnvExtraPadding,
+                            variant.getEnd() + cnvExtraPadding));
+                } else {
+                    regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
+                    regionList.add(new Region(variant.getChromosome(), variant.getEnd(), variant.getEnd()));
+                }
+                break;
+            case BREAKEND:
+                regionList.add(startBreakpointToRegion(variant));
+                Variant breakendMate = VariantBuilder.getMateBreakend(variant);
+                if (breakendMate != null) {
+                    regionList.add(startBreakpointToRegion(breakendMate));
+                }
+                break;
+            default:
+                if (imprecise && variant.getSv() != null) {
+                    regionList.add(new Region(variant.getChromosome(), variant.getSv().getCiStartLeft() != null
+                            ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
+                            variant.getSv().getCiStartRight() != null
+                                    ? variant.getSv().getCiStartRight() + svExtraPadding : variant.getStart()));
+                    regionList.add(new Region(variant.getChromosome(),
+                            variant.getSv().getCiEndLeft() != null
+                                    ? variant.getSv().getCiEndLeft() - svExtraPadding : variant.getEnd(),
+                            variant.getSv().getCiEndRight() != null
+                                    ? variant.getSv().getCiEndRight() + svExtraPadding : variant.getEnd()));
+                } else {
+                    regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
+                    regionList.add(new Region(variant.getChromosome(), variant.getEnd(), variant.getEnd()));
+                }
+                break;
+        }
+
+        return regionList;
+    }
+
+    private Region startBreakpointToRegion(Variant variant) {
+        if (imprecise && variant.getSv() != null) {
+            return new Region(variant.getChromosome(), variant.getSv().getCiStartLeft() != null
+                    ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
+                    variant.getSv().getCiStartRight() != null
+                            ? variant.getSv().getCiStartRight() + svExtraPadding : variant.getStart());
+        } else {
+            return new Region(variant.getChromosome(), variant.getStart(), variant.getStart());
+        }
+    }
+
+    public Set<String> getAnnotatorSet() {
+        return annotatorSet;
+    }
+
+    public List<String> getIncludeGeneFields() {
+        return includeGeneFields;
+    }
+
+    public boolean isNormalize() {
+        return normalize;
+    }
+
+    public boolean isDecompose() {
+        return decompose;
+    }
+
+    public boolean isPhased() {
+        return phased;
+    }
+
+    public boolean isImprecise() {
+        return imprecise;
+    }
+
+    public int getSvExtraPadding() {
+        return svExtraPadding;
+    }
+
+    public int getCnvExtraPadding() {
+        return cnvExtraPadding;
+    }
+
+    public boolean isCheckAminoAcidChange() {
+        return checkAminoAcidChange;
+    }
+
+    public String getConsequenceTypeSource() {
+        return consequenceTypeSource;
+    }
+
+    public String getEnable() {
+        return enable;
+    }
+
+    /**
+     * Annotators and options of this request, used to key memoized annotations: requests with the same memo key
+     * annotate a variant the same way.
+     * @return memo key, annotators sorted by name
+     */
+    public String getMemoKey() {
+        return memoKey;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("VariantAnnotationContext{");
+        sb.append("annotatorSet=").append(annotatorSet);
+        sb.append(", normalize=").append(normalize);
+        sb.append(", decompose=").append(decompose);
+        sb.append(", phased=").append(phased);
+        sb.append(", imprecise=").append(imprecise);
+        sb.append(", svExtraPadding=").append(svExtraPadding);
+        sb.append(", cnvExtraPadding=").append(cnvExtraPadding);
+        sb.append(", checkAminoAcidChange=").append(checkAminoAcidChange);
+        sb.append(", consequenceTypeSource='").append(consequenceTypeSource).append('\'');
+        sb.append(", enable='").append(enable).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -26,6 +26,7 @@ import org.opencb.biodata.tools.variant.VariantNormalizer;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.lib.managers.GenomeManager;
 import org.opencb.cellbase.lib.variant.annotation.UnsupportedURLVariantFormat;
+import org.opencb.cellbase.lib.variant.SplicedTranscript;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -473,26 +474,8 @@ public class HgvsCalculator {
     }
 
     private static int getCdnaPosition(Transcript transcript, int genomicPosition) {
-
-        int i = 0;
-        int cdnaPosition = 0;
-        List<Exon> exonList = transcript.getExons();
-
-        // Sum the part that corresponds to the exon where genomicPosition is located
-        if ("+".equals(transcript.getStrand())) {
-            while (i < exonList.size() && genomicPosition > exonList.get(i).getEnd()) {
-                cdnaPosition += (exonList.get(i).getEnd() - exonList.get(i).getStart() + 1);
-                i++;
-            }
-            return cdnaPosition + genomicPosition - exonList.get(i).getStart() + 1;
-        } else {
-            while (i < exonList.size() && genomicPosition < exonList.get(i).getStart()) {
-                cdnaPosition += (exonList.get(i).getEnd() - exonList.get(i).getStart() + 1);
-                i++;
-            }
-            return cdnaPosition + exonList.get(i).getEnd() - genomicPosition + 1;
-        }
-
+        // Exon offsets are precomputed once per transcript
+        return SplicedTranscript.of(transcript).getCdnaPosition(genomicPosition);
     }
 
     /**
@@ -21,6 +21,7 @@ import org.opencb.biodata.models.core.Exon;
 import org.opencb.biodata.models.core.Transcript;
 import org.opencb.biodata.models.core.Xref;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.cellbase.lib.variant.SplicedTranscript;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 
 import java.util.List;
@@ -227,12 +228,7 @@ public class TranscriptUtils {
     }
 
     public boolean isExonic(int genomicPosition) {
-        for (Exon exon : transcript.getExons()) {
-            if (genomicPosition >= exon.getStart() && genomicPosition <= exon.getEnd()) {
-                return true;
-            }
-        }
-        return false;
+        return SplicedTranscript.of(transcript).isExonic(genomicPosition);
     }
 
     public boolean isExonic(int start, int end) {
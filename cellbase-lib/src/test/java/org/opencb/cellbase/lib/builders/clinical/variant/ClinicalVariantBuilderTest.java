@@ -805,4 +805,24 @@ public class ClinicalVariantBuilderTest {
         System.out.println(v.toStringSimple());
     }
 
+    @Test
+    public void mergeVariantAnnotationsTest() {
+        VariantAnnotation cosmic = new VariantAnnotation();
+        cosmic.setTraitAssociation(new ArrayList<>(Collections.singletonList(new EvidenceEntry())));
+        cosmic.getTraitAssociation().get(0).setId("COSM1");
+        VariantAnnotation clinvar = new VariantAnnotation();
+        clinvar.setTraitAssociation(new ArrayList<>(Collections.singletonList(new EvidenceEntry())));
+        clinvar.getTraitAssociation().get(0).setId("RCV1");
+        VariantAnnotation gwas = new VariantAnnotation();
+        gwas.setTraitAssociation(new ArrayList<>());
+        gwas.setXrefs(Collections.singletonList(new Xref("rs1", "dbSNP")));
+
+        VariantAnnotation merged = ClinicalVariantBuilder.mergeVariantAnnotations(Arrays.asList(cosmic, clinvar, gwas));
+        assertEquals(Arrays.asList("COSM1", "RCV1"),
+                merged.getTraitAssociation().stream().map(EvidenceEntry::getId).collect(Collectors.toList()));
+        assertEquals(1, merged.getXrefs().size());
+        assertNull(merged.getDrugs());
+        assertNull(merged.getGwas());
+    }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UniProtFeatureIndexTest {
+
+    private static Document position(int position) {
+        return new Document("position", position);
+    }
+
+    private static Document variant(String id, int position, String... variation) {
+        return new Document("id", id).append("type", "sequence variant")
+                .append("location", new Document("position", position(position)))
+                .append("variation", Arrays.asList(variation));
+    }
+
+    private static Document range(String id, int begin, int end) {
+        return new Document("id", id).append("type", "domain")
+                .append("location", new Document("begin", position(begin)).append("end", position(end)));
+    }
+
+    private static Document entry(List<Document> features) {
+        return new Document("accession", Arrays.asList("P04637", "Q15086"))
+                .append("keyword", Collections.singletonList(new Document("value", "Apoptosis")))
+                .append("feature", features);
+    }
+
+    @Test
+    public void testGetFeatures() {
+        Document variantR = variant("VAR_1", 175, "H", "R");
+        Document variantL = variant("VAR_2", 175, "L");
+        Document domain = range("DOM_1", 94, 292);
+        Document longRegion = range("REG_1", 1, 393);
+        Document shortRegion = range("REG_2", 170, 180);
+        Document otherRegion = range("REG_3", 300, 320);
+        UniProtFeatureIndex index = new UniProtFeatureIndex(entry(Arrays.asList(variantR, longRegion, otherRegion, variantL, domain,
+                shortRegion)));
+
+        assertEquals("P04637", index.getAccession());
+        assertEquals(1, index.getKeywords().size());
+
+        assertEquals(Arrays.asList(variantR, longRegion, domain, shortRegion), index.getFeatures(175, "H"));
+        assertEquals(Arrays.asList(longRegion, variantL, domain, shortRegion), index.getFeatures(175, "L"));
+        assertEquals(Arrays.asList(longRegion, domain, shortRegion), index.getFeatures(175, "W"));
+        assertEquals(Arrays.asList(longRegion, domain, shortRegion), index.getFeatures(180, "H"));
+        assertEquals(Arrays.asList(longRegion, otherRegion), index.getFeatures(300, "H"));
+        assertEquals(Collections.singletonList(longRegion), index.getFeatures(393, "H"));
+        assertTrue(index.getFeatures(394, "H").isEmpty());
+    }
+
+    @Test
+    public void testMissingLocations() {
+        Document noLocation = new Document("id", "F_1");
+        Document noEnd = new Document("id", "F_2").append("location", new Document("begin", position(10)).append("end", new Document()));
+        UniProtFeatureIndex index = new UniProtFeatureIndex(entry(Arrays.asList(noLocation, noEnd)));
+        assertTrue(index.getFeatures(10, "A").isEmpty());
+
+        index = new UniProtFeatureIndex(new Document());
+        assertNull(index.getAccession());
+        assertTrue(index.getKeywords().isEmpty());
+        assertTrue(index.getFeatures(10, "A").isEmpty());
+    }
+}
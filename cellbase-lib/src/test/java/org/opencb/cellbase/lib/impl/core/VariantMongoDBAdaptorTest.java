@@ -91,6 +91,26 @@ public class VariantMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         System.out.println("Num. of results: " + functionalScoreVariant.getNumResults());
     }
 
+    @Test
+    public void getPopulationFrequencyByVariantKeepsInputOrder() throws Exception {
+        List<Variant> variants = Arrays.asList(new Variant("1:62165740:T:G"), new Variant("1:62165739:A:T"),
+                new Variant("1:62165739:A:C"), new Variant("22:1:A:T"), new Variant("1:62165740:T:G"));
+        QueryOptions queryOptions = new QueryOptions("include", "id,annotation.populationFrequencies");
+        List<CellBaseDataResult<Variant>> variantCellBaseDataResultList
+                = variantManager.getPopulationFrequencyByVariant(variants, queryOptions, dataRelease);
+
+        assertEquals(variants.size(), variantCellBaseDataResultList.size());
+        for (int i : new int[]{0, 1, 4}) {
+            assertEquals(1, variantCellBaseDataResultList.get(i).getNumResults());
+            Variant variant = variantCellBaseDataResultList.get(i).first();
+            assertEquals(variants.get(i).getStart(), variant.getStart());
+            assertEquals(variants.get(i).getAlternate(), variant.getAlternate());
+            assertNotNull(variant.getAnnotation().getPopulationFrequencies());
+        }
+        assertEquals(0, variantCellBaseDataResultList.get(2).getNumResults());
+        assertEquals(0, variantCellBaseDataResultList.get(3).getNumResults());
+    }
+
     @Test
     public void getPhasedPopulationFrequencyByVariant() throws Exception {
         VariantBuilder variantBuilder = new VariantBuilder("1",
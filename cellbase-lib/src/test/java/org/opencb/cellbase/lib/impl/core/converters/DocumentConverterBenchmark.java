@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.cellbase.lib.impl.core.converters;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
+import org.opencb.commons.utils.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON text round trip used before with {@link DocumentConverter} for genes and variants, on the same
+ * test documents as DocumentConverterTest. Documents are parsed once, so only the conversion to data models is measured.
+ * It is not run by the test suite, run its main method once the test classes are compiled, e.g. from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentConverterBenchmark {
+
+    private static final int MAX_DOCUMENTS = 1000;
+
+    private List<Document> geneDocuments;
+    private List<Document> variantDocuments;
+
+    private GenericDocumentComplexConverter<Gene> geneJsonConverter;
+    private DocumentConverter<Gene> geneConverter;
+    private ObjectMapper variantObjectMapper;
+    private VariantConverter variantConverter;
+
+    @Setup
+    public void setup() throws IOException, URISyntaxException {
+        geneDocuments = readDocuments("/gene/gene-test.json.gz");
+        variantDocuments = readDocuments("/variation_chr22.full.test.json.gz");
+
+        geneJsonConverter = new GenericDocumentComplexConverter<>(Gene.class);
+        geneConverter = new DocumentConverter<>(Gene.class);
+        variantObjectMapper = new ObjectMapper();
+        variantObjectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        variantObjectMapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
+        variantObjectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        variantConverter = new VariantConverter();
+    }
+
+    @Benchmark
+    public void geneJsonRoundTrip(Blackhole blackhole) {
+        for (Document document : geneDocuments) {
+            blackhole.consume(geneJsonConverter.convertToDataModelType(document));
+        }
+    }
+
+    @Benchmark
+    public void geneDocumentConverter(Blackhole blackhole) {
+        for (Document document : geneDocuments) {
+            blackhole.consume(geneConverter.convertToDataModelType(document));
+        }
+    }
+
+    @Benchmark
+    public void variantJsonRoundTrip(Blackhole blackhole) throws IOException {
+        for (Document document : variantDocuments) {
+            blackhole.consume(variantObjectMapper.readValue(variantObjectMapper.writeValueAsString(document), Variant.class));
+        }
+    }
+
+    @Benchmark
+    public void variantDocumentConverter(Blackhole blackhole) {
+        for (Document document : variantDocuments) {
+            blackhole.consume(variantConverter.convertToDataModelType(document));
+        }
+    }
+
+    private List<Document> readDocuments(String resource) throws IOException, URISyntaxException {
+        Path path = Paths.get(getClass().getResource(resource).toURI());
+        List<Document> documents = new ArrayList<>();
+        try (BufferedReader bufferedReader = FileUtils.newBufferedReader(path)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null && documents.size() < MAX_DOCUMENTS) {
+                documents.add(Document.parse(line));
+            }
+        }
+        return documents;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DocumentConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core.converters;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.BufferedReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentConverterTest {
+
+    @Test
+    public void testGene() throws Exception {
+        Path path = Paths.get(getClass().getResource("/gene/gene-test.json.gz").toURI());
+        GenericDocumentComplexConverter<Gene> jsonConverter = new GenericDocumentComplexConverter<>(Gene.class);
+        DocumentConverter<Gene> converter = new DocumentConverter<>(Gene.class);
+
+        int count = 0;
+        try (BufferedReader bufferedReader = FileUtils.newBufferedReader(path)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                Gene expected = jsonConverter.convertToDataModelType(Document.parse(line));
+                assertEquals(expected, converter.convertToDataModelType(Document.parse(line)));
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    public void testVariant() throws Exception {
+        Path path = Paths.get(getClass().getResource("/variation_chr22.full.test.json.gz").toURI());
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
+        objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        VariantConverter converter = new VariantConverter();
+
+        int count = 0;
+        try (BufferedReader bufferedReader = FileUtils.newBufferedReader(path)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null && count < 1000) {
+                // JSON text round trip used before
+                Variant expected = objectMapper.readValue(objectMapper.writeValueAsString(Document.parse(line)), Variant.class);
+                assertEquals(expected.toJson(), converter.convertToDataModelType(Document.parse(line)).toJson());
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+}
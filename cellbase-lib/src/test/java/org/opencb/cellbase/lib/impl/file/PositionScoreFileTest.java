@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PositionScoreFileTest {
+
+    @Test
+    public void testGetValue() throws Exception {
+        Path path = Files.createTempFile("scores", ".bin");
+        try {
+            try (PositionScoreFileWriter writer = new PositionScoreFileWriter(path, Arrays.asList("cadd_raw:A", "cadd_scaled:A"))) {
+                for (int position = 10001; position <= 10100; position++) {
+                    writer.add("1", position, new short[]{(short) position, (short) -position});
+                }
+                // Gap within the chromosome
+                writer.add("1", 20000, new short[]{1, PositionScoreFile.MISSING});
+                writer.add("X", 5, new short[]{2, 3});
+                // Chromosomes may be added in several rounds
+                writer.add("1", 500, new short[]{4, 5});
+            }
+
+            PositionScoreFile scoreFile = PositionScoreFile.open(path.toString(), 1);
+            assertSame(scoreFile, PositionScoreFile.open(path.toString(), 1));
+            assertEquals(Arrays.asList("cadd_raw:A", "cadd_scaled:A"), scoreFile.getColumns());
+            assertEquals(1, scoreFile.getColumnIndex(PositionScoreFile.getColumnName("cadd_scaled", "a")));
+            assertEquals(-1, scoreFile.getColumnIndex("cadd_raw:N"));
+
+            assertEquals(10001, scoreFile.getValue("1", 10001, 0));
+            assertEquals(-10050, scoreFile.getValue("1", 10050, 1));
+            assertEquals(10100, scoreFile.getValue("1", 10100, 0));
+            assertEquals(1, scoreFile.getValue("1", 20000, 0));
+            assertEquals(PositionScoreFile.MISSING, scoreFile.getValue("1", 20000, 1));
+            assertEquals(5, scoreFile.getValue("1", 500, 1));
+            assertEquals(3, scoreFile.getValue("X", 5, 1));
+
+            assertTrue(scoreFile.contains("1", 10001));
+            assertFalse(scoreFile.contains("1", 10000));
+            assertFalse(scoreFile.contains("1", 10101));
+            assertFalse(scoreFile.contains("1", 499));
+            assertFalse(scoreFile.contains("2", 10001));
+            assertEquals(PositionScoreFile.MISSING, scoreFile.getValue("1", 15000, 0));
+        } finally {
+            PositionScoreFile.close(path);
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        Path directory = Files.createTempDirectory("scores");
+        Path path1 = directory.resolve("revel_1.bin");
+        String file = directory.resolve("revel_{dataRelease}.bin").toString();
+        try {
+            write(path1, 100, (short) 7);
+
+            // Releases with no file have none
+            PositionScoreFile scoreFile = PositionScoreFile.open(file, 1);
+            assertEquals(7, scoreFile.getValue("1", 100, 0));
+            assertNull(PositionScoreFile.open(file, 2));
+
+            // Files rebuilt at the same path are opened again once closed
+            write(path1, 200, (short) 8);
+            PositionScoreFile.close(path1);
+            PositionScoreFile rebuiltFile = PositionScoreFile.open(file, 1);
+            assertNotSame(scoreFile, rebuiltFile);
+            assertEquals(8, rebuiltFile.getValue("1", 200, 0));
+            assertSame(rebuiltFile, PositionScoreFile.open(file, 1));
+        } finally {
+            PositionScoreFile.close(path1);
+            Files.deleteIfExists(path1);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void write(Path path, int lastPosition, short value) throws IOException {
+        try (PositionScoreFileWriter writer = new PositionScoreFileWriter(path, Arrays.asList("revel:A"))) {
+            for (int position = 100; position <= lastPosition; position++) {
+                writer.add("1", position, new short[]{value});
+            }
+        }
+    }
+
+    @Test
+    public void testUnsortedPositions() throws Exception {
+        Path path = Files.createTempFile("scores", ".bin");
+        try (PositionScoreFileWriter writer = new PositionScoreFileWriter(path, Arrays.asList("revel:A"))) {
+            writer.add("1", 100, new short[]{1});
+            assertThrows(IOException.class, () -> writer.add("1", 99, new short[]{1}));
+            assertThrows(IOException.class, () -> writer.add("1", 101, new short[]{1, 2}));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
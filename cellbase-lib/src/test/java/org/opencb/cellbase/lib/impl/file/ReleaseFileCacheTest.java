@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.cellbase.lib.impl.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReleaseFileCacheTest {
+
+    @Test
+    public void testRevalidation() throws Exception {
+        Path directory = Files.createTempDirectory("release_files");
+        Path path = directory.resolve("file_1.txt");
+        String file = directory.resolve("file_{dataRelease}.txt").toString();
+        ReleaseFileCache.FileOpener<String> opener = p -> new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+        ReleaseFileCache<String> revalidatedFiles = new ReleaseFileCache<>(opener, 0);
+        ReleaseFileCache<String> cachedFiles = new ReleaseFileCache<>(opener);
+        try {
+            // Missing files are remembered until they are revalidated or closed
+            assertNull(revalidatedFiles.open(file, 1));
+            assertNull(cachedFiles.open(file, 1));
+            Files.write(path, "A".getBytes(StandardCharsets.UTF_8));
+            assertEquals("A", revalidatedFiles.open(file, 1));
+            assertNull(cachedFiles.open(file, 1));
+            cachedFiles.close(path);
+            assertEquals("A", cachedFiles.open(file, 1));
+
+            // Unchanged files are not opened again, changed files are once revalidated
+            String openFile = revalidatedFiles.open(file, 1);
+            assertSame(openFile, revalidatedFiles.open(file, 1));
+            Files.write(path, "BB".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+            assertEquals("BB", revalidatedFiles.open(file, 1));
+            assertEquals("A", cachedFiles.open(file, 1));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TwoBitSequenceFileTest {
+
+    @Test
+    public void testGetSequence() throws Exception {
+        String sequence1 = "NNNNACGTACGTTGCAnnRYACGTAC";
+        StringBuilder sequence2 = new StringBuilder();
+        Random random = new Random(1);
+        for (int i = 0; i < 10001; i++) {
+            sequence2.append(TwoBitSequenceFile.NUCLEOTIDES[random.nextInt(4)]);
+        }
+
+        Path path = Files.createTempFile("genome_sequence", ".2bit");
+        try {
+            try (TwoBitSequenceFileWriter writer = new TwoBitSequenceFileWriter(path)) {
+                writer.add("1", "chromosome", "GRCh38", sequence1);
+                writer.add("MT", "chromosome", "GRCh38", sequence2);
+            }
+
+            TwoBitSequenceFile sequenceFile = TwoBitSequenceFile.open(path.toString(), 1);
+            assertSame(sequenceFile, TwoBitSequenceFile.open(path.toString(), 1));
+            assertTrue(sequenceFile.contains("1"));
+            assertFalse(sequenceFile.contains("2"));
+            assertEquals(sequence1.length(), sequenceFile.getLength("1"));
+            assertEquals(-1, sequenceFile.getLength("2"));
+            assertEquals("chromosome", sequenceFile.getSequenceType("1"));
+            assertEquals("GRCh38", sequenceFile.getAssembly("MT"));
+
+            assertEquals(sequence1, sequenceFile.getSequence("1", 1, sequence1.length()));
+            assertEquals("NACG", sequenceFile.getSequence("1", 4, 7));
+            assertEquals("AnnRYA", sequenceFile.getSequence("1", 16, 21));
+            assertEquals("C", sequenceFile.getSequence("1", 26, 26));
+            // End is clipped to the sequence length
+            assertEquals("AC", sequenceFile.getSequence("1", 25, 100));
+            assertEquals("", sequenceFile.getSequence("1", 30, 40));
+            assertNull(sequenceFile.getSequence("2", 1, 10));
+
+            assertEquals(sequence2.toString(), sequenceFile.getSequence("MT", 1, sequence2.length()));
+            assertEquals(sequence2.substring(4998, 5103), sequenceFile.getSequence("MT", 4999, 5103));
+        } finally {
+            TwoBitSequenceFile.close(path);
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        Path directory = Files.createTempDirectory("genome_sequence");
+        Path path1 = directory.resolve("genome_sequence_1.2bit");
+        Path path2 = directory.resolve("genome_sequence_2.2bit");
+        String file = directory.resolve("genome_sequence_{dataRelease}.2bit").toString();
+        try {
+            write(path1, "ACGT");
+            write(path2, "TTTTTTTT");
+
+            // Each release reads its own file, releases with no file have none
+            TwoBitSequenceFile sequenceFile = TwoBitSequenceFile.open(file, 1);
+            assertEquals("ACGT", sequenceFile.getSequence("1", 1, 10));
+            assertEquals("TTTTTTTT", TwoBitSequenceFile.open(file, 2).getSequence("1", 1, 10));
+            assertNull(TwoBitSequenceFile.open(file, 3));
+            assertNotSame(sequenceFile, TwoBitSequenceFile.open(path1.toString(), 2));
+
+            // Files rebuilt at the same path are opened again once closed
+            write(path1, "CCCCCC");
+            TwoBitSequenceFile.close(path1);
+            TwoBitSequenceFile rebuiltFile = TwoBitSequenceFile.open(file, 1);
+            assertNotSame(sequenceFile, rebuiltFile);
+            assertEquals("CCCCCC", rebuiltFile.getSequence("1", 1, 10));
+            assertSame(rebuiltFile, TwoBitSequenceFile.open(file, 1));
+        } finally {
+            TwoBitSequenceFile.close(path1);
+            TwoBitSequenceFile.close(path2);
+            Files.deleteIfExists(path1);
+            Files.deleteIfExists(path2);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void write(Path path, String sequence) throws Exception {
+        try (TwoBitSequenceFileWriter writer = new TwoBitSequenceFileWriter(path)) {
+            writer.add("1", "chromosome", "GRCh38", sequence);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkIdsTest {
+
+    @Test
+    public void testGetChunkIds() {
+        assertEquals(Arrays.asList("1_0_5k", "1_1_5k"), ChunkIds.getChunkIds("1", 4000, 6000, ChunkIds.getChunkSizes("gene")));
+        assertEquals(Arrays.asList("X_5_2k", "X_0_20k"), ChunkIds.getChunkIds("X", 10000, 10000, ChunkIds.getChunkSizes("variation")));
+        assertNull(ChunkIds.getChunkSizes("protein"));
+    }
+
+    @Test
+    public void testJsonPrivateFields() {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode gene = mapper.createObjectNode().put("chromosome", "2").put("start", 1999).put("end", 2001);
+        ChunkIds.jsonPrivateFields("gene").accept(gene);
+        assertEquals("[\"2_0_5k\"]", gene.get(ChunkIds.CHUNK_IDS_FIELD).toString());
+
+        ObjectNode sequence = mapper.createObjectNode().put("sequenceName", "MT").put("start", 1).put("end", 2000);
+        ChunkIds.jsonPrivateFields("genome_sequence").accept(sequence);
+        assertEquals("[\"MT_0_2k\",\"MT_1_2k\"]", sequence.get(ChunkIds.CHUNK_IDS_FIELD).toString());
+
+        ObjectNode score = mapper.createObjectNode().put("chromosome", "3").put("position", 4500);
+        ChunkIds.jsonPrivateFields("splice_score").accept(score);
+        assertEquals("[\"3_2_2k\"]", score.get(ChunkIds.CHUNK_IDS_FIELD).toString());
+
+        Consumer<ObjectNode> none = ChunkIds.jsonPrivateFields("protein");
+        assertNull(none);
+    }
+}
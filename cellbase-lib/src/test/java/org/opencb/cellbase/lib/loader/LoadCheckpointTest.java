@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadCheckpointTest {
+
+    @Test
+    public void testAcknowledgeOutOfOrder() {
+        List<Long> saved = new ArrayList<>();
+        List<Long> savedVirtualOffsets = new ArrayList<>();
+        LoadCheckpoint checkpoint = new LoadCheckpoint(1000, 5 << 16, 200, (offset, virtualOffset) -> {
+            saved.add(offset);
+            savedVirtualOffsets.add(virtualOffset);
+        });
+
+        List<String> batch1 = Arrays.asList("a", "b");
+        List<String> batch2 = Arrays.asList("a", "b");
+        List<String> batch3 = Arrays.asList("a", "b");
+        checkpoint.register(batch1, 1100, (5 << 16) + 100);
+        checkpoint.register(batch2, 1200, (5 << 16) + 200);
+        checkpoint.register(batch3, 1300, (900 << 16) + 10);
+
+        // Batches are identified by reference, equal batches are different batches
+        checkpoint.acknowledge(batch2);
+        checkpoint.acknowledge(batch3);
+        assertEquals(1000, checkpoint.getOffset());
+        assertEquals(5 << 16, checkpoint.getVirtualOffset());
+        assertTrue(saved.isEmpty());
+
+        checkpoint.acknowledge(batch1);
+        assertEquals(1300, checkpoint.getOffset());
+        assertEquals(Arrays.asList(1300L), saved);
+        assertEquals(Arrays.asList((900L << 16) + 10), savedVirtualOffsets);
+    }
+
+    @Test
+    public void testFailedBatch() {
+        List<Long> saved = new ArrayList<>();
+        LoadCheckpoint checkpoint = new LoadCheckpoint(0, 0, 1000, (offset, virtualOffset) -> saved.add(offset));
+
+        List<String> batch1 = new ArrayList<>();
+        List<String> batch2 = new ArrayList<>();
+        List<String> batch3 = new ArrayList<>();
+        checkpoint.register(batch1, 100, 0);
+        checkpoint.register(batch2, 200, 0);
+        checkpoint.register(batch3, 300, 0);
+
+        // Batch 2 fails and is never acknowledged
+        checkpoint.acknowledge(batch1);
+        checkpoint.acknowledge(batch3);
+        assertEquals(100, checkpoint.getOffset());
+        assertTrue(saved.isEmpty());
+
+        checkpoint.save();
+        checkpoint.save();
+        assertEquals(Arrays.asList(100L), saved);
+    }
+}
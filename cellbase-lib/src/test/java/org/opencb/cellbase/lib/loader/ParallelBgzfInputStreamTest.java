@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencb.cellbase.core.serializer.CellBaseJsonFileSerializer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBgzfInputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRead() throws IOException {
+        List<String> lines = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            String line = "{\"id\":\"1:" + i + ":A:T\",\"chromosome\":\"1\",\"start\":" + i + "}";
+            lines.add(line);
+            content.append(line).append('\n');
+        }
+        Path bgzf = tempDir.resolve("variation.json.gz");
+        writeBgzf(content.toString().getBytes(StandardCharsets.UTF_8), bgzf);
+        assertTrue(ParallelBgzfInputStream.isBgzf(bgzf));
+
+        // BGZF files are valid gzip files
+        assertEquals(lines, readLines(new GZIPInputStream(Files.newInputStream(bgzf))));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(lines, readLines(new ParallelBgzfInputStream(bgzf, executorService, 8)));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualOffset() throws IOException {
+        List<String> lines = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            String line = "{\"id\":\"1:" + i + ":A:T\",\"chromosome\":\"1\",\"start\":" + i + "}";
+            lines.add(line);
+            content.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        Path bgzf = tempDir.resolve("variation.json.gz");
+        writeBgzf(content.toString().getBytes(StandardCharsets.UTF_8), bgzf);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            // Virtual offsets of the lines following line 0, a line in the middle of the file, and the last line
+            List<Long> virtualOffsets = new ArrayList<>();
+            try (ParallelBgzfInputStream inputStream = new ParallelBgzfInputStream(bgzf, executorService, 8)) {
+                for (int i = 0; i < lines.size(); i++) {
+                    assertEquals(lines.get(i), inputStream.readLine());
+                    if (i == 0 || i == 12345 || i == lines.size() - 1) {
+                        virtualOffsets.add(inputStream.getVirtualOffset());
+                    }
+                }
+                assertNull(inputStream.readLine());
+            }
+
+            try (ParallelBgzfInputStream inputStream = new ParallelBgzfInputStream(bgzf, executorService, 8, virtualOffsets.get(0))) {
+                assertEquals(lines.get(1), inputStream.readLine());
+            }
+            try (ParallelBgzfInputStream inputStream = new ParallelBgzfInputStream(bgzf, executorService, 8, virtualOffsets.get(1))) {
+                for (int i = 12346; i < lines.size(); i++) {
+                    assertEquals(lines.get(i), inputStream.readLine());
+                }
+                assertNull(inputStream.readLine());
+            }
+            try (ParallelBgzfInputStream inputStream = new ParallelBgzfInputStream(bgzf, executorService, 8, virtualOffsets.get(2))) {
+                assertNull(inputStream.readLine());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testIsBgzf() throws IOException {
+        Path gzip = tempDir.resolve("gene.json.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            outputStream.write("{\"id\":\"ENSG00000139618\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(ParallelBgzfInputStream.isBgzf(gzip));
+    }
+
+    @Test
+    public void testSerializerOutput() throws IOException {
+        CellBaseJsonFileSerializer serializer = new CellBaseJsonFileSerializer(tempDir, "repeats");
+        for (int i = 0; i < 1000; i++) {
+            serializer.serialize(Collections.singletonMap("id", "repeat_" + i));
+        }
+        serializer.close();
+
+        // Build outputs are block-gzipped so the loader decompresses them in parallel
+        Path path = tempDir.resolve("repeats.json.gz");
+        assertTrue(ParallelBgzfInputStream.isBgzf(path));
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            List<String> lines = readLines(new ParallelBgzfInputStream(path, executorService, 4));
+            assertEquals(1000, lines.size());
+            assertEquals("{\"id\":\"repeat_999\"}", lines.get(999));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static List<String> readLines(InputStream inputStream) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // Blocks of up to 64 KB followed by the empty end-of-file block, as written by bgzip
+    private static void writeBgzf(byte[] content, Path path) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path))) {
+            for (int offset = 0; offset < content.length; offset += 0xff00) {
+                writeBlock(outputStream, content, offset, Math.min(0xff00, content.length - offset));
+            }
+            writeBlock(outputStream, content, 0, 0);
+        }
+    }
+
+    private static void writeBlock(OutputStream outputStream, byte[] content, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content, offset, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(content, offset, length);
+        int blockSize = 18 + compressedLength + 8;
+        DataOutputStream header = new DataOutputStream(outputStream);
+        header.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+        header.writeShort(Short.reverseBytes((short) (blockSize - 1)));
+        header.write(compressed, 0, compressedLength);
+        header.writeInt(Integer.reverseBytes((int) crc32.getValue()));
+        header.writeInt(Integer.reverseBytes(length));
+    }
+}
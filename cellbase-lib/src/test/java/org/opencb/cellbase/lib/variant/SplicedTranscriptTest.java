@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Transcript;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplicedTranscriptTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Transcript createTranscript(String strand, String exons) throws IOException {
+        return MAPPER.readValue("{\"id\":\"T1\",\"strand\":\"" + strand + "\",\"exons\":[" + exons + "]}", Transcript.class);
+    }
+
+    @Test
+    public void testPositiveStrand() throws IOException {
+        Transcript transcript = createTranscript("+", "{\"start\":100,\"end\":104,\"sequence\":\"AAAAA\"},"
+                + "{\"start\":200,\"end\":202,\"sequence\":\"CCC\"},{\"start\":300,\"end\":303,\"sequence\":\"GGGG\"}");
+        SplicedTranscript splicedTranscript = SplicedTranscript.of(transcript);
+
+        assertSame(splicedTranscript, SplicedTranscript.of(transcript));
+        assertEquals("AAAAACCCGGGG", splicedTranscript.getSequence());
+        assertEquals(3, splicedTranscript.getCdnaPosition(102));
+        assertEquals(7, splicedTranscript.getCdnaPosition(201));
+        assertEquals(12, splicedTranscript.getCdnaPosition(303));
+        // Intronic positions are relative to the next exon
+        assertEquals(-44, splicedTranscript.getCdnaPosition(150));
+        assertTrue(splicedTranscript.isExonic(100));
+        assertFalse(splicedTranscript.isExonic(150));
+        assertFalse(splicedTranscript.isExonic(400));
+    }
+
+    @Test
+    public void testNegativeStrand() throws IOException {
+        Transcript transcript = createTranscript("-", "{\"start\":300,\"end\":303,\"sequence\":\"GGGG\"},"
+                + "{\"start\":200,\"end\":202,\"sequence\":\"CCC\"},{\"start\":100,\"end\":104,\"sequence\":\"AAAAA\"}");
+        SplicedTranscript splicedTranscript = SplicedTranscript.of(transcript);
+
+        assertEquals("AAAAACCCGGGG", splicedTranscript.getSequence());
+        assertEquals(1, splicedTranscript.getCdnaPosition(303));
+        assertEquals(4, splicedTranscript.getCdnaPosition(300));
+        assertEquals(5, splicedTranscript.getCdnaPosition(202));
+        assertEquals(12, splicedTranscript.getCdnaPosition(100));
+        assertTrue(splicedTranscript.isExonic(201));
+        assertFalse(splicedTranscript.isExonic(250));
+        assertFalse(splicedTranscript.isExonic(50));
+    }
+}
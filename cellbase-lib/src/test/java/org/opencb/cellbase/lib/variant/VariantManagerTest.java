@@ -17,20 +17,25 @@
 package org.opencb.cellbase.lib.variant;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
 import org.opencb.cellbase.lib.managers.VariantManager;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
+import org.opencb.commons.datastore.core.QueryOptions;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -126,4 +131,36 @@ public class VariantManagerTest extends GenericMongoDBAdaptorTest {
         List<CellBaseDataResult<String>> results = variantManager.getHgvsByVariant("22:38318124:-:CTTTTG", dataRelease);
         assertEquals(5, results.get(0).getResults().size());
     }
+
+    @Test
+    public void testStreamAnnotation() throws Exception {
+        // Annotations are written as newline-delimited JSON, as the REST server does when streaming
+        List<String> lines = new ArrayList<>();
+        variantManager.streamAnnotationByVariant(new QueryOptions(), "19:45411941:T:C,,1:6635210:G:-,", false, false, false,
+                null, true, 0, 0, false, "ensembl", null, dataRelease, 1, batch -> {
+                    for (CellBaseDataResult<VariantAnnotation> result : batch) {
+                        for (VariantAnnotation variantAnnotation : result.getResults()) {
+                            try {
+                                lines.add(jsonObjectMapper.writeValueAsString(variantAnnotation));
+                            } catch (JsonProcessingException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }
+                });
+
+        // Empty items are skipped
+        assertEquals(2, lines.size());
+        assertEquals("19", jsonObjectMapper.readTree(lines.get(0)).get("chromosome").asText());
+        assertEquals(45411941, jsonObjectMapper.readTree(lines.get(0)).get("start").asInt());
+        assertEquals("1", jsonObjectMapper.readTree(lines.get(1)).get("chromosome").asText());
+        assertEquals(6635210, jsonObjectMapper.readTree(lines.get(1)).get("start").asInt());
+
+        // Same annotations as the non-streamed response
+        List<CellBaseDataResult<VariantAnnotation>> results = variantManager.getAnnotationByVariant(new QueryOptions(),
+                "19:45411941:T:C,1:6635210:G:-", false, false, false, null, true, 0, 0, false, "ensembl", null, dataRelease);
+        assertEquals(2, results.size());
+        assertEquals(jsonObjectMapper.writeValueAsString(results.get(0).first()), lines.get(0));
+        assertEquals(jsonObjectMapper.writeValueAsString(results.get(1).first()), lines.get(1));
+    }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.config.AnnotationProperties;
+import org.opencb.cellbase.core.exception.CellBaseException;
+import org.opencb.cellbase.core.models.DataRelease;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnnotationMemoCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLru() {
+        LruAnnotationMemoCache memoCache = new LruAnnotationMemoCache(2);
+        assertNull(memoCache.get("1:1000:A:T"));
+
+        VariantAnnotation variantAnnotation = createAnnotation("1", 1000, "A", "T");
+        memoCache.put("1:1000:A:T", variantAnnotation);
+        VariantAnnotation cached = memoCache.get("1:1000:A:T");
+        assertEquals(variantAnnotation, cached);
+
+        // Hits are copies, changes are not seen by the cache
+        cached.getConsequenceTypes().clear();
+        assertEquals(variantAnnotation, memoCache.get("1:1000:A:T"));
+        assertEquals(2, memoCache.getHits());
+        assertEquals(1, memoCache.getMisses());
+        assertEquals(2.0 / 3, memoCache.getHitRate(), 1e-9);
+
+        memoCache.put("1:2000:C:G", createAnnotation("1", 2000, "C", "G"));
+        memoCache.put("1:3000:G:T", createAnnotation("1", 3000, "G", "T"));
+        assertEquals(2, memoCache.size());
+        assertNull(memoCache.get("1:1000:A:T"));
+        assertNotNull(memoCache.get("1:3000:G:T"));
+        memoCache.close();
+    }
+
+    @Test
+    public void testRocksDB() throws CellBaseException {
+        Path path = tempDir.resolve("memo");
+        VariantAnnotation variantAnnotation = createAnnotation("2", 5000, "C", "CT");
+        RocksDBAnnotationMemoCache memoCache = new RocksDBAnnotationMemoCache(path, 16);
+        assertNull(memoCache.get("2:5000:C:CT"));
+        memoCache.put("2:5000:C:CT", variantAnnotation);
+        assertEquals(variantAnnotation, memoCache.get("2:5000:C:CT"));
+        memoCache.close();
+
+        // Annotations survive restarts
+        memoCache = new RocksDBAnnotationMemoCache(path, 16);
+        assertEquals(variantAnnotation, memoCache.get("2:5000:C:CT"));
+        assertEquals(1, memoCache.getHits());
+        memoCache.close();
+    }
+
+    @Test
+    public void testRocksDBEviction() throws Exception {
+        RocksDBAnnotationMemoCache memoCache = new RocksDBAnnotationMemoCache(tempDir.resolve("evicted"), 1);
+        // About 3 MB of annotations that can not be compressed
+        Random random = new Random(1);
+        for (int i = 0; i < 3000; i++) {
+            VariantAnnotation variantAnnotation = createAnnotation("3", i, "A", "T");
+            StringBuilder geneName = new StringBuilder();
+            for (int j = 0; j < 1000; j++) {
+                geneName.append((char) ('a' + random.nextInt(26)));
+            }
+            variantAnnotation.getConsequenceTypes().get(0).setGeneName(geneName.toString());
+            memoCache.put("3:" + i + ":A:T", variantAnnotation);
+        }
+        memoCache.flush();
+        assertTrue(memoCache.getDiskSize() > 1024 * 1024);
+
+        memoCache.evict();
+        int found = 0;
+        for (int i = 0; i < 3000; i++) {
+            if (memoCache.get("3:" + i + ":A:T") != null) {
+                found++;
+            }
+        }
+        assertTrue(found > 0 && found < 1000, "Annotations left after eviction: " + found);
+        memoCache.close();
+    }
+
+    @Test
+    public void testOpen() {
+        assertNull(AnnotationMemoCache.open(new AnnotationProperties()));
+        assertNull(AnnotationMemoCache.open(new AnnotationProperties().setMemoCache("none")));
+
+        AnnotationProperties annotationProperties = new AnnotationProperties().setMemoCache("LRU").setMemoCacheSize(10);
+        AnnotationMemoCache memoCache = AnnotationMemoCache.open(annotationProperties);
+        assertTrue(memoCache instanceof LruAnnotationMemoCache);
+        assertSame(memoCache, AnnotationMemoCache.open(annotationProperties));
+
+        // Caches that can not be opened are disabled
+        assertNull(AnnotationMemoCache.open(new AnnotationProperties().setMemoCache("redis")));
+        assertNull(AnnotationMemoCache.open(new AnnotationProperties().setMemoCache("rocksdb").setMemoCacheDirectory("")));
+    }
+
+    @Test
+    public void testRocksDBLocked() throws CellBaseException {
+        Path path = tempDir.resolve("locked");
+        RocksDBAnnotationMemoCache memoCache = new RocksDBAnnotationMemoCache(path, 16);
+        assertThrows(CellBaseException.class, () -> new RocksDBAnnotationMemoCache(path, 16));
+        memoCache.close();
+    }
+
+    @Test
+    public void testKeyPrefix() {
+        Map<String, String> collections = new HashMap<>();
+        collections.put("gene", "gene_v5_1");
+        DataRelease dataRelease = new DataRelease(1, "2024-01-01", true, collections, Collections.emptyList());
+        String keyPrefix = AnnotationMemoCache.getKeyPrefix("hsapiens", "grch38", dataRelease);
+        assertTrue(keyPrefix.startsWith("hsapiens_grch38_1_"));
+        assertEquals(keyPrefix, AnnotationMemoCache.getKeyPrefix("hsapiens", "grch38", dataRelease));
+
+        // Data loaded later into the release changes the prefix
+        collections.put("variation", "variation_v5_1");
+        assertNotEquals(keyPrefix, AnnotationMemoCache.getKeyPrefix("hsapiens", "grch38", dataRelease));
+    }
+
+    private VariantAnnotation createAnnotation(String chromosome, int start, String reference, String alternate) {
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setChromosome(chromosome);
+        variantAnnotation.setStart(start);
+        variantAnnotation.setReference(reference);
+        variantAnnotation.setAlternate(alternate);
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setGeneName("BRCA2");
+        consequenceType.setSequenceOntologyTerms(new ArrayList<>());
+        variantAnnotation.setConsequenceTypes(new ArrayList<>(Collections.singletonList(consequenceType)));
+        return variantAnnotation;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.cellbase.core.config.AnnotationProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnnotationSchedulerTest {
+
+    @Test
+    public void testBoundedConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (AnnotationScheduler scheduler = new AnnotationScheduler(new AnnotationProperties().setNumThreads(2).setQueueSize(100))) {
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int value = i;
+                futures.add(scheduler.submit("variation", () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return value;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+            }
+
+            // No more annotators than threads run at the same time
+            assertTrue(maxRunning.get() <= 2, "Max concurrent annotators: " + maxRunning.get());
+            assertEquals(10, scheduler.getStats().get("variation").getCount());
+            assertEquals(2, scheduler.getPoolSize());
+        }
+    }
+
+    @Test
+    public void testFullQueueRunsInCaller() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (AnnotationScheduler scheduler = new AnnotationScheduler(new AnnotationProperties().setNumThreads(1).setQueueSize(1))) {
+            // The only thread is busy and the queue is full, the next annotator runs in the submitting thread
+            CompletableFuture<String> busy = scheduler.submit("variation", () -> {
+                blocked.countDown();
+                release.await();
+                return Thread.currentThread().getName();
+            });
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            CompletableFuture<String> queued = scheduler.submit("conservation", () -> Thread.currentThread().getName());
+            assertEquals(1, scheduler.getQueueDepth());
+            CompletableFuture<String> callerRuns = scheduler.submit("repeats", () -> Thread.currentThread().getName());
+            assertTrue(callerRuns.isDone());
+            assertEquals(Thread.currentThread().getName(), callerRuns.get());
+
+            release.countDown();
+            assertTrue(busy.get(10, TimeUnit.SECONDS).startsWith("annotation-scheduler-"));
+            assertTrue(queued.get(10, TimeUnit.SECONDS).startsWith("annotation-scheduler-"));
+        }
+    }
+
+    @Test
+    public void testExceptionPropagation() throws Exception {
+        try (AnnotationScheduler scheduler = new AnnotationScheduler(new AnnotationProperties().setNumThreads(2))) {
+            CompletableFuture<Integer> future = scheduler.submit("clinical", () -> {
+                throw new IOException("Connection refused");
+            });
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("Connection refused", e.getCause().getMessage());
+            assertTrue(future.isCompletedExceptionally());
+
+            // Dependent stages see the same failure
+            CompletionException completionException = assertThrows(CompletionException.class, () -> future.thenApply(n -> n + 1).join());
+            assertTrue(completionException.getCause() instanceof IOException);
+
+            // Failed annotators are also accounted in the metrics, and the scheduler keeps running tasks
+            assertEquals(1, scheduler.getStats().get("clinical").getCount());
+            assertEquals(1, scheduler.submit("clinical", () -> 1).get(10, TimeUnit.SECONDS).intValue());
+        }
+    }
+
+    @Test
+    public void testClosedRejectsTasks() throws Exception {
+        AnnotationScheduler scheduler = new AnnotationScheduler(new AnnotationProperties().setNumThreads(1));
+        CompletableFuture<Integer> submitted = scheduler.submit("variation", () -> 1);
+        scheduler.close();
+        assertEquals(1, submitted.get(10, TimeUnit.SECONDS).intValue());
+
+        // Tasks submitted once closed are not run, their futures complete exceptionally instead of never completing
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Integer> rejected = scheduler.submit("variation", runs::incrementAndGet);
+        assertTrue(rejected.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void testSharedScheduler() throws Exception {
+        AnnotationProperties annotationProperties = new AnnotationProperties().setNumThreads(3).setQueueSize(10);
+        AnnotationScheduler scheduler = AnnotationScheduler.get(annotationProperties);
+        assertSame(scheduler, AnnotationScheduler.get(new AnnotationProperties().setNumThreads(3).setQueueSize(10)));
+        assertNotSame(scheduler, AnnotationScheduler.get(new AnnotationProperties().setNumThreads(4).setQueueSize(10)));
+
+        // Closed schedulers reject tasks, the next request gets a new one
+        AnnotationScheduler.closeAll();
+        assertTrue(scheduler.submit("variation", () -> 1).isCompletedExceptionally());
+        AnnotationScheduler newScheduler = AnnotationScheduler.get(annotationProperties);
+        assertNotSame(scheduler, newScheduler);
+        assertEquals(1, newScheduler.submit("variation", () -> 1).get(10, TimeUnit.SECONDS).intValue());
+        AnnotationScheduler.closeAll();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.core.RegulatoryFeature;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegulatoryRegionIndexTest {
+
+    @Test
+    public void testMergeRegions() {
+        List<Region> mergedRegions = RegulatoryRegionIndex.mergeRegions(Arrays.asList(new Region("1", 5000, 5000),
+                new Region("2", 100, 100), new Region("1", 100, 200), new Region("1", 150, 1000)), 1000);
+
+        assertEquals(3, mergedRegions.size());
+        assertRegion("1", 100, 1000, mergedRegions.get(0));
+        assertRegion("1", 5000, 5000, mergedRegions.get(1));
+        assertRegion("2", 100, 100, mergedRegions.get(2));
+    }
+
+    @Test
+    public void testGetOverlaps() {
+        RegulatoryRegionIndex index = new RegulatoryRegionIndex(
+                Arrays.asList(new Region("1", 1, 10000), new Region("2", 500, 600)),
+                Arrays.asList(feature("1", 100, 200, "enhancer"),
+                        feature("1", 150, 5000, "promoter"),
+                        feature("1", 300, 310, "TF_binding_site"),
+                        feature("1", 400, 410, "TF_binding_site_motif")));
+
+        assertTrue(index.covers("1", 1, 1));
+        assertTrue(index.covers("1", 9000, 10000));
+        assertFalse(index.covers("1", 9000, 10001));
+        assertTrue(index.covers("2", 550, 550));
+        assertFalse(index.covers("2", 100, 100));
+        assertFalse(index.covers("3", 100, 100));
+
+        assertArrayEquals(new boolean[]{false, false}, index.getOverlaps("1", 99));
+        assertArrayEquals(new boolean[]{true, false}, index.getOverlaps("1", 100));
+        // Long promoter spans the position even though later features start after it
+        assertArrayEquals(new boolean[]{true, false}, index.getOverlaps("1", 4000));
+        assertArrayEquals(new boolean[]{true, true}, index.getOverlaps("1", 305));
+        // Motifs are TF binding sites for single position checks...
+        assertArrayEquals(new boolean[]{true, true}, index.getOverlaps("1", 405));
+        // ... but not for range checks
+        assertArrayEquals(new boolean[]{true, false}, index.getOverlaps("1", 400, 420));
+        assertArrayEquals(new boolean[]{true, true}, index.getOverlaps("1", 250, 300));
+        assertArrayEquals(new boolean[]{false, false}, index.getOverlaps("1", 5001, 6000));
+        assertArrayEquals(new boolean[]{false, false}, index.getOverlaps("2", 500, 600));
+    }
+
+    private void assertRegion(String chromosome, int start, int end, Region region) {
+        assertEquals(chromosome, region.getChromosome());
+        assertEquals(start, region.getStart());
+        assertEquals(end, region.getEnd());
+    }
+
+    private RegulatoryFeature feature(String chromosome, int start, int end, String featureType) {
+        RegulatoryFeature regulatoryFeature = new RegulatoryFeature();
+        regulatoryFeature.setChromosome(chromosome);
+        regulatoryFeature.setStart(start);
+        regulatoryFeature.setEnd(end);
+        regulatoryFeature.setFeatureType(featureType);
+        return regulatoryFeature;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingFeatureWindowTest {
+
+    @Test
+    public void testSlidingWindow() throws Exception {
+        List<int[]> features = Arrays.asList(new int[]{100, 5000}, new int[]{1000, 1200}, new int[]{2500, 2600},
+                new int[]{4000, 9000});
+        List<String> loadedRegions = new ArrayList<>();
+        SlidingFeatureWindow<int[]> window = new SlidingFeatureWindow<>(region -> {
+            loadedRegions.add(region.getChromosome() + ":" + region.getStart() + "-" + region.getEnd());
+            return features.stream()
+                    .filter(feature -> feature[0] <= region.getEnd() && feature[1] >= region.getStart())
+                    .collect(Collectors.toList());
+        }, feature -> feature[0], feature -> feature[1], 0);
+
+        assertEquals(Arrays.asList(features.get(0), features.get(1)), window.get("1", 1, 2000));
+        // Only the newly entered span is fetched, features already in the window are not duplicated
+        assertEquals(Arrays.asList(features.get(0), features.get(2)), window.get("1", 1500, 3000));
+        assertEquals("1:2001-3000", loadedRegions.get(1));
+
+        // Jumping ahead or changing chromosome restarts the window, regions left behind are fetched on their own
+        assertEquals(Arrays.asList(features.get(0), features.get(3)), window.get("1", 4500, 6000));
+        assertEquals("1:4500-6000", loadedRegions.get(2));
+        assertEquals(Arrays.asList(features.get(0), features.get(1)), window.get("1", 1000, 1000));
+        assertEquals("1:1000-1000", loadedRegions.get(3));
+        window.get("2", 1000, 1000);
+        assertEquals("2:1000-1000", loadedRegions.get(4));
+        assertEquals(5, window.getNumLoads());
+    }
+}
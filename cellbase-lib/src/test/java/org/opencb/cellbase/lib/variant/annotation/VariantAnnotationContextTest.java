@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VariantAnnotationContextTest {
+
+    @Test
+    public void testDefaults() {
+        VariantAnnotationContext context = new VariantAnnotationContext(new QueryOptions());
+        assertTrue(context.getAnnotatorSet().contains("consequenceType"));
+        assertFalse(context.isNormalize());
+        assertTrue(context.isDecompose());
+        assertTrue(context.isPhased());
+        assertTrue(context.isImprecise());
+        assertFalse(context.isCheckAminoAcidChange());
+        assertEquals("", context.getEnable());
+        assertEquals(Arrays.asList("ensembl", "refseq"), context.getGeneSources());
+    }
+
+    @Test
+    public void testRequestOptions() {
+        QueryOptions queryOptions = new QueryOptions("include", "consequenceType,hgvs")
+                .append("ignorePhase", true)
+                .append("phased", true)
+                .append("skipDecompose", true)
+                .append("cnvExtraPadding", 100)
+                .append("consequenceTypeSource", "refseq");
+        VariantAnnotationContext context = new VariantAnnotationContext(queryOptions);
+        assertEquals(2, context.getAnnotatorSet().size());
+        assertFalse(context.getIncludeGeneFields().contains("annotation.drugs"));
+        assertFalse(context.isPhased());
+        assertFalse(context.isDecompose());
+        assertEquals(Collections.singletonList("refseq"), context.getGeneSources());
+
+        Variant cnv = new Variant("1:1000-2000:<CNV>");
+        Region region = context.variantToRegionList(cnv).get(0);
+        assertEquals(900, region.getStart());
+        assertEquals(2100, region.getEnd());
+
+        // Contexts are independent, one calculator can annotate requests with different options
+        VariantAnnotationContext preciseContext = new VariantAnnotationContext(new QueryOptions("imprecise", false));
+        region = preciseContext.variantToRegionList(cnv).get(0);
+        assertEquals(1000, region.getStart());
+        assertEquals(2000, region.getEnd());
+    }
+
+    @Test
+    public void testMemoKey() {
+        VariantAnnotationContext context = new VariantAnnotationContext(new QueryOptions("include", "hgvs,consequenceType"));
+        assertEquals(context.getMemoKey(),
+                new VariantAnnotationContext(new QueryOptions("include", "consequenceType,hgvs")).getMemoKey());
+        // Normalisation changes the variants annotated, not the annotation of a normalised variant
+        assertEquals(context.getMemoKey(),
+                new VariantAnnotationContext(new QueryOptions("include", "consequenceType,hgvs").append("normalize", true)).getMemoKey());
+
+        assertNotEquals(context.getMemoKey(), new VariantAnnotationContext(new QueryOptions("include", "consequenceType")).getMemoKey());
+        assertNotEquals(context.getMemoKey(), new VariantAnnotationContext(new QueryOptions("include", "hgvs,consequenceType")
+                .append("consequenceTypeSource", "ensembl")).getMemoKey());
+        assertNotEquals(context.getMemoKey(), new VariantAnnotationContext(new QueryOptions("include", "hgvs,consequenceType")
+                .append("checkAminoAcidChange", true)).getMemoKey());
+    }
+}
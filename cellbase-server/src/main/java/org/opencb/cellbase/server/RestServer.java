@@ -92,10 +92,11 @@ public class RestServer  {
         webapp.setClassLoader(this.getClass().getClassLoader());
         webapp.setInitParameter("CELLBASE_HOME", cellbaseHome.toFile().toString());
 
-        // This enables the compression of the response
+        // This enables the compression of the response, including the Avro binary and newline-delimited JSON responses.
+        // Jetty 9.4 only supports gzip and deflate encodings
         final GzipHandler gzipHandler = new GzipHandler();
         gzipHandler.addIncludedMimeTypes("text/html", "text/xml", "text/css", "text/plain", "text/javascript", "application/javascript",
-                "application/json", "application/xml");
+                "application/json", "application/xml", "application/x-ndjson", "avro/binary");
         gzipHandler.setIncludedMethods("GET", "POST");
         gzipHandler.setCompressionLevel(1);
         gzipHandler.setHandler(webapp);
@@ -33,6 +33,7 @@ import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.exception.CellBaseException;
 import org.opencb.cellbase.core.models.DataRelease;
 import org.opencb.cellbase.core.result.CellBaseDataResponse;
+import org.opencb.cellbase.core.result.CellBaseDataResponseAvroCodec;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.utils.SpeciesUtils;
 import org.opencb.cellbase.lib.managers.CellBaseManagerFactory;
@@ -93,6 +94,8 @@ public class GenericRestWSServer implements IWSServer {
     // this webservice has no species, do not validate
     private static final String DONT_CHECK_SPECIES = "do not validate species";
 
+    protected static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
     public GenericRestWSServer(@PathParam("version") String version, @Context UriInfo uriInfo, @Context HttpServletRequest hsr)
             throws QueryException, IOException, CellBaseException {
         this(version, DONT_CHECK_SPECIES, uriInfo, hsr);
@@ -362,6 +365,9 @@ public class GenericRestWSServer implements IWSServer {
         queryResponse.setResponses(list);
         logQuery(OK);
 
+        if (isAvroRequested() && CellBaseDataResponseAvroCodec.isEncodable(queryResponse)) {
+            return createAvroResponse(queryResponse);
+        }
         return createJsonResponse(queryResponse);
     }
 
@@ -377,6 +383,45 @@ public class GenericRestWSServer implements IWSServer {
         return buildResponse(Response.ok(str));
     }
 
+    /**
+     * Checks whether a streamed response was requested, either with the 'stream' parameter or with the
+     * 'Accept: application/x-ndjson' header.
+     * @return true if results must be streamed as newline-delimited JSON
+     */
+    protected boolean isStreamRequested() {
+        if (Boolean.parseBoolean(uriParams.get("stream"))) {
+            return true;
+        }
+        String accept = httpServletRequest != null ? httpServletRequest.getHeader(HttpHeaders.ACCEPT) : null;
+        return accept != null && accept.contains(NDJSON_MEDIA_TYPE);
+    }
+
+    /**
+     * Newline-delimited JSON response, results are written by the streaming output as they are produced, one JSON object
+     * per line. Errors found once the response has started can not be reported in the body.
+     * @param streamingOutput writes the results to the response output stream
+     * @return the response
+     */
+    protected Response createStreamingResponse(StreamingOutput streamingOutput) {
+        logQuery(OK);
+        return buildResponse(Response.ok(streamingOutput, NDJSON_MEDIA_TYPE));
+    }
+
+    /**
+     * Checks whether the client accepts Avro binary responses, i.e. the 'Accept' header contains 'avro/binary'. JSON is
+     * still returned when the results are not Avro records.
+     * @return true if the response can be Avro encoded
+     */
+    protected boolean isAvroRequested() {
+        String accept = httpServletRequest != null ? httpServletRequest.getHeader(HttpHeaders.ACCEPT) : null;
+        return accept != null && accept.contains(CellBaseDataResponseAvroCodec.MEDIA_TYPE);
+    }
+
+    protected Response createAvroResponse(CellBaseDataResponse queryResponse) {
+        StreamingOutput output = outputStream -> CellBaseDataResponseAvroCodec.encode(queryResponse, outputStream);
+        return buildResponse(Response.ok(output, CellBaseDataResponseAvroCodec.MEDIA_TYPE));
+    }
+
     protected Response createJsonResponse(CellBaseDataResponse queryResponse) {
         try {
 //            if (CollectionUtils.isNotEmpty(queryResponse.getResponses()) && queryResponse.getResponses().get(0) != null) {
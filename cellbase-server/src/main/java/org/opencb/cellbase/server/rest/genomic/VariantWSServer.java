@@ -27,6 +27,7 @@ import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.utils.SpeciesUtils;
 import org.opencb.cellbase.lib.managers.VariantManager;
 import org.opencb.cellbase.server.rest.GenericRestWSServer;
+import org.opencb.commons.datastore.core.QueryOptions;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
@@ -35,6 +36,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +49,9 @@ import static org.opencb.cellbase.core.ParamConstants.*;
 @Api(value = "Variant", description = "Variant RESTful Web Services API")
 public class VariantWSServer extends GenericRestWSServer {
 
+    // Variants annotated at once when streaming, it bounds the memory used by every streamed request
+    private static final int STREAM_BATCH_SIZE = 200;
+
     private VariantManager variantManager;
 
     public VariantWSServer(@PathParam("apiVersion") @ApiParam(name = "apiVersion", value = VERSION_DESCRIPTION,
@@ -119,12 +125,18 @@ public class VariantWSServer extends GenericRestWSServer {
 
     @POST
     @Consumes("text/plain")
+    @Produces({MediaType.APPLICATION_JSON, NDJSON_MEDIA_TYPE})
     @Path("/annotation")
     @ApiOperation(httpMethod = "POST",
             value = "Retrieves variant annotation for a list of variants.", notes = "Include and exclude lists take"
             + " values from the following set: {variation, traitAssociation, conservation, consequenceType,"
             + " expression, geneDisease, drugInteraction, populationFrequencies, repeats, hgvs, geneConstraints, mirnaTargets}.",
             response = VariantAnnotation.class, responseContainer = "QueryResponse", hidden = true)
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "stream", value = "Stream the annotations as newline-delimited JSON, one annotation per"
+                    + " line, instead of building the whole response. Same as 'Accept: application/x-ndjson'",
+                    required = false, defaultValue = "false", dataType = "boolean", paramType = "query")
+    })
     public Response getAnnotationByVariantsPOST(@ApiParam(name = "variants", value = "Comma separated list of variants to"
                                                         + "annotate, e.g. "
                                                         + "19:45411941:T:C,14:38679764:-:GATCTG,1:6635210:G:-,"
@@ -203,6 +215,7 @@ public class VariantWSServer extends GenericRestWSServer {
     }
 
     @GET
+    @Produces({MediaType.APPLICATION_JSON, NDJSON_MEDIA_TYPE})
     @Path("/{variants}/annotation")
     @ApiOperation(httpMethod = "GET",
             value = "Retrieves variant annotation for a list of variants.", notes = "Include and exclude lists take"
@@ -224,7 +237,10 @@ public class VariantWSServer extends GenericRestWSServer {
                     paramType = "query"),
             @ApiImplicitParam(name = "skip", value = SKIP_DESCRIPTION,
                     required = false, defaultValue = DEFAULT_SKIP, dataType = "java.util.List",
-                    paramType = "query")
+                    paramType = "query"),
+            @ApiImplicitParam(name = "stream", value = "Stream the annotations as newline-delimited JSON, one annotation per"
+                    + " line, instead of building the whole response. Same as 'Accept: application/x-ndjson'",
+                    required = false, defaultValue = "false", dataType = "boolean", paramType = "query")
     })
     public Response getAnnotationByVariantsGET(@PathParam("variants")
                                                @ApiParam(name = "variants", value = VARIANTS,
@@ -300,6 +316,23 @@ public class VariantWSServer extends GenericRestWSServer {
             // use the processed value, as there may be more than one "consequenceTypeSource" in the URI
             String consequenceTypeSources = (StringUtils.isEmpty(uriParams.get("consequenceTypeSource")) ? consequenceTypeSource
                     : uriParams.get("consequenceTypeSource"));
+            if (isStreamRequested()) {
+                QueryOptions queryOptions = query.toQueryOptions();
+                int dataRelease = getDataRelease();
+                return createStreamingResponse(outputStream -> {
+                    try {
+                        variantManager.streamAnnotationByVariant(queryOptions, variants, normalize, skipDecompose, ignorePhase,
+                                phased, imprecise, svExtraPadding, cnvExtraPadding, checkAminoAcidChange, consequenceTypeSources,
+                                enable, dataRelease, STREAM_BATCH_SIZE, batch -> writeAnnotations(batch, outputStream));
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    } catch (Exception e) {
+                        // Headers are already sent, the error can only be logged and the response closed
+                        logger.error("Error streaming variant annotation", e);
+                        throw new IOException(e);
+                    }
+                });
+            }
             List<CellBaseDataResult<VariantAnnotation>> queryResults = variantManager.getAnnotationByVariant(query.toQueryOptions(),
                     variants, normalize, skipDecompose, ignorePhase, phased, imprecise, svExtraPadding, cnvExtraPadding,
                     checkAminoAcidChange, consequenceTypeSources, enable, getDataRelease());
@@ -309,6 +342,20 @@ public class VariantWSServer extends GenericRestWSServer {
         }
     }
 
+    private void writeAnnotations(List<CellBaseDataResult<VariantAnnotation>> batch, OutputStream outputStream) {
+        try {
+            for (CellBaseDataResult<VariantAnnotation> result : batch) {
+                for (VariantAnnotation variantAnnotation : result.getResults()) {
+                    outputStream.write(jsonObjectWriter.writeValueAsBytes(variantAnnotation));
+                    outputStream.write('\n');
+                }
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 //    @GET
 //    @Deprecated
 //    @Path("/{variants}/cadd")